@@ -0,0 +1,29 @@
+<?php declare(strict_types=1);
+
+/**
+ * Trigger script for ComposerAutoloadMapRule
+ *
+ * The rule works on the composer.json closest to the analysed file. With this package's
+ * composer.json ("macropage\PHPStan\Inspections\\" => "src/") the declarations below
+ * are expected to be reported when this file is analysed with composerAutoloadMapCheck enabled.
+ */
+
+namespace macropage\PHPStan\Inspections\Triggers;
+
+// Case 1: Namespace matches the PSR-4 root, but the file is not located in
+// src/Triggers/MisplacedAutoloadExample.php (should trigger autoloading.misplacedClass)
+class MisplacedAutoloadExample
+{
+}
+
+namespace Unrelated\Vendor;
+
+// Case 2: Namespace is not covered by any autoload root
+// (should trigger autoloading.notInClassmap)
+class NotCoveredAutoloadExample
+{
+}
+
+// Case 3: Anonymous classes are never autoloaded (should NOT trigger)
+$instance = new class {
+};
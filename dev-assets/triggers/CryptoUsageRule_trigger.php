@@ -0,0 +1,71 @@
+<?php
+
+// Helpers, usually declared in other files than the encryption calls
+
+interface IvProvider
+{
+    public function iv(): string;
+}
+
+class CryptoUtil
+{
+    public static function makeIv(): string
+    {
+        return md5(time()); // insecure IV source
+    }
+
+    public static function makeSecureIv(): string
+    {
+        return openssl_random_pseudo_bytes(16);
+    }
+
+    public static function makeKey(): string
+    {
+        $key = 'hardcoded-secret-key';
+        return $key;
+    }
+
+    public function loadKey(): string
+    {
+        return (string) getenv('APP_KEY');
+    }
+
+    public static function ivFor(string $purpose): string
+    {
+        return $purpose === 'legacy' ? self::makeIv() : self::makeSecureIv();
+    }
+}
+
+// Positive cases - should trigger the rule
+
+// IV produced by CryptoUtil::makeIv() is md5(time())
+$data = 'sensitive data';
+$encrypted1 = openssl_encrypt($data, 'AES-256-CBC', (new CryptoUtil())->loadKey(), 0, CryptoUtil::makeIv());
+
+// IV produced through two helpers, one of the branches is insecure
+$iv = CryptoUtil::ivFor('legacy');
+$encrypted2 = openssl_encrypt($data, 'AES-256-CBC', (new CryptoUtil())->loadKey(), 0, $iv);
+
+// The helper has no body to resolve (like helpers in files which are not analysed):
+// openssl_random_pseudo_bytes() should be used for IV, but found: IvProvider::iv().
+function encryptWithProvider(IvProvider $provider, string $data): string|false
+{
+    return openssl_encrypt($data, 'AES-256-CBC', (new CryptoUtil())->loadKey(), 0, $provider->iv());
+}
+
+// Key produced by CryptoUtil::makeKey() is a hardcoded value
+$encrypted3 = openssl_encrypt($data, 'AES-256-CBC', CryptoUtil::makeKey(), 0, CryptoUtil::makeSecureIv());
+$decrypted3 = openssl_decrypt($encrypted3, 'AES-256-CBC', CryptoUtil::makeKey(), 0, random_bytes(16));
+
+// Negative cases - should NOT trigger the rule
+
+// Secure IV and key loaded from the environment via helpers
+$encrypted4 = openssl_encrypt($data, 'AES-256-CBC', (new CryptoUtil())->loadKey(), 0, CryptoUtil::makeSecureIv());
+
+// Direct literal IVs are reported by EncryptionInitializationVectorRandomnessRule instead
+$encrypted5 = openssl_encrypt($data, 'AES-256-CBC', (new CryptoUtil())->loadKey(), 0, '1234567890123456');
+
+// Other crypto calls are only part of the inventory
+$hash = hash('sha256', $data);
+$password = password_hash($data, PASSWORD_DEFAULT);
+$token = random_int(0, PHP_INT_MAX);
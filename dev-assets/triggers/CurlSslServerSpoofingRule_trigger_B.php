@@ -25,4 +25,7 @@ curl_setopt($ch, CURLOPT_SSL_VERIFYPEER, false); // Should trigger both
 $insecureHost = 0;
 $insecurePeer = false;
 curl_setopt($ch, CURLOPT_SSL_VERIFYHOST, $insecureHost); // Should trigger
-curl_setopt($ch, CURLOPT_SSL_VERIFYPEER, $insecurePeer); // Should trigger
\ No newline at end of file
+curl_setopt($ch, CURLOPT_SSL_VERIFYPEER, $insecurePeer); // Should trigger
+// Insecure value held in a variable
+$verifyPeer = false;
+curl_setopt($ch, CURLOPT_SSL_VERIFYPEER, $verifyPeer); // Should trigger
@@ -48,11 +48,11 @@ $array5 = [
     'key3' => 'value3',
 ];
 
-// Case 6: Numeric keys (should be ignored)
+// Case 6: Numeric keys (should trigger - integer keys are tracked as well)
 $array6 = [
     0 => 'value1',
     1 => 'value2',
-    0 => 'value3', // Numeric key, should be ignored
+    0 => 'value3', // Duplicate integer key with different value
 ];
 
 // Case 7: Variable keys (should be ignored)
@@ -67,4 +67,35 @@ $key = 'dynamic';
 $array8 = [];
 
 // Case 9: Single element
-$array9 = ['key' => 'value'];
\ No newline at end of file
+$array9 = ['key' => 'value'];
+
+// Case 10: Integer-like string keys are the same key as integers (should trigger)
+$array10 = [
+    1 => 'one',
+    '1' => 'uno', // "1" is cast to 1
+    '01' => 'zero-one', // "01" stays a string, should NOT trigger
+];
+
+// Case 11: Implicit keys collide with explicit integer keys (should trigger)
+$array11 = [
+    'first',
+    'second',
+    1 => 'overridden', // Same key as 'second'
+];
+
+// Case 12: Class constant keys are resolved to their values (should trigger)
+class DuplicateArrayKeysConfig
+{
+    public const string NAME = 'name';
+    public const int ID = 1;
+
+    public function toArray(): array
+    {
+        return [
+            self::NAME => 'a',
+            'name' => 'b', // Same key as self::NAME
+            self::ID => 'c',
+            1 => 'c', // Same key-value pair as self::ID => 'c'
+        ];
+    }
+}
@@ -0,0 +1,118 @@
+<?php declare(strict_types=1);
+
+namespace TestNamespace;
+
+use PHPUnit\Framework\Attributes\DataProvider;
+use PHPUnit\Framework\TestCase;
+
+/**
+ * Test class to trigger EagerDataProviderRule
+ */
+class EagerDataProviderRuleTrigger extends TestCase
+{
+    /**
+     * Invalid: 500 datasets built in a loop, suggests 'yield "row {$i}" => [$i, $i * 2];'
+     */
+    public static function numbersProvider(): array
+    {
+        $data = [];
+        for ($i = 0; $i < 500; $i++) {
+            $data["row {$i}"] = [$i, $i * 2];
+        }
+
+        return $data;
+    }
+
+    /**
+     * Invalid: reads fixtures with file_get_contents() and glob()
+     */
+    public static function fixturesProvider(): array
+    {
+        $data = [];
+        foreach (glob(__DIR__ . '/fixtures/*.json') as $file) {
+            $data[basename($file)] = [json_decode(file_get_contents($file), true)];
+        }
+
+        return $data;
+    }
+
+    /**
+     * Valid: already a generator
+     */
+    public static function lazyProvider(): iterable
+    {
+        foreach (range(1, 1000) as $i) {
+            yield "row {$i}" => [$i];
+        }
+    }
+
+    /**
+     * Valid: the number of iterations is unknown, the rows come from other code
+     */
+    public static function casesProvider(): array
+    {
+        $data = [];
+        foreach (self::cases() as $name => $case) {
+            $data[$name] = [$case];
+        }
+
+        return $data;
+    }
+
+    /**
+     * Valid: only referenced by a provider of another class with the same method name
+     */
+    public static function sharedProvider(): array
+    {
+        $data = [];
+        for ($i = 0; $i < 500; $i++) {
+            $data[] = [$i];
+        }
+
+        return $data;
+    }
+
+    /**
+     * Valid: a few literal datasets
+     */
+    public static function smallProvider(): array
+    {
+        return [
+            'one' => [1],
+            'two' => [2],
+        ];
+    }
+
+    /**
+     * @dataProvider numbersProvider
+     */
+    public function testNumbers(int $value, int $double): void
+    {
+        $this->assertSame($value * 2, $double);
+    }
+
+    /**
+     * @return array<string, int>
+     */
+    private static function cases(): array
+    {
+        return ['one' => 1, 'two' => 2];
+    }
+
+    #[DataProvider('fixturesProvider')]
+    public function testFixtures(array $fixture): void
+    {
+        $this->assertNotEmpty($fixture);
+    }
+
+    /**
+     * @dataProvider lazyProvider
+     * @dataProvider smallProvider
+     * @dataProvider casesProvider
+     * @dataProvider \TestNamespace\SharedProviders::sharedProvider
+     */
+    public function testOthers(int $value): void
+    {
+        $this->assertGreaterThan(0, $value);
+    }
+}
@@ -36,4 +36,30 @@ $result7 = mcrypt_encrypt('rijndael-128', $key, $data, 'cbc', $secureIv3);
 $result8 = openssl_encrypt($data, 'AES-256-CBC', $key, 0); // missing IV parameter
 
 // Different function (not openssl_encrypt or mcrypt_encrypt)
-$result9 = hash('sha256', $data); // should not trigger
\ No newline at end of file
+$result9 = hash('sha256', $data); // should not trigger
+// IV reassigned from an insecure value (should trigger)
+$fallbackIv = str_repeat("\0", 16);
+$copiedIv = $fallbackIv;
+$result10 = openssl_encrypt($data, 'AES-256-CBC', $key, 0, $copiedIv);
+
+// IV from a parameter without known values (should NOT trigger)
+function encryptWith(string $data, string $key, string $iv): string
+{
+    return openssl_encrypt($data, 'AES-256-CBC', $key, 0, $iv);
+}
+
+// IV from a helper method (should NOT trigger, CryptoUsageRule follows helpers)
+final class IvFactory
+{
+    public static function create(): string
+    {
+        return random_bytes(16);
+    }
+}
+$result11 = openssl_encrypt($data, 'AES-256-CBC', $key, 0, IvFactory::create());
+
+// IV from a method which can not be resolved (should trigger: expression)
+function encryptWithUnknown(string $data, string $key, mixed $factory): string|false
+{
+    return openssl_encrypt($data, 'AES-256-CBC', $key, 0, $factory->create());
+}
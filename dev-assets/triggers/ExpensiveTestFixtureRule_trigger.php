@@ -0,0 +1,98 @@
+<?php declare(strict_types=1);
+
+namespace TestNamespace;
+
+use PHPUnit\Framework\TestCase;
+
+/**
+ * Test class to trigger ExpensiveTestFixtureRule
+ */
+class ExpensiveTestFixtureRuleTrigger extends TestCase
+{
+    private \PDO $connection;
+
+    private array $fixture;
+
+    protected function setUp(): void
+    {
+        parent::setUp();
+        // Invalid: a database connection before each of the 4 test runs
+        $this->connection = new \PDO('sqlite::memory:');
+        // Invalid: the fixture file is read before each test run
+        $this->fixture = json_decode(file_get_contents(__DIR__ . '/fixture.json'), true);
+        // Invalid: sleeps before each test run
+        usleep(200000);
+    }
+
+    protected function tearDown(): void
+    {
+        // Valid: cleanup is not reported, it only counts for the report
+        @unlink(sys_get_temp_dir() . '/fixture.tmp');
+    }
+
+    public static function valuesProvider(): array
+    {
+        return [
+            'one' => [1],
+            'two' => [2],
+            'three' => [3],
+        ];
+    }
+
+    /**
+     * @dataProvider valuesProvider
+     */
+    public function testValues(int $value): void
+    {
+        $this->assertGreaterThan(0, $value);
+    }
+
+    public function testFixture(): void
+    {
+        $this->assertNotEmpty($this->fixture);
+    }
+}
+
+/**
+ * Valid: the expensive work runs once per class
+ */
+class CheapTestFixtureRuleTrigger extends TestCase
+{
+    private static array $fixture;
+
+    public static function setUpBeforeClass(): void
+    {
+        self::$fixture = json_decode(file_get_contents(__DIR__ . '/fixture.json'), true);
+    }
+
+    public function testFirst(): void
+    {
+        $this->assertNotEmpty(self::$fixture);
+    }
+
+    public function testSecond(): void
+    {
+        $this->assertIsArray(self::$fixture);
+    }
+}
+
+/**
+ * Valid: not a TestCase, PHPUnit never calls its setUp()
+ */
+class ExpensiveTestFixtureRuleHelper
+{
+    private \PDO $connection;
+
+    protected function setUp(): void
+    {
+        $this->connection = new \PDO('sqlite::memory:');
+    }
+
+    public function testFirst(): void
+    {
+    }
+
+    public function testSecond(): void
+    {
+    }
+}
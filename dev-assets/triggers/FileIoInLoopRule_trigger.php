@@ -0,0 +1,123 @@
+<?php
+
+declare(strict_types=1);
+
+final class FileIoInLoopExample
+{
+    /**
+     * @param list<string> $lines
+     */
+    public function positive(array $lines, string $logFile, string $configFile, string $cacheDir): void
+    {
+        foreach ($lines as $line) {
+            // ERROR: appends by opening and closing the file every iteration, suggests $handle = fopen($logFile, 'a')
+            file_put_contents($logFile, $line . "\n", FILE_APPEND);
+        }
+
+        foreach ($lines as $line) {
+            // ERROR: only the last write is kept
+            file_put_contents('/tmp/last-line.txt', $line);
+        }
+
+        foreach ($lines as $line) {
+            // ERROR: opens the same file on every iteration
+            $handle = fopen('/tmp/report.csv', 'r');
+            echo fgets($handle);
+        }
+
+        for ($i = 0; $i < count($lines); $i++) {
+            // ERROR: stat call on an invariant path
+            if (file_exists($configFile)) {
+                // ERROR: whole-file read on an invariant path
+                echo file_get_contents($configFile) . $lines[$i];
+            }
+        }
+
+        foreach ($lines as $line) {
+            // ERROR: the tip names the realpath cache, not the stat cache
+            echo realpath($configFile) . $line;
+        }
+
+        foreach ($lines as $line) {
+            // ERROR: twice, the stat cache holds one path only, checking both stats each of them again
+            if (is_file($configFile) && is_dir($cacheDir)) {
+                echo $line;
+            }
+        }
+    }
+
+    /**
+     * @param list<string> $files
+     */
+    public function negative(array $files, string $lockFile, string $target, int $flags, string $configFile): void
+    {
+        foreach ($files as $file) {
+            // OK: the flags are not known, the call may append
+            file_put_contents($target, $file, $flags);
+        }
+
+        foreach ($files as $file) {
+            // OK: the path varies with the loop
+            if (is_file($file)) {
+                file_put_contents($file . '.bak', file_get_contents($file));
+            }
+        }
+
+        // OK: polling for a lock file in the loop condition
+        while (file_exists($lockFile)) {
+            usleep(1000);
+        }
+
+        while (true) {
+            // OK: the loop waits for the file system to change
+            if (filemtime($target) > time() - 60) {
+                break;
+            }
+            sleep(1);
+        }
+
+        foreach ($files as $file) {
+            // OK: the loop writes to the file system, the stat result may change
+            if (!is_dir($target)) {
+                mkdir($target);
+            }
+            copy($file, $target . '/' . basename($file));
+        }
+
+        foreach ($files as $file) {
+            // OK: the only path checked, served by the stat cache after the first iteration
+            if (is_file($configFile)) {
+                echo $file;
+            }
+        }
+
+        foreach ($files as $index => $file) {
+            // OK: the flags vary with the loop
+            file_put_contents($target, $file, $index === 0 ? 0 : FILE_APPEND);
+        }
+
+        // OK: polling for a lock, the loop waits
+        while (true) {
+            $lock = @fopen($lockFile, 'x');
+            if ($lock !== false) {
+                break;
+            }
+            usleep(1000);
+        }
+
+        foreach ($files as $file) {
+            // OK: the 'c' mode opens the lock file for flock(), not for reading it
+            $lock = fopen($lockFile, 'c');
+            flock($lock, LOCK_EX);
+            echo $file;
+            fclose($lock);
+        }
+
+        foreach ($files as $file) {
+            // OK: a new memory stream on every call
+            $buffer = fopen('php://memory', 'w+');
+            fwrite($buffer, $file);
+            fclose($buffer);
+        }
+    }
+}
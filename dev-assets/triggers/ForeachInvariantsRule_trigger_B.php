@@ -30,4 +30,9 @@ for ($i = 0; $i < count($matrix); $i++) {
         echo $matrix[$i][$j] . ' ';
     }
     echo "\n";
-}
\ No newline at end of file
+}
+// Example 5: Limit held in a variable
+$names = ['a', 'b', 'c'];
+for ($i = 0, $length = count($names); $i < $length; $i++) {
+    echo $names[$i] . "\n";
+}
@@ -44,4 +44,20 @@ $serverPort = $_SERVER['SERVER_PORT']; // Not SERVER_NAME or HTTP_HOST
 $message = "Server: " . $_SERVER['SERVER_NAME']; // No "@" at the end
 
 // Case 5: Safe usage in logging
-$logEntry = "Request from: " . $_SERVER['HTTP_HOST'];
\ No newline at end of file
+$logEntry = "Request from: " . $_SERVER['HTTP_HOST'];
+
+// Positive cases across function boundaries - should trigger errors
+
+// Case 7: Host returned by a helper assigned to a domain variable
+function currentHost(): string
+{
+    return $_SERVER['HTTP_HOST'];
+}
+$cookieDomain = currentHost();
+
+// Case 8: Helper building an email address from its parameter
+function senderAddress(string $server): string
+{
+    return 'noreply@' . $server;
+}
+$sender = senderAddress($_SERVER['SERVER_NAME']);
@@ -0,0 +1,60 @@
+<?php
+
+declare(strict_types=1);
+
+final class InArrayInLoopExample
+{
+    /** @var list<string> */
+    private array $reserved = [];
+
+    /**
+     * @param list<int> $ids
+     * @param list<int> $blocked
+     * @param list<string> $names
+     */
+    public function positive(array $ids, array $blocked, array $names): void
+    {
+        foreach ($ids as $id) {
+            // ERROR: integer haystack, suggests $blockedLookup = array_flip($blocked) and isset($blockedLookup[$id])
+            if (in_array($id, $blocked)) {
+                continue;
+            }
+            // ERROR: array_search() keeps the first key through array_flip(array_reverse(...))
+            $position = array_search($id, $blocked, true);
+        }
+
+        foreach ($names as $name) {
+            // ERROR: strict comparison of strings
+            if (in_array($name, $this->reserved, true)) {
+                echo $name;
+            }
+        }
+    }
+
+    /**
+     * @param list<string> $names
+     * @param list<string> $codes
+     * @param list<int|string> $mixed
+     */
+    public function negative(array $names, array $codes, array $mixed): void
+    {
+        foreach ($names as $name) {
+            // OK: loose comparison of possibly numeric strings ('1' == '01') differs from a key lookup
+            if (in_array($name, $codes)) {
+                echo $name;
+            }
+            // OK: mixed haystack values
+            if (in_array($name, $mixed, true)) {
+                echo $name;
+            }
+            // OK: small literal haystack
+            if (in_array($name, ['a', 'b'], true)) {
+                echo $name;
+            }
+            // OK: the haystack grows in the loop
+            if (!in_array($name, $codes, true)) {
+                $codes[] = $name;
+            }
+        }
+    }
+}
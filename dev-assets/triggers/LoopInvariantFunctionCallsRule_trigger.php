@@ -0,0 +1,87 @@
+<?php
+
+declare(strict_types=1);
+
+const DEFAULT_LOCALE = 'EN_us';
+
+final class LoopInvariantFunctionCallsExample
+{
+    /** @var array<string, int> */
+    private array $map = [];
+
+    /**
+     * @param list<string> $names
+     * @param array<string, mixed> $config
+     */
+    public function positive(array $names, array $config, string $json): void
+    {
+        foreach ($names as $name) {
+            // ERROR: the property is not written and no impure call happens in the loop
+            if (count($this->map) > 10) {
+                break;
+            }
+            // ERROR: $config is never modified in the loop
+            if (in_array($name, array_keys($config), true)) {
+                echo $name;
+            }
+        }
+
+        $i = 0;
+        while ($i < 10) {
+            // ERROR: only the outermost call is reported
+            $locale = strtolower(trim(DEFAULT_LOCALE . $json));
+            // ERROR: mb_strlen() with an explicit encoding does not depend on ini settings
+            $length = mb_strlen($json, 'UTF-8');
+            $i++;
+        }
+    }
+
+    /**
+     * @param list<string> $names
+     * @param array<string, mixed> $config
+     */
+    public function negative(array $names, array $config, mixed $value, \Countable $items, float $price, string $json): void
+    {
+        foreach ($names as $name) {
+            // OK: count() of an object calls Countable::count()
+            $itemCount = count($items);
+            // OK: json_decode() sets the last error state
+            $decoded = json_decode($json, true);
+            // OK: %f depends on the locale
+            $label = sprintf('%.2f', $price);
+            // OK: without an encoding mb_strlen() depends on mbstring's internal encoding
+            $length = mb_strlen($json);
+        }
+
+        foreach ($names as $name) {
+            // OK: depends on the loop variable
+            $lower = strtolower($name);
+            // OK: literal arguments only
+            $fixed = strtoupper('abc');
+            // OK: $config is modified in the loop
+            $keys = array_keys($config);
+            $config[$name] = true;
+            // OK: guarded by a condition testing the argument
+            if (is_array($value)) {
+                $size = count($value);
+            }
+        }
+
+        foreach ($names as $name) {
+            // OK: the method call may modify the property
+            $this->register($name);
+            $total = count($this->map);
+        }
+
+        foreach ($names as $name) {
+            // OK: passed by reference, sort() modifies it
+            sort($names);
+            $first = count($names);
+        }
+    }
+
+    private function register(string $name): void
+    {
+        $this->map[$name] = count($this->map);
+    }
+}
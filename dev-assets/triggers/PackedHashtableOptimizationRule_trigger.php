@@ -16,3 +16,36 @@ $d = ['foo' => 1, 'bar' => 2, 'baz' => 3];
 // Negative: leading zero numeric string keys -> no report
 $e = ['01' => 'a', '02' => 'b', '03' => 'c'];
 
+// Negative: out of order, but the sorted keys leave a gap and still give a hash -> no saving, no report
+$k = [10 => 'a', 1 => 'b', 2 => 'c'];
+
+
+// Positive: filled in descending key order -> hash instead of packed (estimated for 100 elements)
+$f = [];
+for ($i = 99; $i >= 0; $i--) {
+    $f[$i] = $i * 2;
+}
+
+// Positive: keys in steps of 2 -> hash instead of packed
+$g = [];
+for ($i = 0; $i < 1000; $i += 2) {
+    $g[$i] = $i;
+}
+
+// Positive: starting offset beyond the initial 8 slots -> hash, unknown element count
+$h = [];
+for ($i = 100; $i < count($d); $i++) {
+    $h[$i] = $i;
+}
+
+// Negative: consecutive ascending keys from 0 -> packed already
+$j = [];
+for ($i = 0; $i < 1000; $i++) {
+    $j[$i] = $i;
+}
+
+// Negative: the array holds elements before the loop
+$k = ['foo' => 1];
+for ($i = 10; $i > 0; $i--) {
+    $k[$i] = $i;
+}
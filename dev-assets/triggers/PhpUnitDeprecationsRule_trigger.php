@@ -35,6 +35,25 @@ class TestCase extends \PHPUnit\Framework\TestCase
         $this->assertDirectoryNotExists('/path/to/directory'); // Should trigger: method deprecated
     }
 
+    public function testDeprecatedRenamedMethods(): void
+    {
+        // Deprecated: assertRegExp (should use assertMatchesRegularExpression)
+        $this->assertRegExp('/^a/', 'abc'); // Should trigger: method deprecated
+
+        // Deprecated: assertInternalType (should use assertIsArray)
+        $this->assertInternalType('array', []); // Should trigger: method deprecated
+
+        // Deprecated: assertContains with a string haystack (should use assertStringContainsString)
+        $this->assertContains('b', 'abc'); // Should trigger: method deprecated
+
+        // Deprecated: assertObjectHasAttribute (should use assertObjectHasProperty)
+        $this->assertObjectHasAttribute('name', new \stdClass()); // Should trigger: method deprecated
+
+        // Deprecated: will($this->returnValue()) (should use willReturn)
+        $mock = $this->createMock(\Countable::class);
+        $mock->method('count')->will($this->returnValue(1)); // Should trigger: method deprecated
+    }
+
     public function testValidModernUsage(): void
     {
         // These should NOT trigger any deprecation warnings (modern usage)
@@ -53,5 +72,9 @@ class TestCase extends \PHPUnit\Framework\TestCase
 
         // Modern: assertDirectoryDoesNotExist
         $this->assertDirectoryDoesNotExist('/path/to/directory');
+
+        // Modern: assertContains with an array haystack, willReturn
+        $this->assertContains(1, [1, 2]);
+        $this->createMock(\Countable::class)->method('count')->willReturn(1);
     }
 }
\ No newline at end of file
@@ -134,6 +134,55 @@ class PHPUnitTestsRuleTrigger extends TestCase
      */
     public function testDataProviderSuggestion(string $input, string $expected): void
     {
+        // Invalid: assertSame($expected, $input), both are strings
         $this->assertEquals($expected, $input);
     }
-}
\ No newline at end of file
+
+    /**
+     * Assertions with a more specific counterpart
+     */
+    public function testAssertionStrategies(array $items, string $path, string $actual, object $value): void
+    {
+        // Invalid: assertFalse($items === [])
+        $this->assertTrue(!($items === []));
+        // Invalid: assertCount(2, $items)
+        $this->assertSame(2, count($items));
+        // Invalid: assertFileEquals() wins over assertStringEqualsFile()
+        $this->assertSame(file_get_contents($path), file_get_contents($path . '.expected'));
+        // Invalid: assertStringEqualsFile($path, $actual)
+        self::assertEquals(file_get_contents($path), $actual);
+        // Invalid: assertFileExists($path)
+        $this->assertTrue(file_exists($path), 'missing fixture');
+        // Invalid: assertInstanceOf(\stdClass::class, $value)
+        $this->assertTrue($value instanceof \stdClass);
+        // Invalid: assertNull($value)
+        $this->assertSame(null, $value);
+        // Valid: assertEquals(null, ...) also passes for '' and 0
+        $this->assertEquals(null, $actual);
+        // Valid: mixed types compare loosely on purpose
+        $this->assertEquals(1, $actual);
+        // Invalid: assertSame($count, 2), both operands are variables or expressions of type int
+        $count = count($items);
+        $this->assertEquals($count, 2);
+        // Invalid: assertSame($path, $actual)
+        self::assertEquals($path, $actual);
+        // Invalid: assertNotSame($path, $actual)
+        $this->assertNotEquals($path, $actual);
+    }
+}
+
+/**
+ * Not a TestCase: its own assert methods are not checked
+ */
+final class AssertionLookalike
+{
+    public function assertEquals(string $expected, string $actual): void
+    {
+    }
+
+    public function run(string $expected, string $actual): void
+    {
+        // Valid: not a PHPUnit assertion
+        $this->assertEquals($expected, $actual);
+    }
+}
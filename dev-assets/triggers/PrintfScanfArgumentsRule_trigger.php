@@ -52,4 +52,26 @@ sprintf("%-10s | %+d | %x", "left", -123, 255);
 
 // Variables in pattern (should be skipped)
 $pattern = "Dynamic %s pattern";
-printf($pattern, "test");
\ No newline at end of file
+printf($pattern, "test");
+
+// Star width and custom padding (valid)
+printf("[%*d] [%'*10s] [%-'x8.3f]", 6, 42, "padded", 3.14159);
+
+// Positional star width (valid)
+printf('%1$*2$s|', "text", 12);
+
+// Positional arguments with too few arguments
+printf('%1$s %3$s', "one", "two"); // Should trigger: expects 4 parameters
+
+// Position 0 does not exist
+printf('%0$s', "zero"); // Should trigger: invalid pattern
+
+// Character classes and suppressed assignments in scanf (valid)
+sscanf("key=value", "%[^=]=%s", $key, $value);
+sscanf("12 apples", "%*d %s", $fruit);
+
+// Argument types not matching their placeholders
+printf("Items: %s", ["a", "b"]); // Should trigger: array for %s
+printf("Count: %d", "many"); // Should trigger: non-numeric string for %d
+printf("%s", new \stdClass()); // Should trigger: object without __toString() for %s
+printf("Count: %d", "42"); // Numeric string, valid
@@ -158,4 +158,19 @@ class MixedProperties
         ],
         'strings' => ['val1', 'val2', 'val3']
     ];
-}
\ No newline at end of file
+}
+
+// Case 12: Heavy array that is modified later (should NOT trigger - per-instance state)
+class MutatedHeavyProperty
+{
+    private $registry = [
+        'first' => ['a', 'b'],
+        'second' => ['c', 'd'],
+        'third' => ['e', 'f']
+    ];
+
+    public function register(string $name, array $values): void
+    {
+        $this->registry[$name] = $values;
+    }
+}
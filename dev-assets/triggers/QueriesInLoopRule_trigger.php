@@ -0,0 +1,42 @@
+<?php
+
+declare(strict_types=1);
+
+/**
+ * @param list<int> $userIds
+ * @param list<array{name: string, email: string}> $rows
+ */
+function queriesInLoop(PDO $pdo, mysqli $mysqli, array $userIds, array $rows): void
+{
+    // ERROR: prepare() with the same SQL on every iteration, and a per-row execute()
+    foreach ($userIds as $userId) {
+        $statement = $pdo->prepare('SELECT * FROM users WHERE id = ?');
+        $statement->execute([$userId]);
+    }
+
+    // ERROR: per-row execute() of a statement prepared before the loop, suggests a multi-row INSERT
+    $insert = $pdo->prepare('INSERT INTO users (name, email) VALUES (?, ?)');
+    foreach ($rows as $row) {
+        $insert->execute([$row['name'], $row['email']]);
+    }
+
+    // ERROR: query() with SQL built per iteration, suggests WHERE ... IN (...)
+    $result = $pdo->query('SELECT id FROM orders');
+    while ($order = $result->fetch()) {
+        $pdo->query('SELECT * FROM order_items WHERE order_id = ' . (int) $order['id']);
+    }
+
+    // ERROR: mysqli, object and procedural style
+    for ($i = 0; $i < count($userIds); $i++) {
+        $mysqli->query("DELETE FROM sessions WHERE user_id = {$userIds[$i]}");
+        mysqli_query($mysqli, 'UPDATE users SET seen = 1 WHERE id = ' . $userIds[$i]);
+    }
+
+    // OK: a single batched query outside of the loop
+    $placeholders = implode(',', array_fill(0, count($userIds), '?'));
+    $batch = $pdo->prepare("SELECT * FROM users WHERE id IN ($placeholders)");
+    $batch->execute($userIds);
+    foreach ($batch->fetchAll() as $user) {
+        echo $user['name'];
+    }
+}
@@ -3,6 +3,10 @@
 // Trigger script for SecurityAdvisoriesRule
 // This file should be analyzed by PHPStan to trigger the SecurityAdvisoriesRule
 
+// Any analysed file registers its composer.json, which is then checked once together with its
+// composer.lock: findings are reported in composer.json and composer.lock, at the package entry.
+// Advisories with affected versions like '^1.2', '~2.0.1' or '>= 3.0, < 3.1' are checked as well.
+
 // Simple function call to trigger the rule analysis
 function testSecurityAdvisories(): void
 {
@@ -118,4 +118,38 @@ function testNonGreedyFunctionInLoop(): void
     foreach ($sources as $source) {
         $data = array_push($data, ...$source); // Good: array_push is not greedy
     }
-}
\ No newline at end of file
+}
+// INTERPROCEDURAL CASES
+
+class GreedyItemCollection
+{
+    private array $items = [];
+
+    public function add(array $more): void
+    {
+        $this->items = array_merge($this->items, $more);
+    }
+
+    public function addAll(array $more): void
+    {
+        $this->add($more);
+    }
+}
+
+// Calls to helpers copying a field on each call - should trigger errors
+function testGreedyHelperInLoop(GreedyItemCollection $collection, array $batches): void
+{
+    foreach ($batches as $batch) {
+        $collection->add($batch); // ERROR: helper performs array_merge on a field
+        $collection->addAll($batch); // ERROR: reached through GreedyItemCollection::add()
+    }
+}
+
+// The receiver is assigned inside the loop body - should trigger an error
+function testGreedyHelperOnReceiverAssignedInLoop(array $batches): void
+{
+    foreach ($batches as $batch) {
+        $collection = new GreedyItemCollection();
+        $collection->add($batch); // ERROR: resolved with the scope of the call site
+    }
+}
@@ -56,4 +56,9 @@ if (strstr('hello world', 'world') !== false) {
 
 if (stripos('hello world', 'world') !== false) {
     echo 'Found with stripos';
-}
\ No newline at end of file
+}
+
+// Loose comparison - should NOT trigger the rule, position 0 equals false
+if (strpos('hello world', 'hello') == false) {
+    echo 'Not found or at start';
+}
@@ -34,4 +34,13 @@ if (strpos($haystack, $needle) === 1) {
 $pos = strpos($haystack, $needle);
 if ($pos !== false) {
     echo "Found at position: " . $pos . "\n";
-}
\ No newline at end of file
+}
+// Violation: the call arguments are printed as written
+if (strpos($request->getPathInfo(), '/api/') === 0) {
+    echo "API request\n";
+}
+
+// No violation: a loose comparison is also true when the needle is not found
+if (strpos($haystack, $needle) == 0) {
+    echo "Starts with Hello or not found\n";
+}
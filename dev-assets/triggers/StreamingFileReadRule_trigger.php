@@ -0,0 +1,75 @@
+<?php
+
+declare(strict_types=1);
+
+final class StreamingFileReadExample
+{
+    public function positive(string $path): int
+    {
+        $count = 0;
+
+        // ERROR: suggests SplFileObject with DROP_NEW_LINE | READ_AHEAD | SKIP_EMPTY, the tip warns that the keys differ
+        $lines = file($path, FILE_IGNORE_NEW_LINES | FILE_SKIP_EMPTY_LINES);
+        foreach ($lines as $number => $line) {
+            $count += $number + strlen($line);
+        }
+
+        // ERROR: split into lines right after reading the whole file
+        foreach (explode("\n", file_get_contents($path)) as $line) {
+            $count += strlen($line);
+        }
+
+        // ERROR: CSV rows of the whole file, suggests READ_CSV or fgetcsv()
+        $rows = array_map('str_getcsv', file($path));
+        $this->log('importing');
+        foreach ($rows as $row) {
+            $count += count($row);
+        }
+
+        return $count;
+    }
+
+    public function negative(string $path): int
+    {
+        // OK: the lines are iterated twice
+        $lines = file($path);
+        foreach ($lines as $line) {
+            echo $line;
+        }
+        foreach ($lines as $line) {
+            echo strtoupper($line);
+        }
+
+        // OK: the lines are counted as well
+        $entries = file($path);
+        $count = count($entries);
+        foreach ($entries as $entry) {
+            echo $entry;
+        }
+
+        // OK: explode() splits on another delimiter
+        foreach (explode(',', file_get_contents($path)) as $value) {
+            echo $value;
+        }
+
+        // OK: the file is looked up in the include path
+        foreach (file($path, FILE_USE_INCLUDE_PATH) as $line) {
+            echo $line;
+        }
+
+        // OK: iterated inside a loop, reading it once is the point
+        $words = file($path);
+        while ($count-- > 0) {
+            foreach ($words as $word) {
+                echo $word;
+            }
+        }
+
+        return $count;
+    }
+
+    private function log(string $message): void
+    {
+        echo $message;
+    }
+}
@@ -0,0 +1,67 @@
+<?php
+
+declare(strict_types=1);
+
+final class StringAccumulationInLoopExample
+{
+    /**
+     * @param list<string> $lines
+     */
+    public function positive(array $lines): string
+    {
+        $html = '';
+        for ($i = 0; $i < 1000; $i++) {
+            // ERROR: the accumulator is copied by trim() on every iteration (estimated 6.2 MiB over 1000 iterations)
+            $html .= '<li>item</li>';
+            $html = trim($html);
+        }
+
+        $log = '';
+        foreach ($lines as $line) {
+            // ERROR: prepending copies the whole string built so far
+            $log = $line . "\n" . $log;
+        }
+
+        $csv = '';
+        foreach (range(1, 500) as $row) {
+            // ERROR: rebuilt by concatenation instead of '.='
+            $csv = $csv . $row . ',';
+        }
+
+        return $html . $log . $csv;
+    }
+
+    /**
+     * @param list<string> $lines
+     */
+    public function negative(array $lines): string
+    {
+        // OK: '.=' appends in place
+        $out = '';
+        foreach ($lines as $line) {
+            $out .= $line . "\n";
+        }
+
+        // OK: the parts are collected and imploded once
+        $parts = [];
+        foreach ($lines as $line) {
+            $parts[] = strtoupper($line);
+        }
+
+        // OK: the copying call reads a per-iteration string, not the accumulator
+        $text = '';
+        foreach ($lines as $line) {
+            $text .= trim($line);
+        }
+
+        // OK: reset on every iteration, the string only grows within one iteration
+        foreach ($lines as $line) {
+            $row = '';
+            $row = '| ' . $row;
+            $row .= $line;
+            echo trim($row);
+        }
+
+        return $out . implode("\n", $parts) . $text;
+    }
+}
@@ -0,0 +1,99 @@
+<?php
+
+declare(strict_types=1);
+
+// Test case for StringReplacementFusionRule
+
+function slug(string $title, \Psr\Log\LoggerInterface $logger): string
+{
+    // Should trigger: three calls fused into strtr($title, [' ' => '-', 'ä' => 'ae', 'ö' => 'oe', '.' => ''])
+    $slug = str_replace(' ', '-', $title);
+    $logger->debug('Creating slug');
+    $slug = str_replace(['ä', 'ö'], ['ae', 'oe'], $slug);
+    $slug = preg_replace('/\./', '', $slug);
+
+    return $slug;
+}
+
+function escape(string $text): string
+{
+    // Should trigger: the later search inside an earlier replacement is precomputed,
+    // strtr($text, ['<' => '&amp;lt;', '&' => '&amp;'])
+    $text = strtr($text, ['<' => '&lt;']);
+    $text = str_replace('&', '&amp;', $text);
+
+    return $text;
+}
+
+function separatedByUnrelatedStatement(string $path, int $depth): string
+{
+    // Should trigger: an unrelated statement between the calls does not end the run,
+    // strtr($path, ['\\' => '/', ' ' => '_'])
+    $path = str_replace('\\', '/', $path);
+    $depth++;
+    $path = str_replace(' ', '_', $path);
+
+    return $path . $depth;
+}
+
+function notFusedOverlap(string $text): string
+{
+    // Should NOT trigger: the second search overlaps the first replacement ('ab' + 'c')
+    $text = str_replace('x', 'ab', $text);
+    $text = str_replace('bc', 'y', $text);
+
+    return $text;
+}
+
+function notFusedRead(string $text): string
+{
+    // Should NOT trigger: the intermediate value is read
+    $text = str_replace('1', 'one', $text);
+    echo $text;
+    $text = str_replace('2', 'two', $text);
+
+    return $text;
+}
+
+function notFusedControlFlow(string $text, bool $flag): string
+{
+    // Should NOT trigger: control flow between the calls
+    $text = str_replace('3', 'three', $text);
+    if ($flag) {
+        return $text;
+    }
+    $text = str_replace('4', 'four', $text);
+
+    return $text;
+}
+
+function notFusedCaseInsensitive(string $text): string
+{
+    // Should NOT trigger: case-insensitive search of letters
+    $text = str_ireplace('a', 'b', $text);
+    $text = str_replace('5', 'five', $text);
+
+    return $text;
+}
+
+function notFusedRegularExpression(string $text): string
+{
+    // Should NOT trigger: regular expression
+    $text = preg_replace('/\d+/', '#', $text);
+    $text = str_replace('6', 'six', $text);
+
+    return $text;
+}
+
+/**
+ * @param list<string> $lines
+ * @return list<string>
+ */
+function notFusedArraySubject(array $lines): array
+{
+    // Should NOT trigger: str_replace() maps over an array of subjects, strtr() would throw a TypeError
+    $lines = str_replace(' ', '-', $lines);
+    $lines = str_replace('.', '', $lines);
+
+    return $lines;
+}
@@ -49,4 +49,8 @@ if (substr($haystack, 0, 5) === $needle) {
 // Comparison with different variable
 if (substr($haystack, 0, strlen($needle)) === $other) {
     echo "Different comparison\n";
-}
\ No newline at end of file
+}
+// Comparison with a different literal of the same shape
+if (substr($haystack, 0, strlen('abc')) === 'abd') {
+    echo "Different literal\n";
+}
@@ -45,4 +45,25 @@ $result10 = unserialize($trustedData, $allowedClasses); // OK: Proper usage
 
 // Test 11: Complex untrusted source chain (should trigger exploit warning)
 $complexData = base64_decode(urldecode($_GET['complex']));
-$result11 = unserialize($complexData); // ERROR: Multiple untrusted sources
\ No newline at end of file
+$result11 = unserialize($complexData); // ERROR: Multiple untrusted sources
+
+// Test 12: Untrusted data returned by a helper (should trigger exploit warning)
+function readPayload(): string
+{
+    return $_COOKIE['payload'];
+}
+$result12 = unserialize(readPayload(), ['allowed_classes' => false]); // ERROR: $_COOKIE via readPayload()
+
+// Test 13: Helper unserializing its parameter (should trigger exploit warning at the call site)
+function restoreState(string $serialized): mixed
+{
+    return unserialize($serialized, ['allowed_classes' => false]);
+}
+function loadState(string $raw): mixed
+{
+    return restoreState(trim($raw));
+}
+$result13 = loadState($_POST['state']); // ERROR: $_POST reaches unserialize() via loadState() -> restoreState()
+
+// Test 14: Sanitized by a cast (should NOT trigger exploit warning)
+$result14 = restoreState((string) (int) $_GET['id']); // OK: integer cast ends the flow
@@ -31,4 +31,25 @@ class TestClass {
         // Absolute include should not trigger:
         include __DIR__ . '/method_file.php';
     }
-}
\ No newline at end of file
+}
+
+// Relative path held in a variable should trigger:
+$template = 'templates/header.php';
+include $template;
+
+// Paths controlled by the request should trigger:
+$page = $_GET['page'];
+include __DIR__ . '/pages/' . $page . '.php';
+
+function renderPage(string $name): void
+{
+    require __DIR__ . '/pages/' . $name;
+}
+renderPage($_REQUEST['name']); // Request data reaches require via renderPage()
+
+// Whitelisted request data should not trigger:
+$allowedPage = match ($_GET['page']) {
+    'home' => 'home.php',
+    default => 'not-found.php',
+};
+include __DIR__ . '/pages/' . $allowedPage;
@@ -102,4 +102,34 @@ class PublicPropertyExample
     {
         // Not using the property
     }
-}
\ No newline at end of file
+}
+// Case 7: Property used only from a trait method (should NOT trigger error)
+trait UsesLoggerTrait
+{
+    public function log(string $message): void
+    {
+        $this->logger->info($message);
+    }
+}
+
+class TraitUsedDependencyExample
+{
+    use UsesLoggerTrait;
+
+    private object $logger;
+
+    public function __construct(object $logger)
+    {
+        $this->logger = $logger; // Should NOT trigger - used in UsesLoggerTrait::log()
+    }
+}
+
+// Case 8: Anonymous class with a property used only in the constructor (should NOT trigger - anonymous classes are skipped)
+$anonymousDependencyExample = new class('value') {
+    private string $unusedProperty;
+
+    public function __construct(string $value)
+    {
+        $this->unusedProperty = $value; // Should NOT trigger
+    }
+};
@@ -88,4 +88,7 @@ require_once realpath(__DIR__ . '/../config') . '/settings.php';
 }
 
 // Case 17: Include with error suppression (should still trigger)
-@include __DIR__ . '/potentially-missing.php';
\ No newline at end of file
+@include __DIR__ . '/potentially-missing.php';
+// Case 18: PreloadScriptDependenciesRule - the compiled class implements PHPStan\Rules\Rule,
+// whose file is never compiled (should trigger preloading.missingDependency)
+opcache_compile_file(__DIR__ . '/../../src/PreloadingUsageCorrectnessRule.php');
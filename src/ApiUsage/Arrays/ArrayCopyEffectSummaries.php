@@ -0,0 +1,399 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Arrays;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\ArrayDimFetch;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\PropertyFetch;
+use PhpParser\Node\Expr\StaticCall;
+use PhpParser\Node\Expr\StaticPropertyFetch;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\FunctionLike;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Name;
+use PhpParser\Node\Stmt\ClassLike;
+use PhpParser\Node\Stmt\ClassMethod;
+use PhpParser\Node\Stmt\Function_;
+use PhpParser\NodeFinder;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitorAbstract;
+use PHPStan\Parser\Parser;
+use PHPStan\Parser\ParserErrorsException;
+use PHPStan\Reflection\ClassReflection;
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Per-function effect summaries: "does calling this function copy a whole array held in a
+ * field or parameter" (e.g. `$this->items = array_merge($this->items, $more)`).
+ *
+ * A function is summarized as greedy when its body performs such a copy itself, or when it
+ * calls a resolvable function/method whose summary is greedy, up to a bounded call depth.
+ * Resolvable calls are plain function calls, `$this->m()`, `self::m()`, `static::m()`,
+ * `parent::m()` and `Foo::m()`.
+ *
+ * Summaries are cached per function and kept for the whole analysis run, so every function body
+ * is scanned once; a summary is only recomputed when a deeper call depth is requested.
+ */
+final class ArrayCopyEffectSummaries
+{
+    public const array GREEDY_FUNCTIONS = [
+        'array_merge',
+        'array_merge_recursive',
+        'array_replace',
+        'array_replace_recursive',
+    ];
+
+    /** @var array<string, array{depth: int, summary: list<string>|null}> */
+    private array $cache = [];
+
+    /** @var array<string, true> functions being summarized, guards against recursion */
+    private array $inProgress = [];
+
+    public function __construct(
+        private readonly Parser $parser,
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly int $maxDepth = 3,
+    ) {}
+
+    /**
+     * Summary of a method: null when no greedy copy is reachable, otherwise the call chain ending
+     * with the greedy function (e.g. ['Foo::add', 'Foo::append', 'array_merge']).
+     *
+     * @return list<string>|null
+     */
+    public function summarizeMethod(ClassReflection $classReflection, string $methodName): ?array
+    {
+        return $this->summarizeMethodAtDepth($classReflection, $methodName, $this->maxDepth);
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    public function summarizeFunction(string $functionName): ?array
+    {
+        return $this->summarizeFunctionAtDepth($functionName, $this->maxDepth);
+    }
+
+    /**
+     * Checks whether the assignment copies a field or one of the given parameters into itself
+     * with a greedy function, returns the function name if so.
+     *
+     * @param array<string, true> $parameterNames
+     */
+    public static function getGreedySelfCopy(Assign $assign, ?array $parameterNames = null): ?string
+    {
+        $call = $assign->expr;
+        if (!$call instanceof FuncCall || !$call->name instanceof Name || count($call->getArgs()) < 2) {
+            return null;
+        }
+
+        $functionName = strtolower($call->name->toString());
+        if (!in_array($functionName, self::GREEDY_FUNCTIONS, true)) {
+            return null;
+        }
+
+        if ($parameterNames !== null && !self::isFieldOrParameter($assign->var, $parameterNames)) {
+            return null;
+        }
+
+        $target = self::describe($assign->var);
+        if ($target === null) {
+            return null;
+        }
+        foreach ($call->getArgs() as $arg) {
+            if (self::describe($arg->value) === $target) {
+                return $functionName;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    private function summarizeMethodAtDepth(ClassReflection $classReflection, string $methodName, int $depth): ?array
+    {
+        if (!$classReflection->hasNativeMethod($methodName)) {
+            return null;
+        }
+
+        $declaringClass = $classReflection->getNativeMethod($methodName)->getDeclaringClass();
+        $label = $declaringClass->getDisplayName() . '::' . $methodName;
+
+        return $this->summarize(
+            strtolower($declaringClass->getName() . '::' . $methodName),
+            $label,
+            $declaringClass->getFileName(),
+            $depth,
+            fn (): ?ClassMethod => $this->findMethodNode($declaringClass, $methodName),
+            $declaringClass
+        );
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    private function summarizeFunctionAtDepth(string $functionName, int $depth): ?array
+    {
+        $name = new Name($functionName);
+        if (!$this->reflectionProvider->hasFunction($name, null)) {
+            return null;
+        }
+
+        $functionReflection = $this->reflectionProvider->getFunction($name, null);
+        if ($functionReflection->isBuiltin()) {
+            return null;
+        }
+        $fileName = $functionReflection->getFileName();
+
+        return $this->summarize(
+            strtolower($functionReflection->getName()),
+            $functionReflection->getName(),
+            $fileName,
+            $depth,
+            fn (): ?Function_ => $fileName === null ? null : $this->findFunctionNode($fileName, $functionReflection->getName()),
+            null
+        );
+    }
+
+    /**
+     * @param callable(): (ClassMethod|Function_|null) $nodeLocator
+     * @return list<string>|null
+     */
+    private function summarize(string $key, string $label, ?string $fileName, int $depth, callable $nodeLocator, ?ClassReflection $classReflection): ?array
+    {
+        if ($depth < 1 || $fileName === null || isset($this->inProgress[$key])) {
+            return null;
+        }
+
+        $cached = $this->cache[$key] ?? null;
+        if ($cached !== null) {
+            // A found chain is valid when it fits into the requested depth, "not greedy" only if explored deep enough
+            if ($cached['summary'] !== null ? count($cached['summary']) - 1 <= $depth : $cached['depth'] >= $depth) {
+                return $cached['summary'];
+            }
+        }
+
+        $functionNode = $nodeLocator();
+        if ($functionNode === null || $functionNode->stmts === null) {
+            return null;
+        }
+
+        $this->inProgress[$key] = true;
+        try {
+            $summary = $this->summarizeBody($functionNode, $label, $depth, $classReflection);
+        } finally {
+            unset($this->inProgress[$key]);
+        }
+
+        $this->cache[$key] = ['depth' => $depth, 'summary' => $summary];
+
+        return $summary;
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    private function summarizeBody(FunctionLike $functionNode, string $label, int $depth, ?ClassReflection $classReflection): ?array
+    {
+        $parameterNames = [];
+        foreach ($functionNode->getParams() as $param) {
+            if ($param->var instanceof Variable && is_string($param->var->name)) {
+                $parameterNames[$param->var->name] = true;
+            }
+        }
+
+        $visitor = new class extends NodeVisitorAbstract {
+            /** @var list<Assign> */
+            public array $assignments = [];
+            /** @var list<Expr\CallLike> */
+            public array $calls = [];
+
+            public function enterNode(Node $node)
+            {
+                // Bodies of closures and nested classes are not executed by the call itself
+                if ($node instanceof ClassLike || $node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction) {
+                    return NodeTraverser::DONT_TRAVERSE_CHILDREN;
+                }
+                if ($node instanceof Assign) {
+                    $this->assignments[] = $node;
+                } elseif ($node instanceof FuncCall || $node instanceof MethodCall || $node instanceof StaticCall) {
+                    $this->calls[] = $node;
+                }
+                return null;
+            }
+        };
+        $traverser = new NodeTraverser();
+        $traverser->addVisitor($visitor);
+        $traverser->traverse($functionNode->getStmts() ?? []);
+
+        foreach ($visitor->assignments as $assignment) {
+            $greedyFunction = self::getGreedySelfCopy($assignment, $parameterNames);
+            if ($greedyFunction !== null) {
+                return [$label, $greedyFunction];
+            }
+        }
+
+        if ($depth <= 1) {
+            return null;
+        }
+
+        foreach ($visitor->calls as $call) {
+            $calleeSummary = $this->summarizeCall($call, $depth - 1, $classReflection);
+            if ($calleeSummary !== null) {
+                return [$label, ...$calleeSummary];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    private function summarizeCall(Expr\CallLike $call, int $depth, ?ClassReflection $classReflection): ?array
+    {
+        if ($call instanceof FuncCall) {
+            return $call->name instanceof Name ? $this->summarizeFunctionAtDepth($call->name->toString(), $depth) : null;
+        }
+
+        if (!$call->name instanceof Identifier) {
+            return null;
+        }
+        $methodName = $call->name->toString();
+
+        if ($call instanceof MethodCall) {
+            $isThisCall = $call->var instanceof Variable && $call->var->name === 'this';
+            return $isThisCall && $classReflection !== null
+                ? $this->summarizeMethodAtDepth($classReflection, $methodName, $depth)
+                : null;
+        }
+
+        if (!$call instanceof StaticCall || !$call->class instanceof Name) {
+            return null;
+        }
+
+        $className = strtolower($call->class->toString());
+        if (in_array($className, ['self', 'static'], true)) {
+            $target = $classReflection;
+        } elseif ($className === 'parent') {
+            $target = $classReflection?->getParentClass();
+        } else {
+            $target = $this->reflectionProvider->hasClass($call->class->toString())
+                ? $this->reflectionProvider->getClass($call->class->toString())
+                : null;
+        }
+
+        return $target === null ? null : $this->summarizeMethodAtDepth($target, $methodName, $depth);
+    }
+
+    private function findMethodNode(ClassReflection $classReflection, string $methodName): ?ClassMethod
+    {
+        $candidates = [$classReflection, ...array_values($classReflection->getTraits(true))];
+        foreach ($candidates as $candidate) {
+            $classNode = $this->findClassNode($candidate);
+            $method = $classNode?->getMethod($methodName);
+            if ($method !== null) {
+                return $method;
+            }
+        }
+
+        return null;
+    }
+
+    private function findClassNode(ClassReflection $classReflection): ?ClassLike
+    {
+        $fileName = $classReflection->getFileName();
+        if ($fileName === null) {
+            return null;
+        }
+
+        $className = $classReflection->getName();
+        $found = (new NodeFinder())->findFirst($this->parse($fileName), static function (Node $node) use ($className): bool {
+            return $node instanceof ClassLike
+                && isset($node->namespacedName)
+                && strcasecmp($node->namespacedName->toString(), $className) === 0;
+        });
+
+        return $found instanceof ClassLike ? $found : null;
+    }
+
+    private function findFunctionNode(string $fileName, string $functionName): ?Function_
+    {
+        $found = (new NodeFinder())->findFirst($this->parse($fileName), static function (Node $node) use ($functionName): bool {
+            return $node instanceof Function_
+                && isset($node->namespacedName)
+                && strcasecmp($node->namespacedName->toString(), $functionName) === 0;
+        });
+
+        return $found instanceof Function_ ? $found : null;
+    }
+
+    /**
+     * @return Node\Stmt[]
+     */
+    private function parse(string $fileName): array
+    {
+        try {
+            return $this->parser->parseFile($fileName);
+        } catch (ParserErrorsException) {
+            return [];
+        }
+    }
+
+    /**
+     * @param array<string, true> $parameterNames
+     */
+    private static function isFieldOrParameter(Expr $expr, array $parameterNames): bool
+    {
+        while ($expr instanceof ArrayDimFetch) {
+            $expr = $expr->var;
+        }
+
+        if ($expr instanceof PropertyFetch) {
+            return $expr->var instanceof Variable && $expr->var->name === 'this';
+        }
+        if ($expr instanceof StaticPropertyFetch) {
+            return true;
+        }
+
+        return $expr instanceof Variable && is_string($expr->name) && isset($parameterNames[$expr->name]);
+    }
+
+    /**
+     * Textual description of simple storage expressions (`$a`, `$this->a`, `self::$a`, `$a['k']`), null for anything else.
+     */
+    private static function describe(Expr $expr): ?string
+    {
+        if ($expr instanceof Variable) {
+            return is_string($expr->name) ? '$' . $expr->name : null;
+        }
+        if ($expr instanceof PropertyFetch) {
+            $object = self::describe($expr->var);
+            return $object !== null && $expr->name instanceof Identifier ? $object . '->' . $expr->name->toString() : null;
+        }
+        if ($expr instanceof StaticPropertyFetch) {
+            return $expr->class instanceof Name && $expr->name instanceof Node\VarLikeIdentifier
+                ? strtolower($expr->class->toString()) . '::$' . $expr->name->toString()
+                : null;
+        }
+        if ($expr instanceof ArrayDimFetch) {
+            $base = self::describe($expr->var);
+            if ($base === null || $expr->dim === null) {
+                return null;
+            }
+            if ($expr->dim instanceof Node\Scalar\String_ || $expr->dim instanceof Node\Scalar\LNumber) {
+                return $base . '[' . var_export($expr->dim->value, true) . ']';
+            }
+            $dim = self::describe($expr->dim);
+            return $dim === null ? null : $base . '[' . $dim . ']';
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,179 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Arrays;
+
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopInvariants;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Stmt;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+use PHPStan\Type\Type;
+
+/**
+ * Detects in_array()/array_search() calls in loops searching a loop-invariant haystack, which
+ * scan the haystack on every iteration (O(n·m)). Flipping the haystack once before the loop turns
+ * every search into a hash lookup: `isset($lookup[$x])`, `$lookup[$x] ?? false` for array_search().
+ *
+ * The rewrite is only suggested where it keeps the comparison semantics (the strict mode rules of
+ * TypeUnsafeArraySearchRule): array keys are compared strictly after integer-string normalization,
+ * so needle and haystack values have to be integers, or strings compared strictly. Loose string
+ * comparison is only kept for non-numeric strings. Small literal haystacks are not reported, their
+ * scan is as fast as the lookup.
+ *
+ * The loop marks the searches with an invariant haystack, their needle and haystack types are
+ * checked when the call is visited, with the scope of the call site (the needle usually is a
+ * variable assigned by the loop, which the scope of the loop statement does not know yet).
+ *
+ * @implements Rule<Node>
+ */
+final class InArrayInLoopRule implements Rule
+{
+    private const string MESSAGE = "'%s(...)' searches the same array on every iteration of the loop.";
+    private const string TIP_IN_ARRAY = 'Flip it once before the loop: %s = array_flip(%s); and test isset(%s[%s]) instead.';
+    private const string TIP_ARRAY_SEARCH = 'Flip it once before the loop: %s = array_flip(array_reverse(%s, true)); and use %s[%s] ?? false instead.';
+
+    private const int MIN_LITERAL_ITEMS = 8;
+
+    private const string SEARCH_ATTRIBUTE = 'inArrayInLoop';
+
+    private Standard $prettyPrinter;
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+    ) {
+        $this->prettyPrinter = new Standard();
+    }
+
+    public function getNodeType(): string
+    {
+        return Node::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_) {
+            $this->markSearches($node, $scope);
+            return [];
+        }
+        if (!$node instanceof FuncCall || $node->getAttribute(self::SEARCH_ATTRIBUTE) !== true) {
+            return [];
+        }
+
+        $args = $node->getArgs();
+        $needle = $args[0]->value;
+        $haystack = $args[1]->value;
+        if (!$this->isFlippable($scope->getType($needle), $scope->getType($haystack), isset($args[2]) && $scope->getType($args[2]->value)->isTrue()->yes())) {
+            return [];
+        }
+
+        $functionName = $node->name instanceof Node\Name ? $node->name->toLowerString() : '';
+        $lookup = $this->suggestLookupName($haystack, $scope);
+        $haystackCode = $this->prettyPrinter->prettyPrintExpr($haystack);
+        $needleCode = $this->prettyPrinter->prettyPrintExpr($needle);
+
+        return [
+            RuleErrorBuilder::message(sprintf(self::MESSAGE, $functionName))
+                ->identifier('performance.inArrayInLoop')
+                ->tip(sprintf($functionName === 'array_search' ? self::TIP_ARRAY_SEARCH : self::TIP_IN_ARRAY, $lookup, $haystackCode, $lookup, $needleCode))
+                ->line($node->getStartLine())
+                ->build(),
+        ];
+    }
+
+    /**
+     * Marks the searches of the loop with a loop-invariant haystack and a varying needle.
+     */
+    private function markSearches(Stmt\For_|Stmt\Foreach_|Stmt\While_|Stmt\Do_ $loop, Scope $scope): void
+    {
+        /** @var list<FuncCall> $calls */
+        $calls = [];
+        $roots = $loop instanceof Stmt\While_ || $loop instanceof Stmt\Do_ ? [$loop->cond, ...$loop->stmts] : $loop->stmts;
+        foreach ($roots as $root) {
+            $this->collectSearches($root, $calls);
+        }
+        if ($calls === []) {
+            return;
+        }
+
+        $invariants = LoopInvariants::of($loop, $this->reflectionProvider, $scope);
+        foreach ($calls as $call) {
+            $args = $call->getArgs();
+            $haystack = $args[1]->value;
+            if (!$invariants->isInvariant($args[0]->value) && $invariants->isInvariant($haystack)
+                && (!$haystack instanceof Expr\Array_ || count($haystack->items) >= self::MIN_LITERAL_ITEMS)) {
+                $call->setAttribute(self::SEARCH_ATTRIBUTE, true);
+            }
+        }
+    }
+
+    /**
+     * @param list<FuncCall> $calls
+     */
+    private function collectSearches(Node $node, array &$calls): void
+    {
+        // Nested loops are visited on their own, closures and classes are not executed here
+        if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_
+            || $node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+            return;
+        }
+
+        if ($node instanceof FuncCall && $node->name instanceof Node\Name && !$node->isFirstClassCallable()
+            && in_array($node->name->toLowerString(), ['in_array', 'array_search'], true)) {
+            $args = $node->getArgs();
+            if (count($args) >= 2 && count($args) <= 3 && $args[0]->name === null && !$args[0]->unpack) {
+                $calls[] = $node;
+            }
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                if ($child instanceof Node) {
+                    $this->collectSearches($child, $calls);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a key lookup in the flipped haystack compares like the search does.
+     */
+    private function isFlippable(Type $needleType, Type $haystackType, bool $isStrict): bool
+    {
+        if (!$haystackType->isArray()->yes()) {
+            return false;
+        }
+        $valueType = $haystackType->getIterableValueType();
+
+        if ($needleType->isInteger()->yes() && $valueType->isInteger()->yes()) {
+            return true;
+        }
+        if (!$needleType->isString()->yes() || !$valueType->isString()->yes()) {
+            return false;
+        }
+
+        // Loose comparison of numeric strings is numeric ('1' == '01'), keys are not
+        return $isStrict || $valueType->isNumericString()->no();
+    }
+
+    private function suggestLookupName(Expr $haystack, Scope $scope): string
+    {
+        $baseName = match (true) {
+            $haystack instanceof Expr\Variable && is_string($haystack->name) => $haystack->name . 'Lookup',
+            ($haystack instanceof Expr\PropertyFetch || $haystack instanceof Expr\StaticPropertyFetch)
+                && ($haystack->name instanceof Node\Identifier || $haystack->name instanceof Node\VarLikeIdentifier) => $haystack->name->toString() . 'Lookup',
+            default => 'lookup',
+        };
+        $name = $baseName;
+        for ($suffix = 2; !$scope->hasVariableType($name)->no(); $suffix++) {
+            $name = $baseName . $suffix;
+        }
+
+        return '$' . $name;
+    }
+}
@@ -7,8 +7,14 @@ namespace macropage\PHPStan\Inspections\ApiUsage\Arrays;
 use PhpParser\Node;
 use PhpParser\Node\Expr\Assign;
 use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\StaticCall;
 use PhpParser\Node\Stmt\For_;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitorAbstract;
 use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ClassReflection;
+use PHPStan\Reflection\ReflectionProvider;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
 
@@ -16,6 +22,12 @@ use PHPStan\Rules\RuleErrorBuilder;
  * Detects slow array operations used in loops that can hurt performance.
  * 
  * Based on EA Extended SlowArrayOperationsInLoopInspector.java
+ *
+ * Besides greedy operations written directly in the loop body, calls made in the loop are
+ * checked against the effect summaries of their callees (ArrayCopyEffectSummaries): a call to a
+ * helper doing e.g. `$this->items = array_merge($this->items, ...)`, directly or through further
+ * resolvable calls, copies the whole array on every iteration as well. The loop marks the calls
+ * of its body, which are resolved when they are visited, with the scope of the call site.
  * 
  * @implements Rule<Node>
  */
@@ -37,6 +49,14 @@ final class SlowArrayOperationsInLoopRule implements Rule
 
     private const string MESSAGE_GREEDY = "'%s(...)' is used in a loop and is a resources greedy construction.";
     private const string MESSAGE_SLOW = "'%s(...)' is used in a loop and is a low performing construction.";
+    private const string MESSAGE_GREEDY_CALL = "'%s()' is called in a loop and performs '%s(...)' on a field or parameter, which is a resources greedy construction.";
+
+    private const string IN_LOOP_ATTRIBUTE = 'slowArrayOperationsInLoop';
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly ArrayCopyEffectSummaries $effectSummaries,
+    ) {}
 
     public function getNodeType(): string
     {
@@ -61,6 +81,17 @@ final class SlowArrayOperationsInLoopRule implements Rule
             $errors = [...$errors, ...$this->checkGreedyFunctionsInLoop($node, $scope)];
         }
 
+        // Mark the calls of the loop body, their callees are checked at the call site
+        if ($node instanceof Node\Stmt\Foreach_ || $node instanceof Node\Stmt\While_ || $node instanceof Node\Stmt\For_ || $node instanceof Node\Stmt\Do_) {
+            $this->markCallsInLoop($node);
+        }
+
+        // Check for calls whose callee performs greedy operations
+        if (($node instanceof FuncCall || $node instanceof MethodCall || $node instanceof StaticCall)
+            && $node->getAttribute(self::IN_LOOP_ATTRIBUTE) === true) {
+            $errors = [...$errors, ...$this->checkGreedyCall($node, $scope)];
+        }
+
         return $errors;
     }
 
@@ -117,6 +148,105 @@ final class SlowArrayOperationsInLoopRule implements Rule
         return $errors;
     }
 
+    /**
+     * Marks the calls of the loop body; the loop is visited before its body, so the calls are
+     * marked by the time they are visited themselves.
+     */
+    private function markCallsInLoop(Node\Stmt\Foreach_|Node\Stmt\While_|Node\Stmt\For_|Node\Stmt\Do_ $loopNode): void
+    {
+        $visitor = new class(self::IN_LOOP_ATTRIBUTE) extends NodeVisitorAbstract {
+            public function __construct(private readonly string $attribute)
+            {
+            }
+
+            public function enterNode(Node $node)
+            {
+                // Nested loops are visited on their own, closures and classes are not executed here
+                if ($node instanceof Node\Stmt\Foreach_ || $node instanceof Node\Stmt\While_ || $node instanceof Node\Stmt\For_ || $node instanceof Node\Stmt\Do_
+                    || $node instanceof Node\Expr\Closure || $node instanceof Node\Expr\ArrowFunction || $node instanceof Node\Stmt\ClassLike) {
+                    return NodeTraverser::DONT_TRAVERSE_CHILDREN;
+                }
+                if ($node instanceof FuncCall || $node instanceof MethodCall || $node instanceof StaticCall) {
+                    $node->setAttribute($this->attribute, true);
+                }
+                return null;
+            }
+        };
+        $traverser = new NodeTraverser();
+        $traverser->addVisitor($visitor);
+        $traverser->traverse($loopNode->stmts);
+    }
+
+    /** @return list<\PHPStan\Rules\IdentifierRuleError> */
+    private function checkGreedyCall(FuncCall|MethodCall|StaticCall $call, Scope $scope): array
+    {
+        $summary = $this->summarizeCall($call, $scope);
+        if ($summary === null) {
+            return [];
+        }
+
+        return [
+            RuleErrorBuilder::message(sprintf(self::MESSAGE_GREEDY_CALL, $summary[0], $summary[count($summary) - 1]))
+                ->identifier('performance.greedyArrayOperationInCall')
+                ->tip('Call chain: ' . implode(' -> ', $summary) . '. Consider collecting values first and merging once outside the loop')
+                ->line($call->getStartLine())
+                ->build(),
+        ];
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    private function summarizeCall(FuncCall|MethodCall|StaticCall $call, Scope $scope): ?array
+    {
+        if ($call instanceof FuncCall) {
+            if (!$call->name instanceof Node\Name || !$this->reflectionProvider->hasFunction($call->name, $scope)) {
+                return null;
+            }
+            $function = $this->reflectionProvider->getFunction($call->name, $scope);
+            return $function->isBuiltin() ? null : $this->effectSummaries->summarizeFunction($function->getName());
+        }
+
+        if (!$call->name instanceof Node\Identifier) {
+            return null;
+        }
+        $methodName = $call->name->toString();
+
+        foreach ($this->resolveCalledClasses($call, $scope) as $classReflection) {
+            $summary = $this->effectSummaries->summarizeMethod($classReflection, $methodName);
+            if ($summary !== null) {
+                return $summary;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return list<ClassReflection>
+     */
+    private function resolveCalledClasses(MethodCall|StaticCall $call, Scope $scope): array
+    {
+        if ($call instanceof StaticCall) {
+            if (!$call->class instanceof Node\Name) {
+                return [];
+            }
+            $className = strtolower($call->class->toString());
+            if (in_array($className, ['self', 'static'], true)) {
+                return $scope->isInClass() ? [$scope->getClassReflection()] : [];
+            }
+            if ($className === 'parent') {
+                $parent = $scope->isInClass() ? $scope->getClassReflection()->getParentClass() : null;
+                return $parent === null ? [] : [$parent];
+            }
+            return $this->reflectionProvider->hasClass($call->class->toString())
+                ? [$this->reflectionProvider->getClass($call->class->toString())]
+                : [];
+        }
+
+        return $scope->getType($call->var)->getObjectClassReflections();
+    }
+
     /** @return list<\PHPStan\Rules\IdentifierRuleError> */
     private function checkSlowFunctionsInForLoop(For_ $forLoop, Scope $scope): array
     {
@@ -0,0 +1,280 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\FileSystem;
+
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopInvariants;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Stmt;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects file system calls in loops working on a loop-invariant path, which repeat the same work
+ * on every iteration (see FileSystemFunctions):
+ *
+ * - file_put_contents(..., FILE_APPEND) opens, appends and closes the file every time; open it once
+ *   and fwrite() to the handle, or collect the data and write it once
+ * - file_put_contents() without FILE_APPEND rewrites the file, only the last write is kept; calls
+ *   with flags which are not constant are skipped
+ * - fopen()/gzopen()/opendir() open the same file on every iteration; opens creating the file
+ *   exclusively or for locking ('x' and 'c' modes) or with an unknown mode are skipped
+ * - stat calls which are not cached (file_exists(), is_readable(), realpath(), ...) and whole-file
+ *   reads (file_get_contents(), file(), ...) can be hoisted before the loop
+ * - stat calls served by the stat cache (is_file(), filemtime(), ...) only make a syscall again
+ *   after another path was checked, so they are reported when the loop also stats or opens
+ *   another path
+ *
+ * Stat calls and reads are not reported when the loop may change the file system (file writes,
+ * handle writes, clearstatcache()), neither are any of them when it waits for the file system
+ * (sleep(), usleep(), ...), nor in loop conditions, which are typically polling for a file.
+ *
+ * @implements Rule<Stmt>
+ */
+final class FileIoInLoopRule implements Rule
+{
+    private const string IDENTIFIER = 'performance.fileIoInLoop';
+
+    private const array MESSAGES = [
+        'append'    => "'file_put_contents(%s, ..., FILE_APPEND)' opens, appends to and closes the file on every iteration of the loop.",
+        'overwrite' => "'file_put_contents(%s, ...)' rewrites the file on every iteration of the loop, only the last write is kept.",
+        'open'      => "'%2\$s(%1\$s, ...)' opens the same file on every iteration of the loop.",
+        'stat'      => "'%2\$s(%1\$s)' checks the same path on every iteration of the loop.",
+        'read'      => "'%2\$s(%1\$s)' reads the same path on every iteration of the loop.",
+    ];
+
+    private const array TIPS = [
+        'append'    => "Open it once before the loop with %s = fopen(%s, 'a'); fwrite() to the handle and fclose() it after the loop, or collect the data and write it once.",
+        'overwrite' => 'Build the content in the loop and write it once after the loop.',
+        'open'      => 'Open the handle once before the loop and close it after the loop.',
+        'stat'      => 'Hoist it before the loop; the stat cache only holds the last path checked, a check of another path in between makes it stat again.',
+        'read'      => 'Read it once before the loop.',
+    ];
+
+    private const string TIP_ACCESS = 'Hoist it before the loop; it asks the file system with access() on every call, the result is not cached.';
+
+    /** Stat calls not served by the stat cache */
+    private const array STAT_TIPS = [
+        'file_exists'     => self::TIP_ACCESS,
+        'is_readable'     => self::TIP_ACCESS,
+        'is_writable'     => self::TIP_ACCESS,
+        'is_writeable'    => self::TIP_ACCESS,
+        'is_executable'   => self::TIP_ACCESS,
+        'realpath'        => 'Hoist it before the loop; the realpath cache spares the file system lookups, but every call still normalizes the path and searches the cache.',
+        'disk_free_space' => 'Hoist it before the loop; it queries the file system on every call, the result is not cached.',
+    ];
+
+    private Standard $prettyPrinter;
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+    ) {
+        $this->prettyPrinter = new Standard();
+    }
+
+    public function getNodeType(): string
+    {
+        return Stmt::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof Stmt\For_ && !$node instanceof Stmt\Foreach_ && !$node instanceof Stmt\While_ && !$node instanceof Stmt\Do_) {
+            return [];
+        }
+
+        /** @var list<array{FuncCall, string, Expr}> $candidates */
+        $candidates = [];
+        foreach ($node->stmts as $stmt) {
+            $this->collectCandidates($stmt, $candidates);
+        }
+        if ($candidates === []) {
+            return [];
+        }
+
+        $conditions = match (true) {
+            $node instanceof Stmt\For_                                  => [...$node->init, ...$node->cond, ...$node->loop],
+            $node instanceof Stmt\While_ || $node instanceof Stmt\Do_   => [$node->cond],
+            default                                                     => [],
+        };
+        [$mayWrite, $mayWait] = $this->scanEffects([...$conditions, ...$node->stmts]);
+
+        // Paths checked through the stat cache or opened, another one makes a cached stat call stat again
+        $checkedPaths = [];
+        foreach ($candidates as [, $function, $path]) {
+            if ((isset(FileSystemFunctions::STAT[$function]) && !isset(self::STAT_TIPS[$function]))
+                || isset(FileSystemFunctions::OPEN[$function]) || isset(FileSystemFunctions::READ[$function])) {
+                $checkedPaths[$this->prettyPrinter->prettyPrintExpr($path)] = true;
+            }
+        }
+
+        $invariants = LoopInvariants::of($node, $this->reflectionProvider, $scope);
+        $errors = [];
+        foreach ($candidates as [$call, $function, $path]) {
+            // php://memory, php://temp and friends are new streams on every call
+            if (!$invariants->isInvariant($path) || ($path instanceof Node\Scalar\String_ && str_starts_with($path->value, 'php://'))) {
+                continue;
+            }
+
+            $args = $call->getArgs();
+            $pathCode = $this->prettyPrinter->prettyPrintExpr($path);
+            $kind = match (true) {
+                $function === 'file_put_contents'            => $this->getWriteKind(isset($args[2]) ? $args[2]->value : null, $invariants, $scope),
+                isset(FileSystemFunctions::OPEN[$function])  => $mayWait || (isset($args[1]) && !$this->isReopenMode($args[1]->value, $invariants, $scope)) ? null : 'open',
+                $mayWrite || $mayWait                        => null,
+                isset(FileSystemFunctions::STAT[$function])  => isset(self::STAT_TIPS[$function]) || array_diff_key($checkedPaths, [$pathCode => true]) !== [] ? 'stat' : null,
+                default                                      => 'read',
+            };
+            if ($kind === null) {
+                continue;
+            }
+
+            $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGES[$kind], $pathCode, $function))
+                ->identifier(self::IDENTIFIER)
+                ->tip(match ($kind) {
+                    'append' => sprintf(self::TIPS[$kind], $this->suggestHandleName($scope), $pathCode),
+                    'stat'   => self::STAT_TIPS[$function] ?? self::TIPS[$kind],
+                    default  => self::TIPS[$kind],
+                })
+                ->line($call->getStartLine())
+                ->build();
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @param list<array{FuncCall, string, Expr}> $candidates
+     */
+    private function collectCandidates(Node $node, array &$candidates): void
+    {
+        // Nested loops are visited on their own, closures and classes are not executed here
+        if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_
+            || $node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+            return;
+        }
+
+        if ($node instanceof FuncCall && $node->name instanceof Node\Name && !$node->isFirstClassCallable()) {
+            $function = $node->name->toLowerString();
+            $pathPosition = $function === 'file_put_contents'
+                ? 0
+                : (FileSystemFunctions::STAT[$function] ?? FileSystemFunctions::READ[$function] ?? FileSystemFunctions::OPEN[$function] ?? null);
+            $args = $node->getArgs();
+            if ($pathPosition !== null && isset($args[$pathPosition])) {
+                $hasPlainArguments = true;
+                foreach ($args as $arg) {
+                    $hasPlainArguments = $hasPlainArguments && $arg->name === null && !$arg->unpack;
+                }
+                if ($hasPlainArguments) {
+                    $candidates[] = [$node, $function, $args[$pathPosition]->value];
+                }
+            }
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                if ($child instanceof Node) {
+                    $this->collectCandidates($child, $candidates);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the loop, nested loops included, may change the file system and whether it waits.
+     *
+     * @param array<Node> $nodes
+     * @return array{bool, bool}
+     */
+    private function scanEffects(array $nodes): array
+    {
+        $mayWrite = false;
+        $mayWait = false;
+        foreach ($nodes as $node) {
+            if ($node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+                continue;
+            }
+            if ($node instanceof FuncCall && $node->name instanceof Node\Name) {
+                $function = $node->name->toLowerString();
+                $mayWrite = $mayWrite || FileSystemFunctions::isWrite($function)
+                    || (isset(FileSystemFunctions::OPEN[$function]) && $function !== 'opendir');
+                $mayWait = $mayWait || in_array($function, FileSystemFunctions::WAIT, true);
+            }
+
+            $children = [];
+            foreach ($node->getSubNodeNames() as $subNodeName) {
+                $subNode = $node->$subNodeName;
+                foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                    if ($child instanceof Node) {
+                        $children[] = $child;
+                    }
+                }
+            }
+            [$childWrites, $childWaits] = $this->scanEffects($children);
+            $mayWrite = $mayWrite || $childWrites;
+            $mayWait = $mayWait || $childWaits;
+        }
+
+        return [$mayWrite, $mayWait];
+    }
+
+    /**
+     * 'append' or 'overwrite' for file_put_contents() with the given flags, null when they are not
+     * known or vary with the loop.
+     */
+    private function getWriteKind(?Expr $flags, LoopInvariants $invariants, Scope $scope): ?string
+    {
+        if ($flags === null) {
+            return 'overwrite';
+        }
+        if (!$invariants->isInvariant($flags)) {
+            return null;
+        }
+
+        $appends = [];
+        foreach ($scope->getType($flags)->getConstantScalarValues() as $value) {
+            if (!is_int($value)) {
+                return null;
+            }
+            $appends[($value & FILE_APPEND) !== 0 ? 'append' : 'overwrite'] = true;
+        }
+
+        return count($appends) === 1 ? array_key_first($appends) : null;
+    }
+
+    /**
+     * Whether an open with the given mode simply opens the file again on every iteration: the mode
+     * is known and neither creates the file exclusively ('x') nor opens it for locking ('c'), which
+     * loops retry on purpose.
+     */
+    private function isReopenMode(Expr $mode, LoopInvariants $invariants, Scope $scope): bool
+    {
+        if (!$invariants->isInvariant($mode)) {
+            return false;
+        }
+
+        $modes = $scope->getType($mode)->getConstantStrings();
+        foreach ($modes as $value) {
+            if (in_array($value->getValue()[0] ?? '', ['x', 'c'], true)) {
+                return false;
+            }
+        }
+
+        return $modes !== [];
+    }
+
+    private function suggestHandleName(Scope $scope): string
+    {
+        $name = 'handle';
+        for ($suffix = 2; !$scope->hasVariableType($name)->no(); $suffix++) {
+            $name = 'handle' . $suffix;
+        }
+
+        return '$' . $name;
+    }
+}
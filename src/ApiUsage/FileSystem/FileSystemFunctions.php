@@ -0,0 +1,98 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\FileSystem;
+
+/**
+ * Table of the file system builtins by their effect, keyed by lowercased name with the position
+ * of the path argument.
+ *
+ * Stat functions read the status of a path; PHP caches it for the last path only (realpath() has
+ * its own cache), so alternating paths cost a stat() syscall each. Writers change the file system
+ * and may change what a stat call returns. Readers open, read and close a whole file per call.
+ */
+final class FileSystemFunctions
+{
+    /** @var array<string, int> */
+    public const array STAT = [
+        'file_exists'     => 0,
+        'is_file'         => 0,
+        'is_dir'          => 0,
+        'is_link'         => 0,
+        'is_readable'     => 0,
+        'is_writable'     => 0,
+        'is_writeable'    => 0,
+        'is_executable'   => 0,
+        'filemtime'       => 0,
+        'filesize'        => 0,
+        'fileatime'       => 0,
+        'filectime'       => 0,
+        'fileinode'       => 0,
+        'filegroup'       => 0,
+        'fileowner'       => 0,
+        'fileperms'       => 0,
+        'filetype'        => 0,
+        'stat'            => 0,
+        'lstat'           => 0,
+        'realpath'        => 0,
+        'disk_free_space' => 0,
+    ];
+
+    /** @var array<string, int> */
+    public const array READ = [
+        'file_get_contents' => 0,
+        'file'              => 0,
+        'parse_ini_file'    => 0,
+        'md5_file'          => 0,
+        'sha1_file'         => 0,
+        'hash_file'         => 1,
+        'scandir'           => 0,
+        'glob'              => 0,
+    ];
+
+    /** @var array<string, int> */
+    public const array OPEN = [
+        'fopen'   => 0,
+        'gzopen'  => 0,
+        'opendir' => 0,
+    ];
+
+    /** @var array<string, int> */
+    public const array WRITE = [
+        'file_put_contents'  => 0,
+        'unlink'             => 0,
+        'rename'             => 0,
+        'copy'               => 1,
+        'mkdir'              => 0,
+        'rmdir'              => 0,
+        'touch'              => 0,
+        'chmod'              => 0,
+        'chown'              => 0,
+        'chgrp'              => 0,
+        'lchown'             => 0,
+        'lchgrp'             => 0,
+        'symlink'            => 1,
+        'link'               => 1,
+        'tempnam'            => 0,
+        'move_uploaded_file' => 1,
+    ];
+
+    /**
+     * Calls writing through handles or resetting the cache, they may change what a stat or read returns.
+     */
+    public const array HANDLE_WRITE = [
+        'fwrite', 'fputs', 'fputcsv', 'ftruncate', 'fflush', 'flock', 'fclose', 'gzwrite', 'clearstatcache',
+    ];
+
+    /**
+     * Calls which make a loop wait for the file system to change, e.g. polling for a lock file.
+     */
+    public const array WAIT = ['sleep', 'usleep', 'time_nanosleep', 'time_sleep_until', 'inotify_read'];
+
+    /**
+     * Whether the call may change the file system or the stat cache.
+     */
+    public static function isWrite(string $function): bool
+    {
+        return isset(self::WRITE[$function]) || in_array($function, self::HANDLE_WRITE, true);
+    }
+}
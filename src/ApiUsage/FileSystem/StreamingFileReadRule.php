@@ -0,0 +1,289 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\FileSystem;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\FileNode;
+use PHPStan\Rules\IdentifierRuleError;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects whole files read into an array which is only iterated once by a foreach:
+ *
+ *     $lines = file($path, FILE_IGNORE_NEW_LINES);
+ *     foreach ($lines as $line) { ... }
+ *     // => $file = new \SplFileObject($path); $file->setFlags(...); foreach ($file as $line) { ... }
+ *
+ * file(), explode("\n", file_get_contents()) and array_map('str_getcsv', ...) over them keep the
+ * whole file and all of its lines in memory, streaming with SplFileObject, fgets() or fgetcsv()
+ * keeps one line. The array is either iterated directly or assigned to a variable which is used by
+ * nothing but a foreach following the assignment in the same statement list. Variables are not
+ * followed in top-level code, where they are global, nor in functions accessing the whole scope
+ * (compact(), extract(), $$name, include, ...).
+ *
+ * file() with FILE_SKIP_EMPTY_LINES numbers the remaining lines from 0, SplFileObject keys them by
+ * their line in the file; when the foreach uses the keys, the tip says so.
+ *
+ * @implements Rule<Node>
+ */
+final class StreamingFileReadRule implements Rule
+{
+    private const string MESSAGE = "'%s' loads the whole file into memory, but it is only iterated once by the foreach on line %d.";
+
+    private const string TIP = 'Stream it instead, keeping one line in memory: %s = new \SplFileObject(%s); %s->setFlags(%s); %s { ... }%s';
+
+    private const string TIP_KEYS = ' The keys differ: SKIP_EMPTY keeps the line numbers of the file, file() with FILE_SKIP_EMPTY_LINES numbers the remaining lines from 0.';
+
+    private const array FLAGS = [
+        'split' => ['DROP_NEW_LINE'],
+        'csv'   => ['READ_CSV', 'READ_AHEAD', 'SKIP_EMPTY', 'DROP_NEW_LINE'],
+    ];
+
+    private const array ALTERNATIVES = [
+        'lines' => ', or fgets() from a handle.',
+        'split' => ', or fgets() from a handle.',
+        'csv'   => ', or fgetcsv() from a handle.',
+    ];
+
+    /** Calls which can read or write any variable of the scope */
+    private const array SCOPE_FUNCTIONS = ['compact', 'extract', 'get_defined_vars', 'parse_str'];
+
+    private Standard $printer;
+
+    public function __construct()
+    {
+        $this->printer = new Standard();
+    }
+
+    public function getNodeType(): string
+    {
+        return Node::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if ($node instanceof FileNode) {
+            $stmts = $node->getNodes();
+            $parameters = [];
+        } elseif ($node instanceof Stmt\ClassMethod || $node instanceof Stmt\Function_ || $node instanceof Expr\Closure) {
+            $stmts = $node->stmts ?? [];
+            $parameters = $node instanceof Expr\Closure ? [...$node->params, ...$node->uses] : $node->params;
+        } else {
+            return [];
+        }
+
+        /** @var array<string, int> $variables */
+        $variables = [];
+        foreach ($parameters as $parameter) {
+            if ($parameter->var instanceof Variable && is_string($parameter->var->name)) {
+                $variables[$parameter->var->name] = 1;
+            }
+        }
+        $hasScopeAccess = false;
+        $this->scanVariables($stmts, $variables, $hasScopeAccess);
+
+        $errors = [];
+        $this->checkStatements($stmts, $variables, $hasScopeAccess || $node instanceof FileNode, $scope, $errors);
+
+        return $errors;
+    }
+
+    /**
+     * @param array<Node|mixed> $stmts
+     * @param array<string, int> $variables
+     * @param list<IdentifierRuleError> $errors
+     */
+    private function checkStatements(array $stmts, array $variables, bool $hasScopeAccess, Scope $scope, array &$errors): void
+    {
+        foreach ($stmts as $index => $stmt) {
+            if (!$stmt instanceof Stmt) {
+                continue;
+            }
+
+            // foreach (file($path) as $line)
+            if ($stmt instanceof Stmt\Foreach_ && !$stmt->byRef) {
+                $source = $this->analyzeSource($stmt->expr, $scope);
+                if ($source !== null) {
+                    $errors[] = $this->buildError($stmt->expr, $source, $stmt, $variables);
+                }
+            }
+
+            // $lines = file($path); ... foreach ($lines as $line)
+            if (!$hasScopeAccess && $stmt instanceof Stmt\Expression && $stmt->expr instanceof Assign
+                && $stmt->expr->var instanceof Variable && is_string($stmt->expr->var->name)
+                && ($variables[$stmt->expr->var->name] ?? 0) === 2) {
+                $source = $this->analyzeSource($stmt->expr->expr, $scope);
+                $loop = $source === null ? null : $this->findLoop(array_slice($stmts, (int) $index + 1), $stmt->expr->var->name);
+                if ($source !== null && $loop !== null) {
+                    $errors[] = $this->buildError($stmt->expr->expr, $source, $loop, $variables);
+                }
+            }
+
+            if ($stmt instanceof Stmt\ClassLike || $stmt instanceof Stmt\Function_) {
+                continue;
+            }
+            foreach ($stmt->getSubNodeNames() as $subNodeName) {
+                $subNode = $stmt->$subNodeName;
+                if (is_array($subNode)) {
+                    $this->checkStatements($subNode, $variables, $hasScopeAccess, $scope, $errors);
+                } elseif ($subNode instanceof Stmt\Else_ || $subNode instanceof Stmt\Finally_) {
+                    $this->checkStatements($subNode->stmts, $variables, $hasScopeAccess, $scope, $errors);
+                }
+            }
+        }
+    }
+
+    /**
+     * The foreach iterating the variable among the following statements of the same list.
+     *
+     * @param array<Node|mixed> $stmts
+     */
+    private function findLoop(array $stmts, string $name): ?Stmt\Foreach_
+    {
+        foreach ($stmts as $stmt) {
+            if ($stmt instanceof Stmt\Foreach_ && !$stmt->byRef
+                && $stmt->expr instanceof Variable && $stmt->expr->name === $name) {
+                return $stmt;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The kind of the whole-file read: lines of file(), lines split off file_get_contents(), or CSV rows
+     * of either, with the SplFileObject flags matching it and whether skipped empty lines renumber the keys.
+     *
+     * @return array{kind: string, path: Expr, flags: list<string>, renumbers: bool}|null
+     */
+    private function analyzeSource(Expr $expr, Scope $scope): ?array
+    {
+        if (!$expr instanceof FuncCall || !$expr->name instanceof Node\Name || !$this->hasPlainArguments($expr)) {
+            return null;
+        }
+        $function = $expr->name->toLowerString();
+        $args = $expr->getArgs();
+
+        if ($function === 'array_map' && count($args) === 2
+            && $args[0]->value instanceof String_ && strtolower($args[0]->value->value) === 'str_getcsv') {
+            $lines = $this->analyzeSource($args[1]->value, $scope);
+
+            return $lines === null ? null : ['kind' => 'csv', 'path' => $lines['path'], 'flags' => self::FLAGS['csv'], 'renumbers' => $lines['renumbers']];
+        }
+
+        if ($function === 'file' && (count($args) === 1 || count($args) === 2)) {
+            $flags = isset($args[1]) ? $scope->getType($args[1]->value)->getConstantScalarValues() : [0];
+            if (count($flags) !== 1 || !is_int($flags[0]) || ($flags[0] & FILE_USE_INCLUDE_PATH) !== 0) {
+                return null;
+            }
+            $dropsNewLines = ($flags[0] & FILE_IGNORE_NEW_LINES) !== 0;
+            // Without dropping new lines SKIP_EMPTY only skips the empty line after the last new line, like file() does
+            $skipsEmpty = !$dropsNewLines || ($flags[0] & FILE_SKIP_EMPTY_LINES) !== 0;
+
+            return [
+                'kind'  => 'lines',
+                'path'  => $args[0]->value,
+                'flags' => [...($dropsNewLines ? ['DROP_NEW_LINE'] : []), 'READ_AHEAD', ...($skipsEmpty ? ['SKIP_EMPTY'] : [])],
+                'renumbers' => $dropsNewLines && ($flags[0] & FILE_SKIP_EMPTY_LINES) !== 0,
+            ];
+        }
+
+        if ($function === 'explode' && count($args) === 2
+            && $args[1]->value instanceof FuncCall && $args[1]->value->name instanceof Node\Name
+            && $args[1]->value->name->toLowerString() === 'file_get_contents'
+            && count($args[1]->value->getArgs()) === 1 && $this->hasPlainArguments($args[1]->value)
+            && $scope->getType($args[0]->value)->getConstantScalarValues() === ["\n"]) {
+            return ['kind' => 'split', 'path' => $args[1]->value->getArgs()[0]->value, 'flags' => self::FLAGS['split'], 'renumbers' => false];
+        }
+
+        return null;
+    }
+
+    /**
+     * @param array{kind: string, path: Expr, flags: list<string>, renumbers: bool} $source
+     * @param array<string, int> $variables
+     */
+    private function buildError(Expr $expr, array $source, Stmt\Foreach_ $loop, array $variables): IdentifierRuleError
+    {
+        $name = 'file';
+        for ($suffix = 2; isset($variables[$name]); $suffix++) {
+            $name = 'file' . $suffix;
+        }
+        $handle = '$' . $name;
+
+        $head = sprintf(
+            'foreach (%s as %s%s)',
+            $handle,
+            $loop->keyVar === null ? '' : $this->printer->prettyPrintExpr($loop->keyVar) . ' => ',
+            $this->printer->prettyPrintExpr($loop->valueVar)
+        );
+        $flags = implode(' | ', array_map(static fn (string $flag): string => '\SplFileObject::' . $flag, $source['flags']));
+
+        return RuleErrorBuilder::message(sprintf(self::MESSAGE, $this->printer->prettyPrintExpr($expr), $loop->getStartLine()))
+            ->identifier('performance.wholeFileIteration')
+            ->tip(sprintf(self::TIP, $handle, $this->printer->prettyPrintExpr($source['path']), $handle, $flags, $head, self::ALTERNATIVES[$source['kind']])
+                . ($loop->keyVar !== null && $source['renumbers'] ? self::TIP_KEYS : ''))
+            ->line($expr->getStartLine())
+            ->build();
+    }
+
+    /**
+     * Counts the occurrences of every variable, including closure uses and arrow functions, and
+     * whether the code can access variables by a dynamic name.
+     *
+     * @param array<Node|mixed> $nodes
+     * @param array<string, int> $variables
+     */
+    private function scanVariables(array $nodes, array &$variables, bool &$hasScopeAccess): void
+    {
+        foreach ($nodes as $node) {
+            if (!$node instanceof Node || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+                continue;
+            }
+            if ($node instanceof Expr\Closure) {
+                $this->scanVariables($node->uses, $variables, $hasScopeAccess);
+                continue;
+            }
+
+            if ($node instanceof Variable) {
+                if (is_string($node->name)) {
+                    $variables[$node->name] = ($variables[$node->name] ?? 0) + 1;
+                } else {
+                    $hasScopeAccess = true;
+                }
+            } elseif ($node instanceof Expr\Include_ || $node instanceof Expr\Eval_
+                || ($node instanceof FuncCall && (!$node->name instanceof Node\Name
+                    || in_array($node->name->toLowerString(), self::SCOPE_FUNCTIONS, true)))) {
+                $hasScopeAccess = true;
+            }
+
+            foreach ($node->getSubNodeNames() as $subNodeName) {
+                $subNode = $node->$subNodeName;
+                $this->scanVariables(is_array($subNode) ? $subNode : [$subNode], $variables, $hasScopeAccess);
+            }
+        }
+    }
+
+    private function hasPlainArguments(FuncCall $call): bool
+    {
+        if ($call->isFirstClassCallable()) {
+            return false;
+        }
+        foreach ($call->getArgs() as $arg) {
+            if ($arg->name !== null || $arg->unpack) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,230 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage;
+
+/**
+ * Single-pass parser of printf() and scanf() format strings, following the placeholder grammar
+ * of ext/standard (formatted_print.c, scanf.c):
+ *
+ * - printf: `%[argnum$][flags][width][.precision]specifier`, flags `-`, `+`, space, `0` and
+ *   `'x` (custom padding), width and precision may be `*` or `*argnum$` taking an int argument
+ * - scanf: `%[argnum$][*][width][h|l|L]specifier` with `*` suppressing the assignment and
+ *   `[...]` character classes
+ *
+ * The descriptor lists the argument each placeholder consumes with its conversion, e.g.
+ * `%2$s %1$05d` gives [1 => 's', 0 => 'd'] (0-based after the format). Descriptors are cached
+ * per format literal, as the same formats are repeated all over logging and templating code.
+ */
+final class FormatStringParser
+{
+    public const string ARGUMENT_INT = '*';
+
+    private const string PRINTF_CONVERSIONS = 'bcdeEfFgGhHosuxX';
+
+    private const string SCANF_CONVERSIONS = 'cdDeEfgiosuxXn';
+
+    private const int CACHE_SIZE = 1024;
+
+    /** @var array<string, array{valid: bool, hasVariables: bool, placeholders: int, maxPosition: int, expected: int, arguments: array<int, string>}> */
+    private static array $cache = [];
+
+    /**
+     * @return array{valid: bool, hasVariables: bool, placeholders: int, maxPosition: int, expected: int, arguments: array<int, string>}
+     *     expected is the number of arguments after the format, arguments maps them to their conversion
+     *     (ARGUMENT_INT for `*` widths and precisions; scanf conversions are not typed)
+     */
+    public static function parse(string $format, bool $isScanf): array
+    {
+        $key = ($isScanf ? 's' : 'p') . $format;
+        if (isset(self::$cache[$key])) {
+            return self::$cache[$key];
+        }
+        if (count(self::$cache) >= self::CACHE_SIZE) {
+            self::$cache = [];
+        }
+
+        return self::$cache[$key] = $isScanf ? self::parseScanf($format) : self::parsePrintf($format);
+    }
+
+    /**
+     * @return array{valid: bool, hasVariables: bool, placeholders: int, maxPosition: int, expected: int, arguments: array<int, string>}
+     */
+    private static function parsePrintf(string $format): array
+    {
+        $length = strlen($format);
+        $descriptor = ['valid' => true, 'hasVariables' => false, 'placeholders' => 0, 'maxPosition' => 0, 'expected' => 0, 'arguments' => []];
+        $next = 0;
+
+        for ($index = 0; $index < $length; $index++) {
+            if ($format[$index] !== '%') {
+                if ($format[$index] === '$' && self::isVariableStart($format, $index + 1)) {
+                    $descriptor['hasVariables'] = true;
+                }
+                continue;
+            }
+            if (++$index >= $length) {
+                $descriptor['valid'] = false;
+                break;
+            }
+            if ($format[$index] === '%') {
+                continue;
+            }
+
+            $position = self::readPosition($format, $index);
+            if ($position === 0) {
+                $descriptor['valid'] = false;
+                break;
+            }
+
+            // Flags, the custom padding character is taken verbatim
+            while ($index < $length && strpbrk($format[$index], "-+ 0'") !== false) {
+                $index += $format[$index] === "'" ? 2 : 1;
+            }
+
+            // Width and precision, `*` and `*argnum$` take an int argument
+            foreach ([false, true] as $isPrecision) {
+                if ($isPrecision) {
+                    if ($index >= $length || $format[$index] !== '.') {
+                        break;
+                    }
+                    $index++;
+                }
+                if ($index < $length && $format[$index] === '*') {
+                    $index++;
+                    $starPosition = self::readPosition($format, $index);
+                    if ($starPosition === 0) {
+                        $descriptor['valid'] = false;
+                        break 2;
+                    }
+                    $argument = $starPosition === null ? $next++ : $starPosition - 1;
+                    $descriptor['arguments'][$argument] = self::ARGUMENT_INT;
+                    $descriptor['maxPosition'] = max($descriptor['maxPosition'], $starPosition ?? 0);
+                    continue;
+                }
+                while ($index < $length && $format[$index] >= '0' && $format[$index] <= '9') {
+                    $index++;
+                }
+            }
+
+            // The `l` length modifier is accepted and ignored
+            if ($index < $length && $format[$index] === 'l') {
+                $index++;
+            }
+            if ($index >= $length || !str_contains(self::PRINTF_CONVERSIONS, $format[$index])) {
+                $descriptor['valid'] = false;
+                break;
+            }
+
+            $argument = $position === null ? $next++ : $position - 1;
+            $descriptor['arguments'][$argument] ??= $format[$index];
+            $descriptor['maxPosition'] = max($descriptor['maxPosition'], $position ?? 0);
+            $descriptor['placeholders']++;
+        }
+
+        $descriptor['expected'] = max($next, $descriptor['maxPosition']);
+
+        return $descriptor;
+    }
+
+    /**
+     * @return array{valid: bool, hasVariables: bool, placeholders: int, maxPosition: int, expected: int, arguments: array<int, string>}
+     */
+    private static function parseScanf(string $format): array
+    {
+        $length = strlen($format);
+        $descriptor = ['valid' => true, 'hasVariables' => false, 'placeholders' => 0, 'maxPosition' => 0, 'expected' => 0, 'arguments' => []];
+        $next = 0;
+
+        for ($index = 0; $index < $length; $index++) {
+            if ($format[$index] !== '%') {
+                if ($format[$index] === '$' && self::isVariableStart($format, $index + 1)) {
+                    $descriptor['hasVariables'] = true;
+                }
+                continue;
+            }
+            if (++$index >= $length) {
+                $descriptor['valid'] = false;
+                break;
+            }
+            if ($format[$index] === '%') {
+                continue;
+            }
+
+            $isSuppressed = $format[$index] === '*';
+            $position = $isSuppressed ? null : self::readPosition($format, $index);
+            if ($isSuppressed) {
+                $index++;
+            }
+            if ($position === 0) {
+                $descriptor['valid'] = false;
+                break;
+            }
+
+            while ($index < $length && $format[$index] >= '0' && $format[$index] <= '9') {
+                $index++;
+            }
+            if ($index < $length && strpbrk($format[$index], 'hlL') !== false) {
+                $index++;
+            }
+            if ($index >= $length) {
+                $descriptor['valid'] = false;
+                break;
+            }
+
+            $conversion = $format[$index];
+            if ($conversion === '[') {
+                // A `]` right after `[` or `[^` belongs to the class
+                $index += $index + 1 < $length && $format[$index + 1] === '^' ? 2 : 1;
+                $close = $index < $length ? strpos($format, ']', $format[$index] === ']' ? $index + 1 : $index) : false;
+                if ($close === false) {
+                    $descriptor['valid'] = false;
+                    break;
+                }
+                $index = $close;
+            } elseif (!str_contains(self::SCANF_CONVERSIONS, $conversion)) {
+                $descriptor['valid'] = false;
+                break;
+            }
+
+            $descriptor['placeholders']++;
+            if ($isSuppressed) {
+                continue;
+            }
+            $argument = $position === null ? $next++ : $position - 1;
+            $descriptor['arguments'][$argument] = $conversion;
+            $descriptor['maxPosition'] = max($descriptor['maxPosition'], $position ?? 0);
+        }
+
+        $descriptor['expected'] = max($next, $descriptor['maxPosition']);
+
+        return $descriptor;
+    }
+
+    /**
+     * Reads `argnum$` at the index and moves past it; null without one, 0 for the invalid `0$`.
+     */
+    private static function readPosition(string $format, int &$index): ?int
+    {
+        $end = $index;
+        $length = strlen($format);
+        while ($end < $length && $format[$end] >= '0' && $format[$end] <= '9') {
+            $end++;
+        }
+        if ($end === $index || $end >= $length || $format[$end] !== '$') {
+            return null;
+        }
+
+        $position = (int) substr($format, $index, $end - $index);
+        $index = $end + 1;
+
+        return $position;
+    }
+
+    /**
+     * `$name` or `${` in a literal, most likely a format meant to be interpolated
+     */
+    private static function isVariableStart(string $format, int $index): bool
+    {
+        return $index < strlen($format) && (ctype_alpha($format[$index]) || $format[$index] === '_' || $format[$index] === '{');
+    }
+}
@@ -0,0 +1,214 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage;
+
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopInvariants;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Stmt;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects pure builtin function calls with loop-invariant arguments inside loops, e.g.
+ * `strtolower($name)`, `count($this->map)` or `array_keys($config)`, which compute the same
+ * result on every iteration and can be hoisted into a local before the loop.
+ *
+ * Purity comes from the PureFunctions table, which requires arguments proven not to be objects
+ * (see PureFunctions::isPureCall()), invariance from the modification set of the loop
+ * (LoopInvariants). Only the largest invariant call of an expression is reported, with at least
+ * one argument which is not a literal (literal-only calls are folded by the engine). Calls in
+ * nested loops are reported for the innermost loop, calls in a branch whose condition tests the
+ * call's arguments (e.g. `if (is_array($x)) { count($x); }`) are not reported, hoisting them
+ * would evaluate them unguarded. `for` conditions are covered by SlowArrayOperationsInLoopRule.
+ *
+ * @implements Rule<Stmt>
+ */
+final class LoopInvariantFunctionCallsRule implements Rule
+{
+    private const string MESSAGE = "'%s(...)' is called in a loop with loop-invariant arguments, its result is the same on every iteration.";
+    private const string TIP = 'Hoist it into a local before the loop: %s = %s;';
+
+    private Standard $prettyPrinter;
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+    ) {
+        $this->prettyPrinter = new Standard();
+    }
+
+    public function getNodeType(): string
+    {
+        return Stmt::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof Stmt\For_ && !$node instanceof Stmt\Foreach_ && !$node instanceof Stmt\While_ && !$node instanceof Stmt\Do_) {
+            return [];
+        }
+
+        $invariants = LoopInvariants::of($node, $this->reflectionProvider, $scope);
+
+        /** @var list<FuncCall> $calls */
+        $calls = [];
+        $roots = $node instanceof Stmt\While_ || $node instanceof Stmt\Do_ ? [$node->cond, ...$node->stmts] : $node->stmts;
+        foreach ($roots as $root) {
+            $this->findInvariantCalls($root, $invariants, [], $calls);
+        }
+
+        $errors = [];
+        $usedNames = [];
+        foreach ($calls as $call) {
+            $functionName = $call->name instanceof Node\Name ? $call->name->toString() : '';
+            $localName = $this->suggestLocalName($functionName, $scope, $usedNames);
+            $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE, $functionName))
+                ->identifier('performance.loopInvariantCall')
+                ->tip(sprintf(self::TIP, $localName, $this->prettyPrinter->prettyPrintExpr($call)))
+                ->line($call->getStartLine())
+                ->build();
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @param array<string, true> $guards references tested by the conditions guarding the node
+     * @param list<FuncCall> $calls
+     */
+    private function findInvariantCalls(Node $node, LoopInvariants $invariants, array $guards, array &$calls): void
+    {
+        // Nested loops are visited on their own, closures and classes are not executed here
+        if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_
+            || $node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+            return;
+        }
+
+        if ($node instanceof FuncCall && $this->isCandidate($node, $invariants)) {
+            if (array_intersect_key($this->collectReferences($node), $guards) === []) {
+                $calls[] = $node;
+            }
+            return;
+        }
+
+        // Branches only run when their conditions hold
+        if ($node instanceof Stmt\If_) {
+            $this->findInvariantCalls($node->cond, $invariants, $guards, $calls);
+            $guards += $this->collectReferences($node->cond);
+            foreach ($node->elseifs as $elseif) {
+                $guards += $this->collectReferences($elseif->cond);
+            }
+            $this->visitAll([...$node->stmts, ...$node->elseifs, ...($node->else === null ? [] : [$node->else])], $invariants, $guards, $calls);
+            return;
+        }
+        if ($node instanceof Expr\Ternary) {
+            $this->findInvariantCalls($node->cond, $invariants, $guards, $calls);
+            $guards += $this->collectReferences($node->cond);
+            $this->visitAll([$node->if, $node->else], $invariants, $guards, $calls);
+            return;
+        }
+        if ($node instanceof Expr\BinaryOp\BooleanAnd || $node instanceof Expr\BinaryOp\BooleanOr
+            || $node instanceof Expr\BinaryOp\LogicalAnd || $node instanceof Expr\BinaryOp\LogicalOr
+            || $node instanceof Expr\BinaryOp\Coalesce) {
+            $this->findInvariantCalls($node->left, $invariants, $guards, $calls);
+            $this->findInvariantCalls($node->right, $invariants, $guards + $this->collectReferences($node->left), $calls);
+            return;
+        }
+        if ($node instanceof Stmt\Switch_ || $node instanceof Expr\Match_) {
+            $this->findInvariantCalls($node->cond, $invariants, $guards, $calls);
+            $guards += $this->collectReferences($node->cond);
+            $this->visitAll($node instanceof Stmt\Switch_ ? $node->cases : $node->arms, $invariants, $guards, $calls);
+            return;
+        }
+        // isset() and empty() guard their own arguments
+        if ($node instanceof Expr\Isset_ || $node instanceof Expr\Empty_) {
+            return;
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            if ($subNode instanceof Node) {
+                $this->findInvariantCalls($subNode, $invariants, $guards, $calls);
+            } elseif (is_array($subNode)) {
+                $this->visitAll($subNode, $invariants, $guards, $calls);
+            }
+        }
+    }
+
+    /**
+     * @param array<mixed> $nodes
+     * @param array<string, true> $guards
+     * @param list<FuncCall> $calls
+     */
+    private function visitAll(array $nodes, LoopInvariants $invariants, array $guards, array &$calls): void
+    {
+        foreach ($nodes as $node) {
+            if ($node instanceof Node) {
+                $this->findInvariantCalls($node, $invariants, $guards, $calls);
+            }
+        }
+    }
+
+    private function isCandidate(FuncCall $call, LoopInvariants $invariants): bool
+    {
+        if (!$call->name instanceof Node\Name || !PureFunctions::isPure($call->name->toString())
+            || $call->isFirstClassCallable() || !$invariants->isInvariant($call)) {
+            return false;
+        }
+
+        foreach ($call->getArgs() as $arg) {
+            if (!$arg->value instanceof Node\Scalar && !$arg->value instanceof Expr\ConstFetch && !$arg->value instanceof Expr\ClassConstFetch) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Variables (`$name`) and properties (`->name`, `::name`) the expression reads.
+     *
+     * @return array<string, true>
+     */
+    private function collectReferences(Node $node): array
+    {
+        $references = [];
+        if ($node instanceof Expr\Variable && is_string($node->name)) {
+            $references['$' . $node->name] = true;
+        } elseif (($node instanceof Expr\PropertyFetch || $node instanceof Expr\NullsafePropertyFetch) && $node->name instanceof Node\Identifier) {
+            $references['->' . $node->name->toString()] = true;
+        } elseif ($node instanceof Expr\StaticPropertyFetch && $node->name instanceof Node\VarLikeIdentifier) {
+            $references['::' . $node->name->toString()] = true;
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                if ($child instanceof Node) {
+                    $references += $this->collectReferences($child);
+                }
+            }
+        }
+
+        return $references;
+    }
+
+    /**
+     * @param array<string, true> $usedNames
+     */
+    private function suggestLocalName(string $functionName, Scope $scope, array &$usedNames): string
+    {
+        $baseName = lcfirst(str_replace('_', '', ucwords(strtolower(ltrim($functionName, '\\')), '_')));
+        $name = $baseName;
+        for ($suffix = 2; isset($usedNames[$name]) || !$scope->hasVariableType($name)->no(); $suffix++) {
+            $name = $baseName . $suffix;
+        }
+        $usedNames[$name] = true;
+
+        return '$' . $name;
+    }
+}
@@ -0,0 +1,290 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Pdo;
+
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopInvariants;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Stmt;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+use PHPStan\Type\ObjectType;
+
+/**
+ * Detects database round-trips inside loops (N+1 queries) for PDO and mysqli.
+ *
+ * Queries are PDO::query()/exec(), PDOStatement::execute(), mysqli::query()/real_query()/
+ * multi_query()/execute_query(), mysqli_stmt::execute() and their mysqli_*() function forms.
+ * Each of them is reported once per innermost loop with a batching suggestion derived from the
+ * SQL: a single `WHERE ... IN (...)` query for reads, updates and deletes, a multi-row INSERT for
+ * inserts. The SQL of statements prepared before the loop is found through the values assigned
+ * to the statement variable (see PossibleValuesDiscovery).
+ *
+ * prepare() inside a loop is told apart: with loop-invariant SQL (see LoopInvariants) it only has
+ * to be hoisted before the loop, with SQL built per iteration it is a round-trip of its own.
+ * Connections and statements are recognized by their types, statements prepared inside the loop
+ * by the call they are assigned from.
+ *
+ * @implements Rule<Stmt>
+ */
+final class QueriesInLoopRule implements Rule
+{
+    private const string MESSAGE_QUERY = '%s runs a database query on every iteration of the loop (N+1 queries).';
+    private const string MESSAGE_PREPARE = '%s is called in a loop with the same SQL on every iteration, prepare the statement once before the loop.';
+
+    private const string TIP_IN = 'Collect the keys in the loop and run a single query with WHERE ... IN (...) instead.';
+    private const string TIP_MULTI_ROW_INSERT = 'Collect the rows in the loop and insert them with a single multi-row INSERT ... VALUES (...), (...) instead.';
+    private const string TIP_BATCH = 'Batch the queries: a single query with WHERE ... IN (...) for reads, a multi-row INSERT for writes.';
+    private const string TIP_PREPARE = 'Only execute() has to run per iteration.';
+
+    private const string KIND_PREPARE = 'prepare';
+    private const string KIND_QUERY   = 'query';
+    private const string KIND_EXECUTE = 'execute';
+
+    /** @var array<string, array<string, string>> class => method => kind */
+    private const array METHODS = [
+        'PDO' => ['prepare' => self::KIND_PREPARE, 'query' => self::KIND_QUERY, 'exec' => self::KIND_QUERY],
+        'PDOStatement' => ['execute' => self::KIND_EXECUTE],
+        'mysqli' => [
+            'prepare' => self::KIND_PREPARE,
+            'query' => self::KIND_QUERY,
+            'real_query' => self::KIND_QUERY,
+            'multi_query' => self::KIND_QUERY,
+            'execute_query' => self::KIND_QUERY,
+        ],
+        'mysqli_stmt' => ['execute' => self::KIND_EXECUTE],
+    ];
+
+    /** @var array<string, array{string, int}> function => [kind, position of the SQL or statement argument] */
+    private const array FUNCTIONS = [
+        'mysqli_prepare' => [self::KIND_PREPARE, 1],
+        'mysqli_query' => [self::KIND_QUERY, 1],
+        'mysqli_real_query' => [self::KIND_QUERY, 1],
+        'mysqli_multi_query' => [self::KIND_QUERY, 1],
+        'mysqli_execute_query' => [self::KIND_QUERY, 1],
+        'mysqli_stmt_execute' => [self::KIND_EXECUTE, 0],
+        'mysqli_execute' => [self::KIND_EXECUTE, 0],
+    ];
+
+    /** @var array<string, string> statement class of the connection classes */
+    private const array STATEMENT_CLASSES = ['PDO' => 'PDOStatement', 'mysqli' => 'mysqli_stmt'];
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly PossibleValuesDiscovery $possibleValuesDiscovery,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return Stmt::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof Stmt\For_ && !$node instanceof Stmt\Foreach_ && !$node instanceof Stmt\While_ && !$node instanceof Stmt\Do_) {
+            return [];
+        }
+
+        /** @var list<Expr\CallLike> $calls */
+        $calls = [];
+        /** @var list<array{string, Expr\CallLike}> $assignments */
+        $assignments = [];
+        $roots = $node instanceof Stmt\While_ || $node instanceof Stmt\Do_ ? [$node->cond, ...$node->stmts] : $node->stmts;
+        foreach ($roots as $root) {
+            $this->collectCalls($root, $calls, $assignments);
+        }
+
+        // Statements prepared in the loop, their variables are not typed in the loop's scope
+        /** @var array<string, array{string, Expr|null}> $statements variable => [statement class, SQL] */
+        $statements = [];
+        foreach ($assignments as [$variableName, $call]) {
+            $database = $this->classifyCall($call, $scope, $statements);
+            if ($database !== null && $database['statementClass'] !== null) {
+                $statements[$variableName] = [$database['statementClass'], $database['sql']];
+            }
+        }
+
+        $invariants = null;
+        $errors = [];
+        foreach ($calls as $call) {
+            $database = $this->classifyCall($call, $scope, $statements);
+            if ($database === null) {
+                continue;
+            }
+
+            if ($database['kind'] === self::KIND_PREPARE && $database['sql'] !== null) {
+                $invariants ??= LoopInvariants::of($node, $this->reflectionProvider, $scope);
+                if ($invariants->isInvariant($database['sql'])) {
+                    $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE_PREPARE, $database['api']))
+                        ->identifier('database.prepareInLoop')
+                        ->tip(self::TIP_PREPARE)
+                        ->line($call->getStartLine())
+                        ->build();
+                    continue;
+                }
+            }
+
+            $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE_QUERY, $database['api']))
+                ->identifier('database.queryInLoop')
+                ->tip($this->suggestBatching($database['sql'], $scope))
+                ->line($call->getStartLine())
+                ->build();
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @param list<Expr\CallLike> $calls
+     * @param list<array{string, Expr\CallLike}> $assignments calls assigned to variables
+     */
+    private function collectCalls(Node $node, array &$calls, array &$assignments): void
+    {
+        // Nested loops are visited on their own, closures and classes are not executed here
+        if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_
+            || $node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+            return;
+        }
+
+        if ($node instanceof Expr\Assign && ($node->expr instanceof MethodCall || $node->expr instanceof FuncCall)
+            && $node->var instanceof Variable && is_string($node->var->name)) {
+            $assignments[] = [$node->var->name, $node->expr];
+        }
+        if ($node instanceof MethodCall || $node instanceof FuncCall) {
+            $calls[] = $node;
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                if ($child instanceof Node) {
+                    $this->collectCalls($child, $calls, $assignments);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param array<string, array{string, Expr|null}> $statements
+     * @return array{api: string, kind: string, sql: Expr|null, statementClass: string|null}|null
+     */
+    private function classifyCall(Expr\CallLike $call, Scope $scope, array $statements): ?array
+    {
+        if ($call instanceof FuncCall) {
+            if (!$call->name instanceof Node\Name) {
+                return null;
+            }
+            $functionName = $call->name->toLowerString();
+            if (!isset(self::FUNCTIONS[$functionName])) {
+                return null;
+            }
+            [$kind, $position] = self::FUNCTIONS[$functionName];
+            $argument = $call->getArgs()[$position]->value ?? null;
+
+            return [
+                'api'            => $functionName . '()',
+                'kind'           => $kind,
+                'sql'            => $kind === self::KIND_EXECUTE ? $this->findStatementSql($argument, $scope, $statements) : $argument,
+                'statementClass' => $kind === self::KIND_PREPARE ? 'mysqli_stmt' : null,
+            ];
+        }
+
+        if (!$call instanceof MethodCall || !$call->name instanceof Node\Identifier) {
+            return null;
+        }
+        $methodName = $call->name->toLowerString();
+
+        foreach (self::METHODS as $className => $methods) {
+            if (!isset($methods[$methodName]) || !$this->isInstanceOf($call->var, $className, $scope, $statements)) {
+                continue;
+            }
+            $kind = $methods[$methodName];
+
+            return [
+                'api'            => $className . '::' . $call->name->toString() . '()',
+                'kind'           => $kind,
+                'sql'            => $kind === self::KIND_EXECUTE ? $this->findStatementSql($call->var, $scope, $statements) : ($call->getArgs()[0]->value ?? null),
+                'statementClass' => in_array($methodName, ['prepare', 'query'], true) ? self::STATEMENT_CLASSES[$className] ?? null : null,
+            ];
+        }
+
+        return null;
+    }
+
+    /**
+     * @param array<string, array{string, Expr|null}> $statements
+     */
+    private function isInstanceOf(Expr $expr, string $className, Scope $scope, array $statements): bool
+    {
+        if ($expr instanceof Variable && is_string($expr->name) && isset($statements[$expr->name])) {
+            return $statements[$expr->name][0] === $className;
+        }
+
+        return (new ObjectType($className))->isSuperTypeOf($scope->getType($expr))->yes();
+    }
+
+    /**
+     * SQL the statement was prepared with, inside the loop or before it.
+     *
+     * @param array<string, array{string, Expr|null}> $statements
+     */
+    private function findStatementSql(?Expr $statement, Scope $scope, array $statements): ?Expr
+    {
+        if (!$statement instanceof Variable || !is_string($statement->name)) {
+            return null;
+        }
+        if (isset($statements[$statement->name])) {
+            return $statements[$statement->name][1];
+        }
+
+        foreach ($this->possibleValuesDiscovery->discover($statement, $scope) as $value) {
+            $database = $value instanceof Expr\CallLike ? $this->classifyCall($value, $scope, []) : null;
+            if ($database !== null && $database['kind'] === self::KIND_PREPARE) {
+                return $database['sql'];
+            }
+        }
+
+        return null;
+    }
+
+    private function suggestBatching(?Expr $sql, Scope $scope): string
+    {
+        $keyword = $sql === null ? null : $this->findLeadingKeyword($sql, $scope, 2);
+
+        return match ($keyword) {
+            'select', 'update', 'delete' => self::TIP_IN,
+            'insert', 'replace'          => self::TIP_MULTI_ROW_INSERT,
+            default                      => self::TIP_BATCH,
+        };
+    }
+
+    private function findLeadingKeyword(Expr $sql, Scope $scope, int $depth): ?string
+    {
+        while ($sql instanceof Expr\BinaryOp\Concat) {
+            $sql = $sql->left;
+        }
+
+        $text = null;
+        if ($sql instanceof Node\Scalar\String_) {
+            $text = $sql->value;
+        } elseif ($sql instanceof Node\Scalar\Encapsed && $sql->parts[0] instanceof Node\Scalar\EncapsedStringPart) {
+            $text = $sql->parts[0]->value;
+        } elseif ($sql instanceof Variable && $depth > 0) {
+            foreach ($this->possibleValuesDiscovery->discover($sql, $scope) as $value) {
+                $keyword = $this->findLeadingKeyword($value, $scope, $depth - 1);
+                if ($keyword !== null) {
+                    return $keyword;
+                }
+            }
+        }
+
+        return $text !== null && preg_match('/^\s*(\w+)/', $text, $matches) === 1 ? strtolower($matches[1]) : null;
+    }
+}
@@ -13,7 +13,10 @@ use PhpParser\Node\Scalar\String_;
 use PhpParser\Node\Stmt\Return_;
 use PHPStan\Analyser\Scope;
 use PHPStan\Rules\Rule;
+use PHPStan\Rules\IdentifierRuleError;
 use PHPStan\Rules\RuleErrorBuilder;
+use PHPStan\Type\ErrorType;
+use PHPStan\Type\VerbosityLevel;
 
 /**
  * Validates printf/scanf function calls for correct format strings and argument counts.
@@ -23,6 +26,9 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - Format strings are valid and properly formed
  * - The number of provided arguments matches the expected parameters in the format string
  * - Position specifiers in format strings are handled correctly
+ * - printf arguments can be converted by their placeholders, e.g. no array for %s or %d
+ *
+ * Format strings are parsed by FormatStringParser, once per literal.
  *
  * @implements Rule<FuncCall>
  */
@@ -30,6 +36,9 @@ class PrintfScanfArgumentsRule implements Rule
 {
     private const string MESSAGE_PATTERN    = 'Format string pattern seems to be not valid.';
     private const string MESSAGE_PARAMETERS = 'Number of expected parameters is %d.';
+    private const string MESSAGE_TYPE       = 'Value %d of %s() is %s, but %s expects %s.';
+
+    private const string NUMERIC_CONVERSIONS = 'bcdeEfFgGhHouxX';
 
     private const array FUNCTIONS = [
         'printf'  => 0,
@@ -39,8 +48,6 @@ class PrintfScanfArgumentsRule implements Rule
         'fscanf'  => 1,
     ];
 
-    private const string PLACEHOLDER_REGEX = '/%((\\d+|\\*)\\$)?[+-]?(?:[ 0]|\\\\?\'.)?-?\\d*(?:\\.\\d*)?[sducoxXbgGeEfF]/';
-
     public function getNodeType(): string
     {
         return FuncCall::class;
@@ -70,45 +77,15 @@ class PrintfScanfArgumentsRule implements Rule
             return [];
         }
 
-        $pattern = $patternArg->value->value;
-        $content = trim($pattern);
-        
-        if (empty($content)) {
-            return [];
-        }
+        $isScanf = $functionName === 'sscanf' || $functionName === 'fscanf';
+        $format = FormatStringParser::parse($patternArg->value->value, $isScanf);
 
-        // Normalize content: remove %% and check for inline variables
-        $contentAdapted = str_replace('%%', '', $content);
-        $contentNoVars  = preg_replace('/\$\{?\$?[a-zA-Z0-9]+\}?/', '', $contentAdapted);
-        
-        // Skip if variables were found in the pattern
-        if ($contentAdapted !== $contentNoVars) {
+        // Skip patterns which look like they were meant to be interpolated
+        if ($format['hasVariables']) {
             return [];
         }
 
-        // Find valid placeholders and extract position specifiers
-        $countWithoutPositionSpecifier = 0;
-        $maxPositionSpecifier          = 0;
-        $countParsedAll                = 0;
-
-        preg_match_all(self::PLACEHOLDER_REGEX, $contentAdapted, $matches, PREG_SET_ORDER);
-        
-        foreach ($matches as $match) {
-            $countParsedAll++;
-            
-            if (isset($match[2]) && is_numeric($match[2])) {
-                $maxPositionSpecifier = max($maxPositionSpecifier, (int) $match[2]);
-                continue;
-            }
-            
-            $countWithoutPositionSpecifier++;
-        }
-
-        $expectedParametersCount = $minimumArgumentsForAnalysis + max($countWithoutPositionSpecifier, $maxPositionSpecifier);
-
-        // Check for pattern validity
-        $parametersInPattern = substr_count(str_replace(['%%', '%*'], ['', ''], $content), '%');
-        if ($countParsedAll !== $parametersInPattern) {
+        if (!$format['valid']) {
             return [
                 RuleErrorBuilder::message(self::MESSAGE_PATTERN)
                     ->identifier('function.printfScanf.invalidPattern')
@@ -117,6 +94,8 @@ class PrintfScanfArgumentsRule implements Rule
             ];
         }
 
+        $expectedParametersCount = $minimumArgumentsForAnalysis + $format['expected'];
+
         // Check for arguments matching
         if ($expectedParametersCount !== count($args)) {
             // Handle fscanf/sscanf special case - they can return an array if no containers provided
@@ -144,6 +123,52 @@ class PrintfScanfArgumentsRule implements Rule
             ];
         }
 
-        return [];
+        // scanf arguments are containers, unpacked arguments cannot be mapped to placeholders
+        $lastArg = end($args);
+        if ($isScanf || $lastArg->unpack) {
+            return [];
+        }
+
+        return $this->checkArgumentTypes($format['arguments'], array_slice($args, $minimumArgumentsForAnalysis), $functionName, $scope);
+    }
+
+    /**
+     * @param array<int, string> $conversions
+     * @param list<Arg> $values
+     * @return list<IdentifierRuleError>
+     */
+    private function checkArgumentTypes(array $conversions, array $values, string $functionName, Scope $scope): array
+    {
+        $errors = [];
+        foreach ($conversions as $index => $conversion) {
+            if (!isset($values[$index])) {
+                continue;
+            }
+
+            // Non-numeric literals silently print as 0, arrays and objects are not converted at all
+            $type = $scope->getType($values[$index]->value);
+            $isInvalid = $conversion === 's'
+                ? $type->toString() instanceof ErrorType
+                : ($conversion === FormatStringParser::ARGUMENT_INT || str_contains(self::NUMERIC_CONVERSIONS, $conversion))
+                    && ($type->isArray()->yes() || $type->isObject()->yes()
+                        || ($type->getConstantStrings() !== [] && $type->isNumericString()->no()));
+            if (!$isInvalid) {
+                continue;
+            }
+
+            $errors[] = RuleErrorBuilder::message(sprintf(
+                self::MESSAGE_TYPE,
+                $index + 1,
+                $functionName,
+                $type->describe(VerbosityLevel::typeOnly()),
+                $conversion === FormatStringParser::ARGUMENT_INT ? 'the * width' : '%' . $conversion,
+                $conversion === 's' ? 'a string' : 'a number'
+            ))
+                ->identifier('function.printfScanf.argumentType')
+                ->line($values[$index]->getStartLine())
+                ->build();
+        }
+
+        return $errors;
     }
 }
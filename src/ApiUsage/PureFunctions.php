@@ -0,0 +1,147 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage;
+
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\String_;
+use PHPStan\Analyser\Scope;
+use PHPStan\Type\Type;
+
+/**
+ * Purity table of PHP builtins: functions whose result depends on their arguments only and which
+ * have no side effects (no I/O, no global state, no by-reference parameters, no callbacks).
+ *
+ * A call of a pure function with unchanged arguments returns the same result, so it can be cached
+ * or hoisted out of a loop. Functions which are pure but trivially cheap in the engine (e.g. the
+ * is_*() checks compiled into opcodes) are left out, hoisting them gains nothing. Functions setting
+ * last-error state (json_decode(), preg_match() and the other PCRE functions) are left out as well.
+ *
+ * Objects make any of them impure: count() calls Countable::count(), string functions, implode()
+ * and loose comparisons call __toString(). isPureCall() therefore requires argument types proven
+ * to be scalars or arrays of them; items of arrays are not checked for functions which do not
+ * read them (e.g. count(), array_keys()). Functions reading ini defaults (mb_* with mbstring's internal
+ * encoding, htmlspecialchars() with default_charset) are pure with an explicit encoding only, and
+ * sprintf()/vsprintf() only with a literal format without the locale-aware %e, %f and %g.
+ * Case conversions are locale-insensitive as of PHP 8.2, which the table assumes.
+ */
+final class PureFunctions
+{
+    /** @var array<string, true> */
+    private const array FUNCTIONS = [
+        // strings
+        'addslashes' => true, 'bin2hex' => true, 'chunk_split' => true, 'explode' => true, 'hex2bin' => true,
+        'implode' => true, 'join' => true, 'lcfirst' => true, 'ltrim' => true, 'nl2br' => true, 'number_format' => true,
+        'rtrim' => true, 'str_pad' => true, 'str_repeat' => true, 'str_replace' => true,
+        'str_split' => true, 'strip_tags' => true, 'stripslashes' => true,
+        'strlen' => true, 'strrev' => true, 'strtolower' => true, 'strtoupper' => true, 'strtr' => true,
+        'substr' => true, 'substr_count' => true, 'trim' => true, 'ucfirst' => true, 'ucwords' => true,
+        'wordwrap' => true, 'str_contains' => true, 'str_starts_with' => true,
+        'str_ends_with' => true, 'strpos' => true, 'stripos' => true, 'strrpos' => true, 'strstr' => true,
+        'iconv' => true,
+        // encoding and hashing
+        'base64_decode' => true, 'base64_encode' => true, 'crc32' => true, 'hash' => true, 'hash_hmac' => true,
+        'md5' => true, 'rawurldecode' => true, 'rawurlencode' => true, 'sha1' => true,
+        'urldecode' => true, 'urlencode' => true, 'http_build_query' => true, 'parse_url' => true,
+        'preg_quote' => true,
+        // arrays
+        'array_chunk' => true, 'array_column' => true, 'array_combine' => true, 'array_count_values' => true,
+        'array_diff' => true, 'array_diff_key' => true, 'array_fill' => true, 'array_fill_keys' => true,
+        'array_flip' => true, 'array_intersect' => true, 'array_intersect_key' => true, 'array_key_first' => true,
+        'array_key_last' => true, 'array_keys' => true, 'array_merge' => true, 'array_merge_recursive' => true,
+        'array_pad' => true, 'array_product' => true, 'array_replace' => true, 'array_reverse' => true,
+        'array_slice' => true, 'array_sum' => true, 'array_unique' => true, 'array_values' => true,
+        'array_is_list' => true, 'count' => true, 'sizeof' => true, 'max' => true, 'min' => true, 'range' => true,
+        'in_array' => true, 'array_search' => true, 'array_key_exists' => true,
+        // math
+        'abs' => true, 'ceil' => true, 'floor' => true, 'round' => true, 'sqrt' => true, 'pow' => true,
+        'intdiv' => true, 'fmod' => true, 'log' => true, 'exp' => true, 'base_convert' => true,
+        'bindec' => true, 'decbin' => true, 'dechex' => true, 'hexdec' => true, 'octdec' => true,
+        // paths
+        'basename' => true, 'dirname' => true, 'pathinfo' => true,
+    ];
+
+    /** @var array<string, int> functions pure with an explicit encoding => position of the encoding argument */
+    private const array ENCODING_FUNCTIONS = [
+        'mb_strlen' => 1, 'mb_strtolower' => 1, 'mb_strtoupper' => 1, 'mb_substr' => 3, 'mb_str_split' => 2,
+        'mb_convert_case' => 2, 'mb_convert_encoding' => 2,
+        'htmlspecialchars' => 2, 'htmlentities' => 2, 'html_entity_decode' => 2,
+    ];
+
+    /** @var array<string, true> functions pure with a literal format without locale-aware conversions */
+    private const array FORMAT_FUNCTIONS = ['sprintf' => true, 'vsprintf' => true];
+
+    /** @var array<string, true> functions which do not read the items of their array arguments (array_keys() only without a search value) */
+    private const array ITEM_AGNOSTIC_FUNCTIONS = [
+        'count' => true, 'sizeof' => true, 'array_keys' => true, 'array_values' => true, 'array_slice' => true,
+        'array_reverse' => true, 'array_chunk' => true, 'array_key_first' => true, 'array_key_last' => true,
+        'array_key_exists' => true, 'array_is_list' => true, 'array_pad' => true, 'array_merge' => true,
+        'array_replace' => true, 'array_diff_key' => true, 'array_intersect_key' => true,
+    ];
+
+    /** Nesting of arrays checked for objects */
+    private const int MAX_ARRAY_DEPTH = 3;
+
+    /**
+     * Whether the function is pure for some arguments, isPureCall() decides for a call.
+     */
+    public static function isPure(string $functionName): bool
+    {
+        $functionName = strtolower(ltrim($functionName, '\\'));
+
+        return isset(self::FUNCTIONS[$functionName]) || isset(self::ENCODING_FUNCTIONS[$functionName])
+            || isset(self::FORMAT_FUNCTIONS[$functionName]);
+    }
+
+    /**
+     * Whether the call is pure: a pure function with positional arguments proven to be scalars or
+     * arrays of them, and the encoding or format the function needs to be independent of ini
+     * settings and the locale.
+     */
+    public static function isPureCall(FuncCall $call, Scope $scope): bool
+    {
+        if (!$call->name instanceof Name || $call->isFirstClassCallable() || !self::isPure($call->name->toString())) {
+            return false;
+        }
+
+        $functionName = $call->name->toLowerString();
+        $args = $call->getArgs();
+        $readsItems = !isset(self::ITEM_AGNOSTIC_FUNCTIONS[$functionName]) || ($functionName === 'array_keys' && count($args) > 1);
+        foreach ($args as $arg) {
+            if ($arg->name !== null || $arg->unpack
+                || !self::isPlainType($scope->getType($arg->value), $readsItems ? 0 : self::MAX_ARRAY_DEPTH)) {
+                return false;
+            }
+        }
+
+        if (isset(self::ENCODING_FUNCTIONS[$functionName])) {
+            return isset($args[self::ENCODING_FUNCTIONS[$functionName]]);
+        }
+        if (isset(self::FORMAT_FUNCTIONS[$functionName])) {
+            return isset($args[0]) && $args[0]->value instanceof String_
+                && preg_match('/%[^%a-zA-Z]*[eEfgG]/', $args[0]->value->value) !== 1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether the type can not be an object, with the items of arrays checked up to the maximum depth.
+     */
+    private static function isPlainType(Type $type, int $depth): bool
+    {
+        if (!$type->isObject()->no()) {
+            return false;
+        }
+        if ($depth >= self::MAX_ARRAY_DEPTH) {
+            return true;
+        }
+        foreach ($type->getArrays() as $array) {
+            if (!self::isPlainType($array->getItemType(), $depth + 1)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
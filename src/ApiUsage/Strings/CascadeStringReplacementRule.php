@@ -5,10 +5,7 @@ declare(strict_types=1);
 namespace macropage\PHPStan\Inspections\ApiUsage\Strings;
 
 use PhpParser\Node;
-use PhpParser\Node\Expr\Assign;
 use PhpParser\Node\Expr\FuncCall;
-use PhpParser\Node\Expr\Variable;
-use PhpParser\Node\Stmt\Return_;
 use PHPStan\Analyser\Scope;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
@@ -18,10 +15,12 @@ use PHPStan\Rules\RuleError;
  * Detects cascading str_replace(...) calls that can be merged.
  *
  * This rule identifies:
- * - Cascading replacements: Multiple str_replace calls on the same variable that can be merged
  * - Nested replacements: str_replace calls with another str_replace as the subject
  * - Search simplification: Arrays with identical search values that can be simplified
  *
+ * Cascading replacements, i.e. several calls on the same variable across statements, are
+ * fused into one strtr() call by StringReplacementFusionRule.
+ *
  * @implements Rule<FuncCall>
  */
 final class CascadeStringReplacementRule implements Rule
@@ -45,14 +44,6 @@ final class CascadeStringReplacementRule implements Rule
 
         $errors = [];
 
-        $errors = [];
-
-        // Check for cascading replacements
-        $cascadingError = $this->checkCascadingReplacements($node, $scope);
-        if ($cascadingError !== null) {
-            $errors[] = $cascadingError;
-        }
-
         // Check for nested replacements
         $nestedError = $this->checkNestedReplacements($args[2]->value);
         if ($nestedError !== null) {
@@ -68,13 +59,6 @@ final class CascadeStringReplacementRule implements Rule
         return $errors;
     }
 
-    private function checkCascadingReplacements(FuncCall $node, Scope $scope): ?RuleError
-    {
-        // TODO: Implement cascading detection
-        // This requires more complex AST traversal to find previous str_replace calls
-        return null;
-    }
-
     private function checkNestedReplacements(Node $subject): ?RuleError
     {
         if (!($subject instanceof FuncCall)) {
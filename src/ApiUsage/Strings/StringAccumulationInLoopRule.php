@@ -0,0 +1,209 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Strings;
+
+use macropage\PHPStan\Inspections\ByteSize;
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopBounds;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt;
+use PHPStan\Analyser\Scope;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects strings accumulated in loops whose cost grows quadratically with the iteration count:
+ * - the accumulator is read by a copying function in the same loop, e.g. `$out .= $x; $out = trim($out);`,
+ *   which copies the whole string built so far on every iteration
+ * - the accumulator is prepended to, e.g. `$out = $x . $out;`, which always allocates a new string
+ * - the accumulator is rebuilt by `$out = $out . $x;`, which the engine only extends in place
+ *   when the string is not shared (use `.=`)
+ *
+ * Plain `.=` appends are amortized by the engine and not reported. Accumulators reset by a plain
+ * assignment in the loop body (e.g. `$line = ''; $line .= $x; echo $line;`) only grow within one
+ * iteration and are not reported either. With literal loop bounds (see
+ * LoopBounds) and a literal appended string, the copied volume is estimated as a(n)(n+1)/2 bytes.
+ *
+ * @implements Rule<Stmt>
+ */
+final class StringAccumulationInLoopRule implements Rule
+{
+    private const string MESSAGE_COPIED = "'%s' is accumulated in a loop and copied by '%s(...)' on every iteration, the copies grow quadratically.";
+    private const string MESSAGE_PREPENDED = "'%s' is prepended to in a loop, every iteration copies the whole string built so far.";
+    private const string MESSAGE_SELF_CONCAT = "'%s' is rebuilt by concatenation in a loop, use '.=' or collect the parts.";
+
+    private const string TIP = 'Collect the parts in an array and implode() them after the loop, or write them into ob_start() or a php://temp stream.';
+    private const string TIP_ESTIMATE = ' Estimated copy volume: %s over %d iterations.';
+    private const string TIP_ESTIMATE_UNKNOWN = ' Copy volume: ~n²/2 times the appended length for n iterations.';
+
+    private const string KIND_PREPENDED = 'prepended';
+    private const string KIND_SELF_CONCAT = 'selfConcat';
+    private const string KIND_APPENDED = 'appended';
+
+    /** @var array<string, true> builtins returning a modified copy of their string argument */
+    private const array COPYING_FUNCTIONS = [
+        'str_replace' => true, 'str_ireplace' => true, 'preg_replace' => true, 'preg_replace_callback' => true,
+        'substr' => true, 'substr_replace' => true, 'strtolower' => true, 'strtoupper' => true,
+        'mb_strtolower' => true, 'mb_strtoupper' => true, 'mb_substr' => true, 'trim' => true, 'rtrim' => true,
+        'ltrim' => true, 'strrev' => true, 'str_pad' => true, 'sprintf' => true, 'htmlspecialchars' => true,
+        'htmlentities' => true, 'wordwrap' => true, 'strtr' => true, 'addslashes' => true, 'nl2br' => true,
+        'ucfirst' => true, 'ucwords' => true, 'strip_tags' => true,
+    ];
+
+    public function getNodeType(): string
+    {
+        return Stmt::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof Stmt\For_ && !$node instanceof Stmt\Foreach_ && !$node instanceof Stmt\While_ && !$node instanceof Stmt\Do_) {
+            return [];
+        }
+
+        /** @var array<string, array{kind: string, line: int, appended: Expr}> $accumulators */
+        $accumulators = [];
+        /** @var array<string, array{string, int}> $copies variable => [function, line] */
+        $copies = [];
+        /** @var array<string, true> $resets */
+        $resets = [];
+        foreach ($node->stmts as $stmt) {
+            $this->collect($stmt, $accumulators, $copies, $resets);
+        }
+
+        $iterations = LoopBounds::getIterations($node);
+        $errors = [];
+        foreach ($accumulators as $variableName => $accumulator) {
+            if (isset($resets[$variableName])) {
+                continue;
+            }
+            if (isset($copies[$variableName])) {
+                [$function, $line] = $copies[$variableName];
+                $message = sprintf(self::MESSAGE_COPIED, '$' . $variableName, $function);
+            } elseif ($accumulator['kind'] !== self::KIND_APPENDED) {
+                $line = $accumulator['line'];
+                $message = sprintf($accumulator['kind'] === self::KIND_PREPENDED ? self::MESSAGE_PREPENDED : self::MESSAGE_SELF_CONCAT, '$' . $variableName);
+            } else {
+                continue;
+            }
+
+            $errors[] = RuleErrorBuilder::message($message)
+                ->identifier('performance.stringAccumulationInLoop')
+                ->tip(self::TIP . $this->estimate($accumulator['appended'], $iterations))
+                ->line($line)
+                ->build();
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @param array<string, array{kind: string, line: int, appended: Expr}> $accumulators
+     * @param array<string, array{string, int}> $copies
+     * @param array<string, true> $resets
+     */
+    private function collect(Node $node, array &$accumulators, array &$copies, array &$resets, bool $isNested = false): void
+    {
+        // Closures and classes are not executed here
+        if ($node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+            return;
+        }
+        // Accumulators of nested loops are reported for those loops, copies in them still count
+        $isNested = $isNested || $node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_;
+
+        if (!$isNested) {
+            $accumulator = $this->matchAccumulation($node);
+            if ($accumulator !== null) {
+                [$variableName, $kind, $appended] = $accumulator;
+                // Keep the most expensive pattern per variable
+                $existing = $accumulators[$variableName]['kind'] ?? null;
+                if ($existing === null || $existing === self::KIND_APPENDED || ($existing === self::KIND_SELF_CONCAT && $kind === self::KIND_PREPENDED)) {
+                    $accumulators[$variableName] = ['kind' => $kind, 'line' => $node->getStartLine(), 'appended' => $appended];
+                }
+            } elseif ($node instanceof Expr\Assign && $node->var instanceof Variable && is_string($node->var->name)
+                && !$this->readsVariable($node->expr, $node->var->name)) {
+                $resets[$node->var->name] = true;
+            }
+        }
+
+        if ($node instanceof FuncCall && $node->name instanceof Node\Name && !$node->isFirstClassCallable()
+            && isset(self::COPYING_FUNCTIONS[$node->name->toLowerString()])) {
+            foreach ($node->getArgs() as $arg) {
+                if ($arg->value instanceof Variable && is_string($arg->value->name) && !isset($copies[$arg->value->name])) {
+                    $copies[$arg->value->name] = [$node->name->toString(), $node->getStartLine()];
+                }
+            }
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                if ($child instanceof Node) {
+                    $this->collect($child, $accumulators, $copies, $resets, $isNested);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return array{string, string, Expr}|null [variable, kind, appended expression]
+     */
+    private function matchAccumulation(Node $node): ?array
+    {
+        if ($node instanceof Expr\AssignOp\Concat && $node->var instanceof Variable && is_string($node->var->name)) {
+            return [$node->var->name, self::KIND_APPENDED, $node->expr];
+        }
+        if (!$node instanceof Expr\Assign || !$node->var instanceof Variable || !is_string($node->var->name)
+            || !$node->expr instanceof Expr\BinaryOp\Concat) {
+            return null;
+        }
+
+        $variableName = $node->var->name;
+        $isAccumulator = static fn (Expr $expr): bool => $expr instanceof Variable && $expr->name === $variableName;
+
+        // `$s = $s . $a . $b` is parsed as `($s . $a) . $b`
+        $leftmost = $node->expr;
+        while ($leftmost->left instanceof Expr\BinaryOp\Concat) {
+            $leftmost = $leftmost->left;
+        }
+        if ($isAccumulator($leftmost->left)) {
+            return [$variableName, self::KIND_SELF_CONCAT, $node->expr->right];
+        }
+        if ($isAccumulator($node->expr->right)) {
+            return [$variableName, self::KIND_PREPENDED, $node->expr->left];
+        }
+
+        return null;
+    }
+
+    private function readsVariable(Node $node, string $variableName): bool
+    {
+        if ($node instanceof Variable) {
+            return $node->name === $variableName;
+        }
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            foreach (is_array($subNode) ? $subNode : [$subNode] as $child) {
+                if ($child instanceof Node && $this->readsVariable($child, $variableName)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private function estimate(Expr $appended, ?int $iterations): string
+    {
+        if ($iterations === null || !$appended instanceof String_) {
+            return self::TIP_ESTIMATE_UNKNOWN;
+        }
+
+        $bytes = strlen($appended->value) * $iterations * ($iterations + 1) / 2;
+
+        return sprintf(self::TIP_ESTIMATE, ByteSize::format((int) $bytes), $iterations);
+    }
+}
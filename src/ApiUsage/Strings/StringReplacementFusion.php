@@ -0,0 +1,294 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Strings;
+
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\Array_;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\LNumber;
+use PhpParser\Node\Scalar\String_;
+
+/**
+ * Literal replacements of str_replace(), str_ireplace(), strtr() and trivial preg_replace() calls,
+ * and their fusion into a single strtr() map.
+ *
+ * Every call is reduced to groups of [search, replace] pairs applied one after another; a strtr()
+ * call is one group applied at once, the arrays of str_replace() and preg_replace() are applied pair
+ * by pair. fuse() proves that the sequence equals one strtr() pass: no two searches may overlap in
+ * the subject (except a later search inside an earlier, longer one, which strtr() prefers as well)
+ * and no replacement may form a later search together with the surrounding text. A later search
+ * found inside an earlier replacement is fine, the replacement is precomputed by applying the later
+ * groups to it.
+ */
+final class StringReplacementFusion
+{
+    /**
+     * The replacement groups of the call and its subject, null when the call is not a literal replacement.
+     *
+     * @return array{subject: Expr, groups: list<list<array{string, string}>>}|null
+     */
+    public static function analyzeCall(FuncCall $call): ?array
+    {
+        if (!$call->name instanceof Name || $call->isFirstClassCallable()) {
+            return null;
+        }
+        $args = $call->getArgs();
+        foreach ($args as $arg) {
+            if ($arg->name !== null || $arg->unpack) {
+                return null;
+            }
+        }
+
+        $function = $call->name->toLowerString();
+        $groups = match (true) {
+            ($function === 'str_replace' || $function === 'str_ireplace') && count($args) === 3
+                => self::replaceGroups($args[0]->value, $args[1]->value, $function === 'str_ireplace'),
+            $function === 'preg_replace' && count($args) === 3
+                => self::pregReplaceGroups($args[0]->value, $args[1]->value),
+            $function === 'strtr' && count($args) === 2
+                => self::strtrMapGroups($args[1]->value),
+            $function === 'strtr' && count($args) === 3
+                => self::strtrCharacterGroups($args[1]->value, $args[2]->value),
+            default => null,
+        };
+        if ($groups === null) {
+            return null;
+        }
+
+        return ['subject' => $args[$function === 'strtr' ? 0 : 2]->value, 'groups' => $groups];
+    }
+
+    /**
+     * The strtr() map doing all groups in one pass, null when the groups do not commute.
+     *
+     * @param list<list<array{string, string}>> $groups
+     * @return array<string, string>|null
+     */
+    public static function fuse(array $groups): ?array
+    {
+        foreach ($groups as $index => $group) {
+            foreach ($group as [$search, $replace]) {
+                for ($next = $index + 1; $next < count($groups); $next++) {
+                    foreach ($groups[$next] as [$laterSearch]) {
+                        if (self::conflicts($search, $replace, $laterSearch)) {
+                            return null;
+                        }
+                    }
+                }
+            }
+        }
+
+        $map = [];
+        foreach ($groups as $index => $group) {
+            foreach ($group as [$search, $replace]) {
+                if (array_key_exists($search, $map)) {
+                    continue;
+                }
+                for ($next = $index + 1; $next < count($groups); $next++) {
+                    $replace = self::applyGroup($groups[$next], $replace);
+                }
+                $map[$search] = $replace;
+            }
+        }
+
+        return $map;
+    }
+
+    /**
+     * Whether the pair of an earlier group and the search of a later group cannot be done in one pass.
+     */
+    private static function conflicts(string $search, string $replace, string $laterSearch): bool
+    {
+        // The later search would match across or around text matched by the earlier one
+        if ($search !== $laterSearch && (str_contains($laterSearch, $search) || self::overlaps($search, $laterSearch))) {
+            return true;
+        }
+
+        // The replacement would form the later search together with the surrounding text
+        if ($replace === '') {
+            return strlen($laterSearch) > 1;
+        }
+
+        return ($replace !== $laterSearch && str_contains($laterSearch, $replace)) || self::overlaps($replace, $laterSearch);
+    }
+
+    /**
+     * Whether a proper suffix of one string is a proper prefix of the other.
+     */
+    private static function overlaps(string $first, string $second): bool
+    {
+        $limit = min(strlen($first), strlen($second)) - 1;
+        for ($length = 1; $length <= $limit; $length++) {
+            if (substr($first, -$length) === substr($second, 0, $length) || substr($second, -$length) === substr($first, 0, $length)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param list<array{string, string}> $group
+     */
+    private static function applyGroup(array $group, string $subject): string
+    {
+        if (count($group) === 1) {
+            return str_replace($group[0][0], $group[0][1], $subject);
+        }
+
+        return strtr($subject, array_column($group, 1, 0));
+    }
+
+    /**
+     * @return list<list<array{string, string}>>|null
+     */
+    private static function replaceGroups(Expr $search, Expr $replace, bool $isCaseInsensitive): ?array
+    {
+        $searches = self::literalStrings($search);
+        if ($searches === null) {
+            return null;
+        }
+        $replacements = $replace instanceof Array_ && $search instanceof Array_ ? self::literalStrings($replace) : null;
+        if ($replacements === null && !$replace instanceof String_) {
+            return null;
+        }
+
+        $groups = [];
+        foreach ($searches as $index => $value) {
+            // Case-insensitive searches are only fused when case does not matter for them
+            if ($isCaseInsensitive && strtolower($value) !== strtoupper($value)) {
+                return null;
+            }
+            if ($value !== '') {
+                $groups[] = [[$value, $replace instanceof String_ ? $replace->value : ($replacements[$index] ?? '')]];
+            }
+        }
+
+        return $groups;
+    }
+
+    /**
+     * preg_replace() with patterns matching a literal text, e.g. '/\.php$/' is not trivial, '/\./' is.
+     *
+     * @return list<list<array{string, string}>>|null
+     */
+    private static function pregReplaceGroups(Expr $pattern, Expr $replace): ?array
+    {
+        $patterns = self::literalStrings($pattern);
+        if ($patterns === null) {
+            return null;
+        }
+        $replacements = $replace instanceof Array_ && $pattern instanceof Array_ ? self::literalStrings($replace) : null;
+        if ($replacements === null && !$replace instanceof String_) {
+            return null;
+        }
+
+        $groups = [];
+        foreach ($patterns as $index => $value) {
+            $search = self::literalPattern($value);
+            $replacement = $replace instanceof String_ ? $replace->value : ($replacements[$index] ?? '');
+            // References like $1 or \1 in the replacement
+            if ($search === null || strpbrk($replacement, '$\\') !== false) {
+                return null;
+            }
+            $groups[] = [[$search, $replacement]];
+        }
+
+        return $groups;
+    }
+
+    private static function literalPattern(string $pattern): ?string
+    {
+        $length = strlen($pattern);
+        if ($length < 3 || ctype_alnum($pattern[0]) || ctype_space($pattern[0]) || $pattern[0] === '\\'
+            || strpbrk($pattern[0], '([{<') !== false || $pattern[$length - 1] !== $pattern[0]) {
+            return null;
+        }
+
+        $literal = '';
+        for ($index = 1; $index < $length - 1; $index++) {
+            $character = $pattern[$index];
+            if ($character === '\\') {
+                // Escaped punctuation is literal, \d, \w, \1 and friends are not
+                if (++$index >= $length - 1 || ctype_alnum($pattern[$index]) || ctype_space($pattern[$index])) {
+                    return null;
+                }
+                $literal .= $pattern[$index];
+                continue;
+            }
+            if (strpbrk($character, '.^$|()[]{}*+?' . $pattern[0]) !== false) {
+                return null;
+            }
+            $literal .= $character;
+        }
+
+        return $literal === '' ? null : $literal;
+    }
+
+    /**
+     * @return list<list<array{string, string}>>|null
+     */
+    private static function strtrMapGroups(Expr $map): ?array
+    {
+        if (!$map instanceof Array_) {
+            return null;
+        }
+
+        $group = [];
+        foreach ($map->items as $item) {
+            if ($item === null || $item->byRef || $item->unpack || !$item->value instanceof String_
+                || !($item->key instanceof String_ || $item->key instanceof LNumber)) {
+                return null;
+            }
+            $search = (string) $item->key->value;
+            if ($search !== '') {
+                $group[$search] = [$search, $item->value->value];
+            }
+        }
+
+        return $group === [] ? [] : [array_values($group)];
+    }
+
+    /**
+     * @return list<list<array{string, string}>>|null
+     */
+    private static function strtrCharacterGroups(Expr $from, Expr $to): ?array
+    {
+        if (!$from instanceof String_ || !$to instanceof String_) {
+            return null;
+        }
+
+        $group = [];
+        $length = min(strlen($from->value), strlen($to->value));
+        for ($index = 0; $index < $length; $index++) {
+            // The last mapping of a character wins
+            $group[$from->value[$index]] = [$from->value[$index], $to->value[$index]];
+        }
+
+        return $group === [] ? [] : [array_values($group)];
+    }
+
+    /**
+     * @return list<string>|null
+     */
+    private static function literalStrings(Expr $expr): ?array
+    {
+        if ($expr instanceof String_) {
+            return [$expr->value];
+        }
+        if (!$expr instanceof Array_) {
+            return null;
+        }
+
+        $values = [];
+        foreach ($expr->items as $item) {
+            if ($item === null || $item->key !== null || $item->byRef || $item->unpack || !$item->value instanceof String_) {
+                return null;
+            }
+            $values[] = $item->value->value;
+        }
+
+        return $values;
+    }
+}
@@ -0,0 +1,227 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Strings;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\Array_;
+use PhpParser\Node\Expr\ArrayItem;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt;
+use PhpParser\NodeFinder;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\FileNode;
+use PHPStan\Rules\IdentifierRuleError;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects a string variable passed through several literal str_replace(), str_ireplace(), strtr()
+ * or trivial preg_replace() calls, and suggests one strtr() call with the precomputed map:
+ *
+ *     $slug = str_replace(' ', '-', $title);
+ *     $log->debug('slugging');
+ *     $slug = str_replace(['ä', 'ö'], ['ae', 'oe'], $slug);
+ *     // => $slug = strtr($title, [' ' => '-', 'ä' => 'ae', 'ö' => 'oe']);
+ *
+ * The variable is followed through a straight-line run of statements: statements which do not
+ * touch it are skipped, reading it or any control flow ends the run. The calls are only reported
+ * when StringReplacementFusion proves that one strtr() pass gives the same result. Each call
+ * scans the whole string, so the fused call saves N-1 passes over it.
+ *
+ * str_replace() and preg_replace() also accept arrays of subjects, where strtr() throws a
+ * TypeError. The statement list marks the first call of a fusable run, which is reported when it
+ * is visited and the scope of the call site proves the initial subject to be a string.
+ *
+ * @implements Rule<Node>
+ */
+final class StringReplacementFusionRule implements Rule
+{
+    private const string MESSAGE = '%d replacement calls on $%s can be fused into a single strtr() call with a precomputed map.';
+
+    private const int MIN_CALLS = 2;
+
+    private const string FUSION_ATTRIBUTE = 'stringReplacementFusion';
+
+    /** Calls which can read or write any variable of the scope */
+    private const array SCOPE_FUNCTIONS = ['compact', 'extract', 'get_defined_vars', 'parse_str'];
+
+    private Standard $printer;
+
+    private NodeFinder $nodeFinder;
+
+    public function __construct()
+    {
+        $this->printer = new Standard();
+        $this->nodeFinder = new NodeFinder();
+    }
+
+    public function getNodeType(): string
+    {
+        return Node::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if ($node instanceof FuncCall) {
+            return $this->report($node, $scope);
+        }
+
+        if ($node instanceof FileNode) {
+            $stmts = $node->getNodes();
+        } elseif (!$node instanceof Stmt\ClassLike && property_exists($node, 'stmts') && is_array($node->stmts)) {
+            $stmts = $node->stmts;
+        } else {
+            return [];
+        }
+
+        /** @var array<string, array{base: Expr, groups: list<list<array{string, string}>>, calls: list<Stmt\Expression>}> $chains */
+        $chains = [];
+
+        foreach ($stmts as $stmt) {
+            if (!$stmt instanceof Stmt) {
+                continue;
+            }
+
+            // Control flow and scope-wide access end all runs
+            if (!($stmt instanceof Stmt\Expression || $stmt instanceof Stmt\Echo_ || $stmt instanceof Stmt\Nop)
+                || $this->accessesWholeScope($stmt)) {
+                foreach ($chains as $chain) {
+                    $this->mark($chain);
+                }
+                $chains = [];
+                continue;
+            }
+
+            $step = $this->getStep($stmt);
+            foreach ($chains as $name => $chain) {
+                if ($step !== null && $step['variable'] === $name && $step['continues']) {
+                    $chains[$name]['groups'] = [...$chain['groups'], ...$step['groups']];
+                    $chains[$name]['calls'][] = $stmt;
+                    continue;
+                }
+                if ($this->mentions($stmt, $name)) {
+                    $this->mark($chain);
+                    unset($chains[$name]);
+                }
+            }
+
+            if ($step !== null && !isset($chains[$step['variable']])) {
+                $chains[$step['variable']] = ['base' => $step['subject'], 'groups' => $step['groups'], 'calls' => [$stmt]];
+            }
+        }
+
+        foreach ($chains as $chain) {
+            $this->mark($chain);
+        }
+
+        return [];
+    }
+
+    /**
+     * `$v = str_replace(..., $subject);` with literal replacements; continues when the subject is $v itself.
+     *
+     * @return array{variable: string, subject: Expr, groups: list<list<array{string, string}>>, continues: bool}|null
+     */
+    private function getStep(Stmt $stmt): ?array
+    {
+        if (!$stmt instanceof Stmt\Expression || !$stmt->expr instanceof Assign
+            || !$stmt->expr->var instanceof Variable || !is_string($stmt->expr->var->name)
+            || !$stmt->expr->expr instanceof FuncCall) {
+            return null;
+        }
+
+        $replacement = StringReplacementFusion::analyzeCall($stmt->expr->expr);
+        if ($replacement === null || $replacement['groups'] === []) {
+            return null;
+        }
+        $name = $stmt->expr->var->name;
+
+        return [
+            'variable'  => $name,
+            'subject'   => $replacement['subject'],
+            'groups'    => $replacement['groups'],
+            'continues' => $replacement['subject'] instanceof Variable && $replacement['subject']->name === $name,
+        ];
+    }
+
+    /**
+     * Marks the first call of a run which can be fused, with its message and tip.
+     *
+     * @param array{base: Expr, groups: list<list<array{string, string}>>, calls: list<Stmt\Expression>} $chain
+     */
+    private function mark(array $chain): void
+    {
+        if (count($chain['calls']) < self::MIN_CALLS) {
+            return;
+        }
+
+        $map = StringReplacementFusion::fuse($chain['groups']);
+        if ($map === null) {
+            return;
+        }
+
+        $items = [];
+        foreach ($map as $search => $replace) {
+            $items[] = new ArrayItem(new String_($replace), new String_((string) $search));
+        }
+        $firstCall = $chain['calls'][0];
+        assert($firstCall->expr instanceof Assign);
+        $fused = new Assign($firstCall->expr->var, new FuncCall(new Node\Name('strtr'), [
+            new Node\Arg($chain['base']),
+            new Node\Arg(new Array_($items, ['kind' => Array_::KIND_SHORT])),
+        ]));
+
+        $lines = array_map(static fn (Stmt $call): int => $call->getStartLine(), $chain['calls']);
+        assert($firstCall->expr->var instanceof Variable && is_string($firstCall->expr->var->name));
+        assert($firstCall->expr->expr instanceof FuncCall);
+
+        $firstCall->expr->expr->setAttribute(self::FUSION_ATTRIBUTE, [
+            'base'    => $chain['base'],
+            'message' => sprintf(self::MESSAGE, count($chain['calls']), $firstCall->expr->var->name),
+            'tip'     => sprintf('Replace the calls on lines %s with: %s;', implode(', ', $lines), $this->printer->prettyPrintExpr($fused)),
+            'line'    => $firstCall->getStartLine(),
+        ]);
+    }
+
+    /**
+     * @return list<IdentifierRuleError>
+     */
+    private function report(FuncCall $call, Scope $scope): array
+    {
+        /** @var array{base: Expr, message: string, tip: string, line: int}|null $fusion */
+        $fusion = $call->getAttribute(self::FUSION_ATTRIBUTE);
+        if ($fusion === null || !$scope->getType($fusion['base'])->isString()->yes()) {
+            return [];
+        }
+
+        return [
+            RuleErrorBuilder::message($fusion['message'])
+                ->identifier('strReplace.chainFusion')
+                ->tip($fusion['tip'])
+                ->line($fusion['line'])
+                ->build(),
+        ];
+    }
+
+    private function mentions(Stmt $stmt, string $name): bool
+    {
+        return $this->nodeFinder->findFirst(
+            $stmt,
+            static fn (Node $node): bool => $node instanceof Variable && ($node->name === $name || !is_string($node->name))
+        ) !== null;
+    }
+
+    private function accessesWholeScope(Stmt $stmt): bool
+    {
+        return $this->nodeFinder->findFirst($stmt, static fn (Node $node): bool => $node instanceof Expr\Include_
+            || $node instanceof Expr\Eval_
+            || $node instanceof Expr\Throw_
+            || ($node instanceof FuncCall && $node->name instanceof Node\Name
+                && in_array($node->name->toLowerString(), self::SCOPE_FUNCTIONS, true))) !== null;
+    }
+}
@@ -0,0 +1,301 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\ApiUsage\Strings;
+
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\BinaryOp;
+use PhpParser\Node\Expr\BinaryOp\Equal;
+use PhpParser\Node\Expr\BinaryOp\Identical;
+use PhpParser\Node\Expr\BinaryOp\NotEqual;
+use PhpParser\Node\Expr\BinaryOp\NotIdentical;
+use PhpParser\Node\Expr\ConstFetch;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\UnaryMinus;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\LNumber;
+use PhpParser\PrettyPrinter\Standard;
+
+/**
+ * Shared classification of string searches used as a test, for the strpos-family inspections
+ * (StrContainsCanBeUsedRule, StrStartsWithCanBeUsedRule, StrEndsWithCanBeUsedRule,
+ * StrStrUsedAsStrPosRule, SubStrUsedAsStrPosRule, FixedTimeStartWithRule and
+ * StringsFirstCharactersCompareRule).
+ *
+ * A search call is described once (describeCall()): its family, haystack, needle and length.
+ * A comparison wrapping one (classify()) is reduced to the test it performs, e.g.
+ * `strpos($h, $n) === false` is a negated "contains" and `substr($h, -strlen($n)) === $n` an
+ * "endsWith". Both results are cached as node attributes, so the rules visiting the same
+ * comparison do not derive it again. replacement() is the PHP 8 str_contains()/str_starts_with()/
+ * str_ends_with() expression of a test, where one exists.
+ */
+final class StringSearchComparison
+{
+    public const string FAMILY_POSITION  = 'position';
+    public const string FAMILY_SUBSTRING = 'substring';
+    public const string FAMILY_COMPARE   = 'compare';
+    public const string FAMILY_HEAD      = 'head';
+    public const string FAMILY_TAIL      = 'tail';
+
+    public const string TEST_CONTAINS    = 'contains';
+    public const string TEST_STARTS_WITH = 'startsWith';
+    public const string TEST_ENDS_WITH   = 'endsWith';
+
+    private const string CALL_ATTRIBUTE       = 'stringSearchCall';
+    private const string COMPARISON_ATTRIBUTE = 'stringSearchComparison';
+
+    /** @var array<string, array{string, bool}> function => [family, case-insensitive] */
+    private const array FUNCTIONS = [
+        'strpos'      => [self::FAMILY_POSITION, false],
+        'stripos'     => [self::FAMILY_POSITION, true],
+        'mb_strpos'   => [self::FAMILY_POSITION, false],
+        'mb_stripos'  => [self::FAMILY_POSITION, true],
+        'strstr'      => [self::FAMILY_SUBSTRING, false],
+        'stristr'     => [self::FAMILY_SUBSTRING, true],
+        'mb_strstr'   => [self::FAMILY_SUBSTRING, false],
+        'mb_stristr'  => [self::FAMILY_SUBSTRING, true],
+        'strncmp'     => [self::FAMILY_COMPARE, false],
+        'strncasecmp' => [self::FAMILY_COMPARE, true],
+        'substr'      => [self::FAMILY_HEAD, false],
+        'mb_substr'   => [self::FAMILY_HEAD, false],
+    ];
+
+    private const array LENGTH_FUNCTIONS = ['strlen', 'mb_strlen'];
+
+    private const array CASE_FUNCTIONS = ['strtolower', 'strtoupper', 'mb_strtolower', 'mb_strtoupper'];
+
+    private const array OPERATORS = [
+        Identical::class    => '===',
+        NotIdentical::class => '!==',
+        Equal::class        => '==',
+        NotEqual::class     => '!=',
+    ];
+
+    private static ?Standard $printer = null;
+
+    /**
+     * The search performed by the call, null for other calls.
+     *
+     * @return array{function: string, family: string, haystack: Expr, needle: Expr, length: Expr|null, caseInsensitive: bool, multibyte: bool}|null
+     */
+    public static function describeCall(FuncCall $call): ?array
+    {
+        if (!$call->hasAttribute(self::CALL_ATTRIBUTE)) {
+            $call->setAttribute(self::CALL_ATTRIBUTE, self::analyzeCall($call) ?? false);
+        }
+
+        return $call->getAttribute(self::CALL_ATTRIBUTE) ?: null;
+    }
+
+    /**
+     * The test performed by the comparison, null when it does not compare a string search.
+     *
+     * @return array{
+     *     call: FuncCall,
+     *     function: string,
+     *     family: string,
+     *     haystack: Expr,
+     *     needle: Expr,
+     *     length: Expr|null,
+     *     caseInsensitive: bool,
+     *     multibyte: bool,
+     *     test: string,
+     *     negated: bool,
+     *     strict: bool,
+     *     operator: string,
+     *     caseFolded: bool
+     * }|null
+     */
+    public static function classify(BinaryOp $comparison): ?array
+    {
+        if (!$comparison->hasAttribute(self::COMPARISON_ATTRIBUTE)) {
+            $comparison->setAttribute(self::COMPARISON_ATTRIBUTE, self::analyzeComparison($comparison) ?? false);
+        }
+
+        return $comparison->getAttribute(self::COMPARISON_ATTRIBUTE) ?: null;
+    }
+
+    /**
+     * The str_contains()/str_starts_with()/str_ends_with() equivalent of the test, null when the
+     * search is case-insensitive or the result differs, e.g. for `strpos(...) == false`.
+     *
+     * @param array{test: string, negated: bool, strict: bool, family: string, haystack: Expr, needle: Expr, caseInsensitive: bool, caseFolded: bool} $comparison
+     */
+    public static function replacement(array $comparison): ?string
+    {
+        // A loose comparison cannot tell position 0 from false
+        if ($comparison['caseInsensitive'] || $comparison['caseFolded']
+            || (!$comparison['strict'] && in_array($comparison['family'], [self::FAMILY_POSITION, self::FAMILY_SUBSTRING], true))) {
+            return null;
+        }
+
+        $function = match ($comparison['test']) {
+            self::TEST_CONTAINS    => 'str_contains',
+            self::TEST_STARTS_WITH => 'str_starts_with',
+            self::TEST_ENDS_WITH   => 'str_ends_with',
+        };
+
+        return sprintf('%s%s(%s, %s)', $comparison['negated'] ? '!' : '', $function, self::print($comparison['haystack']), self::print($comparison['needle']));
+    }
+
+    public static function print(Expr $expr): string
+    {
+        return (self::$printer ??= new Standard())->prettyPrintExpr($expr);
+    }
+
+    /**
+     * @return array{function: string, family: string, haystack: Expr, needle: Expr, length: Expr|null, caseInsensitive: bool, multibyte: bool}|null
+     */
+    private static function analyzeCall(FuncCall $call): ?array
+    {
+        $function = self::functionName($call);
+        if ($function === null || !isset(self::FUNCTIONS[$function])) {
+            return null;
+        }
+        [$family, $caseInsensitive] = self::FUNCTIONS[$function];
+        $args = $call->getArgs();
+        foreach ($args as $arg) {
+            if ($arg->name !== null || $arg->unpack) {
+                return null;
+            }
+        }
+
+        $length = null;
+        switch ($family) {
+            case self::FAMILY_POSITION:
+                // An offset changes the meaning of a position compared against 0
+                if (count($args) !== 2) {
+                    return null;
+                }
+                $needle = $args[1]->value;
+                break;
+
+            case self::FAMILY_SUBSTRING:
+                if (count($args) < 2) {
+                    return null;
+                }
+                $needle = $args[1]->value;
+                break;
+
+            case self::FAMILY_COMPARE:
+                if (count($args) !== 3) {
+                    return null;
+                }
+                $needle = $args[1]->value;
+                $length = $args[2]->value;
+                break;
+
+            default:
+                // substr($h, 0, strlen($n)) or substr($h, -strlen($n)), mb_substr() with an optional encoding
+                $maxArgs = $function === 'mb_substr' ? 4 : 3;
+                if (count($args) === 2 && $args[1]->value instanceof UnaryMinus) {
+                    $family = self::FAMILY_TAIL;
+                    $needle = self::lengthOperand($args[1]->value->expr);
+                } elseif (count($args) >= 3 && count($args) <= $maxArgs
+                    && $args[1]->value instanceof LNumber && $args[1]->value->value === 0) {
+                    $needle = self::lengthOperand($args[2]->value);
+                } else {
+                    return null;
+                }
+                if ($needle === null) {
+                    return null;
+                }
+        }
+
+        return [
+            'function'        => $function,
+            'family'          => $family,
+            'haystack'        => $args[0]->value,
+            'needle'          => $needle,
+            'length'          => $length,
+            'caseInsensitive' => $caseInsensitive,
+            'multibyte'       => str_starts_with($function, 'mb_'),
+        ];
+    }
+
+    /**
+     * @return array{call: FuncCall, function: string, family: string, haystack: Expr, needle: Expr, length: Expr|null, caseInsensitive: bool, multibyte: bool, test: string, negated: bool, strict: bool, operator: string, caseFolded: bool}|null
+     */
+    private static function analyzeComparison(BinaryOp $comparison): ?array
+    {
+        if (!isset(self::OPERATORS[$comparison::class])) {
+            return null;
+        }
+        $isEquality = $comparison instanceof Identical || $comparison instanceof Equal;
+
+        foreach ([[$comparison->left, $comparison->right], [$comparison->right, $comparison->left]] as [$side, $other]) {
+            $caseFolded = false;
+            if ($side instanceof FuncCall && in_array(self::functionName($side), self::CASE_FUNCTIONS, true) && count($side->getArgs()) >= 1) {
+                $caseFolded = true;
+                $side = $side->getArgs()[0]->value;
+            }
+            if (!$side instanceof FuncCall || ($search = self::describeCall($side)) === null) {
+                continue;
+            }
+
+            [$test, $negated] = match ($search['family']) {
+                self::FAMILY_POSITION  => self::isFalse($other)
+                    ? [self::TEST_CONTAINS, $isEquality]
+                    : (self::isZero($other) ? [self::TEST_STARTS_WITH, !$isEquality] : [null, false]),
+                self::FAMILY_SUBSTRING => self::isFalse($other) ? [self::TEST_CONTAINS, $isEquality] : [null, false],
+                self::FAMILY_COMPARE   => self::isZero($other) ? [self::TEST_STARTS_WITH, !$isEquality] : [null, false],
+                self::FAMILY_HEAD      => self::isSameNeedle($search['needle'], $other, $caseFolded) ? [self::TEST_STARTS_WITH, !$isEquality] : [null, false],
+                self::FAMILY_TAIL      => self::isSameNeedle($search['needle'], $other, $caseFolded) ? [self::TEST_ENDS_WITH, !$isEquality] : [null, false],
+            };
+            if ($test === null || ($caseFolded && !in_array($search['family'], [self::FAMILY_HEAD, self::FAMILY_TAIL], true))) {
+                continue;
+            }
+
+            return ['call' => $side] + $search + [
+                'test'       => $test,
+                'negated'    => $negated,
+                'strict'     => $comparison instanceof Identical || $comparison instanceof NotIdentical,
+                'operator'   => self::OPERATORS[$comparison::class],
+                'caseFolded' => $caseFolded,
+            ];
+        }
+
+        return null;
+    }
+
+    /**
+     * The needle of the compared slice; a case-folded slice must be compared with the needle folded the same way.
+     */
+    private static function isSameNeedle(Expr $needle, Expr $other, bool $caseFolded): bool
+    {
+        if ($caseFolded) {
+            if (!$other instanceof FuncCall || !in_array(self::functionName($other), self::CASE_FUNCTIONS, true) || count($other->getArgs()) < 1) {
+                return false;
+            }
+            $other = $other->getArgs()[0]->value;
+        }
+
+        return self::print($needle) === self::print($other);
+    }
+
+    /**
+     * strlen($n) => $n
+     */
+    private static function lengthOperand(Expr $expr): ?Expr
+    {
+        if (!$expr instanceof FuncCall || !in_array(self::functionName($expr), self::LENGTH_FUNCTIONS, true) || count($expr->getArgs()) !== 1) {
+            return null;
+        }
+
+        return $expr->getArgs()[0]->value;
+    }
+
+    private static function functionName(FuncCall $call): ?string
+    {
+        return $call->name instanceof Name ? $call->name->toLowerString() : null;
+    }
+
+    private static function isFalse(Expr $expr): bool
+    {
+        return $expr instanceof ConstFetch && $expr->name->toLowerString() === 'false';
+    }
+
+    private static function isZero(Expr $expr): bool
+    {
+        return $expr instanceof LNumber && $expr->value === 0;
+    }
+}
@@ -4,9 +4,7 @@ declare(strict_types=1);
 namespace macropage\PHPStan\Inspections\ApiUsage\Strings;
 
 use PhpParser\Node;
-use PhpParser\Node\Arg;
 use PhpParser\Node\Expr\FuncCall;
-use PhpParser\Node\Name;
 use PhpParser\Node\Scalar\LNumber;
 use PhpParser\Node\Scalar\String_;
 use PHPStan\Analyser\Scope;
@@ -37,36 +35,21 @@ final class StringsFirstCharactersCompareRule implements Rule
             return [];
         }
 
-        // Only for global functions strncmp / strncasecmp with exactly 3 arguments
-        if (!$node->name instanceof Name) {
-            return [];
-        }
-
-        $functionName = strtolower($node->name->toString());
-        if ($functionName !== 'strncmp' && $functionName !== 'strncasecmp') {
-            return [];
-        }
-
-        if (count($node->args) !== 3) {
+        // Only for strncmp / strncasecmp with exactly 3 arguments, see StringSearchComparison
+        $search = StringSearchComparison::describeCall($node);
+        if ($search === null || $search['family'] !== StringSearchComparison::FAMILY_COMPARE) {
             return [];
         }
 
         // Third arg must be numeric literal (int) to match the original inspector intent
-        $lengthArg = $node->args[2] ?? null;
-        if (!$lengthArg instanceof Arg || !$lengthArg->value instanceof LNumber) {
+        $lengthLiteral = $search['length'];
+        if (!$lengthLiteral instanceof LNumber) {
             return [];
         }
-
-        $lengthLiteral = $lengthArg->value;
         $providedLength = (int) $lengthLiteral->value;
 
         // Either first or second argument must be a string literal
-        $stringArg = $this->getLiteralStringArg($node->args[0] ?? null, $node->args[1] ?? null);
-        if ($stringArg === null) {
-            return [];
-        }
-
-        $literal = $stringArg->value;
+        $literal = $search['haystack'] instanceof String_ ? $search['haystack'] : $search['needle'];
         if (!$literal instanceof String_) {
             return [];
         }
@@ -91,16 +74,4 @@ final class StringsFirstCharactersCompareRule implements Rule
                 ->build(),
         ];
     }
-
-    private function getLiteralStringArg(?Arg $first, ?Arg $second): ?Arg
-    {
-        if ($first instanceof Arg && $first->value instanceof String_) {
-            return $first;
-        }
-        if ($second instanceof Arg && $second->value instanceof String_) {
-            return $second;
-        }
-        return null;
-    }
 }
-
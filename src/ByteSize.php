@@ -0,0 +1,18 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+/**
+ * Formats byte counts for messages and tips, e.g. `1.5 KiB`.
+ */
+final class ByteSize
+{
+    public static function format(int $bytes): string
+    {
+        return match (true) {
+            $bytes >= 1 << 20 => sprintf('%.1f MiB', $bytes / (1 << 20)),
+            $bytes >= 1 << 10 => sprintf('%.1f KiB', $bytes / (1 << 10)),
+            default           => $bytes . ' bytes',
+        };
+    }
+}
@@ -3,6 +3,7 @@ declare(strict_types=1);
 
 namespace macropage\PHPStan\Inspections\ForEach;
 
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
 use PhpParser\Node;
 use PhpParser\Node\Expr\ArrayDimFetch;
 use PhpParser\Node\Expr\Assign;
@@ -25,7 +26,8 @@ use PHPStan\Rules\RuleErrorBuilder;
  * It identifies patterns where:
  * - A for-loop iterates over an array using an index variable
  * - The loop counter starts at 0
- * - The loop condition uses count() or similar to check array length
+ * - The loop condition uses count() or similar to check array length, directly or through a
+ *   variable holding it (e.g. `$length = count($items)`, see PossibleValuesDiscovery)
  * - Array elements are accessed using the counter variable
  *
  * Such patterns can be safely converted to foreach loops which are more readable and optimized.
@@ -36,6 +38,10 @@ final class ForeachInvariantsRule implements Rule
 {
     public const string IDENTIFIER_FOREACH_POSSIBLE = 'foreach.usage.possible';
 
+    public function __construct(
+        private readonly PossibleValuesDiscovery $possibleValuesDiscovery,
+    ) {}
+
     /**
      * @return class-string<Node>
      */
@@ -83,7 +89,7 @@ final class ForeachInvariantsRule implements Rule
         }
 
         // Check condition: must compare counter to array length
-        $arrayVar = $this->getArrayFromCondition($forLoop->cond, $counterVar);
+        $arrayVar = $this->getArrayFromCondition($forLoop->cond, $counterVar, $scope);
         if ($arrayVar === null) {
             return $errors;
         }
@@ -141,7 +147,7 @@ final class ForeachInvariantsRule implements Rule
     /**
      * Extract array variable from loop condition that compares counter to count(array).
      */
-    private function getArrayFromCondition(array $conditions, string $counterVar): ?string
+    private function getArrayFromCondition(array $conditions, string $counterVar, Scope $scope): ?string
     {
         if (count($conditions) !== 1) {
             return null;
@@ -159,22 +165,41 @@ final class ForeachInvariantsRule implements Rule
         // Pattern: $i < count($array)
         if ($left instanceof Variable &&
             is_string($left->name) &&
-            $left->name === $counterVar &&
-            $right instanceof FuncCall) {
-            return $this->extractArrayFromCountCall($right);
+            $left->name === $counterVar) {
+            return $this->extractArrayFromLimit($right, $scope);
         }
 
         // Pattern: count($array) > $i
         if ($right instanceof Variable &&
             is_string($right->name) &&
-            $right->name === $counterVar &&
-            $left instanceof FuncCall) {
-            return $this->extractArrayFromCountCall($left);
+            $right->name === $counterVar) {
+            return $this->extractArrayFromLimit($left, $scope);
         }
 
         return null;
     }
 
+    /**
+     * Extract array variable from a count() call, or from a variable all of whose values are count() of the same array.
+     */
+    private function extractArrayFromLimit(Node\Expr $limit, Scope $scope): ?string
+    {
+        if ($limit instanceof FuncCall) {
+            return $this->extractArrayFromCountCall($limit);
+        }
+        if (!$limit instanceof Variable) {
+            return null;
+        }
+
+        $arrays = [];
+        foreach ($this->possibleValuesDiscovery->discover($limit, $scope) as $value) {
+            $arrays[] = $value instanceof FuncCall ? $this->extractArrayFromCountCall($value) : null;
+        }
+        $arrays = array_unique($arrays);
+
+        return count($arrays) === 1 ? $arrays[0] : null;
+    }
+
     /**
      * Extract array variable from count() function call.
      */
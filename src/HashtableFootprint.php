@@ -0,0 +1,274 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\ArrayDimFetch;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\Array_;
+use PhpParser\Node\Expr\UnaryMinus;
+use PhpParser\Node\Expr\UnaryPlus;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Scalar\LNumber;
+use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt\For_;
+use PhpParser\NodeFinder;
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopBounds;
+use PHPStan\Analyser\Scope;
+
+/**
+ * Estimates the memory footprint of arrays from the layout of the Zend hashtable (PHP 8.2+).
+ *
+ * A hashtable starts with 8 slots and doubles its size when full, array literals are allocated
+ * with their element count rounded up to a power of two. A packed array (integer keys inserted in
+ * ascending order without large gaps) takes 16 bytes per slot for the value, a hash takes 32 bytes
+ * per slot for the bucket plus 8 bytes for two hash slots. Key insertion follows
+ * `_zend_hash_index_add_or_update_i()`: a packed array is converted to a hash when a string key or
+ * a key below the last one is inserted, or when a key lies too far beyond the allocated slots.
+ * The estimate covers the hashtable only, not the memory of the values themselves.
+ */
+final class HashtableFootprint
+{
+    public const string LAYOUT_PACKED = 'packed';
+    public const string LAYOUT_HASH   = 'hash';
+
+    public const string ISSUE_REORDER      = 'reorder';
+    public const string ISSUE_NUMERIC_KEYS = 'numericKeys';
+    public const string ISSUE_DESCENDING   = 'descending';
+    public const string ISSUE_STEP         = 'step';
+    public const string ISSUE_OFFSET       = 'offset';
+
+    public const int ZEND_ARRAY_SIZE  = 56;
+    public const int PACKED_SLOT_SIZE = 16;
+    public const int HASH_SLOT_SIZE   = 40;
+
+    private const int MIN_TABLE_SIZE = 8;
+
+    /** Insertions simulated exactly, the layout of longer arithmetic key sequences is extrapolated. */
+    private const int MAX_SIMULATED_KEYS = 4096;
+
+    /**
+     * Analyses an array literal with explicit literal keys in all of its (at least 3) items.
+     *
+     * @return array{issue: string, elements: int, bytes: int, suggestedBytes: int}|null
+     */
+    public static function analyzeLiteral(Array_ $array): ?array
+    {
+        if (count($array->items) < 3) {
+            return null;
+        }
+
+        $keys = [];
+        $hasStringIndexes = false;
+        foreach ($array->items as $item) {
+            // stop if any element lacks an explicit key
+            if ($item === null || $item->key === null) {
+                return null;
+            }
+
+            $key = self::getIntegerKey($item->key);
+            if ($key === null) {
+                return null;
+            }
+            $hasStringIndexes = $hasStringIndexes || $item->key instanceof String_;
+            $keys[] = $key;
+        }
+
+        $sortedKeys = $keys;
+        sort($sortedKeys);
+        if ($sortedKeys !== $keys) {
+            $issue = self::ISSUE_REORDER;
+        } elseif ($hasStringIndexes) {
+            $issue = self::ISSUE_NUMERIC_KEYS;
+        } else {
+            return null;
+        }
+
+        $initialTableSize = self::getTableSize(count($keys));
+        $current   = self::simulate($keys, count($keys), $initialTableSize);
+        $suggested = self::simulate($sortedKeys, count($keys), $initialTableSize);
+
+        return [
+            'issue'          => $issue,
+            'elements'       => count($keys),
+            'bytes'          => self::getBytes($current['layout'], $current['tableSize']),
+            'suggestedBytes' => self::getBytes($suggested['layout'], $suggested['tableSize']),
+        ];
+    }
+
+    /**
+     * Analyses a counting for-loop filling an array with the counter as key, e.g.
+     * `for ($i = 10; $i > 0; $i--) { $a[$i] = ...; }`, whose keys turn the array into a hash.
+     * Without literal loop bounds the element count is unknown (null).
+     *
+     * @return array{issue: string, variable: string, start: int|null, step: int, elements: int|null, bytes: int|null, suggestedBytes: int|null}|null
+     */
+    public static function analyzeLoopFill(For_ $loop): ?array
+    {
+        $loopCounter = LoopBounds::getCounter($loop);
+        if ($loopCounter === null) {
+            return null;
+        }
+        $counter = $loopCounter['variable'];
+        $step = $loopCounter['step'];
+
+        $fill = (new NodeFinder())->findFirst($loop->stmts, static fn (Node $node): bool => $node instanceof Assign
+            && $node->var instanceof ArrayDimFetch
+            && $node->var->var instanceof Variable && is_string($node->var->var->name)
+            && $node->var->dim instanceof Variable && $node->var->dim->name === $counter);
+        if (!$fill instanceof Assign || !$fill->var instanceof ArrayDimFetch || !$fill->var->var instanceof Variable) {
+            return null;
+        }
+        $variable = (string) $fill->var->var->name;
+
+        $start = LoopBounds::getIntegerValue($loopCounter['start']);
+        if ($step < 0) {
+            $issue = self::ISSUE_DESCENDING;
+        } elseif ($step > 1) {
+            $issue = self::ISSUE_STEP;
+        } elseif ($start !== null && $start >= self::MIN_TABLE_SIZE) {
+            $issue = self::ISSUE_OFFSET;
+        } else {
+            return null;
+        }
+
+        $elements = LoopBounds::getIterations($loop);
+        if ($elements === null || $start === null) {
+            return ['issue' => $issue, 'variable' => $variable, 'start' => $start, 'step' => $step, 'elements' => null, 'bytes' => null, 'suggestedBytes' => null];
+        }
+
+        $current = self::simulate(
+            (static function () use ($start, $step): \Generator {
+                for ($key = $start; ; $key += $step) {
+                    yield $key;
+                }
+            })(),
+            $elements,
+            self::MIN_TABLE_SIZE
+        );
+        if ($current['layout'] === self::LAYOUT_PACKED) {
+            return null;
+        }
+
+        return [
+            'issue'          => $issue,
+            'variable'       => $variable,
+            'start'          => $start,
+            'step'           => $step,
+            'elements'       => $elements,
+            'bytes'          => self::getBytes($current['layout'], $current['tableSize']),
+            'suggestedBytes' => self::getBytes(self::LAYOUT_PACKED, self::getTableSize($elements)),
+        ];
+    }
+
+    /**
+     * Whether the variable is undefined or an empty array before the loop, an array holding
+     * elements already has its own layout.
+     */
+    public static function isBuiltByLoop(string $variable, Scope $loopScope): bool
+    {
+        if ($loopScope->hasVariableType($variable)->no()) {
+            return true;
+        }
+        $type = $loopScope->getVariableType($variable);
+
+        return $type->isArray()->yes() && $type->isIterableAtLeastOnce()->no();
+    }
+
+    public static function getTableSize(int $elements): int
+    {
+        $tableSize = self::MIN_TABLE_SIZE;
+        while ($tableSize < $elements) {
+            $tableSize <<= 1;
+        }
+
+        return $tableSize;
+    }
+
+    public static function getBytes(string $layout, int $tableSize): int
+    {
+        return self::ZEND_ARRAY_SIZE + $tableSize * ($layout === self::LAYOUT_PACKED ? self::PACKED_SLOT_SIZE : self::HASH_SLOT_SIZE);
+    }
+
+    /**
+     * Replays the insertion of integer keys into an empty hashtable.
+     *
+     * @param iterable<int> $keys
+     * @return array{layout: string, tableSize: int}
+     */
+    private static function simulate(iterable $keys, int $count, int $initialTableSize): array
+    {
+        $layout    = null;
+        $tableSize = $initialTableSize;
+        $used      = 0;
+        $elements  = 0;
+        /** @var array<int, true> $present */
+        $present   = [];
+
+        foreach ($keys as $key) {
+            if ($elements >= min($count, self::MAX_SIMULATED_KEYS)) {
+                break;
+            }
+            if (isset($present[$key])) {
+                continue;
+            }
+
+            if ($layout === null) {
+                $layout = $key >= 0 && $key < $tableSize ? self::LAYOUT_PACKED : self::LAYOUT_HASH;
+            }
+
+            if ($layout === self::LAYOUT_PACKED) {
+                if ($key < $used) {
+                    // filling a hole
+                    $layout = self::LAYOUT_HASH;
+                } elseif ($key >= $tableSize) {
+                    if (($key >> 1) < $tableSize && ($tableSize >> 1) < $elements) {
+                        $tableSize += $tableSize;
+                    } else {
+                        $layout = self::LAYOUT_HASH;
+                        if ($used >= $tableSize) {
+                            $tableSize += $tableSize;
+                        }
+                    }
+                }
+            }
+
+            if ($layout === self::LAYOUT_PACKED) {
+                $used = $key + 1;
+            } else {
+                if ($used >= $tableSize) {
+                    $tableSize += $tableSize;
+                }
+                $used++;
+            }
+            $elements++;
+            $present[$key] = true;
+        }
+
+        // Longer sequences keep their layout, the table grows with the remaining elements
+        if ($count > $elements) {
+            $tableSize = max($tableSize, self::getTableSize($used + $count - $elements));
+        }
+
+        return ['layout' => $layout ?? self::LAYOUT_PACKED, 'tableSize' => $tableSize];
+    }
+
+    /**
+     * Integer value of a literal key, numeric strings without leading zeros are integer keys in PHP.
+     */
+    private static function getIntegerKey(Expr $key): ?int
+    {
+        if ($key instanceof LNumber) {
+            return $key->value;
+        }
+        if (($key instanceof UnaryMinus || $key instanceof UnaryPlus) && $key->expr instanceof LNumber) {
+            return $key instanceof UnaryMinus ? -$key->expr->value : $key->expr->value;
+        }
+        if ($key instanceof String_ && preg_match('/^(?:0|-?[1-9]\d*)$/', $key->value) === 1) {
+            return (int) $key->value;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr\Array_;
+use PhpParser\Node\Stmt\For_;
+use PHPStan\Analyser\Scope;
+use PHPStan\Collectors\Collector;
+
+/**
+ * Collects the estimated footprint of the arrays reported by PackedHashtableOptimizationRule,
+ * for the ranked export of PackedHashtableFootprintReportRule. Loop-filled arrays without
+ * literal loop bounds have no estimate and are not collected.
+ *
+ * PHPStan runs the rules of a node before its collectors, so the analysis is read from the
+ * rule's FOOTPRINT_ATTRIBUTE instead of being repeated, and arrays the rule skips (e.g. in
+ * tests) are skipped here as well. Without a configured report file nothing is collected.
+ *
+ * @implements Collector<Node, array{string, int, int, int, int}>
+ */
+final class PackedHashtableFootprintCollector implements Collector
+{
+    public function __construct(
+        private readonly ?string $reportFile = null,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return Node::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): ?array
+    {
+        if ($this->reportFile === null || (!$node instanceof Array_ && !$node instanceof For_)) {
+            return null;
+        }
+
+        /** @var array{elements: int|null, bytes: int|null, suggestedBytes: int|null, variable?: string}|null $analysis */
+        $analysis = $node->getAttribute(PackedHashtableOptimizationRule::FOOTPRINT_ATTRIBUTE);
+        if ($analysis === null || $analysis['elements'] === null || $analysis['bytes'] === null || $analysis['suggestedBytes'] === null) {
+            return null;
+        }
+        $description = $node instanceof Array_ ? 'array literal' : '$' . ($analysis['variable'] ?? '') . ' filled in a loop';
+
+        return [$description, $node->getStartLine(), $analysis['elements'], $analysis['bytes'], $analysis['suggestedBytes']];
+    }
+}
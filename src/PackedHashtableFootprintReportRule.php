@@ -0,0 +1,58 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+use PhpParser\Node;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\CollectedDataNode;
+use PHPStan\Rules\Rule;
+
+/**
+ * Exports the arrays with the largest estimated saving of a packed layout as a ranked JSON list,
+ * so the arrays which matter in long-running processes can be fixed first.
+ *
+ * The footprints are gathered by PackedHashtableFootprintCollector and written by RankedReport.
+ * Nothing is written unless a report file is configured, a failed write is reported.
+ *
+ * @implements Rule<CollectedDataNode>
+ */
+final class PackedHashtableFootprintReportRule implements Rule
+{
+    public function __construct(
+        private readonly ?string $reportFile = null,
+        private readonly int $limit = 50,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return CollectedDataNode::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof CollectedDataNode || $this->reportFile === null) {
+            return [];
+        }
+
+        $ranking = [];
+        foreach ($node->get(PackedHashtableFootprintCollector::class) as $file => $footprints) {
+            foreach ($footprints as [$description, $line, $elements, $bytes, $suggestedBytes]) {
+                if ($bytes <= $suggestedBytes) {
+                    continue;
+                }
+                $ranking[] = [
+                    'file'           => $file,
+                    'line'           => $line,
+                    'array'          => $description,
+                    'elements'       => $elements,
+                    'bytes'          => $bytes,
+                    'suggestedBytes' => $suggestedBytes,
+                    'saving'         => $bytes - $suggestedBytes,
+                ];
+            }
+        }
+
+        return RankedReport::write($this->reportFile, $ranking, 'saving', $this->limit, 'packed hashtable report', 'array.packedHashtable.reportNotWritten');
+    }
+}
@@ -5,10 +5,7 @@ namespace macropage\PHPStan\Inspections;
 
 use PhpParser\Node;
 use PhpParser\Node\Expr\Array_;
-use PhpParser\Node\Expr\UnaryMinus;
-use PhpParser\Node\Expr\UnaryPlus;
-use PhpParser\Node\Scalar\LNumber;
-use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt\For_;
 use PHPStan\Analyser\Scope;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
@@ -17,26 +14,37 @@ use PHPStan\Rules\RuleErrorBuilder;
  * Detects opportunities for packed hashtable optimizations based on array key order and types.
  * Mirrors Php Inspections (EA Extended) PackedHashtableOptimizationInspector.
  *
- * @implements Rule<Array_>
+ * Beyond array literals, it reports empty arrays filled by counting for-loops with keys which
+ * turn them into a hash (descending keys, steps above 1, starting offsets). The reports carry
+ * the memory estimated by HashtableFootprint and the saving of a packed array; a ranked list of
+ * the largest arrays can be exported with PackedHashtableFootprintReportRule. The analysis of
+ * every reported array is kept in the FOOTPRINT_ATTRIBUTE of its node, where
+ * PackedHashtableFootprintCollector picks it up instead of analysing the array again.
+ *
+ * @implements Rule<Node>
  */
 final class PackedHashtableOptimizationRule implements Rule
 {
     public const string MESSAGE_REORDER = 'Reordering keys in natural ascending order would enable array optimizations here.';
     public const string MESSAGE_USE_NUMERIC = 'Using integer keys would enable array optimizations here.';
+    public const string MESSAGE_LOOP_DESCENDING = 'Filling $%s in descending key order makes it a hash, filling it in ascending order would keep it packed.';
+    public const string MESSAGE_LOOP_STEP = 'Filling $%s with keys in steps of %d makes it a hash, consecutive keys would keep it packed.';
+    public const string MESSAGE_LOOP_OFFSET = 'Filling $%s starting at key %d makes it a hash, keys starting at 0 would keep it packed.';
+
+    public const string FOOTPRINT_ATTRIBUTE = 'packedHashtableFootprint';
+
+    private const string TIP_ESTIMATE = 'Estimated %s for %d elements, %s as a packed array (saves %s).';
+    private const string TIP_NO_SAVING = 'Estimated %s for %d elements, numeric string keys are stored as integer keys already, so no memory is saved.';
+    private const string TIP_PER_ELEMENT = 'A hash takes %d bytes per element, a packed array %d bytes (saves %d bytes per element).';
 
     public function getNodeType(): string
     {
-        return Array_::class;
+        return Node::class;
     }
 
     public function processNode(Node $node, Scope $scope): array
     {
-        if (!$node instanceof Array_) {
-            return [];
-        }
-
-        // Require at least 3 items to be meaningful (mirrors EA requirement)
-        if (count($node->items) < 3) {
+        if (!$node instanceof Array_ && !$node instanceof For_) {
             return [];
         }
 
@@ -46,90 +54,89 @@ final class PackedHashtableOptimizationRule implements Rule
             return [];
         }
 
-        $indexes = [];
-        foreach ($node->items as $item) {
-            if ($item === null || $item->key === null) {
-                // stop if any element lacks an explicit key
-                $indexes = [];
-                break;
-            }
-
-            $key = $item->key;
-            if ($key instanceof String_ || $key instanceof LNumber || $key instanceof UnaryMinus || $key instanceof UnaryPlus) {
-                $indexes[] = $key;
-                continue;
-            }
-
-            // Not a supported literal numeric key
-            $indexes = [];
-            break;
+        return $node instanceof Array_ ? $this->processArray($node) : $this->processLoop($node, $scope);
+    }
+
+    /**
+     * @return list<\PHPStan\Rules\IdentifierRuleError>
+     */
+    private function processArray(Array_ $node): array
+    {
+        // Requires at least 3 items with literal integer(-like) keys (mirrors EA requirement)
+        $analysis = HashtableFootprint::analyzeLiteral($node);
+        if ($analysis === null) {
+            return [];
         }
 
-        if (count($indexes) !== count($node->items)) {
+        $isReorder = $analysis['issue'] === HashtableFootprint::ISSUE_REORDER;
+        $saving = $analysis['bytes'] - $analysis['suggestedBytes'];
+        // Sorted keys which still leave gaps give a hash as well, reordering gains nothing then
+        if ($isReorder && $saving <= 0) {
             return [];
         }
+        $node->setAttribute(self::FOOTPRINT_ATTRIBUTE, $analysis);
+
+        $tip = $saving > 0
+            ? sprintf(
+                self::TIP_ESTIMATE,
+                ByteSize::format($analysis['bytes']),
+                $analysis['elements'],
+                ByteSize::format($analysis['suggestedBytes']),
+                ByteSize::format($saving)
+            )
+            : sprintf(self::TIP_NO_SAVING, ByteSize::format($analysis['bytes']), $analysis['elements']);
+
+        return [
+            RuleErrorBuilder::message($isReorder ? self::MESSAGE_REORDER : self::MESSAGE_USE_NUMERIC)
+                ->identifier($isReorder ? 'array.packedHashtable.reorder' : 'array.packedHashtable.numericKeys')
+                ->line($node->getStartLine())
+                ->tip($tip)
+                ->build(),
+        ];
+    }
 
-        $hasStringIndexes = false;
-        $hasIncreasing    = true; // non-decreasing order
-        $lastIndex        = PHP_INT_MIN;
-
-        foreach ($indexes as $keyNode) {
-            $numericIndex = null;
-            $isString     = false;
-
-            if ($keyNode instanceof String_) {
-                $hasStringIndexes = true;
-                $isString         = true;
-                $contents         = $keyNode->value;
-
-                // leading zero like '01' is not considered convertible
-                if (strlen($contents) > 1 && $contents[0] === '0') {
-                    return [];
-                }
-
-                // must be an integer numeric string
-                if ($contents === '' || !preg_match('/^-?\d+$/', $contents)) {
-                    return [];
-                }
-
-                $numericIndex = (int) $contents;
-            } elseif ($keyNode instanceof LNumber) {
-                $numericIndex = $keyNode->value;
-            } elseif ($keyNode instanceof UnaryMinus || $keyNode instanceof UnaryPlus) {
-                $inner = $keyNode->expr;
-                if (!$inner instanceof LNumber) {
-                    return [];
-                }
-                $numericIndex = $inner->value;
-                if ($keyNode instanceof UnaryMinus) {
-                    $numericIndex = -$numericIndex;
-                }
-            } else {
-                // unsupported node
-                return [];
-            }
-
-            if ($numericIndex < $lastIndex) {
-                $hasIncreasing = false;
-            }
-            $lastIndex = $numericIndex;
+    /**
+     * @return list<\PHPStan\Rules\IdentifierRuleError>
+     */
+    private function processLoop(For_ $node, Scope $scope): array
+    {
+        $analysis = HashtableFootprint::analyzeLoopFill($node);
+        if ($analysis === null) {
+            return [];
         }
 
-        $errors = [];
-        if (!$hasIncreasing) {
-            $errors[] = RuleErrorBuilder::message(self::MESSAGE_REORDER)
-                ->identifier('array.packedHashtable.reorder')
-                ->line($node->getStartLine())
-                ->build();
+        if (!HashtableFootprint::isBuiltByLoop($analysis['variable'], $scope)) {
+            return [];
         }
-        if ($hasIncreasing && $hasStringIndexes) {
-            $errors[] = RuleErrorBuilder::message(self::MESSAGE_USE_NUMERIC)
-                ->identifier('array.packedHashtable.numericKeys')
+        $node->setAttribute(self::FOOTPRINT_ATTRIBUTE, $analysis);
+
+        $message = match ($analysis['issue']) {
+            HashtableFootprint::ISSUE_DESCENDING => sprintf(self::MESSAGE_LOOP_DESCENDING, $analysis['variable']),
+            HashtableFootprint::ISSUE_STEP       => sprintf(self::MESSAGE_LOOP_STEP, $analysis['variable'], $analysis['step']),
+            default                              => sprintf(self::MESSAGE_LOOP_OFFSET, $analysis['variable'], (int) $analysis['start']),
+        };
+
+        $tip = $analysis['elements'] === null || $analysis['bytes'] === null || $analysis['suggestedBytes'] === null
+            ? sprintf(
+                self::TIP_PER_ELEMENT,
+                HashtableFootprint::HASH_SLOT_SIZE,
+                HashtableFootprint::PACKED_SLOT_SIZE,
+                HashtableFootprint::HASH_SLOT_SIZE - HashtableFootprint::PACKED_SLOT_SIZE
+            )
+            : sprintf(
+                self::TIP_ESTIMATE,
+                ByteSize::format($analysis['bytes']),
+                $analysis['elements'],
+                ByteSize::format($analysis['suggestedBytes']),
+                ByteSize::format($analysis['bytes'] - $analysis['suggestedBytes'])
+            );
+
+        return [
+            RuleErrorBuilder::message($message)
+                ->identifier('array.packedHashtable.loopFill')
                 ->line($node->getStartLine())
-                ->build();
-        }
-
-        return $errors;
+                ->tip($tip)
+                ->build(),
+        ];
     }
 }
-
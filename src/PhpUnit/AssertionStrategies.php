@@ -0,0 +1,377 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Node\Arg;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\BinaryOp;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\LNumber;
+use PHPStan\Analyser\Scope;
+
+/**
+ * Suggestions of more specific PHPUnit assertions, e.g. assertCount(2, $x) for
+ * assertSame(2, count($x)) or assertFileExists($f) for assertTrue(file_exists($f)).
+ *
+ * The strategies applicable to an assertion are looked up in a static dispatch table keyed by the
+ * lowercased assertion name, so a call only runs the strategies which can match it. The strategies
+ * of an assertion run in table order and the first match wins: assertFileEquals() is tried before
+ * assertStringEqualsFile(), which would match file_get_contents() on both sides as well.
+ */
+final class AssertionStrategies
+{
+    private const string BOOL_INVERTED      = 'boolInverted';
+    private const string BOOL_OF_COMPARISON = 'boolOfComparison';
+    private const string EMPTY              = 'empty';
+    private const string CONTAINS           = 'contains';
+    private const string RESOURCE_EXISTS    = 'resourceExists';
+    private const string INSTANCE_OF        = 'instanceOf';
+    private const string INTERNAL_TYPE      = 'internalType';
+    private const string FILE_EQUALS        = 'fileEquals';
+    private const string STRING_EQUALS_FILE = 'stringEqualsFile';
+    private const string COUNT              = 'count';
+    private const string CONSTANT           = 'constant';
+    private const string REGEX              = 'regex';
+    private const string SAME               = 'same';
+
+    /** @var array<string, list<string>> lowercased assertion => strategies in order */
+    private const array STRATEGIES = [
+        'asserttrue'      => [self::BOOL_INVERTED, self::BOOL_OF_COMPARISON, self::EMPTY, self::CONTAINS, self::RESOURCE_EXISTS, self::INSTANCE_OF, self::INTERNAL_TYPE],
+        'assertfalse'     => [self::BOOL_INVERTED, self::BOOL_OF_COMPARISON, self::EMPTY, self::CONTAINS, self::RESOURCE_EXISTS, self::INSTANCE_OF, self::INTERNAL_TYPE],
+        'assertsame'      => [self::FILE_EQUALS, self::STRING_EQUALS_FILE, self::COUNT, self::CONSTANT, self::REGEX],
+        'assertequals'    => [self::FILE_EQUALS, self::STRING_EQUALS_FILE, self::COUNT, self::REGEX, self::SAME],
+        'assertnotsame'   => [self::FILE_EQUALS, self::STRING_EQUALS_FILE, self::COUNT, self::CONSTANT],
+        'assertnotequals' => [self::FILE_EQUALS, self::STRING_EQUALS_FILE, self::COUNT, self::SAME],
+    ];
+
+    /** @var array<string, array{string, string}> function => [assertion, negated assertion] */
+    private const array RESOURCE_FUNCTIONS = [
+        'file_exists' => ['assertFileExists', 'assertFileDoesNotExist'],
+        'is_dir'      => ['assertDirectoryExists', 'assertDirectoryDoesNotExist'],
+        'is_readable' => ['assertIsReadable', 'assertIsNotReadable'],
+        'is_writable' => ['assertIsWritable', 'assertIsNotWritable'],
+    ];
+
+    /** @var array<string, string> function => assertion suffix */
+    private const array TYPE_FUNCTIONS = [
+        'is_array' => 'Array', 'is_bool' => 'Bool', 'is_float' => 'Float', 'is_int' => 'Int',
+        'is_numeric' => 'Numeric', 'is_object' => 'Object', 'is_resource' => 'Resource',
+        'is_string' => 'String', 'is_scalar' => 'Scalar', 'is_callable' => 'Callable', 'is_iterable' => 'Iterable',
+    ];
+
+    /** @var array<string, array{string, string}> comparison => [assertion, negated assertion] */
+    private const array COMPARISONS = [
+        BinaryOp\Identical::class    => ['assertSame', 'assertNotSame'],
+        BinaryOp\NotIdentical::class => ['assertNotSame', 'assertSame'],
+        BinaryOp\Equal::class        => ['assertEquals', 'assertNotEquals'],
+        BinaryOp\NotEqual::class     => ['assertNotEquals', 'assertEquals'],
+    ];
+
+    public static function hasStrategies(string $assertion): bool
+    {
+        return isset(self::STRATEGIES[strtolower($assertion)]);
+    }
+
+    /**
+     * More specific assertion for the call, with its arguments (the message argument is kept).
+     *
+     * @param list<Arg> $args
+     * @return array{string, list<Expr>}|null
+     */
+    public static function suggest(string $assertion, array $args, Scope $scope): ?array
+    {
+        $assertion = strtolower($assertion);
+        $isUnary = $assertion === 'asserttrue' || $assertion === 'assertfalse';
+        if (count($args) < ($isUnary ? 1 : 2)) {
+            return null;
+        }
+        $values = [];
+        foreach ($args as $arg) {
+            if ($arg->name !== null || $arg->unpack) {
+                return null;
+            }
+            $values[] = $arg->value;
+        }
+        $isPositive = in_array($assertion, ['asserttrue', 'assertsame', 'assertequals'], true);
+
+        foreach (self::STRATEGIES[$assertion] ?? [] as $strategy) {
+            $suggestion = match ($strategy) {
+                self::BOOL_INVERTED      => self::boolInverted($values, $isPositive),
+                self::BOOL_OF_COMPARISON => self::boolOfComparison($values, $isPositive),
+                self::EMPTY              => self::emptiness($values, $isPositive),
+                self::CONTAINS           => self::contains($values, $isPositive),
+                self::RESOURCE_EXISTS    => self::resourceExists($values, $isPositive),
+                self::INSTANCE_OF        => self::instanceOf($values, $isPositive),
+                self::INTERNAL_TYPE      => self::internalType($values, $isPositive),
+                self::FILE_EQUALS        => self::fileEquals($values, $isPositive),
+                self::STRING_EQUALS_FILE => self::stringEqualsFile($values, $isPositive),
+                self::COUNT              => self::count($values, $isPositive),
+                self::CONSTANT           => self::constant($values, $isPositive),
+                self::REGEX              => self::regex($values),
+                self::SAME               => self::same($values, $isPositive, $scope),
+                default                  => null,
+            };
+            if ($suggestion !== null) {
+                return $suggestion;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * assertTrue(!$x) => assertFalse($x)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function boolInverted(array $values, bool $isPositive): ?array
+    {
+        if (!$values[0] instanceof Expr\BooleanNot) {
+            return null;
+        }
+
+        return [$isPositive ? 'assertFalse' : 'assertTrue', [$values[0]->expr, ...array_slice($values, 1)]];
+    }
+
+    /**
+     * assertTrue($a === $b) => assertSame($a, $b)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function boolOfComparison(array $values, bool $isPositive): ?array
+    {
+        $comparison = $values[0];
+        if (!$comparison instanceof BinaryOp || !isset(self::COMPARISONS[$comparison::class])) {
+            return null;
+        }
+
+        return [self::COMPARISONS[$comparison::class][$isPositive ? 0 : 1], [$comparison->left, $comparison->right, ...array_slice($values, 1)]];
+    }
+
+    /**
+     * assertTrue(empty($x)) => assertEmpty($x)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function emptiness(array $values, bool $isPositive): ?array
+    {
+        if (!$values[0] instanceof Expr\Empty_) {
+            return null;
+        }
+
+        return [$isPositive ? 'assertEmpty' : 'assertNotEmpty', [$values[0]->expr, ...array_slice($values, 1)]];
+    }
+
+    /**
+     * assertTrue(in_array($x, $array, true)) => assertContains($x, $array)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function contains(array $values, bool $isPositive): ?array
+    {
+        $args = self::getFunctionArgs($values[0], 'in_array');
+        if ($args === null || count($args) < 2) {
+            return null;
+        }
+
+        // assertContains() compares strictly, assertContainsEquals() loosely
+        $isStrict = isset($args[2]) && $args[2] instanceof Expr\ConstFetch && $args[2]->name->toLowerString() === 'true';
+        $assertion = ($isPositive ? 'assertContains' : 'assertNotContains') . ($isStrict ? '' : 'Equals');
+
+        return [$assertion, [$args[0], $args[1], ...array_slice($values, 1)]];
+    }
+
+    /**
+     * assertTrue(file_exists($f)) => assertFileExists($f)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function resourceExists(array $values, bool $isPositive): ?array
+    {
+        foreach (self::RESOURCE_FUNCTIONS as $function => $assertions) {
+            $args = self::getFunctionArgs($values[0], $function);
+            if ($args !== null && count($args) === 1) {
+                return [$assertions[$isPositive ? 0 : 1], [$args[0], ...array_slice($values, 1)]];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * assertTrue($x instanceof Foo) => assertInstanceOf(Foo::class, $x)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function instanceOf(array $values, bool $isPositive): ?array
+    {
+        $instanceOf = $values[0];
+        if (!$instanceOf instanceof Expr\Instanceof_ || !$instanceOf->class instanceof Name) {
+            return null;
+        }
+        $class = new Expr\ClassConstFetch($instanceOf->class, 'class');
+
+        return [$isPositive ? 'assertInstanceOf' : 'assertNotInstanceOf', [$class, $instanceOf->expr, ...array_slice($values, 1)]];
+    }
+
+    /**
+     * assertTrue(is_array($x)) => assertIsArray($x)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function internalType(array $values, bool $isPositive): ?array
+    {
+        foreach (self::TYPE_FUNCTIONS as $function => $type) {
+            $args = self::getFunctionArgs($values[0], $function);
+            if ($args !== null && count($args) === 1) {
+                return [($isPositive ? 'assertIs' : 'assertIsNot') . $type, [$args[0], ...array_slice($values, 1)]];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * assertSame(file_get_contents($a), file_get_contents($b)) => assertFileEquals($a, $b)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function fileEquals(array $values, bool $isPositive): ?array
+    {
+        $expected = self::getFunctionArgs($values[0], 'file_get_contents');
+        $actual = self::getFunctionArgs($values[1], 'file_get_contents');
+        if ($expected === null || $actual === null || count($expected) !== 1 || count($actual) !== 1) {
+            return null;
+        }
+
+        return [$isPositive ? 'assertFileEquals' : 'assertFileNotEquals', [$expected[0], $actual[0], ...array_slice($values, 2)]];
+    }
+
+    /**
+     * assertSame(file_get_contents($file), $string) => assertStringEqualsFile($file, $string)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function stringEqualsFile(array $values, bool $isPositive): ?array
+    {
+        $assertion = $isPositive ? 'assertStringEqualsFile' : 'assertStringNotEqualsFile';
+        foreach ([[0, 1], [1, 0]] as [$filePosition, $stringPosition]) {
+            $args = self::getFunctionArgs($values[$filePosition], 'file_get_contents');
+            if ($args !== null && count($args) === 1) {
+                return [$assertion, [$args[0], $values[$stringPosition], ...array_slice($values, 2)]];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * assertSame(2, count($x)) => assertCount(2, $x)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function count(array $values, bool $isPositive): ?array
+    {
+        $args = self::getFunctionArgs($values[1], 'count') ?? self::getFunctionArgs($values[1], 'sizeof');
+        if ($args === null || count($args) !== 1) {
+            return null;
+        }
+
+        return [$isPositive ? 'assertCount' : 'assertNotCount', [$values[0], $args[0], ...array_slice($values, 2)]];
+    }
+
+    /**
+     * assertSame(null, $x) => assertNull($x), only for identity: assertEquals(null, $x) also passes for '' or 0
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function constant(array $values, bool $isPositive): ?array
+    {
+        if (!$values[0] instanceof Expr\ConstFetch) {
+            return null;
+        }
+
+        $assertion = match ($values[0]->name->toLowerString()) {
+            'null'  => $isPositive ? 'assertNull' : 'assertNotNull',
+            'true'  => $isPositive ? 'assertTrue' : 'assertNotTrue',
+            'false' => $isPositive ? 'assertFalse' : 'assertNotFalse',
+            default => null,
+        };
+
+        return $assertion === null ? null : [$assertion, array_slice($values, 1)];
+    }
+
+    /**
+     * assertSame(1, preg_match($pattern, $string)) => assertMatchesRegularExpression($pattern, $string)
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function regex(array $values): ?array
+    {
+        $args = self::getFunctionArgs($values[1], 'preg_match');
+        if ($args === null || count($args) !== 2 || !$values[0] instanceof LNumber || $values[0]->value > 1) {
+            return null;
+        }
+
+        $assertion = $values[0]->value === 1 ? 'assertMatchesRegularExpression' : 'assertDoesNotMatchRegularExpression';
+
+        return [$assertion, [$args[0], $args[1], ...array_slice($values, 2)]];
+    }
+
+    /**
+     * assertEquals('a', $string) => assertSame('a', $string) when both sides have the same scalar type
+     *
+     * @param list<Expr> $values
+     * @return array{string, list<Expr>}|null
+     */
+    private static function same(array $values, bool $isPositive, Scope $scope): ?array
+    {
+        if (count($values) > 3) {
+            return null;
+        }
+
+        $expectedType = $scope->getType($values[0]);
+        $actualType = $scope->getType($values[1]);
+        foreach (['isString', 'isInteger', 'isBoolean'] as $isType) {
+            if ($expectedType->$isType()->yes() && $actualType->$isType()->yes()) {
+                return [$isPositive ? 'assertSame' : 'assertNotSame', $values];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return list<Expr>|null
+     */
+    private static function getFunctionArgs(Expr $expr, string $functionName): ?array
+    {
+        if (!$expr instanceof FuncCall || !$expr->name instanceof Name || $expr->name->toLowerString() !== $functionName
+            || $expr->isFirstClassCallable()) {
+            return null;
+        }
+
+        $args = [];
+        foreach ($expr->getArgs() as $arg) {
+            if ($arg->name !== null || $arg->unpack) {
+                return null;
+            }
+            $args[] = $arg->value;
+        }
+
+        return $args;
+    }
+}
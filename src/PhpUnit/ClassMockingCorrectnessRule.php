@@ -21,6 +21,8 @@ use PHPStan\Type\ObjectType;
  * - Constructor parameters must be handled when using getMockBuilder()->getMock()
  * - PhpSpec ObjectBehavior classes should not use final classes in method parameters
  *
+ * Referenced classes are resolved through the per-session MockTargetCache.
+ *
  * @implements Rule<Node>
  */
 class ClassMockingCorrectnessRule implements Rule
@@ -52,6 +54,7 @@ class ClassMockingCorrectnessRule implements Rule
 
     public function __construct(
         private ReflectionProvider $reflectionProvider,
+        private MockTargetCache $mockTargetCache,
     ) {}
 
     public function getNodeType(): string
@@ -134,8 +137,7 @@ class ClassMockingCorrectnessRule implements Rule
                     continue;
                 }
 
-                $classReflection = $this->reflectionProvider->getClass($className);
-                if ($classReflection->isFinal()) {
+                if ($this->mockTargetCache->get($className)['isFinal'] ?? false) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_FINAL)
                         ->identifier('phpunit.mocking.finalClass')
                         ->line($param->getStartLine())
@@ -238,20 +240,19 @@ class ClassMockingCorrectnessRule implements Rule
     {
         $errors = [];
 
-        try {
-            $classReflection = $this->reflectionProvider->getClass($className);
-        } catch (\PHPStan\Reflection\ClassNotFoundException) {
+        $target = $this->mockTargetCache->get($className);
+        if ($target === null) {
             return $errors;
         }
 
         switch ($methodName) {
             case 'createMock':
-                if ($classReflection->isTrait()) {
+                if ($target['isTrait']) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_TRAIT)
                         ->identifier('phpunit.mocking.traitWithCreateMock')
                         ->line($arg->getStartLine())
                         ->build();
-                } elseif ($classReflection->isFinal()) {
+                } elseif ($target['isFinal']) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_FINAL)
                         ->identifier('phpunit.mocking.finalClass')
                         ->line($arg->getStartLine())
@@ -263,21 +264,21 @@ class ClassMockingCorrectnessRule implements Rule
                 $parentMethodCall = $this->getParentMethodCall($node);
                 $parentMethodName = $parentMethodCall !== null ? $this->getMethodName($parentMethodCall) : null;
 
-                if ($classReflection->isAbstract() && !$classReflection->isInterface()) {
+                if ($target['isAbstract'] && !$target['isInterface']) {
                     if ($parentMethodName === null) {
                         $errors[] = RuleErrorBuilder::message(self::MESSAGE_MOCK_ABSTRACT)
                             ->identifier('phpunit.mocking.abstractClass')
                             ->line($arg->getStartLine())
                             ->build();
                     }
-                } elseif ($classReflection->isTrait()) {
+                } elseif ($target['isTrait']) {
                     if ($parentMethodName === null) {
                         $errors[] = RuleErrorBuilder::message(self::MESSAGE_MOCK_TRAIT)
                             ->identifier('phpunit.mocking.traitWithMockBuilder')
                             ->line($arg->getStartLine())
                             ->build();
                     }
-                } elseif ($classReflection->isFinal()) {
+                } elseif ($target['isFinal']) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_FINAL)
                         ->identifier('phpunit.mocking.finalClass')
                         ->line($arg->getStartLine())
@@ -285,29 +286,16 @@ class ClassMockingCorrectnessRule implements Rule
                 }
 
                 // Check constructor parameters when getMock() is called
-                if ($parentMethodName === 'getMock') {
-                    $constructor = $classReflection->getConstructor();
-                    if ($constructor !== null) {
-                        $hasRequiredParams = false;
-                        foreach ($constructor->getParameters() as $param) {
-                            if (!$param->isOptional()) {
-                                $hasRequiredParams = true;
-                                break;
-                            }
-                        }
-
-                        if ($hasRequiredParams) {
-                            $errors[] = RuleErrorBuilder::message(self::MESSAGE_MOCK_CONSTRUCTOR)
-                                ->identifier('phpunit.mocking.constructorParams')
-                                ->line($arg->getStartLine())
-                                ->build();
-                        }
-                    }
+                if ($parentMethodName === 'getMock' && $target['requiredConstructorParameters'] > 0) {
+                    $errors[] = RuleErrorBuilder::message(self::MESSAGE_MOCK_CONSTRUCTOR)
+                        ->identifier('phpunit.mocking.constructorParams')
+                        ->line($arg->getStartLine())
+                        ->build();
                 }
                 break;
 
             case 'getMockForTrait':
-                if (!$classReflection->isTrait()) {
+                if (!$target['isTrait']) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_NEEDS_TRAIT)
                         ->identifier('phpunit.mocking.notTrait')
                         ->line($arg->getStartLine())
@@ -316,7 +304,7 @@ class ClassMockingCorrectnessRule implements Rule
                 break;
 
             case 'getMockForAbstractClass':
-                if (!$classReflection->isAbstract()) {
+                if (!$target['isAbstract']) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_NEEDS_ABSTRACT)
                         ->identifier('phpunit.mocking.notAbstract')
                         ->line($arg->getStartLine())
@@ -325,7 +313,7 @@ class ClassMockingCorrectnessRule implements Rule
                 break;
 
             default:
-                if ($classReflection->isFinal()) {
+                if ($target['isFinal']) {
                     $errors[] = RuleErrorBuilder::message(self::MESSAGE_FINAL)
                         ->identifier('phpunit.mocking.finalClass')
                         ->line($arg->getStartLine())
@@ -0,0 +1,82 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Stmt;
+use PhpParser\Node\Stmt\ClassMethod;
+
+/**
+ * Data providers of PHPUnit test methods, declared by @dataProvider annotations or
+ * #[DataProvider] attributes.
+ */
+final class DataProviders
+{
+    /**
+     * Lowercased names of the providers of the method declared in its own class. Providers of
+     * other classes (`@dataProvider Other::method`) are skipped, `self::`, `static::` and the
+     * class' own name are resolved to the class.
+     *
+     * @param string|null $className fully qualified name of the class declaring the method
+     * @return list<string>
+     */
+    public static function namesOf(ClassMethod $method, ?string $className = null): array
+    {
+        $names = [];
+        $docComment = $method->getDocComment();
+        if ($docComment !== null && preg_match_all('/@dataProvider\s+(?:([\w\\\\]+)::)?(\w+)/', $docComment->getText(), $matches, PREG_SET_ORDER) > 0) {
+            foreach ($matches as [, $class, $name]) {
+                if ($class === '' || self::isOwnClass($class, $className)) {
+                    $names[] = strtolower($name);
+                }
+            }
+        }
+
+        foreach ($method->attrGroups as $attrGroup) {
+            foreach ($attrGroup->attrs as $attr) {
+                $argument = $attr->args[0]->value ?? null;
+                if (strcasecmp($attr->name->getLast(), 'DataProvider') === 0 && $argument instanceof Node\Scalar\String_) {
+                    $names[] = strtolower($argument->value);
+                }
+            }
+        }
+
+        return $names;
+    }
+
+    /**
+     * Number of datasets of a provider returning array literals only, null otherwise.
+     */
+    public static function countRows(ClassMethod $provider): ?int
+    {
+        $rows = null;
+        foreach ($provider->stmts ?? [] as $stmt) {
+            if (!$stmt instanceof Stmt\Return_) {
+                continue;
+            }
+            if (!$stmt->expr instanceof Expr\Array_) {
+                return null;
+            }
+            $rows = max($rows ?? 0, count($stmt->expr->items));
+        }
+
+        return $rows;
+    }
+
+    private static function isOwnClass(string $reference, ?string $className): bool
+    {
+        $reference = strtolower(ltrim($reference, '\\'));
+        if ($reference === 'self' || $reference === 'static') {
+            return true;
+        }
+        if ($className === null) {
+            return false;
+        }
+        $className = strtolower($className);
+        $separatorPosition = strrpos($className, '\\');
+
+        // A short name is taken as the class' own short name
+        return $reference === $className || (!str_contains($reference, '\\') && $separatorPosition !== false && $reference === substr($className, $separatorPosition + 1));
+    }
+}
@@ -0,0 +1,212 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopBounds;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Stmt;
+use PhpParser\Node\Stmt\Class_;
+use PhpParser\Node\Stmt\ClassMethod;
+use PhpParser\NodeFinder;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects data providers which build large datasets eagerly and suggests generators.
+ *
+ * Providers are the methods of the class referenced by its @dataProvider annotations or
+ * #[DataProvider] attributes (see DataProviders), providers of other classes are skipped.
+ * A provider is reported when it is provably large or its source is unbounded:
+ * - `return [...]` with at least MIN_ROWS literal datasets
+ * - datasets appended in loops (`$data[] = ...`, `$data['name'] = ...`) at least MIN_ROWS times,
+ *   as counted by LoopBounds; loops with unknown bounds are not estimated
+ * - files read or queries run while building the datasets (file_get_contents(), glob(), ->query(), ...)
+ *
+ * A generator yields one dataset at a time instead of building the whole array and its copies
+ * first. The tip shows the first dataset as `yield`, dataset names are kept as keys.
+ *
+ * @implements Rule<Class_>
+ */
+final class EagerDataProviderRule implements Rule
+{
+    private const string MESSAGE = "Data provider '%s()' builds all of its datasets eagerly (%s).";
+    private const string TIP = 'Turn it into a generator yielding one dataset at a time, e.g. %s%s';
+    private const string TIP_RETURN_TYPE = ' and declare the return type as iterable.';
+
+    private const int MIN_ROWS = 100;
+
+    /** @var array<string, true> */
+    private const array IO_FUNCTIONS = [
+        'file_get_contents' => true, 'file' => true, 'fopen' => true, 'fgets' => true, 'fgetcsv' => true,
+        'glob' => true, 'scandir' => true, 'parse_ini_file' => true, 'simplexml_load_file' => true,
+        'yaml_parse_file' => true, 'readfile' => true,
+    ];
+
+    /** @var array<string, true> */
+    private const array QUERY_METHODS = [
+        'query' => true, 'fetch' => true, 'fetchall' => true, 'fetchassociative' => true,
+        'fetchallassociative' => true, 'iterateassociative' => true, 'getresult' => true, 'toiterable' => true,
+    ];
+
+    private Standard $prettyPrinter;
+
+    public function __construct()
+    {
+        $this->prettyPrinter = new Standard();
+    }
+
+    public function getNodeType(): string
+    {
+        return Class_::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        $providerNames = $this->findProviderNames($node, $node->namespacedName?->toString());
+        if ($providerNames === []) {
+            return [];
+        }
+
+        $errors = [];
+        foreach ($node->getMethods() as $method) {
+            if (!isset($providerNames[$method->name->toLowerString()]) || $method->stmts === null) {
+                continue;
+            }
+
+            $estimate = $this->estimate($method);
+            if ($estimate === null) {
+                continue;
+            }
+            [$reason, $firstDataset] = $estimate;
+
+            $returnType = $method->returnType instanceof Node\Identifier ? $method->returnType->toLowerString() : null;
+            $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE, $method->name->toString(), $reason))
+                ->identifier('phpunit.dataProvider.eager')
+                ->tip(sprintf(self::TIP, $firstDataset === null ? "'yield \$name => [...];'" : "'" . $this->prettyPrinter->prettyPrint([$firstDataset]) . "'", $returnType === 'array' ? self::TIP_RETURN_TYPE : '.'))
+                ->line($method->getStartLine())
+                ->build();
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @return array<string, true> lowercased provider method names
+     */
+    private function findProviderNames(Class_ $class, ?string $className): array
+    {
+        $names = [];
+        foreach ($class->getMethods() as $method) {
+            foreach (DataProviders::namesOf($method, $className) as $name) {
+                $names[$name] = true;
+            }
+        }
+
+        return $names;
+    }
+
+    /**
+     * Why the provider is considered large, with the first dataset rewritten as yield.
+     *
+     * @return array{string, Stmt\Expression|null}|null
+     */
+    private function estimate(ClassMethod $method): ?array
+    {
+        $nodeFinder = new NodeFinder();
+        $stmts = $method->stmts ?? [];
+        // Already a generator
+        if ($nodeFinder->findFirst($stmts, static fn (Node $node): bool => $node instanceof Expr\Yield_ || $node instanceof Expr\YieldFrom) !== null) {
+            return null;
+        }
+
+        $reasons = [];
+        $firstDataset = null;
+        $returnedVariables = [];
+
+        foreach ($nodeFinder->findInstanceOf($stmts, Stmt\Return_::class) as $return) {
+            if ($return->expr instanceof Expr\Variable && is_string($return->expr->name)) {
+                $returnedVariables[$return->expr->name] = true;
+            }
+            if ($return->expr instanceof Expr\Array_ && $return->expr->items !== []) {
+                $firstDataset ??= $this->toYield($return->expr->items[0]->key ?? null, $return->expr->items[0]->value ?? null);
+                if (count($return->expr->items) >= self::MIN_ROWS) {
+                    $reasons[] = sprintf('%d literal datasets', count($return->expr->items));
+                }
+            }
+        }
+
+        /** @var array<string, int|null> $loopFills variable => datasets, null when unknown */
+        $loopFills = [];
+        $this->findLoopFills($stmts, 1, $loopFills, $firstDataset);
+        foreach (array_intersect_key($loopFills, $returnedVariables) as $rows) {
+            // Unknown bounds say nothing about the size, only unbounded sources below do
+            if ($rows !== null && $rows >= self::MIN_ROWS) {
+                $reasons[] = sprintf('%d datasets built in a loop', $rows);
+            }
+        }
+
+        $ioCalls = [];
+        $queryCalls = [];
+        foreach ($nodeFinder->findInstanceOf($stmts, Expr\CallLike::class) as $call) {
+            if ($call instanceof Expr\FuncCall && $call->name instanceof Node\Name && isset(self::IO_FUNCTIONS[$call->name->toLowerString()])) {
+                $ioCalls[$call->name->toLowerString() . '()'] = true;
+            } elseif (($call instanceof Expr\MethodCall || $call instanceof Expr\NullsafeMethodCall)
+                && $call->name instanceof Node\Identifier && isset(self::QUERY_METHODS[$call->name->toLowerString()])) {
+                $queryCalls['->' . $call->name->toString() . '()'] = true;
+            }
+        }
+        if ($ioCalls !== []) {
+            $reasons[] = 'reads files with ' . implode(', ', array_keys($ioCalls));
+        }
+        if ($queryCalls !== []) {
+            $reasons[] = 'runs queries with ' . implode(', ', array_keys($queryCalls));
+        }
+
+        return $reasons === [] ? null : [implode('; ', array_unique($reasons)), $firstDataset];
+    }
+
+    /**
+     * Arrays filled in loops, with the number of datasets appended (product of the iteration counts).
+     *
+     * @param array<Node> $nodes
+     * @param array<string, int|null> $loopFills
+     */
+    private function findLoopFills(array $nodes, ?int $iterations, array &$loopFills, ?Stmt\Expression &$firstDataset, bool $inLoop = false): void
+    {
+        foreach ($nodes as $node) {
+            if ($node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike) {
+                continue;
+            }
+
+            $childIterations = $iterations;
+            $childInLoop = $inLoop;
+            if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_) {
+                $loopIterations = LoopBounds::getIterations($node);
+                $childIterations = $iterations === null || $loopIterations === null ? null : $iterations * $loopIterations;
+                $childInLoop = true;
+            }
+
+            if ($inLoop && $node instanceof Expr\Assign && $node->var instanceof Expr\ArrayDimFetch
+                && $node->var->var instanceof Expr\Variable && is_string($node->var->var->name)) {
+                $name = $node->var->var->name;
+                $previous = array_key_exists($name, $loopFills) ? $loopFills[$name] : 0;
+                $loopFills[$name] = $previous === null || $iterations === null ? null : $previous + $iterations;
+                $firstDataset ??= $this->toYield($node->var->dim, $node->expr);
+            }
+
+            foreach ($node->getSubNodeNames() as $subNodeName) {
+                $subNode = $node->$subNodeName;
+                $children = array_filter(is_array($subNode) ? $subNode : [$subNode], static fn ($child): bool => $child instanceof Node);
+                $this->findLoopFills($children, $childIterations, $loopFills, $firstDataset, $childInLoop);
+            }
+        }
+    }
+
+    private function toYield(?Expr $key, ?Expr $value): ?Stmt\Expression
+    {
+        return $value === null ? null : new Stmt\Expression(new Expr\Yield_($value, $key));
+    }
+}
@@ -0,0 +1,68 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Node;
+use PhpParser\Node\Stmt\Class_;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects expensive work in setUp() of PHPUnit test classes: file system I/O, database connections
+ * and queries, container/kernel boots and sleep() (see FixtureCost). setUp() runs before every test
+ * and every dataset, so its cost is multiplied by the number of test runs.
+ *
+ * Work whose result the tests only read can move to setUpBeforeClass() and be kept in a static
+ * property. The ranked cost of all test classes is exported by TestFixtureCostReportRule.
+ *
+ * @implements Rule<Class_>
+ */
+final class ExpensiveTestFixtureRule implements Rule
+{
+    private const string MESSAGE = "setUp() runs '%s' before each of the %d test runs of the class.";
+    private const string MESSAGE_SLEEP = "setUp() sleeps with '%s' before each of the %d test runs of the class.";
+    private const string TIP = 'If the tests do not modify what it sets up, move it to setUpBeforeClass() and keep the result in a static property.';
+    private const string TIP_SLEEP = 'Wait for the condition instead, or fake the clock.';
+
+    private const int MIN_RUNS = 2;
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return Class_::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!FixtureCost::isTestCase($node, $this->reflectionProvider)) {
+            return [];
+        }
+
+        $cost = FixtureCost::analyzeClass($node);
+        if ($cost === null || $cost['runs'] < self::MIN_RUNS) {
+            return [];
+        }
+
+        $errors = [];
+        foreach ($cost['operations'] as $operation) {
+            if (strtolower($operation['method']) !== 'setup' || $operation['category'] === FixtureCost::CATEGORY_CALL) {
+                continue;
+            }
+
+            $isSleep = $operation['category'] === FixtureCost::CATEGORY_SLEEP;
+            $errors[] = RuleErrorBuilder::message(sprintf($isSleep ? self::MESSAGE_SLEEP : self::MESSAGE, $operation['operation'], $cost['runs']))
+                ->identifier('phpunit.fixture.expensiveSetUp')
+                ->tip($isSleep ? self::TIP_SLEEP : self::TIP)
+                ->line($operation['line'])
+                ->build();
+        }
+
+        return $errors;
+    }
+}
@@ -0,0 +1,246 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Loops\LoopBounds;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Stmt;
+use PhpParser\Node\Stmt\Class_;
+use PhpParser\Node\Stmt\ClassMethod;
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Static cost of the fixture methods of a PHPUnit test class (setUp(), tearDown(), setUpBeforeClass(),
+ * tearDownAfterClass()), in abstract cost units.
+ *
+ * Calls cost one unit, file system I/O, database connections and queries, container/kernel boots
+ * and sleep() (per millisecond) cost more (see WEIGHTS). Operations in loops are multiplied by the
+ * iteration count (LoopBounds), or by UNKNOWN_ITERATIONS. Per-test fixtures run once per test run:
+ * every test method, times the datasets of its data providers where they are array literals.
+ */
+final class FixtureCost
+{
+    public const string CATEGORY_IO        = 'io';
+    public const string CATEGORY_DATABASE  = 'database';
+    public const string CATEGORY_CONTAINER = 'container';
+    public const string CATEGORY_SLEEP     = 'sleep';
+    public const string CATEGORY_CALL      = 'call';
+
+    /** @var list<string> */
+    private const array TEST_CASE_CLASSES = ['PHPUnit\Framework\TestCase', 'PHPUnit_Framework_TestCase'];
+
+    /** @var array<string, true> */
+    public const array PER_TEST_METHODS = ['setup' => true, 'teardown' => true];
+
+    /** @var array<string, true> */
+    public const array PER_CLASS_METHODS = ['setupbeforeclass' => true, 'teardownafterclass' => true];
+
+    /** @var array<string, int> */
+    private const array WEIGHTS = [
+        self::CATEGORY_IO        => 10,
+        self::CATEGORY_DATABASE  => 50,
+        self::CATEGORY_CONTAINER => 200,
+        self::CATEGORY_SLEEP     => 1,
+        self::CATEGORY_CALL      => 1,
+    ];
+
+    private const int UNKNOWN_ITERATIONS = 10;
+
+    /** @var array<string, true> */
+    private const array IO_FUNCTIONS = [
+        'file_get_contents' => true, 'file_put_contents' => true, 'file' => true, 'fopen' => true, 'fwrite' => true,
+        'fread' => true, 'copy' => true, 'rename' => true, 'unlink' => true, 'mkdir' => true, 'rmdir' => true,
+        'glob' => true, 'scandir' => true, 'tempnam' => true, 'touch' => true, 'parse_ini_file' => true,
+        'simplexml_load_file' => true, 'exec' => true, 'shell_exec' => true, 'system' => true, 'passthru' => true,
+        'proc_open' => true, 'curl_exec' => true,
+    ];
+
+    /** @var array<string, true> */
+    private const array DATABASE_FUNCTIONS = [
+        'mysqli_connect' => true, 'mysqli_query' => true, 'pg_connect' => true, 'pg_query' => true,
+        'sqlite_open' => true, 'oci_connect' => true,
+    ];
+
+    /** @var array<string, string> class => category */
+    private const array CLASSES = [
+        'pdo' => self::CATEGORY_DATABASE, 'mysqli' => self::CATEGORY_DATABASE, 'sqlite3' => self::CATEGORY_DATABASE,
+        'splfileobject' => self::CATEGORY_IO,
+    ];
+
+    /** @var array<string, string> lowercased method => category */
+    private const array METHODS = [
+        'query' => self::CATEGORY_DATABASE, 'exec' => self::CATEGORY_DATABASE, 'execute' => self::CATEGORY_DATABASE,
+        'prepare' => self::CATEGORY_DATABASE, 'begintransaction' => self::CATEGORY_DATABASE,
+        'bootkernel' => self::CATEGORY_CONTAINER, 'createkernel' => self::CATEGORY_CONTAINER,
+        'createclient' => self::CATEGORY_CONTAINER, 'createapplication' => self::CATEGORY_CONTAINER,
+        'refreshapplication' => self::CATEGORY_CONTAINER, 'refreshdatabase' => self::CATEGORY_DATABASE,
+        'boot' => self::CATEGORY_CONTAINER, 'getcontainer' => self::CATEGORY_CONTAINER,
+    ];
+
+    /**
+     * Whether the class extends PHPUnit's TestCase; fixture methods of other classes are never run by PHPUnit.
+     */
+    public static function isTestCase(Class_ $class, ReflectionProvider $reflectionProvider): bool
+    {
+        if ($class->namespacedName === null || !$reflectionProvider->hasClass($class->namespacedName->toString())) {
+            return false;
+        }
+
+        $classReflection = $reflectionProvider->getClass($class->namespacedName->toString());
+        foreach (self::TEST_CASE_CLASSES as $testCaseClass) {
+            if ($classReflection->isSubclassOf($testCaseClass)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return array{perTest: int, perClass: int, runs: int, operations: list<array{method: string, category: string, operation: string, line: int, cost: int}>}|null
+     */
+    public static function analyzeClass(Class_ $class): ?array
+    {
+        $fixtures = [];
+        $providers = [];
+        foreach ($class->getMethods() as $method) {
+            $name = $method->name->toLowerString();
+            if (isset(self::PER_TEST_METHODS[$name]) || isset(self::PER_CLASS_METHODS[$name])) {
+                $fixtures[] = $method;
+            }
+            $providers[$name] = $method;
+        }
+        if ($fixtures === []) {
+            return null;
+        }
+
+        $runs = 0;
+        foreach ($class->getMethods() as $method) {
+            if (!self::isTest($method)) {
+                continue;
+            }
+            $rows = 0;
+            foreach (DataProviders::namesOf($method, $class->namespacedName?->toString()) as $providerName) {
+                $rows += isset($providers[$providerName]) ? DataProviders::countRows($providers[$providerName]) ?? 1 : 1;
+            }
+            $runs += max(1, $rows);
+        }
+
+        $perTest = 0;
+        $perClass = 0;
+        $operations = [];
+        foreach ($fixtures as $fixture) {
+            $methodOperations = [];
+            self::collect($fixture->stmts ?? [], 1, $methodOperations);
+            foreach ($methodOperations as $operation) {
+                $operations[] = ['method' => $fixture->name->toString()] + $operation;
+                if (isset(self::PER_TEST_METHODS[$fixture->name->toLowerString()])) {
+                    $perTest += $operation['cost'];
+                } else {
+                    $perClass += $operation['cost'];
+                }
+            }
+        }
+
+        return ['perTest' => $perTest, 'perClass' => $perClass, 'runs' => $runs, 'operations' => $operations];
+    }
+
+    public static function isTest(ClassMethod $method): bool
+    {
+        if (!$method->isPublic() || $method->isStatic()) {
+            return false;
+        }
+        if (str_starts_with($method->name->toLowerString(), 'test')) {
+            return true;
+        }
+        $docComment = $method->getDocComment();
+        if ($docComment !== null && preg_match('/@test\b/', $docComment->getText()) === 1) {
+            return true;
+        }
+        foreach ($method->attrGroups as $attrGroup) {
+            foreach ($attrGroup->attrs as $attr) {
+                if (strcasecmp($attr->name->getLast(), 'Test') === 0) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param array<Node> $nodes
+     * @param list<array{category: string, operation: string, line: int, cost: int}> $operations
+     */
+    private static function collect(array $nodes, int $multiplier, array &$operations): void
+    {
+        foreach ($nodes as $node) {
+            if ($node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction || $node instanceof Stmt\ClassLike) {
+                continue;
+            }
+
+            $childMultiplier = $multiplier;
+            if ($node instanceof Stmt\For_ || $node instanceof Stmt\Foreach_ || $node instanceof Stmt\While_ || $node instanceof Stmt\Do_) {
+                $childMultiplier *= LoopBounds::getIterations($node) ?? self::UNKNOWN_ITERATIONS;
+            }
+
+            $operation = self::classify($node);
+            if ($operation !== null) {
+                [$category, $description, $units] = $operation;
+                $operations[] = [
+                    'category'  => $category,
+                    'operation' => $description,
+                    'line'      => $node->getStartLine(),
+                    'cost'      => self::WEIGHTS[$category] * $units * $multiplier,
+                ];
+            }
+
+            foreach ($node->getSubNodeNames() as $subNodeName) {
+                $subNode = $node->$subNodeName;
+                $children = array_filter(is_array($subNode) ? $subNode : [$subNode], static fn ($child): bool => $child instanceof Node);
+                self::collect($children, $childMultiplier, $operations);
+            }
+        }
+    }
+
+    /**
+     * @return array{string, string, int}|null [category, description, units]
+     */
+    private static function classify(Node $node): ?array
+    {
+        if ($node instanceof Expr\FuncCall && $node->name instanceof Node\Name) {
+            $name = $node->name->toLowerString();
+            if ($name === 'sleep' || $name === 'usleep') {
+                $duration = isset($node->getArgs()[0]) ? LoopBounds::getIntegerValue($node->getArgs()[0]->value) : null;
+                // One unit per millisecond slept
+                $milliseconds = $duration === null ? 1000 : ($name === 'sleep' ? $duration * 1000 : intdiv($duration, 1000));
+                return [self::CATEGORY_SLEEP, $name . '()', max(1, $milliseconds)];
+            }
+            if (isset(self::IO_FUNCTIONS[$name])) {
+                return [self::CATEGORY_IO, $name . '()', 1];
+            }
+            if (isset(self::DATABASE_FUNCTIONS[$name])) {
+                return [self::CATEGORY_DATABASE, $name . '()', 1];
+            }
+            return [self::CATEGORY_CALL, $name . '()', 1];
+        }
+
+        if ($node instanceof Expr\New_ && $node->class instanceof Node\Name) {
+            $category = self::CLASSES[strtolower(ltrim($node->class->toString(), '\\'))] ?? null;
+            return $category === null ? null : [$category, 'new ' . $node->class->toString(), 1];
+        }
+
+        if (($node instanceof Expr\MethodCall || $node instanceof Expr\StaticCall || $node instanceof Expr\NullsafeMethodCall)
+            && $node->name instanceof Node\Identifier) {
+            $name = $node->name->toLowerString();
+            // parent::setUp() and friends are framework plumbing
+            if (isset(self::PER_TEST_METHODS[$name]) || isset(self::PER_CLASS_METHODS[$name])) {
+                return null;
+            }
+            return [self::METHODS[$name] ?? self::CATEGORY_CALL, $node->name->toString() . '()', 1];
+        }
+
+        return null;
+    }
+}
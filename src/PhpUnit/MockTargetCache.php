@@ -0,0 +1,110 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Per-session cache of the classes mocked in tests (createMock(Foo::class), getMockBuilder(...),
+ * ->method('x')), shared by ClassMockingCorrectnessRule and MockingMethodsCorrectnessRule.
+ *
+ * The same few service classes are mocked all over a suite, so their summary is resolved once:
+ * final/abstract/interface/trait flags and the constructor arity. Methods are resolved on first use
+ * and remembered in the entry with their static/final/private flags. Flags follow PHPStan's
+ * reflection, so `@final` in phpdoc counts as final; methods only known to PHPStan (@method tags,
+ * __call(), extensions) have no flags. Entries are keyed by the lowercased class name and shared
+ * for the whole analysis run.
+ */
+final class MockTargetCache
+{
+    /**
+     * @var array<string, array{
+     *     isFinal: bool,
+     *     isAbstract: bool,
+     *     isInterface: bool,
+     *     isTrait: bool,
+     *     methods: array<string, array{isStatic: bool, isFinal: bool, isPrivate: bool}|null>,
+     *     constructorParameters: int|null,
+     *     requiredConstructorParameters: int,
+     * }>
+     */
+    private array $targets = [];
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+    ) {
+    }
+
+    /**
+     * @return array{
+     *     isFinal: bool,
+     *     isAbstract: bool,
+     *     isInterface: bool,
+     *     isTrait: bool,
+     *     methods: array<string, array{isStatic: bool, isFinal: bool, isPrivate: bool}|null>,
+     *     constructorParameters: int|null,
+     *     requiredConstructorParameters: int,
+     * }|null null for unknown classes
+     */
+    public function get(string $className): ?array
+    {
+        $key = strtolower(ltrim($className, '\\'));
+        if (isset($this->targets[$key])) {
+            return $this->targets[$key];
+        }
+
+        // Unknown classes are not cached, they may be declared by a file analysed later
+        if (!$this->reflectionProvider->hasClass($className)) {
+            return null;
+        }
+
+        $classReflection = $this->reflectionProvider->getClass($className);
+        $constructor = $classReflection->getNativeReflection()->getConstructor();
+
+        $this->targets[$key] = [
+            'isFinal'                       => $classReflection->isFinal(),
+            'isAbstract'                    => $classReflection->isAbstract(),
+            'isInterface'                   => $classReflection->isInterface(),
+            'isTrait'                       => $classReflection->isTrait(),
+            'methods'                       => [],
+            'constructorParameters'         => $constructor?->getNumberOfParameters(),
+            'requiredConstructorParameters' => $constructor?->getNumberOfRequiredParameters() ?? 0,
+        ];
+
+        return $this->targets[$key];
+    }
+
+    /**
+     * Flags of the method, null when the class or the method is unknown.
+     *
+     * @return array{isStatic: bool, isFinal: bool, isPrivate: bool}|null
+     */
+    public function getMethod(string $className, string $methodName): ?array
+    {
+        $target = $this->get($className);
+        if ($target === null) {
+            return null;
+        }
+
+        $key = strtolower(ltrim($className, '\\'));
+        $methodKey = strtolower($methodName);
+        if (!array_key_exists($methodKey, $target['methods'])) {
+            $classReflection = $this->reflectionProvider->getClass($className);
+            if ($classReflection->hasNativeMethod($methodName)) {
+                $method = $classReflection->getNativeMethod($methodName);
+                $this->targets[$key]['methods'][$methodKey] = [
+                    'isStatic'  => $method->isStatic(),
+                    'isFinal'   => $method->isFinal()->yes(),
+                    'isPrivate' => $method->isPrivate(),
+                ];
+            } else {
+                // Magic and virtual methods have no native flags
+                $this->targets[$key]['methods'][$methodKey] = $classReflection->hasMethod($methodName)
+                    ? ['isStatic' => false, 'isFinal' => false, 'isPrivate' => false]
+                    : null;
+            }
+        }
+
+        return $this->targets[$key]['methods'][$methodKey];
+    }
+}
@@ -6,7 +6,6 @@ use PhpParser\Node;
 use PhpParser\Node\Expr\MethodCall;
 use PhpParser\Node\Scalar\String_;
 use PHPStan\Analyser\Scope;
-use PHPStan\Reflection\ReflectionProvider;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
 
@@ -18,6 +17,8 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - Attempting to mock methods that don't exist on the class
  * - Attempting to mock final methods
  *
+ * Mocked classes are resolved through the per-session MockTargetCache.
+ *
  * @implements Rule<MethodCall>
  */
 class MockingMethodsCorrectnessRule implements Rule
@@ -27,7 +28,7 @@ class MockingMethodsCorrectnessRule implements Rule
     private const string MESSAGE_FINAL_METHOD = "The method is final hence can not be mocked.";
 
     public function __construct(
-        private ReflectionProvider $reflectionProvider,
+        private MockTargetCache $mockTargetCache,
     ) {}
 
     public function getNodeType(): string
@@ -115,14 +116,13 @@ class MockingMethodsCorrectnessRule implements Rule
         }
 
         // Check if class exists
-        if (!$this->reflectionProvider->hasClass($mockedClass)) {
+        if ($this->mockTargetCache->get($mockedClass) === null) {
             return [];
         }
 
-        $classReflection = $this->reflectionProvider->getClass($mockedClass);
-
         // Check if method exists
-        if (!$classReflection->hasMethod($methodName)) {
+        $method = $this->mockTargetCache->getMethod($mockedClass, $methodName);
+        if ($method === null) {
             return [
                 RuleErrorBuilder::message(self::MESSAGE_UNRESOLVED_METHOD)
                     ->line($arg->getStartLine())
@@ -130,10 +130,8 @@ class MockingMethodsCorrectnessRule implements Rule
             ];
         }
 
-        $methodReflection = $classReflection->getMethod($methodName, $scope);
-
         // Check if method is final
-        if ($methodReflection->isFinal()->yes()) {
+        if ($method['isFinal']) {
             return [
                 RuleErrorBuilder::message(self::MESSAGE_FINAL_METHOD)
                     ->line($arg->getStartLine())
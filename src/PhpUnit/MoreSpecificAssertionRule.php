@@ -0,0 +1,107 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\PrettyPrinter\Standard;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ClassReflection;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Detects assertions which have a more specific counterpart, e.g. assertCount() for
+ * assertSame(2, count($x)) or assertSame() for assertEquals() of two strings (see AssertionStrategies).
+ * Mirrors the assertion strategies of Php Inspections (EA Extended) PhpUnitTestsInspector.
+ *
+ * Only assertions of PHPUnit's Assert class called in a TestCase are checked, through `$this`
+ * or statically, and with the scope of the call site, so the operand types are known.
+ *
+ * @implements Rule<Expr\CallLike>
+ */
+final class MoreSpecificAssertionRule implements Rule
+{
+    private const string MESSAGE = "'%s(...)' would fit more here.";
+    private const string TIP = 'Use %s instead.';
+
+    private const array TEST_CASE_CLASSES = ['PHPUnit\Framework\TestCase', 'PHPUnit_Framework_TestCase'];
+    private const array ASSERT_CLASSES = ['PHPUnit\Framework\Assert', 'PHPUnit_Framework_Assert'];
+
+    private Standard $prettyPrinter;
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+    ) {
+        $this->prettyPrinter = new Standard();
+    }
+
+    public function getNodeType(): string
+    {
+        return Expr\CallLike::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!($node instanceof Expr\MethodCall || $node instanceof Expr\StaticCall) || !$node->name instanceof Node\Identifier
+            || $node->isFirstClassCallable() || !AssertionStrategies::hasStrategies($node->name->toString())
+            || !$this->isTestCaseAssertion($node, $scope)) {
+            return [];
+        }
+
+        $suggestion = AssertionStrategies::suggest($node->name->toString(), $node->getArgs(), $scope);
+        if ($suggestion === null) {
+            return [];
+        }
+        [$assertion, $args] = $suggestion;
+        $args = array_map(static fn (Expr $arg): Node\Arg => new Node\Arg($arg), $args);
+        $replacement = $node instanceof Expr\StaticCall
+            ? new Expr\StaticCall($node->class, $assertion, $args)
+            : new Expr\MethodCall($node->var, $assertion, $args);
+
+        return [
+            RuleErrorBuilder::message(sprintf(self::MESSAGE, $assertion))
+                ->identifier('phpunit.assertion.moreSpecific')
+                ->tip(sprintf(self::TIP, $this->prettyPrinter->prettyPrintExpr($replacement)))
+                ->line($node->getStartLine())
+                ->build(),
+        ];
+    }
+
+    /**
+     * `$this->assert...()` or `self::assert...()`, `static::`, `parent::`, `Assert::` in a TestCase.
+     */
+    private function isTestCaseAssertion(Expr\MethodCall|Expr\StaticCall $call, Scope $scope): bool
+    {
+        $classReflection = $scope->getClassReflection();
+        if ($classReflection === null || !$this->isSubclassOfAny($classReflection, self::TEST_CASE_CLASSES)) {
+            return false;
+        }
+
+        if ($call instanceof Expr\MethodCall) {
+            return $call->var instanceof Expr\Variable && $call->var->name === 'this';
+        }
+        if (!$call->class instanceof Node\Name) {
+            return false;
+        }
+        $className = $scope->resolveName($call->class);
+
+        return $this->reflectionProvider->hasClass($className)
+            && $this->isSubclassOfAny($this->reflectionProvider->getClass($className), self::ASSERT_CLASSES);
+    }
+
+    /**
+     * @param list<string> $classNames
+     */
+    private function isSubclassOfAny(ClassReflection $classReflection, array $classNames): bool
+    {
+        foreach ($classNames as $className) {
+            if ($classReflection->getName() === $className || $classReflection->isSubclassOf($className)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,265 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Node\Arg;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\StaticCall;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Scalar\DNumber;
+use PhpParser\Node\Scalar\Encapsed;
+use PhpParser\Node\Scalar\LNumber;
+use PhpParser\Node\Scalar\String_;
+
+/**
+ * Rewrites of deprecated PHPUnit assertion and mocking calls to their replacements, e.g.
+ * assertRegExp() to assertMatchesRegularExpression() or assertInternalType('array', $x) to
+ * assertIsArray($x).
+ *
+ * Every rewrite knows the release which deprecated the old API and the release which introduced
+ * the replacement; it applies when migrating to a version which has both. plan() only describes
+ * the rewrite (used by PhpUnitDeprecationsRule), apply() changes the call in place (used by
+ * PhpUnitMigration), keeping the argument nodes so format-preserving printing only touches the
+ * rewritten parts.
+ */
+final class PhpUnitAssertFixer
+{
+    /** @var array<string, array{string, PhpUnitVersion, PhpUnitVersion}> lowercased method => [replacement, deprecated in, replacement since] */
+    private const array RENAMES = [
+        'assertfilenotexists'           => ['assertFileDoesNotExist', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertdirectorynotexists'      => ['assertDirectoryDoesNotExist', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertnotisreadable'           => ['assertIsNotReadable', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertnotiswritable'           => ['assertIsNotWritable', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertfilenotisreadable'       => ['assertFileIsNotReadable', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertfilenotiswritable'       => ['assertFileIsNotWritable', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertdirectorynotisreadable'  => ['assertDirectoryIsNotReadable', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertdirectorynotiswritable'  => ['assertDirectoryIsNotWritable', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertregexp'                  => ['assertMatchesRegularExpression', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'assertnotregexp'               => ['assertDoesNotMatchRegularExpression', PhpUnitVersion::PHPUNIT91, PhpUnitVersion::PHPUNIT91],
+        'expectexceptionmessageregexp'  => ['expectExceptionMessageMatches', PhpUnitVersion::PHPUNIT84, PhpUnitVersion::PHPUNIT84],
+        'assertobjecthasattribute'      => ['assertObjectHasProperty', PhpUnitVersion::PHPUNIT96, PhpUnitVersion::PHPUNIT101],
+        'assertobjectnothasattribute'   => ['assertObjectNotHasProperty', PhpUnitVersion::PHPUNIT96, PhpUnitVersion::PHPUNIT101],
+    ];
+
+    /** @var array<string, string> stub => will*() replacement */
+    private const array STUBS = [
+        'returnvalue'         => 'willReturn',
+        'returncallback'      => 'willReturnCallback',
+        'returnvaluemap'      => 'willReturnMap',
+        'returnargument'      => 'willReturnArgument',
+        'returnself'          => 'willReturnSelf',
+        'throwexception'      => 'willThrowException',
+        'onconsecutivecalls'  => 'willReturnOnConsecutiveCalls',
+    ];
+
+    /** @var array<string, string> assertEquals*() suffix => deprecated argument */
+    private const array EQUALS_ARGUMENTS = [
+        'WithDelta'      => '$delta',
+        'Canonicalizing' => '$canonicalize',
+        'IgnoringCase'   => '$ignoreCase',
+    ];
+
+    /** @var array<string, string> assertInternalType() type => assertIs*() suffix */
+    private const array INTERNAL_TYPES = [
+        'array' => 'Array', 'bool' => 'Bool', 'boolean' => 'Bool', 'float' => 'Float', 'double' => 'Float',
+        'real' => 'Float', 'int' => 'Int', 'integer' => 'Int', 'numeric' => 'Numeric', 'object' => 'Object',
+        'resource' => 'Resource', 'string' => 'String', 'scalar' => 'Scalar', 'callable' => 'Callable',
+        'iterable' => 'Iterable',
+    ];
+
+    /**
+     * The rewrite of the call for the target version, null when there is none.
+     *
+     * @return array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion}|null
+     */
+    public static function plan(MethodCall|StaticCall $call, PhpUnitVersion $target): ?array
+    {
+        if (!$call->name instanceof Identifier || $call->isFirstClassCallable()) {
+            return null;
+        }
+        $args = $call->getArgs();
+        foreach ($args as $arg) {
+            if ($arg->name !== null || $arg->unpack) {
+                return null;
+            }
+        }
+        $name = $call->name->toString();
+        $lowerName = strtolower($name);
+
+        if (isset(self::RENAMES[$lowerName])) {
+            [$replacement, $deprecatedIn, $replacementSince] = self::RENAMES[$lowerName];
+            return self::ifAvailable($target, $deprecatedIn, $replacementSince, ['name' => $replacement, 'args' => $args, 'deprecated' => $name, 'since' => $deprecatedIn]);
+        }
+
+        $plan = match ($lowerName) {
+            'assertinternaltype', 'assertnotinternaltype' => self::planInternalType($name, $args),
+            'assertequals', 'assertnotequals'             => self::planEqualsArguments($name, $args),
+            'assertcontains', 'assertnotcontains'         => self::planStringContains($name, $args),
+            'will'                                        => self::planStub($call, $args),
+            default                                       => null,
+        };
+
+        return $plan === null ? null : self::ifAvailable($target, $plan['since'], $plan['available'], [
+            'name' => $plan['name'], 'args' => $plan['args'], 'deprecated' => $plan['deprecated'], 'since' => $plan['since'],
+        ]);
+    }
+
+    /**
+     * @param array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion} $plan
+     */
+    public static function apply(MethodCall|StaticCall $call, array $plan): void
+    {
+        $call->name = new Identifier($plan['name']);
+        $call->args = $plan['args'];
+    }
+
+    /**
+     * @param array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion} $plan
+     * @return array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion}|null
+     */
+    private static function ifAvailable(PhpUnitVersion $target, PhpUnitVersion $deprecatedIn, PhpUnitVersion $replacementSince, array $plan): ?array
+    {
+        return $target->atLeast($deprecatedIn) && $target->atLeast($replacementSince) ? $plan : null;
+    }
+
+    /**
+     * assertInternalType('array', $x, $message) => assertIsArray($x, $message)
+     *
+     * @param list<Arg> $args
+     * @return array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion, available: PhpUnitVersion}|null
+     */
+    private static function planInternalType(string $name, array $args): ?array
+    {
+        if (count($args) < 2 || !$args[0]->value instanceof String_) {
+            return null;
+        }
+        $isNegated = strtolower($name) === 'assertnotinternaltype';
+        $type = strtolower($args[0]->value->value);
+
+        $replacement = match (true) {
+            $type === 'null'                     => $isNegated ? 'assertNotNull' : 'assertNull',
+            isset(self::INTERNAL_TYPES[$type])   => ($isNegated ? 'assertIsNot' : 'assertIs') . self::INTERNAL_TYPES[$type],
+            default                              => null,
+        };
+
+        return $replacement === null ? null : [
+            'name' => $replacement, 'args' => array_slice($args, 1), 'deprecated' => $name,
+            'since' => PhpUnitVersion::PHPUNIT80, 'available' => PhpUnitVersion::PHPUNIT75,
+        ];
+    }
+
+    /**
+     * assertEquals($expected, $actual, $message, $delta) => assertEqualsWithDelta($expected, $actual, $delta, $message),
+     * likewise $canonicalize and $ignoreCase, when exactly one of them is used
+     *
+     * @param list<Arg> $args
+     * @return array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion, available: PhpUnitVersion}|null
+     */
+    private static function planEqualsArguments(string $name, array $args): ?array
+    {
+        if (count($args) < 4 || count($args) > 7) {
+            return null;
+        }
+
+        // $maxDepth was ignored since PHPUnit 7, any literal can be dropped
+        $delta = $args[3]->value;
+        $hasDelta = !self::isNull($delta) && !(($delta instanceof LNumber || $delta instanceof DNumber) && (float) $delta->value === 0.0);
+        $canonicalize = isset($args[5]) ? self::literalBool($args[5]->value) : false;
+        $ignoreCase = isset($args[6]) ? self::literalBool($args[6]->value) : false;
+        if ($canonicalize === null || $ignoreCase === null
+            || (isset($args[4]) && !$args[4]->value instanceof LNumber && !self::isNull($args[4]->value))) {
+            return null;
+        }
+
+        $suffixes = array_keys(array_filter(['WithDelta' => $hasDelta, 'Canonicalizing' => $canonicalize, 'IgnoringCase' => $ignoreCase]));
+        if (count($suffixes) !== 1) {
+            return null;
+        }
+
+        $newArgs = [$args[0], $args[1]];
+        if ($suffixes[0] === 'WithDelta') {
+            $newArgs[] = $args[3];
+        }
+        if (!($args[2]->value instanceof String_ && $args[2]->value->value === '')) {
+            $newArgs[] = $args[2];
+        }
+
+        return [
+            'name' => $name . $suffixes[0], 'args' => $newArgs, 'deprecated' => $name . '() with ' . self::EQUALS_ARGUMENTS[$suffixes[0]],
+            'since' => PhpUnitVersion::PHPUNIT80, 'available' => PhpUnitVersion::PHPUNIT75,
+        ];
+    }
+
+    /**
+     * assertContains('a', 'abc') => assertStringContainsString('a', 'abc'), for literal string haystacks
+     *
+     * @param list<Arg> $args
+     * @return array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion, available: PhpUnitVersion}|null
+     */
+    private static function planStringContains(string $name, array $args): ?array
+    {
+        if (count($args) < 2 || count($args) > 4
+            || !($args[1]->value instanceof String_ || $args[1]->value instanceof Encapsed)) {
+            return null;
+        }
+        $ignoreCase = isset($args[3]) ? self::literalBool($args[3]->value) : false;
+        if ($ignoreCase === null) {
+            return null;
+        }
+
+        $replacement = (strtolower($name) === 'assertnotcontains' ? 'assertStringNotContainsString' : 'assertStringContainsString')
+            . ($ignoreCase ? 'IgnoringCase' : '');
+
+        return [
+            'name' => $replacement, 'args' => array_slice($args, 0, 3), 'deprecated' => $name . '() with a string haystack',
+            'since' => PhpUnitVersion::PHPUNIT80, 'available' => PhpUnitVersion::PHPUNIT75,
+        ];
+    }
+
+    /**
+     * ->will($this->returnValue($x)) => ->willReturn($x)
+     *
+     * @param list<Arg> $args
+     * @return array{name: string, args: list<Arg>, deprecated: string, since: PhpUnitVersion, available: PhpUnitVersion}|null
+     */
+    private static function planStub(MethodCall|StaticCall $call, array $args): ?array
+    {
+        if (!$call instanceof MethodCall || count($args) !== 1) {
+            return null;
+        }
+        $stub = $args[0]->value;
+        if (!($stub instanceof MethodCall || $stub instanceof StaticCall) || !$stub->name instanceof Identifier
+            || !isset(self::STUBS[$stub->name->toLowerString()]) || $stub->isFirstClassCallable()) {
+            return null;
+        }
+        foreach ($stub->getArgs() as $arg) {
+            if ($arg->name !== null) {
+                return null;
+            }
+        }
+
+        return [
+            'name' => self::STUBS[$stub->name->toLowerString()], 'args' => $stub->getArgs(), 'deprecated' => 'will(' . $stub->name->toString() . '())',
+            'since' => PhpUnitVersion::PHPUNIT110, 'available' => PhpUnitVersion::PHPUNIT56,
+        ];
+    }
+
+    private static function isNull(Expr $expr): bool
+    {
+        return $expr instanceof Expr\ConstFetch && $expr->name->toLowerString() === 'null';
+    }
+
+    private static function literalBool(Expr $expr): ?bool
+    {
+        if (!$expr instanceof Expr\ConstFetch) {
+            return null;
+        }
+
+        return match ($expr->name->toLowerString()) {
+            'true'  => true,
+            'false' => false,
+            default => null,
+        };
+    }
+}
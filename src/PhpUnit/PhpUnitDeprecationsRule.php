@@ -21,6 +21,15 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - assertEquals/assertNotEquals with $canonicalize argument (use assertEqualsCanonicalizing/assertNotEqualsCanonicalizing)
  * - assertEquals/assertNotEquals with $ignoreCase argument (use assertEqualsIgnoringCase/assertNotEqualsIgnoringCase)
  * - assertFileNotExists/assertDirectoryNotExists (use assertFileDoesNotExist/assertDirectoryDoesNotExist)
+ * - the other methods renamed in PHPUnit 8.4 and 9.1, e.g. assertRegExp (use assertMatchesRegularExpression)
+ * - assertInternalType/assertNotInternalType (use assertIsArray, assertIsNotString, ...)
+ * - assertContains/assertNotContains with a string haystack (use assertStringContainsString/assertStringNotContainsString)
+ * - assertObjectHasAttribute/assertObjectNotHasAttribute (deprecated in PHPUnit 9.6, removed in 10.0; use
+ *   assertObjectHasProperty/assertObjectNotHasProperty, PHPUnit 10.1)
+ * - will($this->returnValue(...)) and the other stubs (use willReturn, willReturnCallback, ..., PHPUnit 11)
+ *
+ * The method rewrites are shared with PhpUnitMigration (see PhpUnitAssertFixer), which applies
+ * them to a whole test tree.
  *
  * @implements Rule<MethodCall>
  */
@@ -42,8 +51,8 @@ final class PhpUnitDeprecationsRule implements Rule
         // Check for deprecated assertEquals/assertNotEquals arguments
         $errors = array_merge($errors, $this->checkAssertEqualsArguments($node, $scope));
 
-        // Check for deprecated file/directory assertion method names
-        $errors = array_merge($errors, $this->checkFileAssertionMethods($node, $scope));
+        // Check for deprecated or renamed assertion and stubbing methods
+        $errors = array_merge($errors, $this->checkDeprecatedMethods($node, $scope));
 
         return $errors;
     }
@@ -113,25 +122,26 @@ final class PhpUnitDeprecationsRule implements Rule
     /**
      * @return list<RuleError>
      */
-    private function checkFileAssertionMethods(MethodCall $node, Scope $scope): array
+    private function checkDeprecatedMethods(MethodCall $node, Scope $scope): array
     {
-        $errors = [];
-
-        if (!$this->isMethodName($node, ['assertFileNotExists', 'assertDirectoryNotExists'])) {
-            return $errors;
+        // The arguments of assertEquals/assertNotEquals are reported one by one above
+        if ($this->isMethodName($node, ['assertEquals', 'assertNotEquals'])) {
+            return [];
         }
 
-        $methodName = $this->getMethodName($node);
-        $replacement = str_replace('NotExist', 'DoesNotExist', $methodName);
-
-        $errors[] = RuleErrorBuilder::message(
-            sprintf('%s is deprecated in favor of %s() since PHPUnit 9.1.', $methodName, $replacement)
-        )
-            ->identifier('phpunit.deprecatedMethod')
-            ->line($node->getStartLine())
-            ->build();
+        $plan = PhpUnitAssertFixer::plan($node, PhpUnitVersion::PHPUNIT110);
+        if ($plan === null) {
+            return [];
+        }
 
-        return $errors;
+        return [
+            RuleErrorBuilder::message(
+                sprintf('%s is deprecated in favor of %s() since PHPUnit %s.', $plan['deprecated'], $plan['name'], $plan['since']->label())
+            )
+                ->identifier('phpunit.deprecatedMethod')
+                ->line($node->getStartLine())
+                ->build(),
+        ];
     }
 
     private function isMethodName(MethodCall $node, array|string $expectedNames): bool
@@ -0,0 +1,297 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Error;
+use PhpParser\Node;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitor\CloningVisitor;
+use PhpParser\NodeVisitorAbstract;
+use PhpParser\Parser;
+use PhpParser\ParserFactory;
+use PhpParser\PrettyPrinter\Standard;
+
+/**
+ * Batch migration of a test tree to a PHPUnit version, without running PHPStan.
+ *
+ * Every call which PhpUnitAssertFixer can rewrite for the target version is rewritten, whichever
+ * version the tree was written for, e.g.
+ * assertRegExp() to assertMatchesRegularExpression() when migrating to 9.1 or later. Files are
+ * printed format-preserving, so only the rewritten calls change. Changed files are written in
+ * batches through a temporary file and a rename, so an interrupted run leaves no half-written
+ * tests behind. Like MalwareSweep, the files are split into batches which forked worker
+ * processes claim from a shared queue; without the pcntl extension the migration runs in the
+ * current process.
+ *
+ *     $result = (new PhpUnitMigration(PhpUnitVersion::PHPUNIT110, workers: 8))
+ *         ->migrate(['tests']);
+ *     foreach ($result['statistics']['rewrites'] as $deprecated => $count) {
+ *         printf("%5d %s\n", $count, $deprecated);
+ *     }
+ *     printf("%d of %d files changed\n", $result['statistics']['changedFiles'], $result['statistics']['files']);
+ */
+final class PhpUnitMigration
+{
+    private const int BATCH_SIZE = 64;
+
+    private const int WRITE_BATCH_SIZE = 32;
+
+    private Parser $parser;
+
+    private Standard $printer;
+
+    public function __construct(
+        private readonly PhpUnitVersion $target,
+        private readonly int $workers = 1,
+        private readonly bool $dryRun = false,
+        ?Parser $parser = null,
+    ) {
+        $this->parser = $parser ?? (new ParserFactory())->createForHostVersion();
+        $this->printer = new Standard();
+    }
+
+    /**
+     * @param list<string> $paths test files and directories to migrate
+     * @return array{
+     *     files: list<array{file: string, rewrites: int}>,
+     *     parseErrors: list<array{file: string, message: string}>,
+     *     writeErrors: list<string>,
+     *     statistics: array{target: string, files: int, changedFiles: int, rewrites: array<string, int>, workers: int, seconds: float}
+     * }
+     */
+    public function migrate(array $paths): array
+    {
+        $startedAt = hrtime(true);
+        $files = $this->collectFiles($paths);
+        $batches = array_chunk($files, self::BATCH_SIZE);
+
+        $workers = min($this->workers, count($batches));
+        $partials = $workers > 1 && function_exists('pcntl_fork')
+            ? $this->migrateInWorkers($batches, $workers)
+            : [$this->migrateBatches($batches, null)];
+
+        $result = ['files' => [], 'parseErrors' => [], 'writeErrors' => [], 'rewrites' => []];
+        foreach ($partials as $partial) {
+            $result['files']       = [...$result['files'], ...$partial['files']];
+            $result['parseErrors'] = [...$result['parseErrors'], ...$partial['parseErrors']];
+            $result['writeErrors'] = [...$result['writeErrors'], ...$partial['writeErrors']];
+            foreach ($partial['rewrites'] as $deprecated => $count) {
+                $result['rewrites'][$deprecated] = ($result['rewrites'][$deprecated] ?? 0) + $count;
+            }
+        }
+        usort($result['files'], static fn (array $left, array $right): int => $left['file'] <=> $right['file']);
+        arsort($result['rewrites']);
+
+        return [
+            'files'       => $result['files'],
+            'parseErrors' => $result['parseErrors'],
+            'writeErrors' => $result['writeErrors'],
+            'statistics'  => [
+                'target'       => $this->target->label(),
+                'files'        => count($files),
+                'changedFiles' => count($result['files']),
+                'rewrites'     => $result['rewrites'],
+                'workers'      => max(1, count($partials)),
+                'seconds'      => (hrtime(true) - $startedAt) / 1e9,
+            ],
+        ];
+    }
+
+    /**
+     * @param list<list<string>> $batches
+     * @return list<array{files: list<array{file: string, rewrites: int}>, parseErrors: list<array{file: string, message: string}>, writeErrors: list<string>, rewrites: array<string, int>}>
+     */
+    private function migrateInWorkers(array $batches, int $workers): array
+    {
+        $queueDirectory = sys_get_temp_dir() . '/phpunit-migration-' . bin2hex(random_bytes(8));
+        if (!@mkdir($queueDirectory, 0700)) {
+            return [$this->migrateBatches($batches, null)];
+        }
+
+        $children = [];
+        for ($worker = 0; $worker < $workers; $worker++) {
+            $pid = pcntl_fork();
+            if ($pid === -1) {
+                break;
+            }
+            if ($pid === 0) {
+                $partial = $this->migrateBatches($batches, $queueDirectory);
+                file_put_contents($queueDirectory . '/result-' . $worker . '.json', json_encode($partial, JSON_INVALID_UTF8_SUBSTITUTE));
+                exit(0);
+            }
+            $children[$pid] = $worker;
+        }
+
+        // The parent takes part as well, which also covers failed forks
+        $partials = [$this->migrateBatches($batches, $queueDirectory)];
+        foreach ($children as $pid => $worker) {
+            pcntl_waitpid($pid, $status);
+            $resultFile = $queueDirectory . '/result-' . $worker . '.json';
+            $partial = is_file($resultFile) ? json_decode((string) file_get_contents($resultFile), true) : null;
+            if (is_array($partial)) {
+                $partials[] = $partial;
+            }
+        }
+
+        foreach (glob($queueDirectory . '/*') ?: [] as $queueFile) {
+            @unlink($queueFile);
+        }
+        @rmdir($queueDirectory);
+
+        return $partials;
+    }
+
+    /**
+     * Migrates all batches, or with a queue directory the batches this process manages to claim.
+     *
+     * @param list<list<string>> $batches
+     * @return array{files: list<array{file: string, rewrites: int}>, parseErrors: list<array{file: string, message: string}>, writeErrors: list<string>, rewrites: array<string, int>}
+     */
+    private function migrateBatches(array $batches, ?string $queueDirectory): array
+    {
+        $partial = ['files' => [], 'parseErrors' => [], 'writeErrors' => [], 'rewrites' => []];
+        $pendingWrites = [];
+
+        foreach ($batches as $index => $batch) {
+            if ($queueDirectory !== null) {
+                $claim = @fopen($queueDirectory . '/batch-' . $index, 'x');
+                if ($claim === false) {
+                    continue;
+                }
+                fclose($claim);
+            }
+
+            foreach ($batch as $file) {
+                $code = (string) file_get_contents($file);
+                if (!str_contains($code, 'assert') && !str_contains($code, 'expect') && !str_contains($code, 'will')) {
+                    continue;
+                }
+
+                try {
+                    [$migrated, $rewrites] = $this->migrateCode($code);
+                } catch (Error $error) {
+                    $partial['parseErrors'][] = ['file' => $file, 'message' => $error->getMessage()];
+                    continue;
+                }
+                if ($rewrites === [] || $migrated === $code) {
+                    continue;
+                }
+
+                $partial['files'][] = ['file' => $file, 'rewrites' => array_sum($rewrites)];
+                foreach ($rewrites as $deprecated => $count) {
+                    $partial['rewrites'][$deprecated] = ($partial['rewrites'][$deprecated] ?? 0) + $count;
+                }
+
+                $pendingWrites[$file] = $migrated;
+                if (count($pendingWrites) >= self::WRITE_BATCH_SIZE) {
+                    $partial['writeErrors'] = [...$partial['writeErrors'], ...$this->flush($pendingWrites)];
+                    $pendingWrites = [];
+                }
+            }
+        }
+        $partial['writeErrors'] = [...$partial['writeErrors'], ...$this->flush($pendingWrites)];
+
+        return $partial;
+    }
+
+    /**
+     * @return array{string, array<string, int>} the migrated code and the rewrites by deprecated API
+     */
+    private function migrateCode(string $code): array
+    {
+        $oldStmts = $this->parser->parse($code) ?? [];
+        $oldTokens = $this->parser->getTokens();
+
+        $cloner = new NodeTraverser(new CloningVisitor());
+        $newStmts = $cloner->traverse($oldStmts);
+
+        $fixer = new class ($this->target) extends NodeVisitorAbstract {
+            /** @var array<string, int> */
+            public array $rewrites = [];
+
+            public function __construct(private readonly PhpUnitVersion $target)
+            {
+            }
+
+            public function leaveNode(Node $node): ?Node
+            {
+                if (!$node instanceof Node\Expr\MethodCall && !$node instanceof Node\Expr\StaticCall) {
+                    return null;
+                }
+
+                $plan = PhpUnitAssertFixer::plan($node, $this->target);
+                if ($plan !== null) {
+                    PhpUnitAssertFixer::apply($node, $plan);
+                    $this->rewrites[$plan['deprecated']] = ($this->rewrites[$plan['deprecated']] ?? 0) + 1;
+                }
+
+                return null;
+            }
+        };
+        (new NodeTraverser($fixer))->traverse($newStmts);
+
+        if ($fixer->rewrites === []) {
+            return [$code, []];
+        }
+
+        return [$this->printer->printFormatPreserving($newStmts, $oldStmts, $oldTokens), $fixer->rewrites];
+    }
+
+    /**
+     * Writes the migrated files, each through a temporary file renamed over the original.
+     *
+     * @param array<string, string> $pendingWrites file => migrated code
+     * @return list<string> files which could not be written
+     */
+    private function flush(array $pendingWrites): array
+    {
+        if ($this->dryRun) {
+            return [];
+        }
+
+        $failed = [];
+        foreach ($pendingWrites as $file => $code) {
+            $temporaryFile = $file . '.' . bin2hex(random_bytes(4)) . '.tmp';
+            $permissions = @fileperms($file);
+            if (@file_put_contents($temporaryFile, $code) !== strlen($code)
+                || ($permissions !== false && !@chmod($temporaryFile, $permissions & 0777))
+                || !@rename($temporaryFile, $file)) {
+                @unlink($temporaryFile);
+                $failed[] = $file;
+            }
+        }
+
+        return $failed;
+    }
+
+    /**
+     * @param list<string> $paths
+     * @return list<string>
+     */
+    private function collectFiles(array $paths): array
+    {
+        $files = [];
+        foreach ($paths as $path) {
+            if (is_file($path)) {
+                $files[] = $path;
+                continue;
+            }
+            if (!is_dir($path)) {
+                continue;
+            }
+
+            $iterator = new \RecursiveIteratorIterator(
+                new \RecursiveDirectoryIterator($path, \FilesystemIterator::SKIP_DOTS),
+                \RecursiveIteratorIterator::LEAVES_ONLY,
+                \RecursiveIteratorIterator::CATCH_GET_CHILD
+            );
+            foreach ($iterator as $fileInfo) {
+                if ($fileInfo instanceof \SplFileInfo && $fileInfo->isFile() && strtolower($fileInfo->getExtension()) === 'php') {
+                    $files[] = $fileInfo->getPathname();
+                }
+            }
+        }
+
+        return array_values(array_unique($files));
+    }
+}
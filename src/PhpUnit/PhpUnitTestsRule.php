@@ -19,6 +19,8 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - @covers annotations referencing non-existing classes or methods
  * - @test annotations used on methods that already start with 'test' (ambiguous)
  *
+ * Assertions with a more specific counterpart are reported by MoreSpecificAssertionRule.
+ *
  * The rule helps maintain clean and correct PHPUnit test suites by catching
  * common mistakes and suggesting improvements for better test code quality.
  *
@@ -0,0 +1,56 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+/**
+ * PHPUnit releases which changed the assertion and mocking API, ordered by their value.
+ */
+enum PhpUnitVersion: int
+{
+    case PHPUNIT56  = 56;
+    case PHPUNIT60  = 60;
+    case PHPUNIT70  = 70;
+    case PHPUNIT75  = 75;
+    case PHPUNIT80  = 80;
+    case PHPUNIT84  = 84;
+    case PHPUNIT90  = 90;
+    case PHPUNIT91  = 91;
+    case PHPUNIT95  = 95;
+    case PHPUNIT96  = 96;
+    case PHPUNIT100 = 100;
+    case PHPUNIT101 = 101;
+    case PHPUNIT110 = 110;
+
+    public function atLeast(self $version): bool
+    {
+        return $this->value >= $version->value;
+    }
+
+    /**
+     * e.g. '9.5' or '10.1'
+     */
+    public function label(): string
+    {
+        return intdiv($this->value, 10) . '.' . $this->value % 10;
+    }
+
+    /**
+     * The latest listed release not newer than the given version, e.g. '10.5.2' gives PHPUNIT101.
+     */
+    public static function fromString(string $version): ?self
+    {
+        if (preg_match('/^(\d+)(?:\.(\d+))?/', $version, $matches) !== 1) {
+            return null;
+        }
+        $value = (int) $matches[1] * 10 + min(9, (int) ($matches[2] ?? 0));
+
+        $match = null;
+        foreach (self::cases() as $case) {
+            if ($case->value <= $value) {
+                $match = $case;
+            }
+        }
+
+        return $match;
+    }
+}
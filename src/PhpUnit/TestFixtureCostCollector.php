@@ -0,0 +1,51 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use PhpParser\Node;
+use PhpParser\Node\Stmt\Class_;
+use PHPStan\Analyser\Scope;
+use PHPStan\Collectors\Collector;
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Collects the fixture cost of test classes (see FixtureCost) for the ranked export of
+ * TestFixtureCostReportRule. Classes which do not extend TestCase, without fixture methods or
+ * without tests are not collected. Without a configured report file nothing is collected.
+ *
+ * @implements Collector<Class_, array{string, int, int, int, int, list<string>}>
+ */
+final class TestFixtureCostCollector implements Collector
+{
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly ?string $reportFile = null,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return Class_::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): ?array
+    {
+        if ($this->reportFile === null || $this->reportFile === '' || !FixtureCost::isTestCase($node, $this->reflectionProvider)) {
+            return null;
+        }
+
+        $cost = FixtureCost::analyzeClass($node);
+        if ($cost === null || $cost['runs'] === 0 || $cost['perTest'] + $cost['perClass'] === 0) {
+            return null;
+        }
+
+        $operations = [];
+        foreach ($cost['operations'] as $operation) {
+            if ($operation['category'] !== FixtureCost::CATEGORY_CALL) {
+                $operations[] = sprintf('%s(): %s on line %d', $operation['method'], $operation['operation'], $operation['line']);
+            }
+        }
+
+        return [$node->namespacedName->toString(), $node->getStartLine(), $cost['perTest'], $cost['perClass'], $cost['runs'], $operations];
+    }
+}
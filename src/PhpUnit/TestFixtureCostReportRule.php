@@ -0,0 +1,59 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\PhpUnit;
+
+use macropage\PHPStan\Inspections\RankedReport;
+use PhpParser\Node;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\CollectedDataNode;
+use PHPStan\Rules\Rule;
+
+/**
+ * Exports the test classes with the most expensive fixtures as a ranked JSON list, so the
+ * slowest parts of a suite can be fixed first. Meant for analysing the test directory on its own,
+ * e.g. `phpstan analyse tests/`.
+ *
+ * The cost of a class is the cost of its per-test fixtures times the test runs plus the cost of
+ * its per-class fixtures (see FixtureCost), gathered by TestFixtureCostCollector. Nothing is
+ * written unless a report file is configured, a failed write is reported.
+ *
+ * @implements Rule<CollectedDataNode>
+ */
+final class TestFixtureCostReportRule implements Rule
+{
+    public function __construct(
+        private readonly ?string $reportFile = null,
+        private readonly int $limit = 50,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return CollectedDataNode::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof CollectedDataNode || $this->reportFile === null) {
+            return [];
+        }
+
+        $ranking = [];
+        foreach ($node->get(TestFixtureCostCollector::class) as $file => $classes) {
+            foreach ($classes as [$className, $line, $perTest, $perClass, $runs, $operations]) {
+                $ranking[] = [
+                    'class'      => $className,
+                    'file'       => $file,
+                    'line'       => $line,
+                    'runs'       => $runs,
+                    'perTest'    => $perTest,
+                    'perClass'   => $perClass,
+                    'cost'       => $perTest * $runs + $perClass,
+                    'operations' => $operations,
+                ];
+            }
+        }
+
+        return RankedReport::write($this->reportFile, $ranking, 'cost', $this->limit, 'test fixture cost report', 'phpunit.fixture.reportNotWritten');
+    }
+}
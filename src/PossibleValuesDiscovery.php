@@ -0,0 +1,286 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\FunctionLike;
+use PhpParser\Node\Stmt;
+use PhpParser\Node\Stmt\ClassLike;
+use PhpParser\NodeFinder;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitorAbstract;
+use PHPStan\Analyser\Scope;
+use PHPStan\Parser\Parser;
+use PHPStan\Parser\ParserErrorsException;
+
+/**
+ * Discovers the values a variable may hold at a position of a function body: the expressions
+ * assigned to it before the position (including parameter default values), with ternary
+ * branches and assigned variables expanded recursively.
+ *
+ * Discovery follows source positions, not control flow. An assignment statement directly in the
+ * body's statement list runs before everything following it, so it replaces the earlier values
+ * (`$iv = 'x'; $iv = random_bytes(16);` yields the second value only). Assignments in branches
+ * and loops only add values: `if ($a) { $iv = 'x'; } else { $iv = random_bytes(16); }` yields
+ * both, and values assigned later in a loop are not seen by code earlier in its body.
+ *
+ * Every function body is scanned for assignments once; answers are memoized per variable and
+ * position, so several rules asking about the same variable share the work. Body caches are
+ * keyed by the AST nodes in a WeakMap. Files are parsed once per analysis run, the most recently
+ * used files are kept. At most $maxValues values are
+ * discovered per variable, which keeps pathological functions cheap.
+ */
+final class PossibleValuesDiscovery
+{
+    private const int MAX_CACHED_FILES = 32;
+
+    /** @var \WeakMap<Node, array{assignments: array<string, list<array{int, Expr, int, bool}>>, results: array<string, list<Expr>>}> */
+    private \WeakMap $bodies;
+
+    /** @var array<string, array{stmts: list<Stmt>, functions: list<FunctionLike>, topLevel: array{assignments: array<string, list<array{int, Expr, int, bool}>>, results: array<string, list<Expr>>}|null}> file => parsed file, least recently used first */
+    private array $files = [];
+
+    public function __construct(
+        private readonly ?Parser $parser = null,
+        private readonly int $maxValues = 32,
+    ) {
+        $this->bodies = new \WeakMap();
+    }
+
+    /**
+     * Values of the variable at its position in the analysed file.
+     *
+     * @return list<Expr>
+     */
+    public function discover(Variable $variable, Scope $scope): array
+    {
+        if (!is_string($variable->name) || $this->parser === null) {
+            return [];
+        }
+
+        $file = $scope->getFile();
+        $this->loadFile($file);
+        $position = $variable->getStartFilePos();
+
+        // Innermost function containing the variable, the code outside of functions otherwise
+        $function = null;
+        foreach ($this->files[$file]['functions'] as $candidate) {
+            if ($candidate->getStartFilePos() <= $position && $position <= $candidate->getEndFilePos()
+                && ($function === null || $candidate->getStartFilePos() >= $function->getStartFilePos())) {
+                $function = $candidate;
+            }
+        }
+
+        if ($function !== null) {
+            return $this->discoverInFunction($function, $variable->name, $position);
+        }
+
+        $body = $this->files[$file]['topLevel'] ?? ['assignments' => $this->collectAssignments($this->files[$file]['stmts'], []), 'results' => []];
+        $complete = true;
+        $values = $this->discoverInBody($body, $variable->name, $position, [], $complete);
+        $this->files[$file]['topLevel'] = $body;
+
+        return $values;
+    }
+
+    /**
+     * Values of the variable at the given file position of the function body.
+     *
+     * @return list<Expr>
+     */
+    public function discoverInFunction(FunctionLike $function, string $variableName, int $position): array
+    {
+        if (!isset($this->bodies[$function])) {
+            $defaults = [];
+            foreach ($function->getParams() as $param) {
+                if ($param->default !== null && $param->var instanceof Variable && is_string($param->var->name)) {
+                    $defaults[$param->var->name] = $param->default;
+                }
+            }
+            $this->bodies[$function] = ['assignments' => $this->collectAssignments($function->getStmts() ?? [], $defaults), 'results' => []];
+        }
+
+        $body = $this->bodies[$function];
+        $complete = true;
+        $values = $this->discoverInBody($body, $variableName, $position, [], $complete);
+        $this->bodies[$function] = $body;
+
+        return $values;
+    }
+
+    /**
+     * @param array{assignments: array<string, list<array{int, Expr, int, bool}>>, results: array<string, list<Expr>>} $body
+     * @param array<string, true> $visiting
+     * @param bool $complete set to false when the recursion guard cut the discovery short
+     * @return list<Expr>
+     */
+    private function discoverInBody(array &$body, string $variableName, int $position, array $visiting, bool &$complete): array
+    {
+        $key = $variableName . '@' . $position;
+        if (isset($body['results'][$key])) {
+            return $body['results'][$key];
+        }
+        if (isset($visiting[$key])) {
+            $complete = false;
+            return [];
+        }
+        $visiting[$key] = true;
+
+        // The last straight-line assignment completed before the position replaces all earlier values
+        $assignments = $body['assignments'][$variableName] ?? [];
+        $first = 0;
+        foreach ($assignments as $index => [$assignedAt, , $assignedEnd, $isStraightLine]) {
+            if ($assignedAt >= $position) {
+                break;
+            }
+            if ($isStraightLine && $assignedEnd < $position) {
+                $first = $index;
+            }
+        }
+
+        $values = [];
+        $valuesComplete = true;
+        foreach (array_slice($assignments, $first) as [$assignedAt, $assigned, $assignedEnd]) {
+            if ($assignedAt >= $position) {
+                break;
+            }
+            if ($assignedEnd >= $position) {
+                // The position is part of the assignment, e.g. $iv = $iv . 'x'
+                continue;
+            }
+            $this->expand($body, $assigned, $assignedAt, $visiting, $values, $valuesComplete);
+            if (count($values) >= $this->maxValues) {
+                break;
+            }
+        }
+
+        $values = array_slice($values, 0, $this->maxValues);
+        // Values cut short by the recursion guard are only valid for the current discovery
+        if (!$valuesComplete) {
+            $complete = false;
+            return $values;
+        }
+
+        return $body['results'][$key] = $values;
+    }
+
+    /**
+     * @param array{assignments: array<string, list<array{int, Expr, int, bool}>>, results: array<string, list<Expr>>} $body
+     * @param array<string, true> $visiting
+     * @param list<Expr> $values
+     */
+    private function expand(array &$body, Expr $expr, int $position, array $visiting, array &$values, bool &$complete): void
+    {
+        if ($expr instanceof Expr\Ternary) {
+            $this->expand($body, $expr->if ?? $expr->cond, $position, $visiting, $values, $complete);
+            $this->expand($body, $expr->else, $position, $visiting, $values, $complete);
+            return;
+        }
+
+        if ($expr instanceof Variable && is_string($expr->name) && $expr->name !== 'this') {
+            // Only assignments preceding the assignment being expanded can reach it
+            foreach ($this->discoverInBody($body, $expr->name, $position, $visiting, $complete) as $value) {
+                $values[] = $value;
+            }
+            return;
+        }
+
+        $values[] = $expr;
+    }
+
+    /**
+     * Assignments per variable ordered by position, parameter defaults first: [start, assigned
+     * expression, end, whether it is a statement directly in the body's statement list].
+     *
+     * @param Node[] $stmts
+     * @param array<string, Expr> $defaults
+     * @return array<string, list<array{int, Expr, int, bool}>>
+     */
+    private function collectAssignments(array $stmts, array $defaults): array
+    {
+        $straightLine = [];
+        foreach ($stmts as $stmt) {
+            foreach ($stmt instanceof Stmt\Namespace_ ? $stmt->stmts : [$stmt] as $bodyStmt) {
+                if ($bodyStmt instanceof Stmt\Expression && $bodyStmt->expr instanceof Assign) {
+                    $straightLine[spl_object_id($bodyStmt->expr)] = true;
+                }
+            }
+        }
+
+        $visitor = new class ($straightLine) extends NodeVisitorAbstract {
+            /** @var array<string, list<array{int, Expr, int, bool}>> */
+            public array $assignments = [];
+
+            /**
+             * @param array<int, true> $straightLine
+             */
+            public function __construct(private readonly array $straightLine)
+            {
+            }
+
+            public function enterNode(Node $node)
+            {
+                // Nested functions and classes have their own variables
+                if ($node instanceof FunctionLike || $node instanceof ClassLike) {
+                    return NodeTraverser::DONT_TRAVERSE_CHILDREN;
+                }
+                if ($node instanceof Assign && $node->var instanceof Variable && is_string($node->var->name)) {
+                    $this->assignments[$node->var->name][] = [
+                        $node->getStartFilePos(),
+                        $node->expr,
+                        $node->getEndFilePos(),
+                        isset($this->straightLine[spl_object_id($node)]),
+                    ];
+                }
+
+                return null;
+            }
+        };
+
+        $traverser = new NodeTraverser();
+        $traverser->addVisitor($visitor);
+        $traverser->traverse($stmts);
+
+        $assignments = $visitor->assignments;
+        foreach ($defaults as $name => $default) {
+            $assignments[$name] = [[-1, $default, -1, false], ...($assignments[$name] ?? [])];
+        }
+        foreach ($assignments as &$variableAssignments) {
+            usort($variableAssignments, static fn (array $left, array $right): int => $left[0] <=> $right[0]);
+        }
+        unset($variableAssignments);
+
+        return $assignments;
+    }
+
+    private function loadFile(string $file): void
+    {
+        if (isset($this->files[$file])) {
+            // Move to the end, the least recently used file is evicted first
+            $parsed = $this->files[$file];
+            unset($this->files[$file]);
+            $this->files[$file] = $parsed;
+            return;
+        }
+
+        try {
+            $stmts = array_values($this->parser?->parseFile($file) ?? []);
+        } catch (ParserErrorsException) {
+            $stmts = [];
+        }
+        if (count($this->files) >= self::MAX_CACHED_FILES) {
+            unset($this->files[array_key_first($this->files)]);
+        }
+        $this->files[$file] = [
+            'stmts'     => $stmts,
+            'functions' => array_values(array_filter(
+                (new NodeFinder())->findInstanceOf($stmts, FunctionLike::class),
+                static fn (Node $node): bool => $node instanceof FunctionLike
+            )),
+            'topLevel'  => null,
+        ];
+    }
+}
@@ -0,0 +1,136 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+/**
+ * Class dependency graph used for opcache preloading.
+ *
+ * A class can only be linked during preloading when its parent class, interfaces and traits
+ * are already compiled, so preload scripts have to compile files in dependency order.
+ * The graph computes the transitive dependencies of classes in topological order
+ * (dependencies first) and derives the file order for a set of root classes.
+ *
+ * Class information is provided by a callback, so the graph works with PHPStan's reflection
+ * (PreloadScriptDependenciesRule) as well as with runtime reflection (PreloadScriptGenerator).
+ * The callback returns null for unknown classes and a null file for built-in classes.
+ */
+final class PreloadDependencyGraph
+{
+    /** @var \Closure(string): (array{file: string|null, dependencies: list<string>}|null) */
+    private \Closure $classInfoProvider;
+
+    /** @var array<string, array{name: string, file: string|null, dependencies: list<string>}|null> */
+    private array $classInfo = [];
+
+    /** @var array<string, list<string>> lower-cased class name => transitive dependencies, dependencies first */
+    private array $closures = [];
+
+    /**
+     * @param callable(string): (array{file: string|null, dependencies: list<string>}|null) $classInfoProvider
+     */
+    public function __construct(callable $classInfoProvider)
+    {
+        $this->classInfoProvider = \Closure::fromCallable($classInfoProvider);
+    }
+
+    /**
+     * Transitive parent classes, interfaces and traits of the class in topological order.
+     *
+     * @return list<string>
+     */
+    public function getDependencyClosure(string $className): array
+    {
+        $key = strtolower(ltrim($className, '\\'));
+        if (!isset($this->closures[$key])) {
+            $ordered = [];
+            $visited = [$key => true];
+            foreach ($this->getInfo($className)['dependencies'] ?? [] as $dependency) {
+                $this->visit($dependency, $visited, $ordered);
+            }
+            $this->closures[$key] = $ordered;
+        }
+
+        return $this->closures[$key];
+    }
+
+    /**
+     * Files to compile for the given root classes, every file placed after the files of its dependencies.
+     *
+     * @param list<string> $rootClasses
+     * @return array{files: list<string>, unresolved: list<string>}
+     */
+    public function resolveLoadOrder(array $rootClasses): array
+    {
+        $files = [];
+        $unresolved = [];
+
+        foreach ($rootClasses as $rootClass) {
+            $rootInfo = $this->getInfo($rootClass);
+            if ($rootInfo === null) {
+                $unresolved[] = $rootClass;
+                continue;
+            }
+
+            foreach ([...$this->getDependencyClosure($rootClass), $rootInfo['name']] as $className) {
+                $info = $this->getInfo($className);
+                if ($info === null) {
+                    $unresolved[] = $className;
+                    continue;
+                }
+                if ($info['file'] !== null) {
+                    $files[$info['file']] = true;
+                }
+            }
+        }
+
+        return [
+            'files' => array_map('strval', array_keys($files)),
+            'unresolved' => array_values(array_unique($unresolved)),
+        ];
+    }
+
+    public function getFile(string $className): ?string
+    {
+        return $this->getInfo($className)['file'] ?? null;
+    }
+
+    public function isKnown(string $className): bool
+    {
+        return $this->getInfo($className) !== null;
+    }
+
+    /**
+     * @param array<string, true> $visited
+     * @param list<string> $ordered
+     */
+    private function visit(string $className, array &$visited, array &$ordered): void
+    {
+        $key = strtolower(ltrim($className, '\\'));
+        if (isset($visited[$key])) {
+            return;
+        }
+        $visited[$key] = true;
+
+        $info = $this->getInfo($className);
+        foreach ($info['dependencies'] ?? [] as $dependency) {
+            $this->visit($dependency, $visited, $ordered);
+        }
+
+        $ordered[] = $info['name'] ?? ltrim($className, '\\');
+    }
+
+    /**
+     * @return array{name: string, file: string|null, dependencies: list<string>}|null
+     */
+    private function getInfo(string $className): ?array
+    {
+        $className = ltrim($className, '\\');
+        $key = strtolower($className);
+        if (!array_key_exists($key, $this->classInfo)) {
+            $info = ($this->classInfoProvider)($className);
+            $this->classInfo[$key] = $info === null ? null : ['name' => $className] + $info;
+        }
+
+        return $this->classInfo[$key];
+    }
+}
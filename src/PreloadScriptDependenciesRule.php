@@ -0,0 +1,280 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\Array_;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\BinaryOp\Concat;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\LNumber;
+use PhpParser\Node\Scalar\MagicConst\Dir;
+use PhpParser\Node\Scalar\MagicConst\File;
+use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt;
+use PhpParser\Node\Stmt\ClassLike;
+use PhpParser\Node\Stmt\Expression;
+use PhpParser\Node\Stmt\Foreach_;
+use PhpParser\NodeFinder;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\FileNode;
+use PHPStan\Parser\Parser;
+use PHPStan\Parser\ParserErrorsException;
+use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Verifies the compile order of opcache preload scripts (files named preload.php).
+ *
+ * Every opcache_compile_file() call with a statically known path is resolved to the classes
+ * declared in the compiled file. The rule then checks that the files of all (transitive) parent
+ * classes, interfaces and traits are compiled as well, and that they are compiled before the
+ * file depending on them; otherwise the class can not be linked while preloading.
+ *
+ * Supported paths are string literals, __DIR__/__FILE__, dirname() and concatenations of those,
+ * either passed directly or iterated from a literal array with foreach.
+ * PreloadScriptGenerator produces scripts satisfying this rule.
+ *
+ * @implements Rule<FileNode>
+ */
+final class PreloadScriptDependenciesRule implements Rule
+{
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly Parser $parser,
+    ) {}
+
+    public function getNodeType(): string
+    {
+        return FileNode::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof FileNode) {
+            return [];
+        }
+
+        if (basename($scope->getFile()) !== 'preload.php') {
+            return [];
+        }
+
+        $compiledFiles = $this->collectCompiledFiles($node->getNodes(), dirname($scope->getFile()), $scope->getFile());
+        if ($compiledFiles === []) {
+            return [];
+        }
+
+        /** @var array<string, int> $positions file => position of its first compilation */
+        $positions = [];
+        foreach ($compiledFiles as $index => [$file]) {
+            $positions[$file] ??= $index;
+        }
+
+        $graph = new PreloadDependencyGraph($this->classInfo(...));
+        $errors = [];
+        $reported = [];
+
+        foreach ($compiledFiles as $index => [$file, $line]) {
+            if ($positions[$file] !== $index) {
+                continue;
+            }
+
+            foreach ($this->getDeclaredClasses($file) as $className) {
+                foreach ($graph->getDependencyClosure($className) as $dependency) {
+                    $dependencyFile = $graph->getFile($dependency);
+                    if ($dependencyFile === null || $dependencyFile === $file || isset($reported[$file][$dependencyFile])) {
+                        continue;
+                    }
+
+                    if (!isset($positions[$dependencyFile])) {
+                        $reported[$file][$dependencyFile] = true;
+                        $errors[] = RuleErrorBuilder::message(sprintf(
+                            '%s depends on %s, but %s is not preloaded: the class can not be linked while preloading.',
+                            $className,
+                            $dependency,
+                            basename($dependencyFile)
+                        ))
+                            ->identifier('preloading.missingDependency')
+                            ->line($line)
+                            ->build();
+                    } elseif ($positions[$dependencyFile] > $index) {
+                        $reported[$file][$dependencyFile] = true;
+                        $errors[] = RuleErrorBuilder::message(sprintf(
+                            '%s depends on %s, but %s is preloaded later (line %d): compile it before this file.',
+                            $className,
+                            $dependency,
+                            basename($dependencyFile),
+                            $compiledFiles[$positions[$dependencyFile]][1]
+                        ))
+                            ->identifier('preloading.dependencyOrder')
+                            ->line($line)
+                            ->build();
+                    }
+                }
+            }
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @param Stmt[] $stmts
+     * @return list<array{string, int}> compiled file => line of the compiling call, in script order
+     */
+    private function collectCompiledFiles(array $stmts, string $directory, string $scriptFile): array
+    {
+        $compiledFiles = [];
+        /** @var array<string, Array_> $literalArrays */
+        $literalArrays = [];
+
+        foreach ($stmts as $stmt) {
+            if ($stmt instanceof Expression && $stmt->expr instanceof Assign
+                && $stmt->expr->var instanceof Variable && is_string($stmt->expr->var->name)
+                && $stmt->expr->expr instanceof Array_) {
+                $literalArrays[$stmt->expr->var->name] = $stmt->expr->expr;
+                continue;
+            }
+
+            if ($stmt instanceof Expression && $this->isCompileCall($stmt->expr)) {
+                /** @var FuncCall $call */
+                $call = $stmt->expr;
+                $path = $this->evaluatePath($call->getArgs()[0]->value, $directory, $scriptFile);
+                if ($path !== null) {
+                    $compiledFiles[] = [$path, $stmt->getStartLine()];
+                }
+                continue;
+            }
+
+            if (!$stmt instanceof Foreach_ || !$stmt->valueVar instanceof Variable || !is_string($stmt->valueVar->name)) {
+                continue;
+            }
+
+            $iterated = $stmt->expr;
+            if ($iterated instanceof Variable && is_string($iterated->name)) {
+                $iterated = $literalArrays[$iterated->name] ?? null;
+            }
+            if (!$iterated instanceof Array_) {
+                continue;
+            }
+
+            foreach ($stmt->stmts as $bodyStmt) {
+                if (!$bodyStmt instanceof Expression || !$this->isCompileCall($bodyStmt->expr)) {
+                    continue;
+                }
+                /** @var FuncCall $call */
+                $call = $bodyStmt->expr;
+                $argument = $call->getArgs()[0]->value;
+                if (!$argument instanceof Variable || $argument->name !== $stmt->valueVar->name) {
+                    continue;
+                }
+                foreach ($iterated->items as $item) {
+                    $path = $item === null ? null : $this->evaluatePath($item->value, $directory, $scriptFile);
+                    if ($path !== null) {
+                        $compiledFiles[] = [$path, $item->getStartLine()];
+                    }
+                }
+            }
+        }
+
+        return $compiledFiles;
+    }
+
+    private function isCompileCall(Expr $expr): bool
+    {
+        return $expr instanceof FuncCall
+            && $expr->name instanceof Name
+            && strtolower($expr->name->toString()) === 'opcache_compile_file'
+            && count($expr->getArgs()) > 0;
+    }
+
+    private function evaluatePath(Expr $expr, string $directory, string $scriptFile): ?string
+    {
+        $value = $this->evaluateString($expr, $directory, $scriptFile);
+        if ($value === null) {
+            return null;
+        }
+
+        $real = realpath($value);
+
+        return $real === false ? null : $real;
+    }
+
+    private function evaluateString(Expr $expr, string $directory, string $scriptFile): ?string
+    {
+        if ($expr instanceof String_) {
+            return $expr->value;
+        }
+        if ($expr instanceof Dir) {
+            return $directory;
+        }
+        if ($expr instanceof File) {
+            return $scriptFile;
+        }
+        if ($expr instanceof Concat) {
+            $left = $this->evaluateString($expr->left, $directory, $scriptFile);
+            $right = $this->evaluateString($expr->right, $directory, $scriptFile);
+            return $left === null || $right === null ? null : $left . $right;
+        }
+        if ($expr instanceof FuncCall && $expr->name instanceof Name && strtolower($expr->name->toString()) === 'dirname') {
+            $args = $expr->getArgs();
+            if ($args === []) {
+                return null;
+            }
+            $path = $this->evaluateString($args[0]->value, $directory, $scriptFile);
+            $levels = isset($args[1]) ? ($args[1]->value instanceof LNumber ? $args[1]->value->value : null) : 1;
+            return $path === null || $levels === null || $levels < 1 ? null : dirname($path, $levels);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return list<string>
+     */
+    private function getDeclaredClasses(string $file): array
+    {
+        try {
+            $stmts = $this->parser->parseFile($file);
+        } catch (ParserErrorsException) {
+            return [];
+        }
+
+        $classNames = [];
+        foreach ((new NodeFinder())->findInstanceOf($stmts, ClassLike::class) as $classLike) {
+            if ($classLike->name !== null && isset($classLike->namespacedName)) {
+                $classNames[] = $classLike->namespacedName->toString();
+            }
+        }
+
+        return $classNames;
+    }
+
+    /**
+     * @return array{file: string|null, dependencies: list<string>}|null
+     */
+    private function classInfo(string $className): ?array
+    {
+        if (!$this->reflectionProvider->hasClass($className)) {
+            return null;
+        }
+
+        $classReflection = $this->reflectionProvider->getClass($className);
+        if ($classReflection->isBuiltin()) {
+            return ['file' => null, 'dependencies' => []];
+        }
+
+        $parent = $classReflection->getParentClass();
+        $dependencies = [
+            ...($parent === null ? [] : [$parent->getName()]),
+            ...array_map(static fn ($interface): string => $interface->getName(), array_values($classReflection->getInterfaces())),
+            ...array_map(static fn ($trait): string => $trait->getName(), array_values($classReflection->getTraits())),
+        ];
+        $file = $classReflection->getFileName();
+
+        return ['file' => $file === null ? null : (realpath($file) ?: $file), 'dependencies' => $dependencies];
+    }
+}
@@ -0,0 +1,85 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+/**
+ * Generates an opcache preload script for a set of root (entry or hot) classes.
+ *
+ * The script compiles the files of the root classes and of all their parent classes,
+ * interfaces and traits with opcache_compile_file(), dependencies first, so every class can
+ * be linked while preloading. Unlike include/require (see PreloadingUsageCorrectnessRule),
+ * opcache_compile_file() does not execute the files.
+ *
+ * The generator uses runtime reflection, so it has to run with the project's autoloader:
+ *
+ *     require __DIR__ . '/vendor/autoload.php';
+ *     $script = (new PreloadScriptGenerator())->generate([App\Kernel::class], __DIR__);
+ *     file_put_contents(__DIR__ . '/preload.php', $script);
+ *
+ * Existing preload scripts are verified by PreloadScriptDependenciesRule.
+ */
+final class PreloadScriptGenerator
+{
+    private PreloadDependencyGraph $graph;
+
+    public function __construct(?PreloadDependencyGraph $graph = null)
+    {
+        $this->graph = $graph ?? new PreloadDependencyGraph(self::runtimeClassInfo(...));
+    }
+
+    /**
+     * @param list<string> $rootClasses
+     * @param string $scriptDirectory directory the preload script is written to, paths below it are emitted relative to __DIR__
+     */
+    public function generate(array $rootClasses, string $scriptDirectory): string
+    {
+        $loadOrder = $this->graph->resolveLoadOrder($rootClasses);
+        $scriptDirectory = rtrim(str_replace('\\', '/', $scriptDirectory), '/');
+
+        $lines = [
+            '<?php declare(strict_types=1);',
+            '',
+            '// Generated opcache preload script: regenerate it instead of editing by hand.',
+            '// Files are ordered so that parent classes, interfaces and traits are compiled first.',
+        ];
+        foreach ($loadOrder['unresolved'] as $className) {
+            $lines[] = '// Unresolved class, not preloaded: ' . $className;
+        }
+        $lines[] = '';
+
+        foreach ($loadOrder['files'] as $file) {
+            $file = str_replace('\\', '/', $file);
+            $pathExpression = str_starts_with($file, $scriptDirectory . '/')
+                ? '__DIR__ . ' . var_export(substr($file, strlen($scriptDirectory)), true)
+                : var_export($file, true);
+            $lines[] = 'opcache_compile_file(' . $pathExpression . ');';
+        }
+
+        return implode("\n", $lines) . "\n";
+    }
+
+    /**
+     * @return array{file: string|null, dependencies: list<string>}|null
+     */
+    private static function runtimeClassInfo(string $className): ?array
+    {
+        if (!class_exists($className) && !interface_exists($className) && !trait_exists($className)) {
+            return null;
+        }
+
+        $reflection = new \ReflectionClass($className);
+        if ($reflection->isInternal()) {
+            return ['file' => null, 'dependencies' => []];
+        }
+
+        $parent = $reflection->getParentClass();
+        $dependencies = [
+            ...($parent === false ? [] : [$parent->getName()]),
+            ...$reflection->getInterfaceNames(),
+            ...$reflection->getTraitNames(),
+        ];
+        $file = $reflection->getFileName();
+
+        return ['file' => $file === false ? null : $file, 'dependencies' => $dependencies];
+    }
+}
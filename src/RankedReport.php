@@ -0,0 +1,43 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections;
+
+use PHPStan\Rules\IdentifierRuleError;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Writes the ranked JSON exports of the report rules (PackedHashtableFootprintReportRule,
+ * TestFixtureCostReportRule): entries ordered by their score, highest first, then by file and
+ * line, cut to the configured limit. A failed write is returned as an error of the report file.
+ */
+final class RankedReport
+{
+    private const string MESSAGE_NOT_WRITTEN = 'The %s could not be written to %s: %s.';
+
+    /**
+     * @param list<array<string, mixed>&array{file: string, line: int}> $entries
+     * @return list<IdentifierRuleError>
+     */
+    public static function write(string $reportFile, array $entries, string $scoreKey, int $limit, string $description, string $identifier): array
+    {
+        usort($entries, static fn (array $left, array $right): int
+            => [$right[$scoreKey], $left['file'], $left['line']] <=> [$left[$scoreKey], $right['file'], $right['line']]);
+
+        $json = json_encode(array_slice($entries, 0, $limit), JSON_PRETTY_PRINT | JSON_UNESCAPED_SLASHES | JSON_INVALID_UTF8_SUBSTITUTE);
+        if ($json === false || @file_put_contents($reportFile, $json) === false) {
+            return [
+                RuleErrorBuilder::message(sprintf(
+                    self::MESSAGE_NOT_WRITTEN,
+                    $description,
+                    $reportFile,
+                    $json === false ? json_last_error_msg() : error_get_last()['message'] ?? 'unknown error'
+                ))
+                    ->identifier($identifier)
+                    ->file($reportFile)
+                    ->build(),
+            ];
+        }
+
+        return [];
+    }
+}
@@ -0,0 +1,419 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+/**
+ * Offline database of Composer security advisories, indexed by package name.
+ *
+ * A snapshot directory is updated out-of-band and may contain:
+ * - YAML advisories in the FriendsOfPHP/security-advisories layout (`reference: composer://vendor/package`,
+ *   `branches: { ...: { versions: ['>=1.0.0', '<1.2.3'] } }`)
+ * - JSON files in the Packagist security advisories API format (`{"advisories": {"vendor/package": [...]}}`)
+ *   or lists of such advisory objects (`packageName`, `affectedVersions`, `title`, `cve`, `link`)
+ *
+ * Affected version constraints (comparisons, `^`, `~` and `.*` wildcards) are parsed once into
+ * intervals over normalized version keys, which compare with plain string comparison. Constraint
+ * groups in other syntax (e.g. `!=` or hyphen ranges) are kept per package, so they can be reported
+ * as unchecked instead of being dropped silently. Per package the intervals are sorted by their lower bound
+ * and carry the running maximum of the upper bounds, so a lookup is a binary search followed by a
+ * short backwards scan instead of a constraint evaluation per advisory.
+ */
+final class AdvisoryDatabase
+{
+    private const string UNBOUNDED_LOWER = '';
+    private const string UNBOUNDED_UPPER = '~';
+
+    private const array STABILITY_RANKS = [
+        'dev' => 0, 'alpha' => 1, 'a' => 1, 'beta' => 2, 'b' => 2, 'rc' => 3, '' => 4, 'pl' => 5, 'p' => 5, 'patch' => 5,
+    ];
+
+    /** @var array<string, self> snapshot directory => database, loaded once per process */
+    private static array $loaded = [];
+
+    /** @var list<array{title: string, cve: string|null, link: string|null}> */
+    private array $advisories = [];
+
+    /** @var array<string, list<array{string, bool, string, bool, int}>> package => [lower, lower inclusive, upper, upper inclusive, advisory] */
+    private array $pendingIntervals = [];
+
+    /** @var array<string, list<array{constraint: string, advisory: int}>> package => constraint groups which could not be parsed */
+    private array $unparsedGroups = [];
+
+    /** @var array<string, array{lowers: list<string>, maxUppers: list<string>, intervals: list<array{string, bool, string, bool, int}>}> */
+    private array $index = [];
+
+    private int $intervalCount = 0;
+
+    public static function fromDirectory(string $directory): self
+    {
+        $key = realpath($directory) ?: $directory;
+        if (!isset(self::$loaded[$key])) {
+            $database = new self();
+            $database->loadDirectory($key);
+            self::$loaded[$key] = $database;
+        }
+
+        return self::$loaded[$key];
+    }
+
+    /**
+     * @param string $affectedVersions Composer constraint, e.g. '>=1.0,<1.2.3|>=2.0,<2.0.1'
+     */
+    public function addAdvisory(string $packageName, string $affectedVersions, string $title, ?string $cve = null, ?string $link = null): void
+    {
+        $unparsedGroups = [];
+        $intervals = self::parseConstraint($affectedVersions, $unparsedGroups);
+        if ($intervals === [] && $unparsedGroups === []) {
+            return;
+        }
+
+        $advisory = count($this->advisories);
+        $this->advisories[] = ['title' => $title, 'cve' => $cve, 'link' => $link];
+
+        $packageName = strtolower($packageName);
+        foreach ($intervals as [$lower, $lowerInclusive, $upper, $upperInclusive]) {
+            $this->pendingIntervals[$packageName][] = [$lower, $lowerInclusive, $upper, $upperInclusive, $advisory];
+        }
+        foreach ($unparsedGroups as $group) {
+            $this->unparsedGroups[$packageName][] = ['constraint' => $group, 'advisory' => $advisory];
+        }
+        unset($this->index[$packageName]);
+    }
+
+    /**
+     * Advisories of the package with constraint groups which could not be parsed, so no version can be checked against them.
+     *
+     * @return list<array{title: string, cve: string|null, link: string|null, constraint: string}>
+     */
+    public function findUncheckedAdvisories(string $packageName): array
+    {
+        $unchecked = [];
+        foreach ($this->unparsedGroups[strtolower($packageName)] ?? [] as $group) {
+            $unchecked[] = $this->advisories[$group['advisory']] + ['constraint' => $group['constraint']];
+        }
+
+        return $unchecked;
+    }
+
+    /**
+     * Advisories affecting the given version of the package.
+     *
+     * @return list<array{title: string, cve: string|null, link: string|null}>
+     */
+    public function findAdvisories(string $packageName, string $version): array
+    {
+        $key = self::normalizeVersion($version);
+        if ($key === null) {
+            return [];
+        }
+
+        $entry = $this->getIndexEntry(strtolower($packageName));
+        if ($entry === null) {
+            return [];
+        }
+
+        // Last interval starting at or below the version
+        $low = 0;
+        $high = count($entry['lowers']) - 1;
+        $start = -1;
+        while ($low <= $high) {
+            $middle = ($low + $high) >> 1;
+            if (strcmp($entry['lowers'][$middle], $key) <= 0) {
+                $start = $middle;
+                $low = $middle + 1;
+            } else {
+                $high = $middle - 1;
+            }
+        }
+
+        $found = [];
+        for ($position = $start; $position >= 0 && strcmp($entry['maxUppers'][$position], $key) >= 0; $position--) {
+            [$lower, $lowerInclusive, $upper, $upperInclusive, $advisory] = $entry['intervals'][$position];
+            $aboveLower = $lowerInclusive ? strcmp($key, $lower) >= 0 : strcmp($key, $lower) > 0;
+            $belowUpper = $upperInclusive ? strcmp($key, $upper) <= 0 : strcmp($key, $upper) < 0;
+            if ($aboveLower && $belowUpper) {
+                $found[$advisory] = $this->advisories[$advisory];
+            }
+        }
+        ksort($found);
+
+        return array_values($found);
+    }
+
+    public function hasPackage(string $packageName): bool
+    {
+        $packageName = strtolower($packageName);
+
+        return isset($this->pendingIntervals[$packageName]) || isset($this->unparsedGroups[$packageName]);
+    }
+
+    public function countIntervals(): int
+    {
+        return $this->intervalCount;
+    }
+
+    /**
+     * Parses a Composer constraint into intervals: OR groups separated by `|`/`||`, AND-ed
+     * comparisons separated by `,` or spaces. Comparisons may be `>=`, `<=`, `>`, `<`, `=`,
+     * `^`, `~` or `.*` wildcards, with or without a space before the version. Groups using
+     * other syntax are skipped and added to $unparsedGroups.
+     *
+     * @param list<string> $unparsedGroups
+     * @return list<array{string, bool, string, bool}> [lower, lower inclusive, upper, upper inclusive]
+     */
+    public static function parseConstraint(string $constraint, array &$unparsedGroups = []): array
+    {
+        $intervals = [];
+        foreach (preg_split('/\s*\|\|?\s*/', trim($constraint)) ?: [] as $group) {
+            $interval = [self::UNBOUNDED_LOWER, true, self::UNBOUNDED_UPPER, true];
+            // '>= 1.0' is a single comparison
+            $group = preg_replace('/([<>=^~])\s+(?=[v\d])/i', '$1', trim($group)) ?? $group;
+            $atoms = preg_split('/\s*,\s*|\s+/', $group, -1, PREG_SPLIT_NO_EMPTY) ?: [];
+
+            foreach ($atoms as $atom) {
+                if ($atom === '*') {
+                    continue;
+                }
+                $bound = self::parseComparison($atom);
+                if ($bound === null) {
+                    $unparsedGroups[] = $group;
+                    continue 2;
+                }
+                $interval = self::narrow($interval, $bound);
+            }
+
+            $isEmpty = strcmp($interval[0], $interval[2]) > 0
+                || ($interval[0] === $interval[2] && (!$interval[1] || !$interval[3]));
+            if ($atoms !== [] && !$isEmpty) {
+                $intervals[] = $interval;
+            }
+        }
+
+        return $intervals;
+    }
+
+    /**
+     * Bounds of a single comparison, null for unsupported syntax. Like Composer, `^` allows updates
+     * keeping the leftmost non-zero part, `~` allows the last given part but one to increase, and
+     * upper bounds exclude the dev releases of the next version.
+     *
+     * @return array{string, bool, string, bool}|null
+     */
+    private static function parseComparison(string $atom): ?array
+    {
+        if (preg_match('/^v?(\d+(?:\.\d+){0,2})\.[*x]$/i', $atom, $matches) === 1) {
+            $parts = array_map('intval', explode('.', $matches[1]));
+            $lower = self::normalizeVersion($matches[1] . '-dev');
+
+            return $lower === null ? null : [$lower, true, self::nextVersion($parts, count($parts)), false];
+        }
+
+        if (preg_match('/^(>=|<=|>|<|==|=|\^|~)?(.+)$/', $atom, $matches) !== 1) {
+            return null;
+        }
+        $operator = $matches[1];
+        $version = self::normalizeVersion($matches[2]);
+        if ($version === null) {
+            return null;
+        }
+
+        if ($operator === '^' || $operator === '~') {
+            preg_match('/^v?(\d+)(?:\.(\d+))?(?:\.(\d+))?/i', $matches[2], $numbers);
+            $parts = array_map('intval', array_slice($numbers, 1));
+            if ($operator === '~') {
+                $position = max(1, count($parts) - 1);
+            } else {
+                $position = 1;
+                while ($position < count($parts) && $parts[$position - 1] === 0) {
+                    $position++;
+                }
+            }
+
+            return [$version, true, self::nextVersion($parts, $position), false];
+        }
+
+        return match ($operator) {
+            '', '=', '==' => [$version, true, $version, true],
+            '>', '>='     => [$version, $operator === '>=', self::UNBOUNDED_UPPER, true],
+            default       => [self::UNBOUNDED_LOWER, true, $version, $operator === '<='],
+        };
+    }
+
+    /**
+     * Key of the first dev release after the given version parts, increasing the part at the 1-based position.
+     *
+     * @param list<int> $parts
+     */
+    private static function nextVersion(array $parts, int $position): string
+    {
+        $parts = array_pad(array_slice($parts, 0, $position), $position, 0);
+        $parts[$position - 1]++;
+
+        return (string) self::normalizeVersion(implode('.', $parts) . '-dev');
+    }
+
+    /**
+     * Comparable key of a version (e.g. 'v1.2.3-beta2' => '000000001.000000002.000000003.000000000-2000000002'),
+     * null for branch names and unsupported formats.
+     */
+    public static function normalizeVersion(string $version): ?string
+    {
+        $version = strtolower(trim($version));
+        $version = preg_replace('/\+.*$/', '', ltrim($version, 'v')) ?? $version;
+
+        $pattern = '/^(\d+)(?:\.(\d+))?(?:\.(\d+))?(?:\.(\d+))?(?:[-.]?(dev|alpha|a|beta|b|rc|pl|p|patch)[.-]?(\d*))?$/';
+        if (preg_match($pattern, $version, $matches) !== 1) {
+            return null;
+        }
+
+        $numbers = [];
+        for ($part = 1; $part <= 4; $part++) {
+            $numbers[] = sprintf('%09d', (int) ($matches[$part] ?? 0));
+        }
+        $stability = $matches[5] ?? '';
+
+        return implode('.', $numbers) . '-' . self::STABILITY_RANKS[$stability] . sprintf('%09d', (int) ($matches[6] ?? 0));
+    }
+
+    /**
+     * @param array{string, bool, string, bool} $interval
+     * @param array{string, bool, string, bool} $bound
+     * @return array{string, bool, string, bool}
+     */
+    private static function narrow(array $interval, array $bound): array
+    {
+        $lowerComparison = strcmp($bound[0], $interval[0]);
+        if ($lowerComparison > 0 || ($lowerComparison === 0 && !$bound[1])) {
+            [$interval[0], $interval[1]] = [$bound[0], $bound[1]];
+        }
+
+        $upperComparison = strcmp($bound[2], $interval[2]);
+        if ($upperComparison < 0 || ($upperComparison === 0 && !$bound[3])) {
+            [$interval[2], $interval[3]] = [$bound[2], $bound[3]];
+        }
+
+        return $interval;
+    }
+
+    /**
+     * @return array{lowers: list<string>, maxUppers: list<string>, intervals: list<array{string, bool, string, bool, int}>}|null
+     */
+    private function getIndexEntry(string $packageName): ?array
+    {
+        if (isset($this->index[$packageName])) {
+            return $this->index[$packageName];
+        }
+        $intervals = $this->pendingIntervals[$packageName] ?? null;
+        if ($intervals === null) {
+            return null;
+        }
+
+        usort($intervals, static fn (array $left, array $right): int => strcmp($left[0], $right[0]));
+        $lowers = [];
+        $maxUppers = [];
+        $maxUpper = self::UNBOUNDED_LOWER;
+        foreach ($intervals as [$lower, , $upper]) {
+            $lowers[] = $lower;
+            $maxUpper = strcmp($upper, $maxUpper) > 0 ? $upper : $maxUpper;
+            $maxUppers[] = $maxUpper;
+        }
+
+        return $this->index[$packageName] = ['lowers' => $lowers, 'maxUppers' => $maxUppers, 'intervals' => $intervals];
+    }
+
+    private function loadDirectory(string $directory): void
+    {
+        if (!is_dir($directory)) {
+            return;
+        }
+
+        $iterator = new \RecursiveIteratorIterator(
+            new \RecursiveDirectoryIterator($directory, \FilesystemIterator::SKIP_DOTS),
+            \RecursiveIteratorIterator::LEAVES_ONLY,
+            \RecursiveIteratorIterator::CATCH_GET_CHILD
+        );
+        foreach ($iterator as $fileInfo) {
+            if (!$fileInfo instanceof \SplFileInfo || !$fileInfo->isFile()) {
+                continue;
+            }
+            match (strtolower($fileInfo->getExtension())) {
+                'yaml', 'yml' => $this->loadYamlAdvisory($fileInfo->getPathname()),
+                'json'        => $this->loadJsonAdvisories($fileInfo->getPathname()),
+                default       => null,
+            };
+        }
+
+        foreach ($this->pendingIntervals as $intervals) {
+            $this->intervalCount += count($intervals);
+        }
+    }
+
+    /**
+     * Reads the fields of the FriendsOfPHP advisory format line by line, every branch is an OR-ed version range.
+     */
+    private function loadYamlAdvisory(string $file): void
+    {
+        $lines = @file($file, FILE_IGNORE_NEW_LINES);
+        if ($lines === false) {
+            return;
+        }
+
+        $fields = [];
+        $ranges = [];
+        foreach ($lines as $line) {
+            if (preg_match('/^(title|link|cve|reference):\s*(.*?)\s*$/', $line, $matches) === 1) {
+                $fields[$matches[1]] = trim($matches[2], '\'"');
+            } elseif (preg_match('/^\s+versions:\s*\[(.*)\]\s*$/', $line, $matches) === 1) {
+                $versions = array_map(static fn (string $version): string => trim($version, " \t'\""), explode(',', $matches[1]));
+                $ranges[] = implode(',', array_filter($versions, static fn (string $version): bool => $version !== ''));
+            }
+        }
+
+        $reference = $fields['reference'] ?? '';
+        if (!str_starts_with($reference, 'composer://') || $ranges === []) {
+            return;
+        }
+
+        $this->addAdvisory(
+            substr($reference, strlen('composer://')),
+            implode('|', $ranges),
+            $fields['title'] ?? basename($file, '.yaml'),
+            ($fields['cve'] ?? '~') === '~' || ($fields['cve'] ?? '') === '' ? null : $fields['cve'],
+            $fields['link'] ?? null
+        );
+    }
+
+    private function loadJsonAdvisories(string $file): void
+    {
+        try {
+            $data = json_decode((string) @file_get_contents($file), true, 512, JSON_THROW_ON_ERROR);
+        } catch (\JsonException) {
+            return;
+        }
+        if (!is_array($data)) {
+            return;
+        }
+
+        $advisories = [];
+        if (isset($data['advisories']) && is_array($data['advisories'])) {
+            foreach ($data['advisories'] as $packageAdvisories) {
+                $advisories = [...$advisories, ...(is_array($packageAdvisories) ? array_values($packageAdvisories) : [])];
+            }
+        } else {
+            $advisories = array_is_list($data) ? $data : [$data];
+        }
+
+        foreach ($advisories as $advisory) {
+            if (!is_array($advisory) || !is_string($advisory['packageName'] ?? null) || !is_string($advisory['affectedVersions'] ?? null)) {
+                continue;
+            }
+            $this->addAdvisory(
+                $advisory['packageName'],
+                $advisory['affectedVersions'],
+                is_string($advisory['title'] ?? null) ? $advisory['title'] : $advisory['packageName'],
+                is_string($advisory['cve'] ?? null) && $advisory['cve'] !== '' ? $advisory['cve'] : null,
+                is_string($advisory['link'] ?? null) ? $advisory['link'] : null
+            );
+        }
+    }
+}
@@ -0,0 +1,100 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+/**
+ * Pull parser reading the pinned packages of a composer.lock file.
+ *
+ * The file is read line by line and tokenized, JSON strings can not span lines, so only the
+ * current line and the container stack are held in memory instead of the decoded lock file
+ * (which includes every package's autoload, dist and description data).
+ * Packages are yielded as soon as their object is closed.
+ */
+final class ComposerLockReader
+{
+    private const string TOKEN_PATTERN = '/"(?:[^"\\\\]|\\\\.)*"|[{}\[\]:,]|[^\s{}\[\]:,"]+/';
+
+    private const array PACKAGE_SECTIONS = ['packages' => false, 'packages-dev' => true];
+
+    /**
+     * @return \Generator<int, array{name: string, version: string, dev: bool, line: int}>
+     */
+    public static function readPackages(string $lockFile): \Generator
+    {
+        $handle = @fopen($lockFile, 'rb');
+        if ($handle === false) {
+            return;
+        }
+
+        try {
+            /** @var list<array{object: bool, key: string|null}> $stack */
+            $stack = [];
+            $expectKey = false;
+            $package = [];
+            $lineNumber = 0;
+
+            while (($line = fgets($handle)) !== false) {
+                $lineNumber++;
+                if (preg_match_all(self::TOKEN_PATTERN, $line, $matches) === 0) {
+                    continue;
+                }
+
+                foreach ($matches[0] as $token) {
+                    $depth = count($stack);
+                    switch ($token) {
+                        case '{':
+                        case '[':
+                            $stack[] = ['object' => $token === '{', 'key' => null];
+                            $expectKey = $token === '{';
+                            if ($token === '{' && $depth === 2 && self::isPackageList($stack)) {
+                                $package = ['line' => $lineNumber];
+                            }
+                            break;
+                        case '}':
+                        case ']':
+                            array_pop($stack);
+                            if ($token === '}' && $depth === 3 && self::isPackageList($stack)
+                                && isset($package['name'], $package['version'])) {
+                                yield [
+                                    'name'    => $package['name'],
+                                    'version' => $package['version'],
+                                    'dev'     => self::PACKAGE_SECTIONS[$stack[0]['key']],
+                                    'line'    => $package['line'],
+                                ];
+                            }
+                            $expectKey = false;
+                            break;
+                        case ':':
+                            $expectKey = false;
+                            break;
+                        case ',':
+                            $expectKey = $depth > 0 && $stack[$depth - 1]['object'];
+                            break;
+                        default:
+                            if ($depth === 0) {
+                                break;
+                            }
+                            $value = $token[0] === '"' ? json_decode($token) : null;
+                            if ($expectKey) {
+                                $stack[$depth - 1]['key'] = is_string($value) ? $value : null;
+                            } elseif ($depth === 3 && self::isPackageList($stack) && is_string($value)
+                                && in_array($stack[2]['key'], ['name', 'version'], true)) {
+                                $package[$stack[2]['key']] = $value;
+                            }
+                    }
+                }
+            }
+        } finally {
+            fclose($handle);
+        }
+    }
+
+    /**
+     * @param list<array{object: bool, key: string|null}> $stack
+     */
+    private static function isPackageList(array $stack): bool
+    {
+        return isset($stack[1]) && $stack[0]['object'] && !$stack[1]['object']
+            && array_key_exists((string) $stack[0]['key'], self::PACKAGE_SECTIONS);
+    }
+}
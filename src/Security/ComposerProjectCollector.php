@@ -0,0 +1,30 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use macropage\PHPStan\Inspections\SemanticalAnalysis\Classes\ComposerAutoloadMap;
+use PhpParser\Node;
+use PHPStan\Analyser\Scope;
+use PHPStan\Collectors\Collector;
+use PHPStan\Node\FileNode;
+
+/**
+ * Collects the composer.json closest to each analysed file.
+ *
+ * Collection runs in PHPStan's parallel workers, SecurityAdvisoriesRule then checks every
+ * collected composer.json (and its composer.lock) once for the whole analysis run.
+ *
+ * @implements Collector<FileNode, string>
+ */
+final class ComposerProjectCollector implements Collector
+{
+    public function getNodeType(): string
+    {
+        return FileNode::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): ?string
+    {
+        return ComposerAutoloadMap::locateComposerJson(dirname($scope->getFile()));
+    }
+}
@@ -0,0 +1,54 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr\FuncCall;
+use PHPStan\Analyser\Scope;
+use PHPStan\Collectors\Collector;
+
+/**
+ * Collects the calls of the cryptographic API (openssl_*, mcrypt_*, random_*, hash*, password_*)
+ * with the sources of their arguments, see CryptoSourceDescriber.
+ *
+ * Collection runs in PHPStan's parallel workers per analysed file, the collected data is
+ * consumed by CryptoUsageRule through CryptoUsageIndex.
+ *
+ * @implements Collector<FuncCall, array{string, int, list<list<array{string, string}>>}>
+ */
+final class CryptoCallCollector implements Collector
+{
+    private const string FUNCTION_PATTERN = '/^(?:openssl_|mcrypt_|random_|hash(?:_|$)|password_)/';
+
+    public function __construct(
+        private readonly CryptoSourceDescriber $sourceDescriber,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return FuncCall::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): ?array
+    {
+        if (!$node instanceof FuncCall || !$node->name instanceof Node\Name) {
+            return null;
+        }
+
+        $functionName = $node->name->toLowerString();
+        if (preg_match(self::FUNCTION_PATTERN, $functionName) !== 1) {
+            return null;
+        }
+
+        $arguments = [];
+        foreach ($node->getArgs() as $argument) {
+            if ($argument->unpack || $argument->name !== null) {
+                break;
+            }
+            $arguments[] = $this->sourceDescriber->describe($argument->value, $scope);
+        }
+
+        return [$functionName, $node->getStartLine(), $arguments];
+    }
+}
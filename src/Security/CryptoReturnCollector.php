@@ -0,0 +1,49 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use PhpParser\Node;
+use PhpParser\Node\Stmt\Return_;
+use PHPStan\Analyser\Scope;
+use PHPStan\Collectors\Collector;
+
+/**
+ * Collects the sources of the values returned by user-defined functions and methods, so
+ * CryptoUsageIndex can follow keys and IVs produced by helpers declared in other files.
+ *
+ * Keys and IVs are strings, so only returns which can be a string are described; returns of
+ * integers, booleans, arrays and objects are skipped before the (comparatively expensive)
+ * PossibleValuesDiscovery and reflection lookups of CryptoSourceDescriber.
+ *
+ * @implements Collector<Return_, array{string, list<array{string, string}>}>
+ */
+final class CryptoReturnCollector implements Collector
+{
+    public function __construct(
+        private readonly CryptoSourceDescriber $sourceDescriber,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return Return_::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): ?array
+    {
+        if (!$node instanceof Return_ || $node->expr === null) {
+            return null;
+        }
+
+        if ($scope->getType($node->expr)->isString()->no()) {
+            return null;
+        }
+
+        $functionName = $this->sourceDescriber->describeScopeFunction($scope);
+        if ($functionName === null) {
+            return null;
+        }
+
+        return [$functionName, $this->sourceDescriber->describe($node->expr, $scope)];
+    }
+}
@@ -0,0 +1,177 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
+use PhpParser\Node\Arg;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\NullsafeMethodCall;
+use PhpParser\Node\Expr\StaticCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Describes where the value of an expression comes from, in a form which can be collected and
+ * resolved across files by CryptoUsageIndex.
+ *
+ * A source is a [kind, text] pair:
+ * - literal: a string or number literal, e.g. `'0123456789abcdef'`
+ * - builtin: a builtin function call, e.g. `md5(time())`
+ * - call: a call of a user-defined function or method, e.g. `Util::makeIv`, resolved later
+ *   through the collected return sources of the callee
+ * - unknown: anything else, e.g. parameters or concatenations
+ *
+ * Variables are described by the values assigned to them (see PossibleValuesDiscovery).
+ */
+final class CryptoSourceDescriber
+{
+    public const string KIND_LITERAL = 'literal';
+    public const string KIND_BUILTIN = 'builtin';
+    public const string KIND_CALL    = 'call';
+    public const string KIND_UNKNOWN = 'unknown';
+
+    private const int MAX_SOURCES = 8;
+
+    private const int MAX_TEXT_LENGTH = 48;
+
+    public function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly PossibleValuesDiscovery $possibleValuesDiscovery,
+    ) {
+    }
+
+    /**
+     * @return list<array{string, string}>
+     */
+    public function describe(Expr $expr, Scope $scope): array
+    {
+        $sources = [];
+        $this->collect($expr, $scope, $sources);
+
+        return array_slice(array_values(array_unique($sources, SORT_REGULAR)), 0, self::MAX_SOURCES);
+    }
+
+    /**
+     * Name of the user-defined function or method the scope is in, e.g. `Util::makeIv`.
+     */
+    public function describeScopeFunction(Scope $scope): ?string
+    {
+        $function = $scope->getFunction();
+        if ($function === null || $scope->isInAnonymousFunction()) {
+            return null;
+        }
+
+        $classReflection = $scope->getClassReflection();
+
+        return $classReflection === null ? $function->getName() : $classReflection->getName() . '::' . $function->getName();
+    }
+
+    /**
+     * @param list<array{string, string}> $sources
+     */
+    private function collect(Expr $expr, Scope $scope, array &$sources): void
+    {
+        while ($expr instanceof Expr\ErrorSuppress) {
+            $expr = $expr->expr;
+        }
+
+        if ($expr instanceof Scalar\String_ || $expr instanceof Scalar\LNumber || $expr instanceof Scalar\DNumber) {
+            $sources[] = [self::KIND_LITERAL, $this->present($expr)];
+            return;
+        }
+
+        if ($expr instanceof Expr\Ternary) {
+            $this->collect($expr->if ?? $expr->cond, $scope, $sources);
+            $this->collect($expr->else, $scope, $sources);
+            return;
+        }
+
+        if ($expr instanceof Variable && is_string($expr->name) && $expr->name !== 'this') {
+            $values = $this->possibleValuesDiscovery->discover($expr, $scope);
+            if ($values === []) {
+                $sources[] = [self::KIND_UNKNOWN, '$' . $expr->name];
+            }
+            foreach ($values as $value) {
+                if (!$value instanceof Variable) {
+                    $this->collect($value, $scope, $sources);
+                }
+            }
+            return;
+        }
+
+        if ($expr instanceof FuncCall && $expr->name instanceof Name) {
+            if (!$this->reflectionProvider->hasFunction($expr->name, $scope)) {
+                $sources[] = [self::KIND_UNKNOWN, $this->present($expr)];
+                return;
+            }
+            $function = $this->reflectionProvider->getFunction($expr->name, $scope);
+            $sources[] = $function->isBuiltin()
+                ? [self::KIND_BUILTIN, $this->present($expr)]
+                : [self::KIND_CALL, $function->getName()];
+            return;
+        }
+
+        if (($expr instanceof MethodCall || $expr instanceof NullsafeMethodCall || $expr instanceof StaticCall)
+            && $expr->name instanceof Identifier) {
+            $method = $this->resolveMethod($expr, $expr->name->toString(), $scope);
+            $sources[] = $method === null ? [self::KIND_UNKNOWN, $this->present($expr)] : [self::KIND_CALL, $method];
+            return;
+        }
+
+        $sources[] = [self::KIND_UNKNOWN, $this->present($expr)];
+    }
+
+    private function resolveMethod(MethodCall|NullsafeMethodCall|StaticCall $call, string $methodName, Scope $scope): ?string
+    {
+        if ($call instanceof StaticCall) {
+            if (!$call->class instanceof Name) {
+                return null;
+            }
+            $classNames = [$scope->resolveName($call->class)];
+        } else {
+            $classNames = $scope->getType($call->var)->getObjectClassNames();
+        }
+
+        if (count($classNames) !== 1 || !$this->reflectionProvider->hasClass($classNames[0])) {
+            return null;
+        }
+        $classReflection = $this->reflectionProvider->getClass($classNames[0]);
+        if (!$classReflection->hasMethod($methodName)) {
+            return null;
+        }
+        $method = $classReflection->getMethod($methodName, $scope);
+        if ($method->getDeclaringClass()->isBuiltin()) {
+            return null;
+        }
+
+        return $method->getDeclaringClass()->getName() . '::' . $method->getName();
+    }
+
+    private function present(Expr $expr): string
+    {
+        $text = match (true) {
+            $expr instanceof Scalar\String_ => "'" . $expr->value . "'",
+            $expr instanceof Scalar\LNumber, $expr instanceof Scalar\DNumber => (string) $expr->value,
+            $expr instanceof Variable => is_string($expr->name) ? '$' . $expr->name : '$...',
+            $expr instanceof Expr\ConstFetch => $expr->name->toString(),
+            $expr instanceof FuncCall && $expr->name instanceof Name => $expr->name->toString() . '(' . implode(', ', array_map(
+                fn (Arg $argument): string => $this->present($argument->value),
+                $expr->getArgs()
+            )) . ')',
+            $expr instanceof StaticCall && $expr->class instanceof Name && $expr->name instanceof Identifier
+                => $expr->class->toString() . '::' . $expr->name->toString() . '()',
+            ($expr instanceof MethodCall || $expr instanceof NullsafeMethodCall) && $expr->name instanceof Identifier
+                => $this->present($expr->var) . '->' . $expr->name->toString() . '()',
+            $expr instanceof Expr\BinaryOp\Concat => $this->present($expr->left) . ' . ' . $this->present($expr->right),
+            default => '...',
+        };
+
+        return strlen($text) > self::MAX_TEXT_LENGTH ? substr($text, 0, self::MAX_TEXT_LENGTH - 3) . '...' : $text;
+    }
+}
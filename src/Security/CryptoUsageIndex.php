@@ -0,0 +1,148 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use PHPStan\Node\CollectedDataNode;
+
+/**
+ * Project-wide index of the cryptographic API calls and the sources of their arguments.
+ *
+ * The index is built from the data collected per file by CryptoCallCollector and
+ * CryptoReturnCollector. Sources which are calls of user-defined functions or methods are
+ * resolved through the collected return sources of the callee, transitively and across files,
+ * e.g. an IV argument `Util::makeIv()` resolves to `md5(time())` via `Util::makeIv()`.
+ * Every callee is resolved once and memoized, so call sites sharing a helper share the work.
+ * Recursion and callees which were not analysed end the resolution with an unknown source;
+ * resolutions cut short by recursion or MAX_DEPTH are not memoized, as they depend on the path
+ * they were reached by.
+ */
+final class CryptoUsageIndex
+{
+    private const int MAX_DEPTH = 8;
+
+    /** @var list<array{file: string, function: string, line: int, arguments: list<list<array{string, string}>>}> */
+    private array $calls = [];
+
+    /** @var array<string, array{name: string, sources: list<array{string, string}>}> */
+    private array $returns = [];
+
+    /** @var array<string, list<array{kind: string, text: string, via: list<string>}>> */
+    private array $resolved = [];
+
+    /** @var array<string, true> */
+    private array $resolving = [];
+
+    /** Whether the current resolution hit the recursion or depth guard */
+    private bool $cutShort = false;
+
+    public static function fromCollectedData(CollectedDataNode $node): self
+    {
+        $index = new self();
+
+        foreach ($node->get(CryptoReturnCollector::class) as $returns) {
+            foreach ($returns as [$functionName, $sources]) {
+                $key = strtolower($functionName);
+                $index->returns[$key] ??= ['name' => $functionName, 'sources' => []];
+                $index->returns[$key]['sources'] = array_values(array_unique([...$index->returns[$key]['sources'], ...$sources], SORT_REGULAR));
+            }
+        }
+
+        foreach ($node->get(CryptoCallCollector::class) as $file => $calls) {
+            foreach ($calls as [$functionName, $line, $arguments]) {
+                $index->calls[] = ['file' => $file, 'function' => $functionName, 'line' => $line, 'arguments' => $arguments];
+            }
+        }
+        usort($index->calls, static fn (array $left, array $right): int => [$left['file'], $left['line']] <=> [$right['file'], $right['line']]);
+
+        return $index;
+    }
+
+    /**
+     * @return list<array{file: string, function: string, line: int, arguments: list<list<array{string, string}>>}>
+     */
+    public function getCalls(): array
+    {
+        return $this->calls;
+    }
+
+    /**
+     * Whether the collected return sources of the user-defined function or method are known,
+     * e.g. `Util::makeIv`. They are not for helpers declared in files which were not analysed.
+     */
+    public function canResolve(string $callee): bool
+    {
+        return isset($this->returns[strtolower($callee)]);
+    }
+
+    /**
+     * Resolves the sources through the user-defined functions and methods producing them,
+     * the returned sources never are calls. `via` lists the helpers passed, outermost first.
+     *
+     * @param list<array{string, string}> $sources
+     * @return list<array{kind: string, text: string, via: list<string>}>
+     */
+    public function resolve(array $sources): array
+    {
+        $resolved = [];
+        foreach ($sources as [$kind, $text]) {
+            if ($kind !== CryptoSourceDescriber::KIND_CALL) {
+                $resolved[] = ['kind' => $kind, 'text' => $text, 'via' => []];
+                continue;
+            }
+
+            $key = strtolower($text);
+            if (!isset($this->returns[$key]) || isset($this->resolving[$key]) || count($this->resolving) >= self::MAX_DEPTH) {
+                $this->cutShort = $this->cutShort || isset($this->returns[$key]);
+                $resolved[] = ['kind' => CryptoSourceDescriber::KIND_UNKNOWN, 'text' => $text . '()', 'via' => []];
+                continue;
+            }
+
+            $calleeSources = $this->resolved[$key] ?? null;
+            if ($calleeSources === null) {
+                $outerCutShort = $this->cutShort;
+                $this->cutShort = false;
+                $this->resolving[$key] = true;
+                $calleeSources = $this->resolve($this->returns[$key]['sources']);
+                unset($this->resolving[$key]);
+                if (!$this->cutShort) {
+                    $this->resolved[$key] = $calleeSources;
+                }
+                $this->cutShort = $outerCutShort || $this->cutShort;
+            }
+            foreach ($calleeSources as $source) {
+                $source['via'] = [$this->returns[$key]['name'] . '()', ...$source['via']];
+                $resolved[] = $source;
+            }
+        }
+
+        return $resolved;
+    }
+
+    /**
+     * Inventory of all cryptographic API calls with their resolved argument sources, for audits.
+     *
+     * @return list<array{file: string, line: int, function: string, arguments: list<list<string>>}>
+     */
+    public function exportInventory(): array
+    {
+        $inventory = [];
+        foreach ($this->calls as $call) {
+            $inventory[] = [
+                'file'      => $call['file'],
+                'line'      => $call['line'],
+                'function'  => $call['function'],
+                'arguments' => array_map(
+                    fn (array $sources): array => array_map(
+                        static fn (array $source): string => $source['via'] === []
+                            ? $source['text']
+                            : $source['text'] . ' via ' . implode(' -> ', $source['via']),
+                        $this->resolve($sources)
+                    ),
+                    $call['arguments']
+                ),
+            ];
+        }
+
+        return $inventory;
+    }
+}
@@ -0,0 +1,139 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use PhpParser\Node;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\CollectedDataNode;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Checks keys and initialization vectors produced by helper functions and methods, possibly
+ * declared in other files, which EncryptionInitializationVectorRandomnessRule can not follow.
+ *
+ * Using the project-wide CryptoUsageIndex it reports:
+ * - IVs of openssl_encrypt()/mcrypt_encrypt() produced by a helper from a literal or from a
+ *   builtin function which is not a cryptographically secure random source,
+ *   e.g. `IV produced by Util::makeIv() is md5(time())`
+ * - IVs produced by a helper which can not be resolved, e.g. one declared in a vendor package or
+ *   in a file which was not analysed, with the message of EncryptionInitializationVectorRandomnessRule
+ * - keys of the encrypt/decrypt functions produced by a helper from literals only
+ *
+ * With a configured inventory file, the index of all openssl_*, mcrypt_*, random_*, hash* and
+ * password_* calls with their resolved argument sources is written there as JSON for audits,
+ * a failed write is reported.
+ *
+ * @implements Rule<CollectedDataNode>
+ */
+final class CryptoUsageRule implements Rule
+{
+    private const string MESSAGE_IV = 'IV produced by %s is %s, %s() should be used for IV.';
+    private const string MESSAGE_UNRESOLVED_IV = '%s() should be used for IV, but found: %s().';
+    private const string MESSAGE_KEY = 'Encryption key produced by %s is the hardcoded value %s.';
+    private const string MESSAGE_INVENTORY = 'The crypto inventory could not be written to %s: %s.';
+
+    /** @var array<string, array{key: int, iv: int|null, recommended: string}> */
+    private const array ENCRYPTION_FUNCTIONS = [
+        'openssl_encrypt' => ['key' => 2, 'iv' => 4, 'recommended' => 'openssl_random_pseudo_bytes'],
+        'openssl_decrypt' => ['key' => 2, 'iv' => null, 'recommended' => 'openssl_random_pseudo_bytes'],
+        'mcrypt_encrypt'  => ['key' => 1, 'iv' => 4, 'recommended' => 'mcrypt_create_iv'],
+        'mcrypt_decrypt'  => ['key' => 1, 'iv' => null, 'recommended' => 'mcrypt_create_iv'],
+    ];
+
+    /** @var array<string, true> */
+    private const array SECURE_FUNCTIONS = [
+        'random_bytes' => true,
+        'openssl_random_pseudo_bytes' => true,
+        'mcrypt_create_iv' => true,
+    ];
+
+    public function __construct(
+        private readonly ?string $inventoryFile = null,
+    ) {
+    }
+
+    public function getNodeType(): string
+    {
+        return CollectedDataNode::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof CollectedDataNode) {
+            return [];
+        }
+
+        $index = CryptoUsageIndex::fromCollectedData($node);
+        $errors = [];
+
+        foreach ($index->getCalls() as $call) {
+            $positions = self::ENCRYPTION_FUNCTIONS[$call['function']] ?? null;
+            if ($positions === null) {
+                continue;
+            }
+
+            if ($positions['iv'] !== null && isset($call['arguments'][$positions['iv']])) {
+                foreach ($call['arguments'][$positions['iv']] as [$kind, $text]) {
+                    if ($kind === CryptoSourceDescriber::KIND_CALL && !$index->canResolve($text)) {
+                        $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE_UNRESOLVED_IV, $positions['recommended'], $text))
+                            ->identifier('security.encryptionIvRandomness')
+                            ->file($call['file'])
+                            ->line($call['line'])
+                            ->build();
+                    }
+                }
+                foreach ($index->resolve($call['arguments'][$positions['iv']]) as $source) {
+                    if ($source['via'] === [] || !$this->isInsecureIvSource($source)) {
+                        continue;
+                    }
+                    $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE_IV, $source['via'][0], $source['text'], $positions['recommended']))
+                        ->identifier('security.crypto.helperIv')
+                        ->file($call['file'])
+                        ->line($call['line'])
+                        ->build();
+                }
+            }
+
+            if (isset($call['arguments'][$positions['key']])) {
+                $sources = $index->resolve($call['arguments'][$positions['key']]);
+                $literals = array_filter($sources, static fn (array $source): bool => $source['kind'] === CryptoSourceDescriber::KIND_LITERAL);
+                if ($sources !== [] && count($literals) === count($sources) && $sources[0]['via'] !== []) {
+                    $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE_KEY, $sources[0]['via'][0], $sources[0]['text']))
+                        ->identifier('security.crypto.helperKey')
+                        ->file($call['file'])
+                        ->line($call['line'])
+                        ->build();
+                }
+            }
+        }
+
+        if ($this->inventoryFile !== null) {
+            $json = json_encode($index->exportInventory(), JSON_PRETTY_PRINT | JSON_UNESCAPED_SLASHES | JSON_INVALID_UTF8_SUBSTITUTE);
+            if ($json === false || @file_put_contents($this->inventoryFile, $json) === false) {
+                $errors[] = RuleErrorBuilder::message(sprintf(
+                    self::MESSAGE_INVENTORY,
+                    $this->inventoryFile,
+                    $json === false ? json_last_error_msg() : error_get_last()['message'] ?? 'unknown error'
+                ))
+                    ->identifier('security.crypto.inventoryNotWritten')
+                    ->file($this->inventoryFile)
+                    ->build();
+            }
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @param array{kind: string, text: string, via: list<string>} $source
+     */
+    private function isInsecureIvSource(array $source): bool
+    {
+        return match ($source['kind']) {
+            CryptoSourceDescriber::KIND_LITERAL => true,
+            CryptoSourceDescriber::KIND_BUILTIN => !isset(self::SECURE_FUNCTIONS[strtolower(strtok($source['text'], '('))]),
+            default => false,
+        };
+    }
+}
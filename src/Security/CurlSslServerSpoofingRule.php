@@ -2,6 +2,7 @@
 
 namespace macropage\PHPStan\Inspections\Security;
 
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
 use PhpParser\Node;
 use PhpParser\Node\Expr\ArrayDimFetch;
 use PhpParser\Node\Expr\Assign;
@@ -25,6 +26,8 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - curl_setopt() function calls
  * - Array assignments to cURL option arrays
  *
+ * Values passed as variables are resolved to the values assigned to them (see PossibleValuesDiscovery).
+ *
  * @implements Rule<Node\Expr\FuncCall>
  */
 class CurlSslServerSpoofingRule implements Rule
@@ -32,6 +35,10 @@ class CurlSslServerSpoofingRule implements Rule
     private const string MESSAGE_VERIFY_HOST = 'Exposes a connection to MITM attacks. Use 2 (default) to stay safe.';
     private const string MESSAGE_VERIFY_PEER = 'Exposes a connection to MITM attacks. Use true (default) to stay safe.';
 
+    public function __construct(
+        private readonly PossibleValuesDiscovery $possibleValuesDiscovery,
+    ) {}
+
     public function getNodeType(): string
     {
         return Node\Expr\FuncCall::class;
@@ -77,7 +84,7 @@ class CurlSslServerSpoofingRule implements Rule
         }
 
         if ($optionName === 'CURLOPT_SSL_VERIFYHOST') {
-            if ($this->isHostVerifyDisabled($valueArg->value)) {
+            if ($this->isHostVerifyDisabled($valueArg->value, $scope)) {
                 return [
                     RuleErrorBuilder::message(self::MESSAGE_VERIFY_HOST)
                         ->identifier('security.curl.sslVerifyHost')
@@ -86,7 +93,7 @@ class CurlSslServerSpoofingRule implements Rule
                 ];
             }
         } elseif ($optionName === 'CURLOPT_SSL_VERIFYPEER') {
-            if ($this->isPeerVerifyDisabled($valueArg->value)) {
+            if ($this->isPeerVerifyDisabled($valueArg->value, $scope)) {
                 return [
                     RuleErrorBuilder::message(self::MESSAGE_VERIFY_PEER)
                         ->identifier('security.curl.sslVerifyPeer')
@@ -111,9 +118,9 @@ class CurlSslServerSpoofingRule implements Rule
         return null;
     }
 
-    private function isHostVerifyDisabled(Node\Expr $value): bool
+    private function isHostVerifyDisabled(Node\Expr $value, Scope $scope): bool
     {
-        $possibleValues = $this->discoverPossibleValues($value);
+        $possibleValues = $this->discoverPossibleValues($value, $scope);
 
         if ($possibleValues === []) {
             return false;
@@ -154,9 +161,9 @@ class CurlSslServerSpoofingRule implements Rule
         return $disableCount > 0 && $enableCount === 0;
     }
 
-    private function isPeerVerifyDisabled(Node\Expr $value): bool
+    private function isPeerVerifyDisabled(Node\Expr $value, Scope $scope): bool
     {
-        $possibleValues = $this->discoverPossibleValues($value);
+        $possibleValues = $this->discoverPossibleValues($value, $scope);
 
         if ($possibleValues === []) {
             return false;
@@ -205,7 +212,7 @@ class CurlSslServerSpoofingRule implements Rule
     /**
      * @return list<Node\Expr>
      */
-    private function discoverPossibleValues(Node\Expr $expr): array
+    private function discoverPossibleValues(Node\Expr $expr, Scope $scope): array
     {
         $values = [];
 
@@ -217,9 +224,15 @@ class CurlSslServerSpoofingRule implements Rule
             // Handle ternary expressions by collecting values from both branches
             $values = array_merge(
                 $values,
-                $this->discoverPossibleValues($expr->if),
-                $this->discoverPossibleValues($expr->else)
+                $this->discoverPossibleValues($expr->if ?? $expr->cond, $scope),
+                $this->discoverPossibleValues($expr->else, $scope)
             );
+        } elseif ($expr instanceof Node\Expr\Variable) {
+            foreach ($this->possibleValuesDiscovery->discover($expr, $scope) as $value) {
+                if (!$value instanceof Node\Expr\Variable) {
+                    $values = array_merge($values, $this->discoverPossibleValues($value, $scope));
+                }
+            }
         }
 
         return $values;
@@ -2,6 +2,7 @@
 
 namespace macropage\PHPStan\Inspections\Security;
 
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
 use PhpParser\Node;
 use PhpParser\Node\Expr\FuncCall;
 use PHPStan\Analyser\Scope;
@@ -18,6 +19,12 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - openssl_random_pseudo_bytes() for OpenSSL functions
  * - mcrypt_create_iv() for Mcrypt functions
  *
+ * IVs passed as variables are resolved to the values assigned to them (see PossibleValuesDiscovery),
+ * variables without discoverable values are not reported. IVs produced by user-defined functions
+ * and methods which CryptoSourceDescriber resolves are checked project-wide by CryptoUsageRule,
+ * which follows them across files and reports them like this rule when the helper itself was not
+ * analysed. Calls which can not be resolved are reported here.
+ *
  * @implements Rule<FuncCall>
  */
 class EncryptionInitializationVectorRandomnessRule implements Rule
@@ -27,8 +34,10 @@ class EncryptionInitializationVectorRandomnessRule implements Rule
     /** @var array<string, true> */
     private array $secureFunctions;
 
-    public function __construct()
-    {
+    public function __construct(
+        private readonly PossibleValuesDiscovery $possibleValuesDiscovery,
+        private readonly CryptoSourceDescriber $sourceDescriber,
+    ) {
         $this->secureFunctions = [
             'random_bytes' => true,
             'openssl_random_pseudo_bytes' => true,
@@ -103,6 +112,14 @@ class EncryptionInitializationVectorRandomnessRule implements Rule
     {
         $insecureSources = [];
 
+        // Resolvable helpers are left to CryptoUsageRule
+        if ($ivExpr instanceof FuncCall || $ivExpr instanceof Node\Expr\MethodCall || $ivExpr instanceof Node\Expr\NullsafeMethodCall || $ivExpr instanceof Node\Expr\StaticCall) {
+            $sources = $this->sourceDescriber->describe($ivExpr, $scope);
+            if (count($sources) === 1 && $sources[0][0] === CryptoSourceDescriber::KIND_CALL) {
+                return [];
+            }
+        }
+
         // Check if it's a direct function call
         if ($ivExpr instanceof FuncCall && $ivExpr->name instanceof Node\Name) {
             $calledFunction = $ivExpr->name->toString();
@@ -116,13 +133,14 @@ class EncryptionInitializationVectorRandomnessRule implements Rule
             return $insecureSources;
         }
 
-        // For other expressions, we consider them insecure unless we can prove they're from secure sources
-        // This is a simplified approach - in a full implementation, we'd need more sophisticated
-        // analysis of variable assignments, constants, etc.
+        // Variables are resolved to the values assigned to them
         if ($ivExpr instanceof Node\Expr\Variable) {
-            // For variables, we can't easily track their source in this simple implementation
-            // In a real-world scenario, we'd need to use PHPStan's data flow analysis
-            $insecureSources[] = '$' . $ivExpr->name;
+            foreach ($this->possibleValuesDiscovery->discover($ivExpr, $scope) as $value) {
+                if (!$value instanceof Node\Expr\Variable) {
+                    $insecureSources = [...$insecureSources, ...$this->findInsecureIvSources($value, $scope)];
+                }
+            }
+            return array_values(array_unique($insecureSources));
         } elseif ($ivExpr instanceof Node\Scalar\String_) {
             $insecureSources[] = '"' . $ivExpr->value . '"';
         } elseif ($ivExpr instanceof Node\Scalar\LNumber) {
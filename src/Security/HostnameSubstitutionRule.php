@@ -3,9 +3,14 @@
 namespace macropage\PHPStan\Inspections\Security;
 
 use PhpParser\Node;
+use PhpParser\Node\Expr;
 use PhpParser\Node\Expr\ArrayDimFetch;
 use PhpParser\Node\Expr\Assign;
 use PhpParser\Node\Expr\BinaryOp\Concat;
+use PhpParser\Node\Expr\Cast;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\StaticCall;
 use PhpParser\Node\Expr\Variable;
 use PhpParser\Node\Scalar\String_;
 use PHPStan\Analyser\Scope;
@@ -18,20 +23,29 @@ use PHPStan\Rules\RuleErrorBuilder;
  * This rule identifies:
  * - Usage of $_SERVER['SERVER_NAME'] or $_SERVER['HTTP_HOST'] in concatenation expressions forming email addresses
  * - Assignment of these server variables to variables or properties whose names match domain/email/host patterns
+ * - Calls passing these server variables to functions which build email addresses from them
  *
- * @implements Rule<Node>
+ * The server variables are tracked through local variables and resolvable calls (e.g. a
+ * `getHost()` helper returning $_SERVER['HTTP_HOST']) by TaintSummaries.
+ *
+ * @implements Rule<Expr>
  */
 class HostnameSubstitutionRule implements Rule
 {
     private const string MESSAGE_EMAIL_GENERATION = "The email generation can be compromised via '\$_SERVER['%s']', consider introducing whitelists.";
     private const string MESSAGE_DOMAIN_COMPROMISE = "The domain here can be compromised, consider introducing whitelists.";
+    private const string TIP_CHAIN = 'The host reaches %s.';
 
     private const array SERVER_ATTRIBUTES = ['SERVER_NAME', 'HTTP_HOST'];
     private const string TARGET_NAME_PATTERN = '/.*(?:domain|email|host).*/i';
 
+    public function __construct(
+        private readonly TaintSummaries $taintSummaries,
+    ) {}
+
     public function getNodeType(): string
     {
-        return Node::class;
+        return Expr::class;
     }
 
     public function processNode(Node $node, Scope $scope): array
@@ -40,18 +54,23 @@ class HostnameSubstitutionRule implements Rule
 
         // Check concatenation patterns that form email addresses
         if ($node instanceof Concat) {
-            $errors = array_merge($errors, $this->checkEmailConcatenation($node));
+            $errors = array_merge($errors, $this->checkEmailConcatenation($node, $scope));
         }
 
         // Check assignments to suspicious variable names
         if ($node instanceof Assign) {
-            $errors = array_merge($errors, $this->checkSuspiciousAssignment($node));
+            $errors = array_merge($errors, $this->checkSuspiciousAssignment($node, $scope));
+        }
+
+        // Check calls building email addresses from the passed host
+        if ($node instanceof FuncCall || $node instanceof MethodCall || $node instanceof StaticCall) {
+            $errors = array_merge($errors, $this->checkEmailSinkFlow($node, $scope));
         }
 
         return $errors;
     }
 
-    private function checkEmailConcatenation(Concat $concat): array
+    private function checkEmailConcatenation(Concat $concat, Scope $scope): array
     {
         // Check if left side ends with "@" and right side is $_SERVER['SERVER_NAME'] or $_SERVER['HTTP_HOST']
         $left = $concat->left;
@@ -64,7 +83,7 @@ class HostnameSubstitutionRule implements Rule
 
         // Check if we have a string ending with "@" concatenated with server variable
         if ($left instanceof String_ && str_ends_with($left->value, '@')) {
-            $serverAttribute = $this->getServerVariableAttribute($right);
+            $serverAttribute = $this->getServerVariableAttribute($right, $scope);
             if ($serverAttribute !== null) {
                 return [
                     RuleErrorBuilder::message(sprintf(self::MESSAGE_EMAIL_GENERATION, $serverAttribute))
@@ -78,9 +97,14 @@ class HostnameSubstitutionRule implements Rule
         return [];
     }
 
-    private function checkSuspiciousAssignment(Assign $assign): array
+    private function checkSuspiciousAssignment(Assign $assign, Scope $scope): array
     {
-        $serverAttribute = $this->getServerVariableAttribute($assign->expr);
+        // Composed values such as email addresses are covered by checkEmailConcatenation()
+        if ($assign->expr instanceof Concat || $assign->expr instanceof Node\Scalar\Encapsed || $assign->expr instanceof Cast) {
+            return [];
+        }
+
+        $serverAttribute = $this->getServerVariableAttribute($assign->expr, $scope);
         if ($serverAttribute === null) {
             return [];
         }
@@ -114,15 +138,35 @@ class HostnameSubstitutionRule implements Rule
         return [];
     }
 
-    private function getServerVariableAttribute(Node $node): ?string
+    private function checkEmailSinkFlow(FuncCall|MethodCall|StaticCall $call, Scope $scope): array
+    {
+        $flow = $this->taintSummaries->getSinkFlow($call, $scope, TaintSummaries::SINK_EMAIL);
+        foreach ($flow['sources'] ?? [] as $source) {
+            foreach (self::SERVER_ATTRIBUTES as $attribute) {
+                if ($source === "\$_SERVER['" . $attribute . "']") {
+                    return [
+                        RuleErrorBuilder::message(sprintf(self::MESSAGE_EMAIL_GENERATION, $attribute))
+                            ->identifier('security.hostnameSubstitution.emailGeneration')
+                            ->line($call->getStartLine())
+                            ->tip(sprintf(self::TIP_CHAIN, implode(' -> ', $flow['chain'])))
+                            ->build(),
+                    ];
+                }
+            }
+        }
+
+        return [];
+    }
+
+    private function getServerVariableAttribute(Node $node, Scope $scope): ?string
     {
         if (!$node instanceof ArrayDimFetch) {
-            return null;
+            return $this->getTaintedServerAttribute($node, $scope);
         }
 
         $var = $node->var;
         if (!$var instanceof Variable || $var->name !== '_SERVER') {
-            return null;
+            return $this->getTaintedServerAttribute($node, $scope);
         }
 
         $dim = $node->dim;
@@ -134,6 +178,25 @@ class HostnameSubstitutionRule implements Rule
         return in_array($attribute, self::SERVER_ATTRIBUTES, true) ? $attribute : null;
     }
 
+    /**
+     * Server attribute reaching the expression through variables or calls.
+     */
+    private function getTaintedServerAttribute(Node $node, Scope $scope): ?string
+    {
+        if (!$node instanceof Node\Expr) {
+            return null;
+        }
+
+        $sources = $this->taintSummaries->getSources($node, $scope);
+        foreach (self::SERVER_ATTRIBUTES as $attribute) {
+            if (in_array("\$_SERVER['" . $attribute . "']", $sources, true)) {
+                return $attribute;
+            }
+        }
+
+        return null;
+    }
+
     private function getPropertyName(Node\Expr\PropertyFetch $propertyFetch): ?string
     {
         if ($propertyFetch->name instanceof Node\Identifier) {
@@ -0,0 +1,276 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
+use PhpParser\Node;
+use PhpParser\Node\Expr\Eval_;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Stmt\Function_;
+use PhpParser\Node\Stmt\Return_;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitorAbstract;
+
+/**
+ * Malware signatures shared by PotentialMalwareRule and MalwareSweep.
+ *
+ * MalwareSweep matches in two stages: a prefilter looks for the signature tokens (eval, touch,
+ * get_defined_functions, the eval/decode suspects and `return $variable(`) in the raw bytes of a
+ * file, only files containing at least one token are parsed and matched against the AST signatures. The PHPStan
+ * rule already has the AST and matches it directly:
+ * - eval() of a suspect function call, e.g. eval(base64_decode(...))
+ * - functions with several statements ending with the return of a decode function or of a
+ *   variable function call (unless the variable is known to hold other functions' names only)
+ * - touch() with 3 arguments (hiding file modifications)
+ * - get_defined_functions() calls
+ *
+ * The prefilter is a single case-insensitive alternation of all tokens, compiled once by PCRE,
+ * and reads files in chunks overlapping by the longest possible token match, so a token spanning
+ * two chunks is still found and reading stops at the first hit.
+ */
+final class MalwareSignatures
+{
+    public const string EVAL_MESSAGE = 'This eval looks pretty much as some malware.';
+    public const string FILE_HIDE_MESSAGE = 'This looks pretty much as some malware hiding files manipulation.';
+    public const string DECODE_MESSAGE = 'This function looks pretty much as part of some malware.';
+    public const string CALL_MESSAGE = 'This function looks pretty much as part of some malware.';
+
+    /** @var array<string, true> */
+    public const array EVAL_SUSPECTS = [
+        'base64_decode' => true,
+        'gzinflate' => true,
+        'gzuncompress' => true,
+        'urldecode' => true,
+        'curl_unescape' => true,
+        'strrev' => true,
+        'str_rot13' => true,
+        'file_get_contents' => true,
+        'curl_exec' => true,
+    ];
+
+    /** @var array<string, true> */
+    public const array DECODE_SUSPECTS = [
+        'base64_decode' => true,
+        'gzinflate' => true,
+        'gzuncompress' => true,
+        'urldecode' => true,
+        'curl_unescape' => true,
+    ];
+
+    private const array CALL_TOKENS = ['eval', 'touch', 'get_defined_functions'];
+
+    /** Return of a variable function call, `return $f(...)` or `return @$f(...)`, with bounded gaps */
+    private const string VARIABLE_CALL_RETURN_TOKEN = 'return\s{0,8}@?\s{0,8}\$[\w\x80-\xff]{1,128}\s{0,8}\(';
+
+    /** Longest text VARIABLE_CALL_RETURN_TOKEN can match */
+    private const int VARIABLE_CALL_RETURN_LENGTH = 161;
+
+    private const int CHUNK_SIZE = 1 << 20;
+
+    private static ?string $prefilterPattern = null;
+
+    /**
+     * Checks whether the bytes contain any signature token.
+     */
+    public static function matchesPrefilter(string $bytes): bool
+    {
+        return preg_match(self::getPrefilterPattern(), $bytes) === 1;
+    }
+
+    /**
+     * Checks whether the file contains any signature token without loading it as a whole.
+     */
+    public static function fileMatchesPrefilter(string $file): bool
+    {
+        $handle = @fopen($file, 'rb');
+        if ($handle === false) {
+            return false;
+        }
+
+        try {
+            $overlap = self::getLongestMatchLength() - 1;
+            $tail = '';
+            while (!feof($handle)) {
+                $chunk = fread($handle, self::CHUNK_SIZE);
+                if ($chunk === false || $chunk === '') {
+                    break;
+                }
+                if (self::matchesPrefilter($tail . $chunk)) {
+                    return true;
+                }
+                $tail = substr($tail . $chunk, -$overlap);
+            }
+        } finally {
+            fclose($handle);
+        }
+
+        return false;
+    }
+
+    /**
+     * Matches the AST signatures, the returned findings are ordered by their position in the file.
+     *
+     * @param Node[] $stmts
+     * @return list<array{identifier: string, message: string, line: int}>
+     */
+    public static function match(array $stmts, ?PossibleValuesDiscovery $possibleValuesDiscovery = null): array
+    {
+        $visitor = new class ($possibleValuesDiscovery) extends NodeVisitorAbstract {
+            /** @var list<array{identifier: string, message: string, line: int}> */
+            public array $findings = [];
+
+            public function __construct(private readonly ?PossibleValuesDiscovery $possibleValuesDiscovery)
+            {
+            }
+
+            public function enterNode(Node $node)
+            {
+                $finding = match (true) {
+                    $node instanceof Eval_     => MalwareSignatures::matchEval($node),
+                    $node instanceof FuncCall  => MalwareSignatures::matchFuncCall($node),
+                    $node instanceof Function_ => MalwareSignatures::matchFunction($node, $this->possibleValuesDiscovery),
+                    default                    => null,
+                };
+                if ($finding !== null) {
+                    $this->findings[] = $finding;
+                }
+
+                return null;
+            }
+        };
+
+        $traverser = new NodeTraverser();
+        $traverser->addVisitor($visitor);
+        $traverser->traverse($stmts);
+
+        return $visitor->findings;
+    }
+
+    /**
+     * @return array{identifier: string, message: string, line: int}|null
+     */
+    public static function matchEval(Eval_ $eval): ?array
+    {
+        $argument = self::unwrap($eval->expr);
+        if (!$argument instanceof FuncCall) {
+            return null;
+        }
+
+        $functionName = self::getFunctionName($argument);
+        if ($functionName === null || !isset(self::EVAL_SUSPECTS[$functionName])) {
+            return null;
+        }
+
+        // Special case: eval(file_get_contents('php://input')) is commonly used for interactive consoles
+        if ($functionName === 'file_get_contents') {
+            $args = $argument->getArgs();
+            if (count($args) > 0 && $args[0]->value instanceof Node\Scalar\String_ && $args[0]->value->value === 'php://input') {
+                return null;
+            }
+        }
+
+        return ['identifier' => 'security.potentialMalware.eval', 'message' => self::EVAL_MESSAGE, 'line' => $eval->getStartLine()];
+    }
+
+    /**
+     * @return array{identifier: string, message: string, line: int}|null
+     */
+    public static function matchFuncCall(FuncCall $funcCall): ?array
+    {
+        $functionName = self::getFunctionName($funcCall);
+
+        if ($functionName === 'touch' && count($funcCall->getArgs()) === 3) {
+            return ['identifier' => 'security.potentialMalware.fileHide', 'message' => self::FILE_HIDE_MESSAGE, 'line' => $funcCall->getStartLine()];
+        }
+        if ($functionName === 'get_defined_functions') {
+            return ['identifier' => 'security.potentialMalware.call', 'message' => self::CALL_MESSAGE, 'line' => $funcCall->getStartLine()];
+        }
+
+        return null;
+    }
+
+    /**
+     * @return array{identifier: string, message: string, line: int}|null
+     */
+    public static function matchFunction(Function_ $function, ?PossibleValuesDiscovery $possibleValuesDiscovery = null): ?array
+    {
+        $stmts = $function->getStmts();
+        if (count($stmts) < 2) {
+            return null;
+        }
+
+        $lastStmt = end($stmts);
+        if (!$lastStmt instanceof Return_ || $lastStmt->expr === null) {
+            return null;
+        }
+
+        // Implicit decode function call or variable function call
+        $returnExpr = self::unwrap($lastStmt->expr);
+        if (!$returnExpr instanceof FuncCall) {
+            return null;
+        }
+        $functionName = self::getFunctionName($returnExpr);
+        if ($functionName !== null && !isset(self::DECODE_SUSPECTS[$functionName])) {
+            return null;
+        }
+        if ($functionName === null && $possibleValuesDiscovery !== null
+            && $returnExpr->name instanceof Node\Expr\Variable && is_string($returnExpr->name->name)
+            && !self::mayHoldDecodeSuspect($possibleValuesDiscovery->discoverInFunction($function, $returnExpr->name->name, $returnExpr->getStartFilePos()))) {
+            return null;
+        }
+
+        return ['identifier' => 'security.potentialMalware.decode', 'message' => self::DECODE_MESSAGE, 'line' => $function->getStartLine()];
+    }
+
+    /**
+     * Unknown and non-literal values may hold a decode function as well.
+     *
+     * @param list<Node\Expr> $values
+     */
+    private static function mayHoldDecodeSuspect(array $values): bool
+    {
+        if ($values === []) {
+            return true;
+        }
+        foreach ($values as $value) {
+            if (!$value instanceof Node\Scalar\String_ || isset(self::DECODE_SUSPECTS[strtolower($value->value)])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static function unwrap(Node\Expr $expr): Node\Expr
+    {
+        // Strip @ operator, parentheses are not part of the AST
+        while ($expr instanceof Node\Expr\ErrorSuppress) {
+            $expr = $expr->expr;
+        }
+
+        return $expr;
+    }
+
+    private static function getFunctionName(FuncCall $funcCall): ?string
+    {
+        return $funcCall->name instanceof Node\Name ? $funcCall->name->toLowerString() : null;
+    }
+
+    private static function getPrefilterPattern(): string
+    {
+        if (self::$prefilterPattern === null) {
+            $tokens = array_unique([...self::CALL_TOKENS, ...array_keys(self::EVAL_SUSPECTS), ...array_keys(self::DECODE_SUSPECTS)]);
+            // Longer tokens first, so the alternation prefers them
+            usort($tokens, static fn (string $left, string $right): int => strlen($right) <=> strlen($left));
+            $alternatives = [...array_map(static fn (string $token): string => preg_quote($token, '/'), $tokens), self::VARIABLE_CALL_RETURN_TOKEN];
+            self::$prefilterPattern = '/' . implode('|', $alternatives) . '/i';
+        }
+
+        return self::$prefilterPattern;
+    }
+
+    private static function getLongestMatchLength(): int
+    {
+        return max(self::VARIABLE_CALL_RETURN_LENGTH, ...array_map('strlen', [...self::CALL_TOKENS, ...array_keys(self::EVAL_SUSPECTS)]));
+    }
+}
@@ -0,0 +1,225 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use macropage\PHPStan\Inspections\PossibleValuesDiscovery;
+use PhpParser\Error;
+use PhpParser\Parser;
+use PhpParser\ParserFactory;
+
+/**
+ * Batch malware sweep over directories, e.g. uploaded plugins and themes, without running PHPStan.
+ *
+ * Files are prefiltered on their raw bytes and only files containing a signature token are
+ * parsed and matched (see MalwareSignatures), so clean files cost a sequential read only.
+ * With several workers the file list is split into batches which forked worker processes
+ * claim from a shared queue (exclusively created claim files), so slow batches do not hold
+ * back the other workers. Without the pcntl extension the sweep runs in the current process.
+ * A worker which can not hand over its findings is listed in workerErrors, the batches it
+ * claimed are missing from the findings then.
+ *
+ *     $result = (new MalwareSweep(workers: 8))->sweep(['/var/www/wp-content/plugins']);
+ *     foreach ($result['findings'] as $finding) {
+ *         printf("%s:%d %s\n", $finding['file'], $finding['line'], $finding['message']);
+ *     }
+ *     printf("%d files, %.1f files/s, %.1f MB/s\n", $result['statistics']['files'],
+ *         $result['statistics']['filesPerSecond'], $result['statistics']['megabytesPerSecond']);
+ */
+final class MalwareSweep
+{
+    public const array DEFAULT_EXTENSIONS = ['php', 'phtml', 'php3', 'php4', 'php5', 'php7', 'inc'];
+
+    private const int BATCH_SIZE = 64;
+
+    private Parser $parser;
+
+    private PossibleValuesDiscovery $possibleValuesDiscovery;
+
+    /**
+     * @param list<string> $extensions lower-cased file extensions to sweep
+     */
+    public function __construct(
+        private readonly int $workers = 1,
+        private readonly array $extensions = self::DEFAULT_EXTENSIONS,
+        ?Parser $parser = null,
+    ) {
+        $this->parser = $parser ?? (new ParserFactory())->createForHostVersion();
+        $this->possibleValuesDiscovery = new PossibleValuesDiscovery();
+    }
+
+    /**
+     * @param list<string> $paths files and directories to sweep
+     * @return array{
+     *     findings: list<array{file: string, identifier: string, message: string, line: int}>,
+     *     parseErrors: list<array{file: string, message: string}>,
+     *     workerErrors: list<string>,
+     *     statistics: array{files: int, bytes: int, candidates: int, workers: int, seconds: float, filesPerSecond: float, megabytesPerSecond: float}
+     * }
+     */
+    public function sweep(array $paths): array
+    {
+        $startedAt = hrtime(true);
+        $files = $this->collectFiles($paths);
+        $batches = array_chunk($files, self::BATCH_SIZE);
+
+        $workers = min($this->workers, count($batches));
+        $workerErrors = [];
+        $partials = $workers > 1 && function_exists('pcntl_fork')
+            ? $this->sweepInWorkers($batches, $workers, $workerErrors)
+            : [$this->sweepBatches($batches, null)];
+
+        $result = ['findings' => [], 'parseErrors' => [], 'bytes' => 0, 'candidates' => 0];
+        foreach ($partials as $partial) {
+            $result['findings']    = [...$result['findings'], ...$partial['findings']];
+            $result['parseErrors'] = [...$result['parseErrors'], ...$partial['parseErrors']];
+            $result['bytes']      += $partial['bytes'];
+            $result['candidates'] += $partial['candidates'];
+        }
+        usort($result['findings'], static fn (array $left, array $right): int => [$left['file'], $left['line']] <=> [$right['file'], $right['line']]);
+
+        $seconds = (hrtime(true) - $startedAt) / 1e9;
+
+        return [
+            'findings'     => $result['findings'],
+            'parseErrors'  => $result['parseErrors'],
+            'workerErrors' => $workerErrors,
+            'statistics'   => [
+                'files'              => count($files),
+                'bytes'              => $result['bytes'],
+                'candidates'         => $result['candidates'],
+                'workers'            => max(1, count($partials)),
+                'seconds'            => $seconds,
+                'filesPerSecond'     => $seconds > 0 ? count($files) / $seconds : 0.0,
+                'megabytesPerSecond' => $seconds > 0 ? $result['bytes'] / 1048576 / $seconds : 0.0,
+            ],
+        ];
+    }
+
+    /**
+     * @param list<list<string>> $batches
+     * @param list<string> $workerErrors
+     * @return list<array{findings: list<array{file: string, identifier: string, message: string, line: int}>, parseErrors: list<array{file: string, message: string}>, bytes: int, candidates: int}>
+     */
+    private function sweepInWorkers(array $batches, int $workers, array &$workerErrors): array
+    {
+        $queueDirectory = sys_get_temp_dir() . '/malware-sweep-' . bin2hex(random_bytes(8));
+        if (!@mkdir($queueDirectory, 0700)) {
+            return [$this->sweepBatches($batches, null)];
+        }
+
+        $children = [];
+        for ($worker = 0; $worker < $workers; $worker++) {
+            $pid = pcntl_fork();
+            if ($pid === -1) {
+                break;
+            }
+            if ($pid === 0) {
+                $partial = $this->sweepBatches($batches, $queueDirectory);
+                $json = json_encode($partial, JSON_INVALID_UTF8_SUBSTITUTE);
+                if ($json === false) {
+                    $json = (string) json_encode(['error' => 'Encoding the findings failed: ' . json_last_error_msg()]);
+                }
+                exit(file_put_contents($queueDirectory . '/result-' . $worker . '.json', $json) === false ? 1 : 0);
+            }
+            $children[$pid] = $worker;
+        }
+
+        // The parent takes part as well, which also covers failed forks
+        $partials = [$this->sweepBatches($batches, $queueDirectory)];
+        foreach ($children as $pid => $worker) {
+            pcntl_waitpid($pid, $status);
+            $resultFile = $queueDirectory . '/result-' . $worker . '.json';
+            $partial = is_file($resultFile) ? json_decode((string) file_get_contents($resultFile), true) : null;
+            if (is_array($partial) && isset($partial['findings'])) {
+                $partials[] = $partial;
+            } else {
+                $workerErrors[] = sprintf(
+                    'Worker %d lost the findings of its batches: %s',
+                    $worker,
+                    is_array($partial) && is_string($partial['error'] ?? null) ? $partial['error'] : sprintf('no result (exit status %d)', pcntl_wexitstatus($status))
+                );
+            }
+        }
+
+        foreach (glob($queueDirectory . '/*') ?: [] as $queueFile) {
+            @unlink($queueFile);
+        }
+        @rmdir($queueDirectory);
+
+        return $partials;
+    }
+
+    /**
+     * Sweeps all batches, or with a queue directory the batches this process manages to claim.
+     *
+     * @param list<list<string>> $batches
+     * @return array{findings: list<array{file: string, identifier: string, message: string, line: int}>, parseErrors: list<array{file: string, message: string}>, bytes: int, candidates: int}
+     */
+    private function sweepBatches(array $batches, ?string $queueDirectory): array
+    {
+        $partial = ['findings' => [], 'parseErrors' => [], 'bytes' => 0, 'candidates' => 0];
+
+        foreach ($batches as $index => $batch) {
+            if ($queueDirectory !== null) {
+                $claim = @fopen($queueDirectory . '/batch-' . $index, 'x');
+                if ($claim === false) {
+                    continue;
+                }
+                fclose($claim);
+            }
+
+            foreach ($batch as $file) {
+                $partial['bytes'] += (int) @filesize($file);
+                if (!MalwareSignatures::fileMatchesPrefilter($file)) {
+                    continue;
+                }
+                $partial['candidates']++;
+
+                try {
+                    $stmts = $this->parser->parse((string) file_get_contents($file)) ?? [];
+                } catch (Error $error) {
+                    $partial['parseErrors'][] = ['file' => $file, 'message' => $error->getMessage()];
+                    continue;
+                }
+
+                foreach (MalwareSignatures::match($stmts, $this->possibleValuesDiscovery) as $finding) {
+                    $partial['findings'][] = ['file' => $file] + $finding;
+                }
+            }
+        }
+
+        return $partial;
+    }
+
+    /**
+     * @param list<string> $paths
+     * @return list<string>
+     */
+    private function collectFiles(array $paths): array
+    {
+        $files = [];
+        foreach ($paths as $path) {
+            if (is_file($path)) {
+                $files[] = $path;
+                continue;
+            }
+            if (!is_dir($path)) {
+                continue;
+            }
+
+            $iterator = new \RecursiveIteratorIterator(
+                new \RecursiveDirectoryIterator($path, \FilesystemIterator::SKIP_DOTS),
+                \RecursiveIteratorIterator::LEAVES_ONLY,
+                \RecursiveIteratorIterator::CATCH_GET_CHILD
+            );
+            foreach ($iterator as $fileInfo) {
+                if ($fileInfo instanceof \SplFileInfo && $fileInfo->isFile()
+                    && in_array(strtolower($fileInfo->getExtension()), $this->extensions, true)) {
+                    $files[] = $fileInfo->getPathname();
+                }
+            }
+        }
+
+        return array_values(array_unique($files));
+    }
+}
@@ -3,10 +3,10 @@
 namespace macropage\PHPStan\Inspections\Security;
 
 use PhpParser\Node;
-use PhpParser\Node\Expr\FuncCall;
 use PHPStan\Analyser\Scope;
+use PHPStan\Node\CollectedDataNode;
+use PHPStan\Rules\IdentifierRuleError;
 use PHPStan\Rules\Rule;
-use PHPStan\Rules\RuleError;
 use PHPStan\Rules\RuleErrorBuilder;
 
 /**
@@ -20,7 +20,15 @@ use PHPStan\Rules\RuleErrorBuilder;
  * It helps prevent vulnerable components from being installed by enforcing
  * the use of security advisories as a firewall for Composer packages.
  *
- * @implements Rule<FuncCall>
+ * Additionally, the versions pinned in composer.lock are checked against an offline advisory
+ * snapshot (see AdvisoryDatabase), configured with the securityAdvisoriesDirectory parameter
+ * or placed in a security-advisories directory next to composer.json. No network access is needed.
+ * Advisories whose affected versions use unsupported constraint syntax are reported as unchecked.
+ *
+ * ComposerProjectCollector gathers the composer.json of the analysed files in the workers, each
+ * composer.json and composer.lock is then checked once, errors point at the entry in the file.
+ *
+ * @implements Rule<CollectedDataNode>
  */
 final class SecurityAdvisoriesRule implements Rule
 {
@@ -76,51 +84,70 @@ final class SecurityAdvisoriesRule implements Rule
         'kalessil/production-dependencies-guard',
     ];
 
-    private bool $hasCheckedComposerJson = false;
+    public function __construct(
+        private readonly ?string $advisoriesDirectory = null,
+    ) {}
 
     public function getNodeType(): string
     {
-        return FuncCall::class;
+        return CollectedDataNode::class;
     }
 
     public function processNode(Node $node, Scope $scope): array
     {
-        // Only check once per analysis run to avoid duplicate errors
-        if ($this->hasCheckedComposerJson) {
+        if (!$node instanceof CollectedDataNode) {
             return [];
         }
 
-        $this->hasCheckedComposerJson = true;
-
-        $composerJsonPath = $this->findComposerJsonPath($scope);
-        if ($composerJsonPath === null) {
-            return [];
+        $composerJsonPaths = [];
+        foreach ($node->get(ComposerProjectCollector::class) as $paths) {
+            foreach ($paths as $path) {
+                if (!str_contains(str_replace('\\', '/', $path), '/vendor/')) {
+                    $composerJsonPaths[$path] = true;
+                }
+            }
         }
 
         $errors = [];
-        $composerData = $this->parseComposerJson($composerJsonPath);
-        if ($composerData === null) {
+        foreach (array_keys($composerJsonPaths) as $composerJsonPath) {
+            $errors = [...$errors, ...$this->checkProject($composerJsonPath)];
+        }
+
+        return $errors;
+    }
+
+    /**
+     * @return list<IdentifierRuleError>
+     */
+    private function checkProject(string $composerJsonPath): array
+    {
+        $content = @file_get_contents($composerJsonPath);
+        $composerData = $content === false ? null : $this->parseComposerJson($content);
+        if ($content === false || $composerData === null) {
             return [];
         }
 
+        // Check pinned versions against the advisory snapshot
+        $errors = $this->checkLockedVersions(dirname($composerJsonPath));
+
         // Skip libraries
         if ($this->isLibrary($composerData)) {
-            return [];
+            return $errors;
         }
 
         // Check for misplaced development packages
-        $misplacedPackages = $this->checkMisplacedPackages($composerData);
-        foreach ($misplacedPackages as $packageName => $line) {
+        foreach ($this->checkMisplacedPackages($composerData) as $packageName) {
             $errors[] = RuleErrorBuilder::message(
                 "Dev-packages have no security guarantees, invoke the package via require-dev instead."
             )
                 ->identifier('composer.devPackageInRequire')
-                ->line($line)
+                ->file($composerJsonPath)
+                ->line($this->findLine($content, $packageName, 'require'))
                 ->build();
         }
 
         // Check for missing or incorrect security advisories
-        $advisoriesError = $this->checkSecurityAdvisories($composerData);
+        $advisoriesError = $this->checkSecurityAdvisories($composerData, $composerJsonPath, $content);
         if ($advisoriesError !== null) {
             $errors[] = $advisoriesError;
         }
@@ -128,33 +155,65 @@ final class SecurityAdvisoriesRule implements Rule
         return $errors;
     }
 
-    private function findComposerJsonPath(Scope $scope): ?string
+    /**
+     * @return list<IdentifierRuleError>
+     */
+    private function checkLockedVersions(string $projectDirectory): array
     {
-        $filePath = $scope->getFile();
-        $directory = dirname($filePath);
-
-        // Look for composer.json in the current directory and parent directories
-        while ($directory !== '/' && $directory !== '.' && $directory !== '') {
-            $composerPath = $directory . '/composer.json';
-            if (file_exists($composerPath)) {
-                return $composerPath;
+        $advisoriesDirectory = $this->advisoriesDirectory ?? $projectDirectory . '/security-advisories';
+        $lockFile = $projectDirectory . '/composer.lock';
+        if (!is_dir($advisoriesDirectory) || !is_file($lockFile)) {
+            return [];
+        }
+
+        $database = AdvisoryDatabase::fromDirectory($advisoriesDirectory);
+        $errors = [];
+        foreach (ComposerLockReader::readPackages($lockFile) as $package) {
+            foreach ($database->findAdvisories($package['name'], $package['version']) as $advisory) {
+                $builder = RuleErrorBuilder::message(sprintf(
+                    '%s %s%s is affected by a security advisory: %s%s.',
+                    $package['name'],
+                    $package['version'],
+                    $package['dev'] ? ' (packages-dev)' : '',
+                    $advisory['title'],
+                    $advisory['cve'] !== null ? ' (' . $advisory['cve'] . ')' : ''
+                ))
+                    ->identifier('composer.vulnerablePackage')
+                    ->file($lockFile)
+                    ->line($package['line']);
+                if ($advisory['link'] !== null) {
+                    $builder = $builder->tip('See ' . $advisory['link'] . ' and update the package to a fixed version.');
+                }
+                $errors[] = $builder->build();
+            }
+
+            foreach ($database->findUncheckedAdvisories($package['name']) as $advisory) {
+                $builder = RuleErrorBuilder::message(sprintf(
+                    "%s %s could not be checked against the security advisory %s%s: the affected versions '%s' use an unsupported constraint.",
+                    $package['name'],
+                    $package['version'],
+                    $advisory['title'],
+                    $advisory['cve'] !== null ? ' (' . $advisory['cve'] . ')' : '',
+                    $advisory['constraint']
+                ))
+                    ->identifier('composer.uncheckedAdvisory')
+                    ->file($lockFile)
+                    ->line($package['line']);
+                if ($advisory['link'] !== null) {
+                    $builder = $builder->tip('See ' . $advisory['link'] . ' and verify the installed version manually.');
+                }
+                $errors[] = $builder->build();
             }
-            $directory = dirname($directory);
         }
 
-        return null;
+        return $errors;
     }
 
     /**
      * @return array<string, mixed>|null
      */
-    private function parseComposerJson(string $path): ?array
+    private function parseComposerJson(string $content): ?array
     {
-        $content = file_get_contents($path);
-        if ($content === false) {
-            return null;
-        }
-
         try {
             $data = json_decode($content, true, 512, JSON_THROW_ON_ERROR);
             return is_array($data) ? $data : null;
@@ -163,6 +222,25 @@ final class SecurityAdvisoriesRule implements Rule
         }
     }
 
+    /**
+     * Line of the quoted key in composer.json, searched after the given section key, 1 when it is not found.
+     */
+    private function findLine(string $content, string $key, ?string $section = null): int
+    {
+        $offset = 0;
+        if ($section !== null) {
+            $sectionPosition = stripos($content, '"' . $section . '"');
+            if ($sectionPosition === false) {
+                return 1;
+            }
+            $offset = $sectionPosition;
+        }
+
+        $position = stripos($content, '"' . $key . '"', $offset);
+
+        return $position === false ? 1 : substr_count($content, "\n", 0, $position) + 1;
+    }
+
     /**
      * @param array<string, mixed> $composerData
      */
@@ -174,7 +252,7 @@ final class SecurityAdvisoriesRule implements Rule
 
     /**
      * @param array<string, mixed> $composerData
-     * @return array<string, int>
+     * @return list<string>
      */
     private function checkMisplacedPackages(array $composerData): array
     {
@@ -187,8 +265,7 @@ final class SecurityAdvisoriesRule implements Rule
 
         foreach ($require as $packageName => $version) {
             if (is_string($packageName) && in_array(strtolower($packageName), self::DEVELOPMENT_PACKAGES, true)) {
-                // For simplicity, we'll use line 1 since we can't easily determine exact line numbers in JSON
-                $misplaced[$packageName] = 1;
+                $misplaced[] = $packageName;
             }
         }
 
@@ -198,7 +275,7 @@ final class SecurityAdvisoriesRule implements Rule
     /**
      * @param array<string, mixed> $composerData
      */
-    private function checkSecurityAdvisories(array $composerData): ?RuleError
+    private function checkSecurityAdvisories(array $composerData, string $composerJsonPath, string $content): ?IdentifierRuleError
     {
         $requireDev = $composerData['require-dev'] ?? [];
         $require = $composerData['require'] ?? [];
@@ -229,7 +306,8 @@ final class SecurityAdvisoriesRule implements Rule
                     "Please use dev-latest instead."
                 )
                     ->identifier('composer.securityAdvisoriesVersion')
-                    ->line(1)
+                    ->file($composerJsonPath)
+                    ->line($this->findLine($content, 'roave/security-advisories', 'require'))
                     ->build();
             }
         }
@@ -239,7 +317,8 @@ final class SecurityAdvisoriesRule implements Rule
                 "Please add roave/security-advisories:dev-latest into require-dev as a firewall for vulnerable components."
             )
                 ->identifier('composer.missingSecurityAdvisories')
-                ->line(1)
+                ->file($composerJsonPath)
+                ->line($this->findLine($content, 'require-dev'))
                 ->build();
         }
 
@@ -248,7 +327,8 @@ final class SecurityAdvisoriesRule implements Rule
                 "Please use dev-latest instead."
             )
                 ->identifier('composer.securityAdvisoriesVersion')
-                ->line(1)
+                ->file($composerJsonPath)
+                ->line($this->findLine($content, 'roave/security-advisories', 'require-dev'))
                 ->build();
         }
 
@@ -0,0 +1,760 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\Security;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\ArrayDimFetch;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\AssignOp;
+use PhpParser\Node\Expr\AssignRef;
+use PhpParser\Node\Expr\BinaryOp;
+use PhpParser\Node\Expr\CallLike;
+use PhpParser\Node\Expr\Cast;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\Include_;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\StaticCall;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\FunctionLike;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\Encapsed;
+use PhpParser\Node\Scalar\String_;
+use PhpParser\Node\Stmt;
+use PhpParser\Node\Stmt\ClassLike;
+use PhpParser\Node\Stmt\ClassMethod;
+use PhpParser\Node\Stmt\Foreach_;
+use PhpParser\Node\Stmt\Function_;
+use PhpParser\Node\Stmt\Return_;
+use PhpParser\NodeFinder;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitorAbstract;
+use PHPStan\Analyser\Scope;
+use PHPStan\Parser\Parser;
+use PHPStan\Parser\ParserErrorsException;
+use PHPStan\Reflection\ClassReflection;
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Interprocedural source-to-sink taint tracking shared by the security rules.
+ *
+ * Every function or method is summarized once: which sources (superglobals such as `$_GET` or
+ * `$_SERVER['HTTP_HOST']`, reading functions such as file_get_contents()) and which of its
+ * parameters flow into the return value, and which parameters flow into a sink (unserialize(),
+ * include/require or an email address built as `'...@' . $host`). Inside a function the flow
+ * through local variables is tracked flow-insensitively, calls are resolved through the
+ * summaries of their callees.
+ *
+ * Summaries are computed for the resolvable call graph reachable from the analysed function
+ * (plain function calls, `$this->m()`, `self::m()`, `static::m()`, `parent::m()` and `Foo::m()`,
+ * bounded by $maxFunctions) with a worklist, so recursive functions reach a fixpoint. Each summary
+ * is computed once and kept for the whole analysis run.
+ * Casts to scalar types, builtin functions which can not return strings or arrays and
+ * unresolvable calls end the flow.
+ */
+final class TaintSummaries
+{
+    public const string SINK_UNSERIALIZE = 'unserialize';
+    public const string SINK_INCLUDE     = 'include';
+    public const string SINK_EMAIL       = 'email';
+
+    private const array SINK_DESCRIPTIONS = [
+        self::SINK_UNSERIALIZE => 'unserialize()',
+        self::SINK_INCLUDE     => 'include',
+        self::SINK_EMAIL       => 'an email address',
+    ];
+
+    private const array SUPERGLOBALS = ['_GET', '_POST', '_REQUEST', '_FILES', '_COOKIE', '_SERVER', '_ENV'];
+
+    private const array SOURCE_FUNCTIONS = [
+        'file_get_contents',
+        'base64_decode',
+        'urldecode',
+        'getallheaders',
+        'apache_request_headers',
+    ];
+
+    /** Parameter taints are tracked as "#<position>" next to the source labels. */
+    private const string PARAMETER_PREFIX = '#';
+
+    private const array EMPTY_SUMMARY = ['return' => [], 'sinks' => []];
+
+    /** @var array<string, array{label: string, file: string, class: ClassReflection|null, locator: callable(): (FunctionLike|list<Stmt>|null)}> */
+    private array $functions = [];
+
+    /** @var array<string, array{parameters: array<string, int>, assignments: list<array{Expr, Expr, bool}>, returns: list<Expr>, sinks: list<array{string, Expr}>, calls: list<array{CallLike, string|null}>}|null> */
+    private array $bodies = [];
+
+    /** @var array<string, array{summary: array{return: list<string>, sinks: array<string, array<int, list<string>>>}, environment: array<string, array<string, true>>}> */
+    private array $cache = [];
+
+    public function __construct(
+        private readonly Parser $parser,
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly int $maxFunctions = 200,
+    ) {}
+
+    /**
+     * Sources reaching the expression, e.g. ['$_GET', 'base64_decode(...)', "\$_SERVER['HTTP_HOST']"].
+     *
+     * @return list<string>
+     */
+    public function getSources(Expr $expr, Scope $scope): array
+    {
+        $key = $this->resolveScopeFunction($scope);
+        $environment = $key === null ? [] : ($this->analyze($key)['environment'] ?? []);
+
+        return $this->toSources($this->evaluate($expr, $environment, $scope->isInClass() ? $scope->getClassReflection() : null));
+    }
+
+    /**
+     * Sources passed to the call which reach the given sink inside the callee (or deeper),
+     * null when none do. The chain lists the called functions down to the sink.
+     *
+     * @return array{sources: list<string>, chain: list<string>}|null
+     */
+    public function getSinkFlow(FuncCall|MethodCall|StaticCall $call, Scope $scope, string $sinkKind): ?array
+    {
+        // Sinks are reached through arguments only
+        if ($call->isFirstClassCallable() || $call->args === []) {
+            return null;
+        }
+
+        $context = $scope->isInClass() ? $scope->getClassReflection() : null;
+        $calleeKey = $this->resolveCall($call, $context);
+        $sinkParameters = $calleeKey === null ? [] : ($this->analyze($calleeKey)['summary']['sinks'][$sinkKind] ?? []);
+        if ($sinkParameters === []) {
+            return null;
+        }
+
+        $key = $this->resolveScopeFunction($scope);
+        $environment = $key === null ? [] : ($this->analyze($key)['environment'] ?? []);
+
+        $sources = [];
+        $chain = null;
+        foreach ($sinkParameters as $position => $sinkChain) {
+            $argument = $call->getArgs()[$position] ?? null;
+            if ($argument === null || $argument->unpack || $argument->name !== null) {
+                continue;
+            }
+            $argumentSources = $this->toSources($this->evaluate($argument->value, $environment, $context));
+            if ($argumentSources !== []) {
+                $sources = [...$sources, ...$argumentSources];
+                $chain ??= $sinkChain;
+            }
+        }
+
+        if ($chain === null) {
+            return null;
+        }
+        $sources = array_values(array_unique($sources));
+        sort($sources);
+
+        return ['sources' => $sources, 'chain' => $chain];
+    }
+
+    /**
+     * Summary and local environment of the function, computing the summaries of the reachable
+     * call graph with a worklist when they are not cached yet.
+     *
+     * @return array{summary: array{return: list<string>, sinks: array<string, array<int, list<string>>>}, environment: array<string, array<string, true>>}|null
+     */
+    private function analyze(string $key): ?array
+    {
+        if (isset($this->cache[$key])) {
+            return $this->cache[$key];
+        }
+
+        // Discover the part of the call graph which is not summarized yet
+        $pending = [];
+        $callers = [];
+        $queue = [$key];
+        while ($queue !== []) {
+            $current = array_shift($queue);
+            if (isset($pending[$current])) {
+                continue;
+            }
+            if ($this->getBody($current) === null) {
+                continue;
+            }
+            $pending[$current] = true;
+
+            foreach ($this->getBody($current)['calls'] as [, $calleeKey]) {
+                if ($calleeKey === null) {
+                    continue;
+                }
+                $callers[$calleeKey][$current] = true;
+                if (!isset($pending[$calleeKey]) && !isset($this->cache[$calleeKey]) && count($pending) + count($queue) < $this->maxFunctions) {
+                    $queue[] = $calleeKey;
+                }
+            }
+        }
+
+        if ($pending === []) {
+            return null;
+        }
+
+        /** @var array<string, array{return: list<string>, sinks: array<string, array<int, list<string>>>}> $summaries */
+        $summaries = array_fill_keys(array_keys($pending), self::EMPTY_SUMMARY);
+        $environments = [];
+
+        // Callees are discovered after their callers, so starting at the end summarizes them first
+        $worklist = array_keys($pending);
+        $queued = $pending;
+        while ($worklist !== []) {
+            $current = array_pop($worklist);
+            unset($queued[$current]);
+
+            $lookup = fn (string $calleeKey): ?array => $summaries[$calleeKey] ?? ($this->cache[$calleeKey]['summary'] ?? null);
+            [$summary, $environments[$current]] = $this->summarizeBody($current, $lookup);
+
+            if ($summary === $summaries[$current]) {
+                continue;
+            }
+            $summaries[$current] = $summary;
+            foreach (array_keys($callers[$current] ?? []) as $caller) {
+                if (isset($pending[$caller]) && !isset($queued[$caller])) {
+                    $worklist[] = $caller;
+                    $queued[$caller] = true;
+                }
+            }
+        }
+
+        foreach ($summaries as $summarizedKey => $summary) {
+            $this->cache[$summarizedKey] = [
+                'summary'     => $summary,
+                'environment' => $environments[$summarizedKey] ?? [],
+            ];
+        }
+
+        return $this->cache[$key] ?? null;
+    }
+
+    /**
+     * @param callable(string): (array{return: list<string>, sinks: array<string, array<int, list<string>>>}|null) $lookup
+     * @return array{array{return: list<string>, sinks: array<string, array<int, list<string>>>}, array<string, array<string, true>>}
+     */
+    private function summarizeBody(string $key, callable $lookup): array
+    {
+        $body = $this->getBody($key);
+        if ($body === null) {
+            return [self::EMPTY_SUMMARY, []];
+        }
+        $context = $this->functions[$key]['class'];
+        $label = $this->functions[$key]['label'];
+
+        // Parameters enter the body tainted with their position
+        $environment = [];
+        foreach ($body['parameters'] as $name => $position) {
+            $environment[$name] = [self::PARAMETER_PREFIX . $position => true];
+        }
+
+        // Flow-insensitive local environment: repeat until no assignment adds taint
+        $iterations = count($body['assignments']) + 1;
+        do {
+            $changed = false;
+            foreach ($body['assignments'] as [$target, $value, $isAppend]) {
+                $taint = $this->evaluate($value, $environment, $context, $lookup);
+                if ($isAppend) {
+                    $taint += $this->evaluate($target, $environment, $context, $lookup);
+                }
+                foreach ($this->getAssignedVariables($target) as $variableName) {
+                    $before = count($environment[$variableName] ?? []);
+                    $environment[$variableName] = ($environment[$variableName] ?? []) + $taint;
+                    $changed = $changed || count($environment[$variableName]) !== $before;
+                }
+            }
+        } while ($changed && --$iterations > 0);
+
+        $return = [];
+        foreach ($body['returns'] as $returned) {
+            $return += $this->evaluate($returned, $environment, $context, $lookup);
+        }
+
+        $sinks = [];
+        foreach ($body['sinks'] as [$sinkKind, $sinkExpr]) {
+            foreach ($this->toParameters($this->evaluate($sinkExpr, $environment, $context, $lookup)) as $position) {
+                $sinks[$sinkKind][$position] ??= [$label, self::SINK_DESCRIPTIONS[$sinkKind]];
+            }
+        }
+        foreach ($body['calls'] as [$call, $calleeKey]) {
+            $calleeSinks = $calleeKey === null ? [] : ($lookup($calleeKey)['sinks'] ?? []);
+            foreach ($calleeSinks as $sinkKind => $sinkParameters) {
+                foreach ($sinkParameters as $calleePosition => $chain) {
+                    $argument = $call->getArgs()[$calleePosition] ?? null;
+                    if ($argument === null || $argument->unpack || $argument->name !== null) {
+                        continue;
+                    }
+                    foreach ($this->toParameters($this->evaluate($argument->value, $environment, $context, $lookup)) as $position) {
+                        $sinks[$sinkKind][$position] ??= [$label, ...$chain];
+                    }
+                }
+            }
+        }
+
+        ksort($sinks);
+        foreach ($sinks as &$sinkParameters) {
+            ksort($sinkParameters);
+        }
+        unset($sinkParameters);
+        $return = array_keys($return);
+        sort($return);
+
+        return [['return' => array_map('strval', $return), 'sinks' => $sinks], $environment];
+    }
+
+    /**
+     * @param array<string, array<string, true>> $environment
+     * @param (callable(string): (array{return: list<string>, sinks: array<string, array<int, list<string>>>}|null))|null $lookup
+     * @return array<string, true>
+     */
+    private function evaluate(Expr $expr, array $environment, ?ClassReflection $context, ?callable $lookup = null): array
+    {
+        $lookup ??= fn (string $calleeKey): ?array => $this->analyze($calleeKey)['summary'] ?? null;
+
+        if ($expr instanceof Variable) {
+            if (!is_string($expr->name)) {
+                return [];
+            }
+            if (in_array($expr->name, self::SUPERGLOBALS, true)) {
+                return ['$' . $expr->name => true];
+            }
+            return $environment[$expr->name] ?? [];
+        }
+
+        if ($expr instanceof ArrayDimFetch) {
+            if ($expr->var instanceof Variable && $expr->var->name === '_SERVER' && $expr->dim instanceof String_) {
+                return ['$_SERVER[' . var_export($expr->dim->value, true) . ']' => true];
+            }
+            return $this->evaluate($expr->var, $environment, $context, $lookup);
+        }
+
+        if ($expr instanceof Cast) {
+            return $expr instanceof Cast\String_ || $expr instanceof Cast\Array_
+                ? $this->evaluate($expr->expr, $environment, $context, $lookup)
+                : [];
+        }
+
+        if ($expr instanceof BinaryOp) {
+            return $expr instanceof BinaryOp\Concat || $expr instanceof BinaryOp\Coalesce
+                ? $this->evaluate($expr->left, $environment, $context, $lookup) + $this->evaluate($expr->right, $environment, $context, $lookup)
+                : [];
+        }
+
+        if ($expr instanceof Expr\Ternary) {
+            return $this->evaluate($expr->if ?? $expr->cond, $environment, $context, $lookup)
+                + $this->evaluate($expr->else, $environment, $context, $lookup);
+        }
+
+        if ($expr instanceof Expr\Match_) {
+            $taint = [];
+            foreach ($expr->arms as $arm) {
+                $taint += $this->evaluate($arm->body, $environment, $context, $lookup);
+            }
+            return $taint;
+        }
+
+        if ($expr instanceof Encapsed) {
+            $taint = [];
+            foreach ($expr->parts as $part) {
+                if ($part instanceof Expr) {
+                    $taint += $this->evaluate($part, $environment, $context, $lookup);
+                }
+            }
+            return $taint;
+        }
+
+        if ($expr instanceof Expr\Array_) {
+            $taint = [];
+            foreach ($expr->items as $item) {
+                if ($item !== null) {
+                    $taint += $this->evaluate($item->value, $environment, $context, $lookup);
+                }
+            }
+            return $taint;
+        }
+
+        if ($expr instanceof Assign || $expr instanceof AssignRef) {
+            return $this->evaluate($expr->expr, $environment, $context, $lookup);
+        }
+        if ($expr instanceof AssignOp\Concat || $expr instanceof AssignOp\Coalesce) {
+            return $this->evaluate($expr->var, $environment, $context, $lookup) + $this->evaluate($expr->expr, $environment, $context, $lookup);
+        }
+
+        if ($expr instanceof CallLike && !$expr->isFirstClassCallable()) {
+            return $this->evaluateCall($expr, $environment, $context, $lookup);
+        }
+
+        return [];
+    }
+
+    /**
+     * @param array<string, array<string, true>> $environment
+     * @param callable(string): (array{return: list<string>, sinks: array<string, array<int, list<string>>>}|null) $lookup
+     * @return array<string, true>
+     */
+    private function evaluateCall(CallLike $call, array $environment, ?ClassReflection $context, callable $lookup): array
+    {
+        $calleeKey = $this->resolveCall($call, $context);
+        if ($calleeKey !== null) {
+            $taint = [];
+            foreach ($lookup($calleeKey)['return'] ?? [] as $returned) {
+                if (!str_starts_with($returned, self::PARAMETER_PREFIX)) {
+                    $taint[$returned] = true;
+                    continue;
+                }
+                $argument = $call->getArgs()[(int) substr($returned, 1)] ?? null;
+                if ($argument !== null && !$argument->unpack && $argument->name === null) {
+                    $taint += $this->evaluate($argument->value, $environment, $context, $lookup);
+                }
+            }
+            return $taint;
+        }
+
+        if (!$call instanceof FuncCall || !$call->name instanceof Name) {
+            return [];
+        }
+
+        $functionName = $this->resolveFunctionName($call->name);
+        if ($functionName === null || !$this->reflectionProvider->getFunction($functionName, null)->isBuiltin()) {
+            return [];
+        }
+
+        $lowerName = strtolower($functionName->toString());
+        $taint = in_array($lowerName, self::SOURCE_FUNCTIONS, true) ? [$lowerName . '(...)' => true] : [];
+
+        // Builtin functions pass their arguments through, unless they can not return strings or arrays
+        $returnType = $this->reflectionProvider->getFunction($functionName, null)->getVariants()[0]->getReturnType();
+        if ($returnType->isString()->no() && $returnType->isArray()->no()) {
+            return $taint;
+        }
+        foreach ($call->getArgs() as $argument) {
+            $taint += $this->evaluate($argument->value, $environment, $context, $lookup);
+        }
+
+        return $taint;
+    }
+
+    /**
+     * @return array{parameters: array<string, int>, assignments: list<array{Expr, Expr, bool}>, returns: list<Expr>, sinks: list<array{string, Expr}>, calls: list<array{CallLike, string|null}>}|null
+     */
+    private function getBody(string $key): ?array
+    {
+        if (array_key_exists($key, $this->bodies)) {
+            return $this->bodies[$key];
+        }
+
+        $function = $this->functions[$key] ?? null;
+        $node = $function === null ? null : ($function['locator'])();
+        if ($node === null || ($node instanceof FunctionLike && $node->getStmts() === null)) {
+            return $this->bodies[$key] = null;
+        }
+
+        $parameters = [];
+        if ($node instanceof FunctionLike) {
+            foreach ($node->getParams() as $position => $param) {
+                if ($param->var instanceof Variable && is_string($param->var->name)) {
+                    $parameters[$param->var->name] = $position;
+                }
+            }
+        }
+
+        $visitor = new class extends NodeVisitorAbstract {
+            /** @var list<array{Expr, Expr, bool}> */
+            public array $assignments = [];
+            /** @var list<Expr> */
+            public array $returns = [];
+            /** @var list<array{string, Expr}> */
+            public array $sinks = [];
+            /** @var list<CallLike> */
+            public array $calls = [];
+
+            public function enterNode(Node $node)
+            {
+                // Bodies of closures, nested functions and classes are not executed by the function itself
+                if ($node instanceof ClassLike || $node instanceof Function_ || $node instanceof Expr\Closure || $node instanceof Expr\ArrowFunction) {
+                    return NodeTraverser::DONT_TRAVERSE_CHILDREN;
+                }
+
+                if ($node instanceof Assign || $node instanceof AssignRef) {
+                    $this->assignments[] = [$node->var, $node->expr, false];
+                } elseif ($node instanceof AssignOp\Concat || $node instanceof AssignOp\Coalesce) {
+                    $this->assignments[] = [$node->var, $node->expr, true];
+                } elseif ($node instanceof Foreach_) {
+                    $this->assignments[] = [$node->valueVar, $node->expr, false];
+                    if ($node->keyVar !== null) {
+                        $this->assignments[] = [$node->keyVar, $node->expr, false];
+                    }
+                } elseif ($node instanceof Return_ && $node->expr !== null) {
+                    $this->returns[] = $node->expr;
+                } elseif ($node instanceof Include_) {
+                    $this->sinks[] = [TaintSummaries::SINK_INCLUDE, $node->expr];
+                } elseif ($node instanceof BinaryOp\Concat) {
+                    $left = $node->left instanceof BinaryOp\Concat ? $node->left->right : $node->left;
+                    if ($left instanceof String_ && str_ends_with($left->value, '@')) {
+                        $this->sinks[] = [TaintSummaries::SINK_EMAIL, $node->right];
+                    }
+                }
+
+                if ($node instanceof CallLike && !$node->isFirstClassCallable()) {
+                    $this->calls[] = $node;
+                    if ($node instanceof FuncCall && $node->name instanceof Name
+                        && $node->name->toLowerString() === 'unserialize' && $node->getArgs() !== []) {
+                        $this->sinks[] = [TaintSummaries::SINK_UNSERIALIZE, $node->getArgs()[0]->value];
+                    }
+                }
+
+                return null;
+            }
+        };
+        $traverser = new NodeTraverser();
+        $traverser->addVisitor($visitor);
+        $traverser->traverse($node instanceof FunctionLike ? ($node->getStmts() ?? []) : $node);
+
+        $context = $function['class'];
+        $calls = [];
+        foreach ($visitor->calls as $call) {
+            $calls[] = [$call, $this->resolveCall($call, $context)];
+        }
+
+        return $this->bodies[$key] = [
+            'parameters'  => $parameters,
+            'assignments' => $visitor->assignments,
+            'returns'     => $visitor->returns,
+            'sinks'       => $visitor->sinks,
+            'calls'       => $calls,
+        ];
+    }
+
+    private function resolveScopeFunction(Scope $scope): ?string
+    {
+        if ($scope->isInAnonymousFunction()) {
+            return null;
+        }
+
+        $function = $scope->getFunction();
+        if ($function === null) {
+            return $scope->isInClass() ? null : $this->registerFile($scope->getFile());
+        }
+        if ($scope->isInClass()) {
+            return $this->registerMethod($scope->getClassReflection(), $function->getName());
+        }
+
+        return $this->registerFunction(new Name\FullyQualified($function->getName()));
+    }
+
+    private function resolveCall(CallLike $call, ?ClassReflection $context): ?string
+    {
+        if ($call instanceof FuncCall) {
+            if (!$call->name instanceof Name) {
+                return null;
+            }
+            $functionName = $this->resolveFunctionName($call->name);
+            return $functionName === null ? null : $this->registerFunction($functionName);
+        }
+
+        if (!($call instanceof MethodCall || $call instanceof StaticCall) || !$call->name instanceof Identifier) {
+            return null;
+        }
+        $methodName = $call->name->toString();
+
+        if ($call instanceof MethodCall) {
+            $isThisCall = $call->var instanceof Variable && $call->var->name === 'this';
+            return $isThisCall && $context !== null ? $this->registerMethod($context, $methodName) : null;
+        }
+
+        if (!$call->class instanceof Name) {
+            return null;
+        }
+        $className = strtolower($call->class->toString());
+        if (in_array($className, ['self', 'static'], true)) {
+            $target = $context;
+        } elseif ($className === 'parent') {
+            $target = $context?->getParentClass();
+        } else {
+            $target = $this->reflectionProvider->hasClass($call->class->toString())
+                ? $this->reflectionProvider->getClass($call->class->toString())
+                : null;
+        }
+
+        return $target === null ? null : $this->registerMethod($target, $methodName);
+    }
+
+    private function resolveFunctionName(Name $name): ?Name
+    {
+        $namespacedName = $name->getAttribute('namespacedName');
+        foreach ([$namespacedName instanceof Name ? $namespacedName : null, $name] as $candidate) {
+            if ($candidate !== null && $this->reflectionProvider->hasFunction($candidate, null)) {
+                return new Name\FullyQualified($this->reflectionProvider->getFunction($candidate, null)->getName());
+            }
+        }
+
+        return null;
+    }
+
+    private function registerFunction(Name $functionName): ?string
+    {
+        if (!$this->reflectionProvider->hasFunction($functionName, null)) {
+            return null;
+        }
+        $functionReflection = $this->reflectionProvider->getFunction($functionName, null);
+        $fileName = $functionReflection->getFileName();
+        if ($functionReflection->isBuiltin() || $fileName === null) {
+            return null;
+        }
+
+        $key = 'function:' . strtolower($functionReflection->getName());
+        $this->functions[$key] ??= [
+            'label'   => $functionReflection->getName() . '()',
+            'file'    => $fileName,
+            'class'   => null,
+            'locator' => fn (): ?Function_ => $this->findFunctionNode($fileName, $functionReflection->getName()),
+        ];
+
+        return $key;
+    }
+
+    private function registerMethod(ClassReflection $classReflection, string $methodName): ?string
+    {
+        if (!$classReflection->hasNativeMethod($methodName)) {
+            return null;
+        }
+        $declaringClass = $classReflection->getNativeMethod($methodName)->getDeclaringClass();
+        $fileName = $declaringClass->getFileName();
+        if ($fileName === null) {
+            return null;
+        }
+
+        $key = 'method:' . strtolower($declaringClass->getName() . '::' . $methodName);
+        $this->functions[$key] ??= [
+            'label'   => $declaringClass->getDisplayName() . '::' . $methodName . '()',
+            'file'    => $fileName,
+            'class'   => $declaringClass,
+            'locator' => fn (): ?ClassMethod => $this->findMethodNode($declaringClass, $methodName),
+        ];
+
+        return $key;
+    }
+
+    /**
+     * Code outside of functions and classes is summarized like a function without parameters.
+     */
+    private function registerFile(string $fileName): string
+    {
+        $key = 'file:' . $fileName;
+        $this->functions[$key] ??= [
+            'label'   => basename($fileName),
+            'file'    => $fileName,
+            'class'   => null,
+            'locator' => fn (): array => $this->parse($fileName),
+        ];
+
+        return $key;
+    }
+
+    private function findMethodNode(ClassReflection $classReflection, string $methodName): ?ClassMethod
+    {
+        $candidates = [$classReflection, ...array_values($classReflection->getTraits(true))];
+        foreach ($candidates as $candidate) {
+            $fileName = $candidate->getFileName();
+            if ($fileName === null) {
+                continue;
+            }
+            $className = $candidate->getName();
+            $classNode = (new NodeFinder())->findFirst($this->parse($fileName), static function (Node $node) use ($className): bool {
+                return $node instanceof ClassLike
+                    && isset($node->namespacedName)
+                    && strcasecmp($node->namespacedName->toString(), $className) === 0;
+            });
+            $method = $classNode instanceof ClassLike ? $classNode->getMethod($methodName) : null;
+            if ($method !== null) {
+                return $method;
+            }
+        }
+
+        return null;
+    }
+
+    private function findFunctionNode(string $fileName, string $functionName): ?Function_
+    {
+        $found = (new NodeFinder())->findFirst($this->parse($fileName), static function (Node $node) use ($functionName): bool {
+            return $node instanceof Function_
+                && isset($node->namespacedName)
+                && strcasecmp($node->namespacedName->toString(), $functionName) === 0;
+        });
+
+        return $found instanceof Function_ ? $found : null;
+    }
+
+    /**
+     * @return list<string>
+     */
+    private function getAssignedVariables(Expr $target): array
+    {
+        while ($target instanceof ArrayDimFetch) {
+            $target = $target->var;
+        }
+
+        if ($target instanceof Variable) {
+            return is_string($target->name) ? [$target->name] : [];
+        }
+
+        if ($target instanceof Expr\List_ || $target instanceof Expr\Array_) {
+            $names = [];
+            foreach ($target->items as $item) {
+                if ($item !== null) {
+                    $names = [...$names, ...$this->getAssignedVariables($item->value)];
+                }
+            }
+            return $names;
+        }
+
+        return [];
+    }
+
+    /**
+     * @param array<string, true> $taint
+     * @return list<string>
+     */
+    private function toSources(array $taint): array
+    {
+        $sources = [];
+        foreach (array_keys($taint) as $label) {
+            if (!str_starts_with((string) $label, self::PARAMETER_PREFIX)) {
+                $sources[] = (string) $label;
+            }
+        }
+        sort($sources);
+
+        return $sources;
+    }
+
+    /**
+     * @param array<string, true> $taint
+     * @return list<int>
+     */
+    private function toParameters(array $taint): array
+    {
+        $positions = [];
+        foreach (array_keys($taint) as $label) {
+            if (str_starts_with((string) $label, self::PARAMETER_PREFIX)) {
+                $positions[] = (int) substr((string) $label, 1);
+            }
+        }
+
+        return $positions;
+    }
+
+    /**
+     * @return list<Stmt>
+     */
+    private function parse(string $fileName): array
+    {
+        try {
+            return array_values($this->parser->parseFile($fileName));
+        } catch (ParserErrorsException) {
+            return [];
+        }
+    }
+}
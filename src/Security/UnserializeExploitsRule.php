@@ -3,11 +3,10 @@
 namespace macropage\PHPStan\Inspections\Security;
 
 use PhpParser\Node;
-use PhpParser\Node\Expr\ArrayDimFetch;
+use PhpParser\Node\Expr\CallLike;
 use PhpParser\Node\Expr\FuncCall;
-use PhpParser\Node\Expr\Variable;
-use PhpParser\NodeFinder;
-use PhpParser\NodeVisitorAbstract;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\StaticCall;
 use PHPStan\Analyser\Scope;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
@@ -21,15 +20,18 @@ use PHPStan\Type\TypeCombinator;
  * This rule identifies unsafe usage of unserialize() that could be exploited:
  * 1. Missing allowed_classes parameter (PHP 7.0+ security requirement)
  * 2. Unserialize calls with data from untrusted sources like $_GET, $_POST, file_get_contents()
+ * 3. Calls passing untrusted data to functions which unserialize it (directly or further down the call chain)
  *
+ * Sources are tracked through local variables and resolvable calls by TaintSummaries.
  * Suggests specifying allowed classes and avoiding untrusted input for unserialize().
  *
- * @implements Rule<FuncCall>
+ * @implements Rule<CallLike>
  */
 final class UnserializeExploitsRule implements Rule
 {
     private const MESSAGE_USE_SECOND_ARGUMENT = 'Please specify classes allowed for unserialization in 2nd argument.';
     private const MESSAGE_PATTERN = 'Perhaps it\'s possible to exploit the unserialize via: %s.';
+    private const TIP_CHAIN = 'The data reaches unserialize() via %s.';
 
     /** @var string[] */
     private const UNTRUSTED_VARS = ['_GET', '_POST', '_REQUEST', '_FILES', '_COOKIE'];
@@ -37,19 +39,19 @@ final class UnserializeExploitsRule implements Rule
     /** @var string[] */
     private const UNTRUSTED_FUNCTIONS = ['file_get_contents', 'base64_decode', 'urldecode'];
 
+    public function __construct(
+        private readonly TaintSummaries $taintSummaries,
+    ) {}
+
     public function getNodeType(): string
     {
-        return FuncCall::class;
+        return CallLike::class;
     }
 
     public function processNode(Node $node, Scope $scope): array
     {
-        if (!($node->name instanceof Node\Name)) {
-            return [];
-        }
-
-        if ($node->name->toLowerString() !== 'unserialize') {
-            return [];
+        if (!$node instanceof FuncCall || !($node->name instanceof Node\Name) || $node->name->toLowerString() !== 'unserialize') {
+            return $node instanceof FuncCall || $node instanceof MethodCall || $node instanceof StaticCall ? $this->checkSinkFlow($node, $scope) : [];
         }
 
         $errors = [];
@@ -80,10 +82,9 @@ final class UnserializeExploitsRule implements Rule
         // Check 2: Exploitable calls
         if (count($node->getArgs()) > 0) {
             $firstArg = $node->getArgs()[0]->value;
-            $untrustedSources = $this->findUntrustedSources($firstArg, $scope);
+            $untrustedSources = $this->filterUntrustedSources($this->taintSummaries->getSources($firstArg, $scope));
 
             if (!empty($untrustedSources)) {
-                sort($untrustedSources); // Sort for consistent reporting
                 $errors[] = RuleErrorBuilder::message(sprintf(self::MESSAGE_PATTERN, implode(', ', $untrustedSources)))
                     ->identifier('unserialize.exploitable')
                     ->line($node->getStartLine())
@@ -95,46 +96,39 @@ final class UnserializeExploitsRule implements Rule
     }
 
     /**
-     * @return string[]
+     * Reports calls passing untrusted data into functions which unserialize it.
+     */
+    private function checkSinkFlow(FuncCall|MethodCall|StaticCall $call, Scope $scope): array
+    {
+        $flow = $this->taintSummaries->getSinkFlow($call, $scope, TaintSummaries::SINK_UNSERIALIZE);
+        $untrustedSources = $flow === null ? [] : $this->filterUntrustedSources($flow['sources']);
+        if ($untrustedSources === []) {
+            return [];
+        }
+
+        return [
+            RuleErrorBuilder::message(sprintf(self::MESSAGE_PATTERN, implode(', ', $untrustedSources)))
+                ->identifier('unserialize.exploitable')
+                ->line($call->getStartLine())
+                ->tip(sprintf(self::TIP_CHAIN, implode(' -> ', $flow['chain'])))
+                ->build(),
+        ];
+    }
+
+    /**
+     * @param list<string> $sources sorted taint sources
+     * @return list<string>
      */
-    private function findUntrustedSources(Node $node, Scope $scope): array
+    private function filterUntrustedSources(array $sources): array
     {
-        $foundSources = [];
-        $nodeFinder = new NodeFinder();
-
-        // Find all relevant nodes within the expression
-        $relevantNodes = $nodeFinder->find($node, function (Node $subNode) {
-            return $subNode instanceof Variable || $subNode instanceof FuncCall || $subNode instanceof ArrayDimFetch;
-        });
-
-        foreach ($relevantNodes as $subNode) {
-            if ($subNode instanceof Variable) {
-                $varName = $subNode->name instanceof Node\VarLikeIdentifier ? $subNode->name->name : (string) $subNode->name;
-                if (in_array($varName, self::UNTRUSTED_VARS, true)) {
-                    $foundSources[] = $subNode->name instanceof Node\VarLikeIdentifier ? '$' . $subNode->name->name : '$' . $subNode->name;
-                }
-            } elseif ($subNode instanceof FuncCall) {
-                if ($subNode->name instanceof Node\Name) {
-                    $functionName = $subNode->name->toLowerString();
-                    if (in_array($functionName, self::UNTRUSTED_FUNCTIONS, true)) {
-                        $foundSources[] = $functionName . '(...)';
-                    }
-                }
-            } elseif ($subNode instanceof ArrayDimFetch) {
-                // Extract the base variable from array access
-                $current = $subNode;
-                while ($current instanceof ArrayDimFetch) {
-                    $current = $current->var;
-                }
-                if ($current instanceof Variable) {
-                    $varName = $current->name instanceof Node\VarLikeIdentifier ? $current->name->name : (string) $current->name;
-                    if (in_array($varName, self::UNTRUSTED_VARS, true)) {
-                        $foundSources[] = $current->name instanceof Node\VarLikeIdentifier ? '$' . $current->name->name : '$' . $current->name;
-                    }
-                }
+        $untrustedSources = [];
+        foreach ($sources as $source) {
+            if (in_array(ltrim($source, '$'), self::UNTRUSTED_VARS, true)
+                || in_array(substr($source, 0, -5), self::UNTRUSTED_FUNCTIONS, true)) {
+                $untrustedSources[] = $source;
             }
         }
 
-        return array_unique($foundSources);
+        return $untrustedSources;
     }
 }
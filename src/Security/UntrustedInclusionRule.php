@@ -3,7 +3,11 @@
 namespace macropage\PHPStan\Inspections\Security;
 
 use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\FuncCall;
 use PhpParser\Node\Expr\Include_;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\StaticCall;
 use PhpParser\Node\Scalar\String_;
 use PHPStan\Analyser\Scope;
 use PHPStan\Rules\Rule;
@@ -17,47 +21,72 @@ use PHPStan\Rules\RuleErrorBuilder;
  * environment setting that can vary between deployments.
  *
  * The rule flags:
- * - Relative paths in include/require statements (e.g., 'file.php', 'subdir/file.php')
+ * - Relative paths in include/require statements (e.g., 'file.php', 'subdir/file.php'), given as
+ *   literals or as variables holding known string values
  * - Paths that don't start with '/' or drive letters (e.g., 'C:', 'D:')
+ * - Paths built from request data ($_GET, $_POST, $_COOKIE, request headers, ...), tracked through
+ *   local variables and resolvable calls by TaintSummaries, and calls passing request data to
+ *   functions which include it
  *
  * Recommended solutions:
  * - Use absolute paths with __DIR__: require_once __DIR__ . '/file.php'
  * - Use composer autoloading and namespaces instead of include/require
  * - Define APPLICATION_ROOT constant: require_once APPLICATION_ROOT . '/file.php'
  *
- * @implements Rule<Include_>
+ * @implements Rule<Expr>
  */
 class UntrustedInclusionRule implements Rule
 {
     private const string MESSAGE = 'This relies on include_path and not guaranteed to load the right file. Concatenate with __DIR__ or use namespaces + class loading instead.';
+    private const string MESSAGE_TAINTED = 'The included path can be controlled via: %s. Never include files named by request data, map it to a whitelist of paths instead.';
+    private const string TIP_CHAIN = 'The data reaches the inclusion via %s.';
     private const string ABSOLUTE_PATH_PATTERN = '/^\/|[a-z]:/i';
 
+    private const array REQUEST_SOURCES = ['$_GET', '$_POST', '$_REQUEST', '$_FILES', '$_COOKIE'];
+    private const array REQUEST_SERVER_ATTRIBUTES = ['REQUEST_URI', 'QUERY_STRING', 'PATH_INFO', 'PHP_SELF'];
+
+    public function __construct(
+        private readonly TaintSummaries $taintSummaries,
+    ) {}
+
     public function getNodeType(): string
     {
-        return Include_::class;
+        return Expr::class;
     }
 
     public function processNode(Node $node, Scope $scope): array
     {
-        if (!$node instanceof Include_) {
-            return [];
+        if ($node instanceof FuncCall || $node instanceof MethodCall || $node instanceof StaticCall) {
+            return $this->checkSinkFlow($node, $scope);
         }
 
-        // Check if the argument is a string literal
-        if (!$node->expr instanceof String_) {
+        if (!$node instanceof Include_) {
             return [];
         }
 
-        $path = $node->expr->value;
+        $requestSources = $this->filterRequestSources($this->taintSummaries->getSources($node->expr, $scope));
+        if ($requestSources !== []) {
+            return [
+                RuleErrorBuilder::message(sprintf(self::MESSAGE_TAINTED, implode(', ', $requestSources)))
+                    ->identifier('include.tainted')
+                    ->line($node->getStartLine())
+                    ->build(),
+            ];
+        }
 
-        // Skip empty paths
-        if ($path === '') {
+        // Check string literals and variables holding known string values
+        $paths = $node->expr instanceof String_
+            ? [$node->expr->value]
+            : array_map(static fn ($type): string => $type->getValue(), $scope->getType($node->expr)->getConstantStrings());
+        if ($paths === []) {
             return [];
         }
 
-        // Check if path matches absolute path pattern (starts with / or drive letter)
-        if (preg_match(self::ABSOLUTE_PATH_PATTERN, $path) === 1) {
-            return [];
+        foreach ($paths as $path) {
+            // Skip empty paths and paths matching the absolute path pattern (starts with / or drive letter)
+            if ($path === '' || preg_match(self::ABSOLUTE_PATH_PATTERN, $path) === 1) {
+                return [];
+            }
         }
 
         // Report the violation
@@ -68,4 +97,42 @@ class UntrustedInclusionRule implements Rule
                 ->build(),
         ];
     }
-}
\ No newline at end of file
+
+    /**
+     * Reports calls passing request data into functions which include it.
+     */
+    private function checkSinkFlow(FuncCall|MethodCall|StaticCall $call, Scope $scope): array
+    {
+        $flow = $this->taintSummaries->getSinkFlow($call, $scope, TaintSummaries::SINK_INCLUDE);
+        $requestSources = $flow === null ? [] : $this->filterRequestSources($flow['sources']);
+        if ($requestSources === []) {
+            return [];
+        }
+
+        return [
+            RuleErrorBuilder::message(sprintf(self::MESSAGE_TAINTED, implode(', ', $requestSources)))
+                ->identifier('include.tainted')
+                ->line($call->getStartLine())
+                ->tip(sprintf(self::TIP_CHAIN, implode(' -> ', $flow['chain'])))
+                ->build(),
+        ];
+    }
+
+    /**
+     * @param list<string> $sources
+     * @return list<string>
+     */
+    private function filterRequestSources(array $sources): array
+    {
+        return array_values(array_filter($sources, static function (string $source): bool {
+            if (in_array($source, self::REQUEST_SOURCES, true)) {
+                return true;
+            }
+            if (!str_starts_with($source, "\$_SERVER['")) {
+                return false;
+            }
+            $attribute = substr($source, 10, -2);
+            return str_starts_with($attribute, 'HTTP_') || in_array($attribute, self::REQUEST_SERVER_ATTRIBUTES, true);
+        }));
+    }
+}
@@ -59,7 +59,7 @@ final class AutoloadingIssuesRule implements Rule
 
         // Check if file should be ignored
         $fileName = basename($filePath);
-        if ($this->shouldIgnoreFile($fileName)) {
+        if (self::shouldIgnoreFile($fileName)) {
             return [];
         }
 
@@ -91,7 +91,7 @@ final class AutoloadingIssuesRule implements Rule
 
         // Check if it matches PSR-0/PSR-4 or WordPress standard
         if ($this->isBreakingPsrStandard($className, $expectedClassName, $extractedClassName)
-            && !$this->isWordpressStandard($className, $fileName)) {
+            && !self::isWordpressStandard($className, $fileName)) {
             return [
                 RuleErrorBuilder::message(self::MESSAGE)
                     ->identifier('autoloading.classNameMismatch')
@@ -103,7 +103,10 @@ final class AutoloadingIssuesRule implements Rule
         return [];
     }
 
-    private function shouldIgnoreFile(string $fileName): bool
+    /**
+     * Files loaded by convention instead of autoloading, shared with ComposerAutoloadMapRule.
+     */
+    public static function shouldIgnoreFile(string $fileName): bool
     {
         // Check ignored files list
         if (in_array($fileName, self::$ignoredFiles, true)) {
@@ -148,7 +151,7 @@ final class AutoloadingIssuesRule implements Rule
         return $expectedClassName !== $extractedClassName && $expectedClassName !== $className;
     }
 
-    private function isWordpressStandard(string $className, string $fileName): bool
+    public static function isWordpressStandard(string $className, string $fileName): bool
     {
         $wordpressFileName = sprintf('class-%s.php', str_replace('_', '-', strtolower($className)));
         return $fileName === $wordpressFileName;
@@ -0,0 +1,33 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Classes;
+
+use PhpParser\Node;
+use PhpParser\Node\Stmt\ClassLike;
+use PHPStan\Analyser\Scope;
+use PHPStan\Collectors\Collector;
+
+/**
+ * Collects named class-like declarations (classes, interfaces, traits, enums) per analysed file.
+ *
+ * Collection runs in PHPStan's parallel workers, the collected data is then consumed
+ * by project-wide rules such as ComposerAutoloadMapRule.
+ *
+ * @implements Collector<ClassLike, array{string, int}>
+ */
+final class ClassDeclarationCollector implements Collector
+{
+    public function getNodeType(): string
+    {
+        return ClassLike::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): ?array
+    {
+        if (!$node instanceof ClassLike || $node->name === null || !isset($node->namespacedName)) {
+            return null;
+        }
+
+        return [$node->namespacedName->toString(), $node->getStartLine()];
+    }
+}
@@ -17,10 +17,18 @@ use PHPStan\Reflection\PropertyReflection;
  * which can lead to confusion and maintenance issues. It considers access level changes and
  * provides appropriate warnings based on visibility rules.
  *
+ * When a private parent field is re-defined, the methods of the class (including trait methods)
+ * touching the re-defined field are looked up in the FieldAccessIndex and listed as a tip,
+ * since those accesses never reach the parent's field.
+ *
  * @implements \PHPStan\Rules\Rule<\PhpParser\Node\Stmt\Property>
  */
 final class ClassOverridesFieldOfSuperClassRule implements Rule
 {
+    public function __construct(
+        private readonly FieldAccessIndex $fieldAccessIndex,
+    ) {}
+
     public function getNodeType(): string
     {
         return Property::class;
@@ -64,9 +72,16 @@ final class ClassOverridesFieldOfSuperClassRule implements Rule
                     
                     // The Java inspector has an option REPORT_PRIVATE_REDEFINITION, which is true by default.
                     // We will always report this as a weak warning, matching the default behavior.
-                    $errors[] = RuleErrorBuilder::message(
+                    $errorBuilder = RuleErrorBuilder::message(
                         'Likely needs to be renamed in sake of maintainability (private property with the same name already defined in ' . $parentClassReflection->getDisplayName() . ').'
-                    )->identifier('class.overridesPrivateField')->line($node->getStartLine())->build();
+                    )->identifier('class.overridesPrivateField')->line($node->getStartLine());
+
+                    $accessingMethods = $this->fieldAccessIndex->forClass($classReflection)->getAccessingMethods($propertyName);
+                    if ($accessingMethods !== []) {
+                        $errorBuilder->tip('Accessed in ' . implode('(), ', $accessingMethods) . '(), which never see the parent\'s field.');
+                    }
+
+                    $errors[] = $errorBuilder->build();
                     // The Java inspector returns after reporting private redefinition, so we do the same.
                     return $errors;
                 }
@@ -0,0 +1,374 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Classes;
+
+/**
+ * Autoload configuration of a composer.json (`autoload` and `autoload-dev` sections).
+ *
+ * PSR-4 and PSR-0 roots are stored in a prefix trie over namespace segments, so finding the
+ * roots responsible for a class is a walk over its namespace, independent of the number of roots.
+ * PSR-0 prefixes which do not end at a namespace boundary (e.g. `Twig_`) are kept aside and
+ * matched with a plain prefix comparison. Root, `classmap` and `files` paths are indexed by
+ * directory, so finding the entries containing a file is a walk over its parent directories.
+ *
+ * Maps are parsed once per composer.json and shared for the whole analysis run.
+ */
+final class ComposerAutoloadMap
+{
+    public const string PSR4 = 'psr-4';
+    public const string PSR0 = 'psr-0';
+
+    /** @var array<string, self|null> composer.json path => parsed map (null when unreadable) */
+    private static array $maps = [];
+
+    /** @var array<string, string|null> directory => nearest composer.json path */
+    private static array $composerJsonLocations = [];
+
+    /**
+     * Trie node: ['children' => array<string, node>, 'roots' => list<array{type: string, prefix: string, dir: string}>]
+     *
+     * @var array{children: array<string, mixed>, roots: list<array{type: string, prefix: string, dir: string}>}
+     */
+    private array $namespaceTrie = ['children' => [], 'roots' => []];
+
+    /** @var list<array{type: string, prefix: string, dir: string}> PSR-0 roots with prefixes not ending in a namespace separator */
+    private array $partialPrefixRoots = [];
+
+    /** @var array<string, list<array{type: string, prefix: string, dir: string}>> root directory => roots */
+    private array $rootsByDirectory = [];
+
+    /** @var array<string, true> files and directories listed in `classmap` */
+    private array $classmapPaths = [];
+
+    /** @var array<string, true> files listed in `files`, included on every request */
+    private array $includedFiles = [];
+
+    /** @var list<string> regular expressions built from `exclude-from-classmap` */
+    private array $excludePatterns = [];
+
+    private function __construct(
+        private readonly string $baseDirectory,
+    ) {}
+
+    /**
+     * Returns the autoload map of the composer.json closest to the given file, null if there is none.
+     */
+    public static function forFile(string $filePath): ?self
+    {
+        $composerJsonPath = self::locateComposerJson(dirname($filePath));
+
+        return $composerJsonPath === null ? null : self::fromComposerJson($composerJsonPath);
+    }
+
+    public static function fromComposerJson(string $composerJsonPath): ?self
+    {
+        if (array_key_exists($composerJsonPath, self::$maps)) {
+            return self::$maps[$composerJsonPath];
+        }
+
+        $map = null;
+        $content = @file_get_contents($composerJsonPath);
+        if ($content !== false) {
+            try {
+                $data = json_decode($content, true, 512, JSON_THROW_ON_ERROR);
+                if (is_array($data)) {
+                    $baseDirectory = realpath(dirname($composerJsonPath));
+                    $map = new self(rtrim(str_replace('\\', '/', $baseDirectory === false ? dirname($composerJsonPath) : $baseDirectory), '/'));
+                    foreach (['autoload', 'autoload-dev'] as $section) {
+                        if (isset($data[$section]) && is_array($data[$section])) {
+                            $map->addSection($data[$section]);
+                        }
+                    }
+                }
+            } catch (\JsonException) {
+                $map = null;
+            }
+        }
+
+        return self::$maps[$composerJsonPath] = $map;
+    }
+
+    public function getBaseDirectory(): string
+    {
+        return $this->baseDirectory;
+    }
+
+    public function hasRoots(): bool
+    {
+        return $this->rootsByDirectory !== [] || $this->classmapPaths !== [] || $this->includedFiles !== [];
+    }
+
+    /**
+     * Roots whose prefix matches the class name, the most specific prefix first.
+     *
+     * @return list<array{type: string, prefix: string, dir: string}>
+     */
+    public function findRootsForClass(string $className): array
+    {
+        $matches = [];
+        $node = $this->namespaceTrie;
+        $matches[] = $node['roots'];
+
+        $segments = explode('\\', $className);
+        array_pop($segments);
+        foreach ($segments as $segment) {
+            if (!isset($node['children'][$segment])) {
+                break;
+            }
+            $node = $node['children'][$segment];
+            $matches[] = $node['roots'];
+        }
+
+        $roots = array_merge(...array_reverse($matches));
+        foreach ($this->partialPrefixRoots as $root) {
+            if (str_starts_with($className, $root['prefix'])) {
+                $roots[] = $root;
+            }
+        }
+
+        return $roots;
+    }
+
+    /**
+     * Class name Composer would expect in the given file for the given root, null when the file is outside of the root.
+     *
+     * @param array{type: string, prefix: string, dir: string} $root
+     */
+    public function getExpectedClassName(array $root, string $filePath): ?string
+    {
+        $relativePath = $this->getRelativePath($root['dir'], $filePath);
+        if ($relativePath === null || !str_ends_with($relativePath, '.php')) {
+            return null;
+        }
+
+        $classPath = str_replace('/', '\\', substr($relativePath, 0, -4));
+
+        return $root['type'] === self::PSR4 ? $root['prefix'] . $classPath : $classPath;
+    }
+
+    /**
+     * Checks whether scanning the root would register the class in the given file.
+     *
+     * @param array{type: string, prefix: string, dir: string} $root
+     */
+    public function isLoadableFrom(array $root, string $className, string $filePath): bool
+    {
+        if ($root['type'] === self::PSR4) {
+            return $this->getExpectedClassName($root, $filePath) === $className;
+        }
+
+        $expectedPath = $this->getExpectedPath($root, $className);
+
+        return $expectedPath !== null && $expectedPath === $this->normalizePath($filePath);
+    }
+
+    /**
+     * File the class is expected in according to the given root.
+     *
+     * @param array{type: string, prefix: string, dir: string} $root
+     */
+    public function getExpectedPath(array $root, string $className): ?string
+    {
+        if ($root['type'] === self::PSR4) {
+            if (!str_starts_with($className, $root['prefix'])) {
+                return null;
+            }
+            $relativeClass = substr($className, strlen($root['prefix']));
+
+            return $root['dir'] . '/' . str_replace('\\', '/', $relativeClass) . '.php';
+        }
+
+        // PSR-0: namespace separators and underscores of the class name part map to directories
+        $separatorPosition = strrpos($className, '\\');
+        if ($separatorPosition === false) {
+            $path = str_replace('_', '/', $className);
+        } else {
+            $path = str_replace('\\', '/', substr($className, 0, $separatorPosition + 1))
+                . str_replace('_', '/', substr($className, $separatorPosition + 1));
+        }
+
+        return $root['dir'] . '/' . $path . '.php';
+    }
+
+    /**
+     * @return list<array{type: string, prefix: string, dir: string}>
+     */
+    public function findRootsContainingFile(string $filePath): array
+    {
+        $roots = [];
+        $directory = $this->normalizePath($filePath);
+        while (($parent = dirname($directory)) !== $directory) {
+            $directory = $parent;
+            foreach ($this->rootsByDirectory[$directory] ?? [] as $root) {
+                $roots[] = $root;
+            }
+        }
+
+        return $roots;
+    }
+
+    public function isInClassmap(string $filePath): bool
+    {
+        $path = $this->normalizePath($filePath);
+        while (!isset($this->classmapPaths[$path])) {
+            if (($parent = dirname($path)) === $path) {
+                return false;
+            }
+            $path = $parent;
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether the file is listed in `files`, its classes are declared on every request without autoloading.
+     */
+    public function isIncludedFile(string $filePath): bool
+    {
+        return isset($this->includedFiles[$this->normalizePath($filePath)]);
+    }
+
+    public function isExcludedFromClassmap(string $filePath): bool
+    {
+        $filePath = $this->normalizePath($filePath);
+        foreach ($this->excludePatterns as $pattern) {
+            if (preg_match($pattern, $filePath) === 1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public function getRelativePath(string $directory, string $filePath): ?string
+    {
+        $filePath = $this->normalizePath($filePath);
+        if (!str_starts_with($filePath, $directory . '/')) {
+            return null;
+        }
+
+        return substr($filePath, strlen($directory) + 1);
+    }
+
+    /**
+     * @param array<mixed> $section
+     */
+    private function addSection(array $section): void
+    {
+        foreach ([self::PSR4, self::PSR0] as $type) {
+            if (!isset($section[$type]) || !is_array($section[$type])) {
+                continue;
+            }
+            foreach ($section[$type] as $prefix => $directories) {
+                foreach ((array) $directories as $directory) {
+                    if (is_string($directory)) {
+                        $this->addRoot($type, (string) $prefix, $this->resolvePath($directory));
+                    }
+                }
+            }
+        }
+
+        foreach (['classmap' => 'classmapPaths', 'files' => 'includedFiles'] as $key => $index) {
+            if (isset($section[$key]) && is_array($section[$key])) {
+                foreach ($section[$key] as $path) {
+                    if (is_string($path)) {
+                        $this->{$index}[$this->resolvePath($path)] = true;
+                    }
+                }
+            }
+        }
+
+        if (isset($section['exclude-from-classmap'])) {
+            foreach ((array) $section['exclude-from-classmap'] as $pattern) {
+                if (is_string($pattern)) {
+                    $this->excludePatterns[] = $this->buildExcludePattern($pattern);
+                }
+            }
+        }
+    }
+
+    private function addRoot(string $type, string $prefix, string $directory): void
+    {
+        $root = ['type' => $type, 'prefix' => $prefix, 'dir' => $directory];
+        $this->rootsByDirectory[$directory][] = $root;
+
+        if ($prefix !== '' && !str_ends_with($prefix, '\\')) {
+            $this->partialPrefixRoots[] = $root;
+            return;
+        }
+
+        $node = &$this->namespaceTrie;
+        foreach (explode('\\', rtrim($prefix, '\\')) as $segment) {
+            if ($segment === '') {
+                continue;
+            }
+            $node['children'][$segment] ??= ['children' => [], 'roots' => []];
+            $node = &$node['children'][$segment];
+        }
+        $node['roots'][] = $root;
+        unset($node);
+    }
+
+    /**
+     * Mirrors Composer's handling: paths are relative to the package, `**` spans directories, `*` does not.
+     */
+    private function buildExcludePattern(string $pattern): string
+    {
+        $path = $this->resolvePath($pattern);
+        $regex = preg_quote($path, '{');
+        $regex = str_replace(['\\*\\*', '\\*'], ['.+?', '[^/]+?'], $regex);
+
+        return '{^' . $regex . '($|/)}';
+    }
+
+    private function resolvePath(string $path): string
+    {
+        $path = trim(str_replace('\\', '/', $path));
+        $absolute = str_starts_with($path, '/') ? $path : $this->baseDirectory . '/' . $path;
+        $real = str_contains($absolute, '*') ? false : realpath($absolute);
+
+        return $this->normalizePath($real === false ? $absolute : $real);
+    }
+
+    private function normalizePath(string $path): string
+    {
+        $path = str_replace('\\', '/', $path);
+        $path = preg_replace('{/(\./)+}', '/', $path) ?? $path;
+
+        return rtrim($path, '/');
+    }
+
+    /**
+     * Path of the composer.json in the directory or its closest parent, lookups are shared for the whole analysis run.
+     */
+    public static function locateComposerJson(string $directory): ?string
+    {
+        $visited = [];
+        $result = null;
+
+        while ($directory !== '' && $directory !== '.') {
+            if (array_key_exists($directory, self::$composerJsonLocations)) {
+                $result = self::$composerJsonLocations[$directory];
+                break;
+            }
+            $visited[] = $directory;
+
+            if (is_file($directory . '/composer.json')) {
+                $result = $directory . '/composer.json';
+                break;
+            }
+
+            $parent = dirname($directory);
+            if ($parent === $directory) {
+                break;
+            }
+            $directory = $parent;
+        }
+
+        foreach ($visited as $visitedDirectory) {
+            self::$composerJsonLocations[$visitedDirectory] = $result;
+        }
+
+        return $result;
+    }
+}
@@ -0,0 +1,156 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Classes;
+
+use PhpParser\Node;
+use PHPStan\Analyser\Scope;
+use PHPStan\Node\CollectedDataNode;
+use PHPStan\Rules\Rule;
+use PHPStan\Rules\RuleErrorBuilder;
+
+/**
+ * Verifies all analysed class declarations against the composer.json autoload configuration.
+ *
+ * Unlike AutoloadingIssuesRule, which only compares a file name with its single class name,
+ * this rule checks namespaces and paths against the `psr-4`, `psr-0`, `classmap` and
+ * `exclude-from-classmap` entries of `autoload` and `autoload-dev`. It reports:
+ * - classes located outside the path their PSR-4/PSR-0 root expects them in
+ * - classes not covered by any autoload root, which a `--classmap-authoritative` dump misses
+ * - classes excluded from the classmap, which an authoritative dump misses as well
+ * - classes declared in several autoloadable files (ambiguous class resolution)
+ *
+ * Classes in `files` entries are always loaded and not verified. Like AutoloadingIssuesRule, the
+ * rule skips files loaded by convention (index.php, Laravel migrations, WordPress class-*.php).
+ *
+ * Declarations are gathered by ClassDeclarationCollector in the parallel workers, composer.json
+ * is parsed once per project and the verification runs once over the collected data.
+ * Files inside vendor/ directories are not verified. The check is opt-in through the
+ * composerAutoloadMapCheck parameter, which registers the collector and this rule.
+ *
+ * @implements Rule<CollectedDataNode>
+ */
+final class ComposerAutoloadMapRule implements Rule
+{
+    public function getNodeType(): string
+    {
+        return CollectedDataNode::class;
+    }
+
+    public function processNode(Node $node, Scope $scope): array
+    {
+        if (!$node instanceof CollectedDataNode) {
+            return [];
+        }
+
+        $errors = [];
+        /** @var array<string, list<array{string, int}>> $loadableDeclarations class name => [file, line] */
+        $loadableDeclarations = [];
+
+        foreach ($node->get(ClassDeclarationCollector::class) as $filePath => $declarations) {
+            if (str_contains(str_replace('\\', '/', $filePath), '/vendor/')) {
+                continue;
+            }
+
+            $autoloadMap = ComposerAutoloadMap::forFile($filePath);
+            if ($autoloadMap === null || !$autoloadMap->hasRoots()) {
+                continue;
+            }
+
+            if ($autoloadMap->isIncludedFile($filePath) || AutoloadingIssuesRule::shouldIgnoreFile(basename($filePath))) {
+                continue;
+            }
+
+            $containingRoots = $autoloadMap->findRootsContainingFile($filePath);
+            $isInClassmap    = $autoloadMap->isInClassmap($filePath);
+            $isExcluded      = $autoloadMap->isExcludedFromClassmap($filePath);
+
+            foreach ($declarations as [$className, $line]) {
+                $isCovered = $isInClassmap;
+                foreach ($containingRoots as $root) {
+                    if ($autoloadMap->isLoadableFrom($root, $className, $filePath)) {
+                        $isCovered = true;
+                        break;
+                    }
+                }
+
+                if ($isCovered && !$isExcluded) {
+                    $loadableDeclarations[strtolower($className)][] = [$filePath, $line];
+                    continue;
+                }
+
+                $shortName = substr($className, (int) strrpos('\\' . $className, '\\'));
+                if (!$isCovered && AutoloadingIssuesRule::isWordpressStandard($shortName, basename($filePath))) {
+                    continue;
+                }
+
+                if ($isCovered) {
+                    $errors[] = RuleErrorBuilder::message(sprintf(
+                        'Class %s is excluded from the classmap via exclude-from-classmap, an authoritative classmap will not contain it.',
+                        $className
+                    ))
+                        ->identifier('autoloading.excludedFromClassmap')
+                        ->file($filePath)
+                        ->line($line)
+                        ->build();
+                    continue;
+                }
+
+                $rootsForClass = $autoloadMap->findRootsForClass($className);
+                $expectedPath  = $rootsForClass === [] ? null : $autoloadMap->getExpectedPath($rootsForClass[0], $className);
+                if ($expectedPath !== null) {
+                    $errors[] = RuleErrorBuilder::message(sprintf(
+                        'Class autoloading is broken: %s is expected in %s according to the %s root "%s", an authoritative classmap will not contain it.',
+                        $className,
+                        $this->presentPath($autoloadMap, $expectedPath),
+                        strtoupper($rootsForClass[0]['type']),
+                        $rootsForClass[0]['prefix']
+                    ))
+                        ->identifier('autoloading.misplacedClass')
+                        ->file($filePath)
+                        ->line($line)
+                        ->build();
+                    continue;
+                }
+
+                $errors[] = RuleErrorBuilder::message(sprintf(
+                    'Class %s is not covered by any autoload root in composer.json, an authoritative classmap will not contain it.',
+                    $className
+                ))
+                    ->identifier('autoloading.notInClassmap')
+                    ->file($filePath)
+                    ->line($line)
+                    ->build();
+            }
+        }
+
+        foreach ($loadableDeclarations as $locations) {
+            $files = array_values(array_unique(array_column($locations, 0)));
+            if (count($files) < 2) {
+                continue;
+            }
+
+            foreach ($locations as [$filePath, $line]) {
+                $otherFiles = array_diff($files, [$filePath]);
+                $autoloadMap = ComposerAutoloadMap::forFile($filePath);
+                $errors[] = RuleErrorBuilder::message(sprintf(
+                    'Ambiguous class resolution: the class is also declared in %s, the classmap will only contain one of the declarations.',
+                    implode(', ', array_map(
+                        fn (string $otherFile): string => $autoloadMap === null ? $otherFile : $this->presentPath($autoloadMap, $otherFile),
+                        $otherFiles
+                    ))
+                ))
+                    ->identifier('autoloading.ambiguousClass')
+                    ->file($filePath)
+                    ->line($line)
+                    ->build();
+            }
+        }
+
+        return $errors;
+    }
+
+    private function presentPath(ComposerAutoloadMap $autoloadMap, string $path): string
+    {
+        return $autoloadMap->getRelativePath($autoloadMap->getBaseDirectory(), $path) ?? $path;
+    }
+}
@@ -0,0 +1,225 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Classes;
+
+use PhpParser\Node;
+use PhpParser\Node\Expr\ArrayDimFetch;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\AssignOp;
+use PhpParser\Node\Expr\AssignRef;
+use PhpParser\Node\Expr\List_;
+use PhpParser\Node\Expr\PostDec;
+use PhpParser\Node\Expr\PostInc;
+use PhpParser\Node\Expr\PreDec;
+use PhpParser\Node\Expr\PreInc;
+use PhpParser\Node\Expr\PropertyFetch;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Stmt\ClassLike;
+use PhpParser\Node\Stmt\ClassMethod;
+use PhpParser\NodeFinder;
+use PhpParser\NodeTraverser;
+use PhpParser\NodeVisitorAbstract;
+use PHPStan\Parser\Parser;
+use PHPStan\Parser\ParserErrorsException;
+use PHPStan\Reflection\ClassReflection;
+
+/**
+ * Per-class index of `$this->field` reads and writes, shared by the class-level inspections.
+ *
+ * The index covers the class' own methods and the methods of all used traits (recursively).
+ * It is built once per class and shared for the whole analysis run.
+ *
+ * Accesses inside closures and arrow functions count for the enclosing method, accesses inside
+ * nested anonymous classes are ignored as `$this` refers to the anonymous class there.
+ */
+final class FieldAccessIndex
+{
+    /** @var array<string, FieldAccessMap> */
+    private array $cache = [];
+
+    public function __construct(
+        private readonly Parser $parser,
+    ) {}
+
+    /**
+     * Returns the field access map of the given class. The class declaration node may be passed
+     * when the caller already has it, otherwise it is located in the (cached) AST of its file.
+     */
+    public function forClass(ClassReflection $classReflection, ?ClassLike $classNode = null): FieldAccessMap
+    {
+        $cacheKey = strtolower($classReflection->getName());
+        if (isset($this->cache[$cacheKey])) {
+            return $this->cache[$cacheKey];
+        }
+
+        $reads  = [];
+        $writes = [];
+
+        $classNode ??= $this->findClassNode($classReflection);
+        if ($classNode !== null) {
+            $this->collectFromClassLike($classNode, $reads, $writes);
+        }
+
+        foreach ($this->collectTraits($classReflection) as $traitReflection) {
+            $traitNode = $this->findClassNode($traitReflection);
+            if ($traitNode !== null) {
+                $this->collectFromClassLike($traitNode, $reads, $writes);
+            }
+        }
+
+        return $this->cache[$cacheKey] = new FieldAccessMap($reads, $writes);
+    }
+
+    /**
+     * Directly and transitively used traits of the class (traits of parent classes are not included,
+     * their methods belong to the parent's index).
+     *
+     * @return array<string, ClassReflection>
+     */
+    private function collectTraits(ClassReflection $classReflection): array
+    {
+        $traits = [];
+        $queue  = array_values($classReflection->getTraits());
+        while ($queue !== []) {
+            $traitReflection = array_shift($queue);
+            $traitKey        = strtolower($traitReflection->getName());
+            if (isset($traits[$traitKey])) {
+                continue;
+            }
+            $traits[$traitKey] = $traitReflection;
+            foreach ($traitReflection->getTraits() as $nestedTrait) {
+                $queue[] = $nestedTrait;
+            }
+        }
+
+        return $traits;
+    }
+
+    /**
+     * @param array<string, array<string, int>> $reads
+     * @param array<string, array<string, int>> $writes
+     */
+    private function collectFromClassLike(ClassLike $classLike, array &$reads, array &$writes): void
+    {
+        foreach ($classLike->getMethods() as $method) {
+            if ($method->stmts === null) {
+                continue;
+            }
+            $this->collectFromMethod($method, $reads, $writes);
+        }
+    }
+
+    /**
+     * @param array<string, array<string, int>> $reads
+     * @param array<string, array<string, int>> $writes
+     */
+    private function collectFromMethod(ClassMethod $method, array &$reads, array &$writes): void
+    {
+        $visitor = new class extends NodeVisitorAbstract {
+            /** @var array<string, int> */
+            public array $reads = [];
+            /** @var array<string, int> */
+            public array $writes = [];
+            /** @var array<int, bool> object id => true when the write also reads the field (compound ops) */
+            private array $writeTargets = [];
+
+            public function enterNode(Node $node)
+            {
+                // `$this` inside nested classes does not refer to the indexed class
+                if ($node instanceof ClassLike) {
+                    return NodeTraverser::DONT_TRAVERSE_CHILDREN;
+                }
+
+                if ($node instanceof Assign || $node instanceof AssignRef) {
+                    $this->markWriteTarget($node->var, false);
+                } elseif ($node instanceof AssignOp) {
+                    $this->markWriteTarget($node->var, true);
+                } elseif ($node instanceof PreInc || $node instanceof PreDec || $node instanceof PostInc || $node instanceof PostDec) {
+                    $this->markWriteTarget($node->var, true);
+                } elseif ($node instanceof PropertyFetch) {
+                    $fieldName = $this->getFieldName($node);
+                    if ($fieldName !== null) {
+                        $id = spl_object_id($node);
+                        if (isset($this->writeTargets[$id])) {
+                            $this->writes[$fieldName] = ($this->writes[$fieldName] ?? 0) + 1;
+                            if ($this->writeTargets[$id]) {
+                                $this->reads[$fieldName] = ($this->reads[$fieldName] ?? 0) + 1;
+                            }
+                        } else {
+                            $this->reads[$fieldName] = ($this->reads[$fieldName] ?? 0) + 1;
+                        }
+                    }
+                }
+
+                return null;
+            }
+
+            private function markWriteTarget(Node $target, bool $alsoReads): void
+            {
+                // `$this->field[...] = ...` modifies the field itself
+                while ($target instanceof ArrayDimFetch) {
+                    $target = $target->var;
+                }
+
+                if ($target instanceof List_ || $target instanceof Node\Expr\Array_) {
+                    foreach ($target->items as $item) {
+                        if ($item !== null) {
+                            $this->markWriteTarget($item->value, $alsoReads);
+                        }
+                    }
+                    return;
+                }
+
+                if ($target instanceof PropertyFetch) {
+                    $this->writeTargets[spl_object_id($target)] = $alsoReads;
+                }
+            }
+
+            private function getFieldName(PropertyFetch $fetch): ?string
+            {
+                if ($fetch->var instanceof Variable &&
+                    $fetch->var->name === 'this' &&
+                    $fetch->name instanceof Identifier) {
+                    return $fetch->name->toString();
+                }
+                return null;
+            }
+        };
+
+        $traverser = new NodeTraverser();
+        $traverser->addVisitor($visitor);
+        $traverser->traverse($method->stmts ?? []);
+
+        $methodName = $method->name->toString();
+        foreach ($visitor->reads as $fieldName => $count) {
+            $reads[$fieldName][$methodName] = ($reads[$fieldName][$methodName] ?? 0) + $count;
+        }
+        foreach ($visitor->writes as $fieldName => $count) {
+            $writes[$fieldName][$methodName] = ($writes[$fieldName][$methodName] ?? 0) + $count;
+        }
+    }
+
+    private function findClassNode(ClassReflection $classReflection): ?ClassLike
+    {
+        $fileName = $classReflection->getFileName();
+        if ($fileName === null) {
+            return null;
+        }
+
+        try {
+            $stmts = $this->parser->parseFile($fileName);
+        } catch (ParserErrorsException) {
+            return null;
+        }
+
+        $className = $classReflection->getName();
+        $found = (new NodeFinder())->findFirst($stmts, static function (Node $node) use ($className): bool {
+            return $node instanceof ClassLike
+                && isset($node->namespacedName)
+                && strcasecmp($node->namespacedName->toString(), $className) === 0;
+        });
+
+        return $found instanceof ClassLike ? $found : null;
+    }
+}
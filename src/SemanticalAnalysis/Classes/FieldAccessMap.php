@@ -0,0 +1,91 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Classes;
+
+/**
+ * Immutable per-class summary of `$this->field` accesses.
+ *
+ * For every field name it records the methods reading and writing the field,
+ * together with the number of accesses per method. Methods imported from traits
+ * are recorded under their own names, as they are part of the using class.
+ *
+ * All lookups are plain array key checks, so querying the map is O(1) per field.
+ */
+final class FieldAccessMap
+{
+    /**
+     * @param array<string, array<string, int>> $reads  field name => method name => read count
+     * @param array<string, array<string, int>> $writes field name => method name => write count
+     */
+    public function __construct(
+        private readonly array $reads,
+        private readonly array $writes,
+    ) {}
+
+    public function hasAccess(string $fieldName): bool
+    {
+        return isset($this->reads[$fieldName]) || isset($this->writes[$fieldName]);
+    }
+
+    public function isRead(string $fieldName): bool
+    {
+        return isset($this->reads[$fieldName]);
+    }
+
+    public function isWritten(string $fieldName): bool
+    {
+        return isset($this->writes[$fieldName]);
+    }
+
+    public function getReadCount(string $fieldName): int
+    {
+        return array_sum($this->reads[$fieldName] ?? []);
+    }
+
+    public function getWriteCount(string $fieldName): int
+    {
+        return array_sum($this->writes[$fieldName] ?? []);
+    }
+
+    /**
+     * @return list<string>
+     */
+    public function getReadingMethods(string $fieldName): array
+    {
+        return array_map('strval', array_keys($this->reads[$fieldName] ?? []));
+    }
+
+    /**
+     * @return list<string>
+     */
+    public function getWritingMethods(string $fieldName): array
+    {
+        return array_map('strval', array_keys($this->writes[$fieldName] ?? []));
+    }
+
+    /**
+     * @return list<string>
+     */
+    public function getAccessingMethods(string $fieldName): array
+    {
+        return array_values(array_unique(array_merge(
+            $this->getReadingMethods($fieldName),
+            $this->getWritingMethods($fieldName)
+        )));
+    }
+
+    /**
+     * Checks whether the field is read or written in any method other than the given one
+     * (method names are compared case-insensitively, as PHP does).
+     */
+    public function isAccessedOutside(string $fieldName, string $methodName): bool
+    {
+        foreach ($this->getAccessingMethods($fieldName) as $accessingMethod) {
+            if (strcasecmp($accessingMethod, $methodName) !== 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -20,6 +20,8 @@ use PHPStan\Rules\RuleErrorBuilder;
  * - Are non-constant, non-static, and non-public
  * - Have array initialization with at least 3 nested arrays or string literals
  * - Are not inherited from parent classes
+ * - Are never written by the class' own or trait methods (looked up in the FieldAccessIndex),
+ *   as mutated properties are per-instance state and can not be shared
  *
  * Such properties should be made static to avoid unnecessary object instantiation overhead.
  * If PHP 5.6+ is available, constants may also be considered as an alternative.
@@ -33,6 +35,7 @@ class PropertyCanBeStaticRule implements Rule
 
     public function __construct(
         private readonly ReflectionProvider $reflectionProvider,
+        private readonly FieldAccessIndex $fieldAccessIndex,
     ) {}
 
     public function getNodeType(): string
@@ -106,6 +109,11 @@ class PropertyCanBeStaticRule implements Rule
             return null;
         }
 
+        // Properties written by any method, the constructor included, hold per-instance values
+        if ($this->fieldAccessIndex->forClass($classReflection)->isWritten($property->name->toString())) {
+            return null;
+        }
+
         // Determine if constants are available (PHP 5.6+)
         $canUseConstants = $this->canUseConstants($scope);
 
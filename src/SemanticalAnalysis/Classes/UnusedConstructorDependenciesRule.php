@@ -12,7 +12,7 @@ use PhpParser\Node\Stmt\PropertyProperty;
 use PhpParser\NodeTraverser;
 use PhpParser\NodeVisitorAbstract;
 use PHPStan\Analyser\Scope;
-use PHPStan\Reflection\ReflectionProvider;
+use PHPStan\Node\InClassNode;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
 
@@ -31,24 +31,29 @@ use PHPStan\Rules\RuleErrorBuilder;
  * Properties with PHPDoc tags containing uppercase letters are excluded
  * from analysis, as they may be used for documentation purposes.
  *
- * @implements Rule<Class_>
+ * Usages are looked up in the shared FieldAccessIndex, so methods imported
+ * from traits are taken into account as well.
+ *
+ * @implements Rule<InClassNode>
  */
 class UnusedConstructorDependenciesRule implements Rule
 {
     private const string MESSAGE = 'Property is used only in constructor, perhaps we are dealing with dead code here.';
 
     public function __construct(
-        private readonly ReflectionProvider $reflectionProvider,
+        private readonly FieldAccessIndex $fieldAccessIndex,
     ) {}
 
     public function getNodeType(): string
     {
-        return Class_::class;
+        return InClassNode::class;
     }
 
     public function processNode(Node $node, Scope $scope): array
     {
-        if (!$node instanceof Class_) {
+        $classReflection = $scope->getClassReflection();
+        $node = $node->getOriginalNode();
+        if (!$node instanceof Class_ || $classReflection === null) {
             return [];
         }
 
@@ -72,11 +77,11 @@ class UnusedConstructorDependenciesRule implements Rule
             return [];
         }
 
-        $propertyUsages = $this->getPropertyUsagesInMethods($node, $privateProperties);
+        $fieldAccessMap = $this->fieldAccessIndex->forClass($classReflection, $node);
 
         $errors = [];
         foreach ($constructorAssignments as $propertyName => $assignmentNode) {
-            if (!isset($propertyUsages[$propertyName])) {
+            if (!$fieldAccessMap->isAccessedOutside($propertyName, '__construct')) {
                 $errors[] = RuleErrorBuilder::message(self::MESSAGE)
                     ->identifier('constructor.unusedDependency')
                     ->line($assignmentNode->getStartLine())
@@ -188,81 +193,4 @@ class UnusedConstructorDependenciesRule implements Rule
 
         return $visitor->assignments;
     }
-
-    /**
-     * @param array<string, PropertyProperty> $privateProperties
-     * @return array<string, true>
-     */
-    private function getPropertyUsagesInMethods(Class_ $node, array $privateProperties): array
-    {
-        $usages = [];
-
-        foreach ($node->getMethods() as $method) {
-            // Skip constructor
-            if ($method->name->toString() === '__construct') {
-                continue;
-            }
-
-            // Skip abstract methods
-            if ($method->isAbstract()) {
-                continue;
-            }
-
-            $methodUsages = $this->findPropertyUsagesInMethod($method, $privateProperties);
-            foreach ($methodUsages as $propertyName => $used) {
-                $usages[$propertyName] = true;
-            }
-        }
-
-        return $usages;
-    }
-
-    /**
-     * @param array<string, PropertyProperty> $privateProperties
-     * @return array<string, true>
-     */
-    private function findPropertyUsagesInMethod(ClassMethod $method, array $privateProperties): array
-    {
-        $usages = [];
-
-        $traverser = new NodeTraverser();
-        $visitor = new class($privateProperties) extends NodeVisitorAbstract {
-            /** @var array<string, PropertyProperty> */
-            private array $privateProperties;
-            /** @var array<string, true> */
-            public array $usages = [];
-
-            public function __construct(array $privateProperties)
-            {
-                $this->privateProperties = $privateProperties;
-            }
-
-            public function enterNode(Node $node)
-            {
-                // Look for property fetches like $this->property
-                if ($node instanceof PropertyFetch) {
-                    $propertyName = $this->getPropertyName($node);
-                    if ($propertyName !== null && isset($this->privateProperties[$propertyName])) {
-                        $this->usages[$propertyName] = true;
-                    }
-                }
-                return null;
-            }
-
-            private function getPropertyName(PropertyFetch $propertyFetch): ?string
-            {
-                if ($propertyFetch->var instanceof Variable &&
-                    $propertyFetch->var->name === 'this' &&
-                    $propertyFetch->name instanceof Node\Identifier) {
-                    return $propertyFetch->name->toString();
-                }
-                return null;
-            }
-        };
-
-        $traverser->addVisitor($visitor);
-        $traverser->traverse($method->stmts);
-
-        return $visitor->usages;
-    }
 }
\ No newline at end of file
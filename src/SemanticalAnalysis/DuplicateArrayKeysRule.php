@@ -3,10 +3,17 @@
 namespace macropage\PHPStan\Inspections\SemanticalAnalysis;
 
 use PhpParser\Node;
+use PhpParser\Node\Expr;
 use PhpParser\Node\Expr\Array_;
 use PhpParser\Node\Expr\ArrayItem;
+use PhpParser\Node\Expr\ClassConstFetch;
+use PhpParser\Node\Expr\ConstFetch;
+use PhpParser\Node\Expr\UnaryMinus;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\DNumber;
+use PhpParser\Node\Scalar\LNumber;
 use PhpParser\Node\Scalar\String_;
-use PhpParser\NodeFinder;
 use PHPStan\Analyser\Scope;
 use PHPStan\Rules\Rule;
 use PHPStan\Rules\RuleErrorBuilder;
@@ -15,12 +22,21 @@ use PHPStan\Rules\RuleErrorBuilder;
  * Detects duplicate array keys in array literals.
  *
  * This rule identifies:
- * - Arrays with duplicate string keys where the values differ
- * - Arrays with duplicate string keys where the values are identical
+ * - Arrays with duplicate keys where the values differ
+ * - Arrays with duplicate keys where the values are identical
  *
  * For duplicate keys with different values, it suggests removing the outdated one.
  * For duplicate keys with identical values, it suggests safely removing the duplicate pair.
  *
+ * Keys are normalized the way PHP does it: integer-like strings become integers ("1" and 1 are
+ * the same key, "01" is not), floats and booleans are truncated to integers, null becomes "".
+ * Keys without an explicit key are numbered like PHP does (as long as the numbering is known).
+ * Class constant (`Foo::BAR`) and global constant keys are resolved to their values; resolved
+ * values are cached per constant, so generated arrays repeating the same constants stay cheap.
+ *
+ * The literal is processed in a single pass: for every distinct key only the position of its
+ * latest occurrence is kept, values are fingerprinted lazily and only when a key collides.
+ *
  * @implements Rule<Array_>
  */
 class DuplicateArrayKeysRule implements Rule
@@ -28,6 +44,9 @@ class DuplicateArrayKeysRule implements Rule
     private const string MESSAGE_DUPLICATE_KEY = 'CUSTOM: The key is duplicated (and you should remove the outdated one).';
     private const string MESSAGE_DUPLICATE_PAIR = 'CUSTOM: The key-value pair is duplicated (and you can safely remove it).';
 
+    /** @var array<string, int|string|false> constant reference => normalized key, false when not resolvable */
+    private array $constantKeys = [];
+
     public function getNodeType(): string
     {
         return Array_::class;
@@ -38,182 +57,213 @@ class DuplicateArrayKeysRule implements Rule
      */
     public function processNode(Node $node, Scope $scope): array
     {
-        if (!$node instanceof Array_) {
+        if (!$node instanceof Array_ || count($node->items) < 2) {
             return [];
         }
 
-        $processedKeys = [];
+        /** @var array<int|string, int> $lastPositions normalized key => index of the latest item using it */
+        $lastPositions = [];
+        /** @var array<int, string> $fingerprints item index => value fingerprint (only for colliding keys) */
+        $fingerprints = [];
+        $nextIndex = 0;
+        $nextIndexKnown = true;
         $errors = [];
 
-        foreach ($node->items as $item) {
+        foreach ($node->items as $position => $item) {
             if (!$item instanceof ArrayItem) {
                 continue;
             }
 
-            $key = $item->key;
-            // Only check string literal keys (no variables, no expressions)
-            if (!$key instanceof String_) {
+            // Spreading renumbers integer keys, implicit keys can not be predicted afterwards
+            if ($item->unpack) {
+                $nextIndexKnown = false;
                 continue;
             }
 
-            // Skip if it's an interpolated string (Encapsed)
-            if ($key instanceof \PhpParser\Node\Scalar\Encapsed) {
-                continue;
-            }
-
-            // Skip numeric strings (like '0', '1', etc.)
-            if (is_numeric($key->value)) {
-                continue;
+            if ($item->key === null) {
+                if (!$nextIndexKnown) {
+                    continue;
+                }
+                $normalizedKey = $nextIndex;
+            } else {
+                $normalizedKey = $this->normalizeKey($item->key, $scope);
+                if ($normalizedKey === null) {
+                    continue;
+                }
             }
 
-            // Skip if the key contains any variables or complex expressions
-            if ($this->keyContainsVariables($key) || $this->isEvaluatedVariable($key)) {
-                continue;
+            if (is_int($normalizedKey)) {
+                // Negative keys affect the numbering differently depending on the PHP version
+                if ($normalizedKey < 0) {
+                    $nextIndexKnown = false;
+                } elseif ($normalizedKey >= $nextIndex) {
+                    $nextIndex = $normalizedKey === PHP_INT_MAX ? $normalizedKey : $normalizedKey + 1;
+                }
             }
 
-            $keyValue = $key->value;
-            $value = $item->value;
+            if (isset($lastPositions[$normalizedKey])) {
+                $previousPosition = $lastPositions[$normalizedKey];
+                $previousItem = $node->items[$previousPosition];
 
-            if (isset($processedKeys[$keyValue])) {
-                $existingValue = $processedKeys[$keyValue];
+                $fingerprints[$previousPosition] ??= $this->fingerprint($previousItem->value);
+                $fingerprints[$position] = $this->fingerprint($item->value);
 
-                $equivalent = $this->areValuesEquivalent($value, $existingValue);
-                $debugInfo = ' (equiv: ' . ($equivalent ? 'true' : 'false') . ', types: ' . get_class($value) . '/' . get_class($existingValue);
-                if ($value instanceof \PhpParser\Node\Scalar\String_) {
-                    $debugInfo .= ', val1: ' . $value->value;
-                }
-                if ($existingValue instanceof \PhpParser\Node\Scalar\String_) {
-                    $debugInfo .= ', val2: ' . $existingValue->value;
-                }
-                $debugInfo .= ')';
-
-                if ($equivalent) {
-                    // Key-value pair is duplicated
-                    $errors[] = RuleErrorBuilder::message(self::MESSAGE_DUPLICATE_PAIR . $debugInfo)
+                if ($fingerprints[$previousPosition] === $fingerprints[$position]) {
+                    $errors[] = RuleErrorBuilder::message(self::MESSAGE_DUPLICATE_PAIR)
                         ->identifier('array.duplicateKeyValuePair')
                         ->line($item->getStartLine())
                         ->build();
                 } else {
-                    // Key is duplicated but values differ
-                    $errors[] = RuleErrorBuilder::message(self::MESSAGE_DUPLICATE_KEY . $debugInfo)
+                    $errors[] = RuleErrorBuilder::message(self::MESSAGE_DUPLICATE_KEY)
                         ->identifier('array.duplicateKey')
-                        ->line($key->getStartLine())
+                        ->line(($item->key ?? $item)->getStartLine())
                         ->build();
                 }
-            } else {
-                $processedKeys[$keyValue] = $value;
             }
+
+            $lastPositions[$normalizedKey] = $position;
         }
 
         return $errors;
     }
 
-    private function areValuesEquivalent(Node $value1, Node $value2): bool
+    /**
+     * Returns the key PHP would use for the given key expression, null when it can not be determined statically.
+     */
+    private function normalizeKey(Expr $key, Scope $scope): int|string|null
     {
-        // For simple string literals, compare the values directly
-        if ($value1 instanceof \PhpParser\Node\Scalar\String_ &&
-            $value2 instanceof \PhpParser\Node\Scalar\String_) {
-            return $value1->value === $value2->value;
+        if ($key instanceof String_) {
+            return $this->normalizeValue($key->value);
+        }
+        if ($key instanceof LNumber || $key instanceof DNumber) {
+            return $this->normalizeValue($key->value);
+        }
+        if ($key instanceof UnaryMinus && ($key->expr instanceof LNumber || $key->expr instanceof DNumber)) {
+            return $this->normalizeValue(-$key->expr->value);
         }
 
-        // For simple numeric literals, compare the values directly
-        if ($value1 instanceof \PhpParser\Node\Scalar\LNumber &&
-            $value2 instanceof \PhpParser\Node\Scalar\LNumber) {
-            return $value1->value === $value2->value;
+        $constantReference = $this->getConstantReference($key, $scope);
+        if ($constantReference === null) {
+            return null;
         }
 
-        // For other scalar types
-        if ($value1 instanceof \PhpParser\Node\Scalar &&
-            $value2 instanceof \PhpParser\Node\Scalar) {
-            if (property_exists($value1, 'value') && property_exists($value2, 'value')) {
-                return $value1->value === $value2->value;
+        if (!array_key_exists($constantReference, $this->constantKeys)) {
+            $resolved = false;
+            $values = $scope->getType($key)->getConstantScalarValues();
+            if (count($values) === 1) {
+                $resolved = $this->normalizeValue($values[0]) ?? false;
             }
+            $this->constantKeys[$constantReference] = $resolved;
         }
 
-        // For more complex cases, use structural comparison
-        return $this->nodesAreStructurallyEqual($value1, $value2);
+        $cached = $this->constantKeys[$constantReference];
+
+        return $cached === false ? null : $cached;
     }
 
-    private function nodesAreStructurallyEqual(Node $node1, Node $node2): bool
+    /**
+     * Builds a stable cache key for `Foo::BAR`, `self::BAR` and `BAR` references;
+     * `static::BAR` and dynamic class references are late-bound and not resolved.
+     */
+    private function getConstantReference(Expr $key, Scope $scope): ?string
     {
-        // Must be the same type of node
-        if (get_class($node1) !== get_class($node2)) {
-            return false;
+        if ($key instanceof ConstFetch) {
+            $name = strtolower($key->name->toString());
+            // true/false/null are parsed as constant fetches
+            return in_array($name, ['true', 'false', 'null'], true) ? 'literal:' . $name : 'const:' . $scope->getNamespace() . '\\' . $key->name->toString();
         }
 
-        // Compare all sub-nodes recursively
-        foreach ($node1->getSubNodeNames() as $name) {
-            $sub1 = $node1->$name;
-            $sub2 = $node2->$name;
+        if (!$key instanceof ClassConstFetch || !$key->class instanceof Name || !$key->name instanceof Identifier) {
+            return null;
+        }
 
-            if ($sub1 instanceof Node && $sub2 instanceof Node) {
-                if (!$this->nodesAreStructurallyEqual($sub1, $sub2)) {
-                    return false;
-                }
-            } elseif ($sub1 instanceof Node || $sub2 instanceof Node) {
-                // One is a node, the other is not
-                return false;
-            } elseif (is_array($sub1) && is_array($sub2)) {
-                if (count($sub1) !== count($sub2)) {
-                    return false;
-                }
-                foreach ($sub1 as $key => $value1) {
-                    if (!isset($sub2[$key])) {
-                        return false;
-                    }
-                    $value2 = $sub2[$key];
-                    if ($value1 instanceof Node && $value2 instanceof Node) {
-                        if (!$this->nodesAreStructurallyEqual($value1, $value2)) {
-                            return false;
-                        }
-                    } elseif ($value1 !== $value2) {
-                        return false;
-                    }
+        $className = $key->class->toString();
+        $lowerClassName = strtolower($className);
+        if ($lowerClassName === 'static') {
+            return null;
+        }
+        if ($lowerClassName === 'self' || $lowerClassName === 'parent') {
+            $classReflection = $scope->getClassReflection();
+            if ($classReflection === null) {
+                return null;
+            }
+            if ($lowerClassName === 'parent') {
+                $classReflection = $classReflection->getParentClass();
+                if ($classReflection === null) {
+                    return null;
                 }
-            } elseif ($sub1 !== $sub2) {
-                return false;
             }
+            $className = $classReflection->getName();
         }
 
-        return true;
+        return 'class:' . strtolower($className) . '::' . $key->name->toString();
     }
 
-    private function keyContainsVariables(String_ $key): bool
+    /**
+     * Applies PHP's array key casting rules to a scalar value.
+     */
+    private function normalizeValue(mixed $value): int|string|null
     {
-        // For now, skip keys that look like they might be variables
-        // This is a heuristic since we can't easily traverse the original AST
-        $value = $key->value;
-
-        // Skip if it looks like a variable name
-        if (preg_match('/^\$[a-zA-Z_][a-zA-Z0-9_]*$/', $value)) {
-            return true;
+        if (is_int($value)) {
+            return $value;
         }
-
-        // Skip if it contains variable-like patterns
-        if (strpos($value, '$') !== false) {
-            return true;
+        if (is_string($value)) {
+            // Only canonical decimal integers are cast: "1" => 1, while "01", "1.0", "-0" and " 1" stay strings
+            if (preg_match('/^(0|-?[1-9][0-9]*)$/', $value) === 1 && (string) (int) $value === $value) {
+                return (int) $value;
+            }
+            return $value;
+        }
+        if (is_float($value)) {
+            return is_finite($value) ? (int) $value : null;
+        }
+        if (is_bool($value)) {
+            return (int) $value;
+        }
+        if ($value === null) {
+            return '';
         }
 
-        return false;
+        return null;
     }
 
-    private function isEvaluatedVariable(String_ $key): bool
+    /**
+     * Structural fingerprint of a value expression, ignoring positions, comments and quoting style.
+     */
+    private function fingerprint(Expr $value): string
     {
-        // Check if this String_ node has attributes that suggest it came from evaluating a variable
-        // This is a heuristic based on PHPStan behavior
-
-        $attributes = $key->getAttributes();
+        return hash('xxh128', $this->serializeNode($value));
+    }
 
-        // If the node has a 'originalNode' or similar attribute, it might be transformed
-        if (isset($attributes['originalNode'])) {
-            return true;
+    private function serializeNode(Node $node): string
+    {
+        $parts = [$node->getType()];
+        foreach ($node->getSubNodeNames() as $name) {
+            $parts[] = $name . '=' . $this->serializeValue($node->$name);
         }
 
-        // Check for other indicators that this might be an evaluated expression
-        // For now, we'll use a simple heuristic: if the string value matches a pattern
-        // that suggests it came from a variable evaluation
+        return '(' . implode(',', $parts) . ')';
+    }
+
+    private function serializeValue(mixed $value): string
+    {
+        if ($value instanceof Node) {
+            return $this->serializeNode($value);
+        }
+        if (is_array($value)) {
+            $parts = [];
+            foreach ($value as $entry) {
+                $parts[] = $this->serializeValue($entry);
+            }
+            return '[' . implode(',', $parts) . ']';
+        }
+        if ($value === null) {
+            return 'null';
+        }
+        if (is_string($value)) {
+            return 'string:' . strlen($value) . ':' . $value;
+        }
 
-        // This is not perfect, but it's better than nothing
-        return false;
+        return get_debug_type($value) . ':' . (is_bool($value) ? (int) $value : (string) $value);
     }
-}
\ No newline at end of file
+}
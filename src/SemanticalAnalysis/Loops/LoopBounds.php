@@ -0,0 +1,125 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Loops;
+
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\Assign;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar\LNumber;
+use PhpParser\Node\Stmt;
+
+/**
+ * Iteration counts of loops with literal bounds:
+ * - counting for-loops, e.g. `for ($i = 0; $i < 100; $i += 2)`
+ * - foreach over an array literal or over range() with literal arguments
+ */
+final class LoopBounds
+{
+    /**
+     * Counter of a for-loop with a single initialization, condition and step on the same variable.
+     *
+     * @return array{variable: string, start: Expr, step: int}|null
+     */
+    public static function getCounter(Stmt\For_ $loop): ?array
+    {
+        if (count($loop->init) !== 1 || count($loop->cond) !== 1 || count($loop->loop) !== 1) {
+            return null;
+        }
+
+        $init = $loop->init[0];
+        if (!$init instanceof Assign || !$init->var instanceof Variable || !is_string($init->var->name)) {
+            return null;
+        }
+        $counter = $init->var->name;
+
+        $step = $loop->loop[0];
+        $isCounter = static fn (Expr $expr): bool => $expr instanceof Variable && $expr->name === $counter;
+        $stepValue = match (true) {
+            ($step instanceof Expr\PostInc || $step instanceof Expr\PreInc) && $isCounter($step->var) => 1,
+            ($step instanceof Expr\PostDec || $step instanceof Expr\PreDec) && $isCounter($step->var) => -1,
+            $step instanceof Expr\AssignOp\Plus && $isCounter($step->var) && $step->expr instanceof LNumber => $step->expr->value,
+            $step instanceof Expr\AssignOp\Minus && $isCounter($step->var) && $step->expr instanceof LNumber => -$step->expr->value,
+            default => null,
+        };
+        if ($stepValue === null || $stepValue === 0) {
+            return null;
+        }
+
+        return ['variable' => $counter, 'start' => $init->expr, 'step' => $stepValue];
+    }
+
+    /**
+     * Number of iterations, null unless the bounds are literal.
+     */
+    public static function getIterations(Stmt $loop): ?int
+    {
+        if ($loop instanceof Stmt\For_) {
+            return self::getForIterations($loop);
+        }
+        if (!$loop instanceof Stmt\Foreach_) {
+            return null;
+        }
+
+        if ($loop->expr instanceof Expr\Array_) {
+            return count($loop->expr->items);
+        }
+        if ($loop->expr instanceof Expr\FuncCall && $loop->expr->name instanceof Name
+            && $loop->expr->name->toLowerString() === 'range') {
+            $args = $loop->expr->getArgs();
+            $low  = isset($args[0]) ? self::getIntegerValue($args[0]->value) : null;
+            $high = isset($args[1]) ? self::getIntegerValue($args[1]->value) : null;
+            $step = isset($args[2]) ? self::getIntegerValue($args[2]->value) : 1;
+            if ($low === null || $high === null || $step === null || $step === 0) {
+                return null;
+            }
+            return intdiv(abs($high - $low), abs($step)) + 1;
+        }
+
+        return null;
+    }
+
+    public static function getIntegerValue(Expr $expr): ?int
+    {
+        if ($expr instanceof LNumber) {
+            return $expr->value;
+        }
+        if (($expr instanceof Expr\UnaryMinus || $expr instanceof Expr\UnaryPlus) && $expr->expr instanceof LNumber) {
+            return $expr instanceof Expr\UnaryMinus ? -$expr->expr->value : $expr->expr->value;
+        }
+
+        return null;
+    }
+
+    private static function getForIterations(Stmt\For_ $loop): ?int
+    {
+        $counter = self::getCounter($loop);
+        $start = $counter === null ? null : self::getIntegerValue($counter['start']);
+        if ($counter === null || $start === null) {
+            return null;
+        }
+
+        $condition = $loop->cond[0];
+        if (!$condition instanceof Expr\BinaryOp || !$condition->left instanceof Variable || $condition->left->name !== $counter['variable']) {
+            return null;
+        }
+        $bound = self::getIntegerValue($condition->right);
+        if ($bound === null) {
+            return null;
+        }
+
+        $step = $counter['step'];
+        $distance = match (true) {
+            $condition instanceof Expr\BinaryOp\Smaller        && $step > 0 => $bound - $start,
+            $condition instanceof Expr\BinaryOp\SmallerOrEqual && $step > 0 => $bound - $start + 1,
+            $condition instanceof Expr\BinaryOp\Greater        && $step < 0 => $start - $bound,
+            $condition instanceof Expr\BinaryOp\GreaterOrEqual && $step < 0 => $start - $bound + 1,
+            default => null,
+        };
+        if ($distance === null) {
+            return null;
+        }
+
+        return max(0, intdiv($distance + abs($step) - 1, abs($step)));
+    }
+}
@@ -0,0 +1,305 @@
+<?php declare(strict_types=1);
+
+namespace macropage\PHPStan\Inspections\SemanticalAnalysis\Loops;
+
+use macropage\PHPStan\Inspections\ApiUsage\PureFunctions;
+use PhpParser\Node;
+use PhpParser\Node\Expr;
+use PhpParser\Node\Expr\ArrayDimFetch;
+use PhpParser\Node\Expr\CallLike;
+use PhpParser\Node\Expr\FuncCall;
+use PhpParser\Node\Expr\MethodCall;
+use PhpParser\Node\Expr\NullsafeMethodCall;
+use PhpParser\Node\Expr\NullsafePropertyFetch;
+use PhpParser\Node\Expr\PropertyFetch;
+use PhpParser\Node\Expr\StaticCall;
+use PhpParser\Node\Expr\StaticPropertyFetch;
+use PhpParser\Node\Expr\Variable;
+use PhpParser\Node\Identifier;
+use PhpParser\Node\Name;
+use PhpParser\Node\Scalar;
+use PhpParser\Node\Stmt;
+use PHPStan\Analyser\Scope;
+use PHPStan\Reflection\ParametersAcceptor;
+use PHPStan\Reflection\ReflectionProvider;
+
+/**
+ * Modification set of a loop: the variables and properties which may change while it runs,
+ * used to decide whether an expression is loop-invariant.
+ *
+ * The set covers the loop's condition, step and body including nested loops: assignments (also
+ * by reference, compound and destructuring), increments, unset(), foreach variables, catch
+ * variables, global/static declarations, closures capturing by reference and arguments passed
+ * to by-reference parameters. Properties are keyed by name only (any object), and are considered
+ * modified by any call which is not a pure builtin (by name, a __toString() writing properties is
+ * not assumed). Calls are invariant when PureFunctions::isPureCall() accepts them with the types
+ * at the loop entry, which are the types of the arguments not modified by the loop. Variable variables, extract(), eval and
+ * include may write any variable, which makes nothing but constants invariant.
+ */
+final class LoopInvariants
+{
+    /** @var array<string, true> */
+    private array $variables = [];
+
+    /** @var array<string, true> */
+    private array $properties = [];
+
+    private bool $hasImpureCalls = false;
+
+    private bool $isOpaque = false;
+
+    private function __construct(
+        private readonly ReflectionProvider $reflectionProvider,
+        private readonly Scope $scope,
+    ) {
+    }
+
+    public static function of(Stmt\For_|Stmt\Foreach_|Stmt\While_|Stmt\Do_ $loop, ReflectionProvider $reflectionProvider, Scope $scope): self
+    {
+        $invariants = new self($reflectionProvider, $scope);
+
+        if ($loop instanceof Stmt\For_) {
+            $invariants->scan([...$loop->cond, ...$loop->loop, ...$loop->stmts]);
+        } elseif ($loop instanceof Stmt\Foreach_) {
+            $invariants->markForeach($loop);
+            $invariants->scan($loop->stmts);
+        } else {
+            $invariants->scan([$loop->cond, ...$loop->stmts]);
+        }
+
+        return $invariants;
+    }
+
+    public function isInvariant(Expr $expr): bool
+    {
+        if ($expr instanceof Scalar\Encapsed) {
+            foreach ($expr->parts as $part) {
+                if ($part instanceof Expr && !$this->isInvariant($part)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if ($expr instanceof Scalar || $expr instanceof Expr\ConstFetch) {
+            return true;
+        }
+        if ($expr instanceof Expr\ClassConstFetch) {
+            return $expr->class instanceof Name;
+        }
+        if ($this->isOpaque) {
+            return false;
+        }
+
+        if ($expr instanceof Variable) {
+            return is_string($expr->name) && !isset($this->variables[$expr->name]);
+        }
+        if ($expr instanceof PropertyFetch || $expr instanceof NullsafePropertyFetch) {
+            return $expr->name instanceof Identifier
+                && !$this->hasImpureCalls
+                && !isset($this->properties['->' . $expr->name->toString()])
+                && $this->isInvariant($expr->var);
+        }
+        if ($expr instanceof StaticPropertyFetch) {
+            return $expr->class instanceof Name && $expr->name instanceof Node\VarLikeIdentifier
+                && !$this->hasImpureCalls
+                && !isset($this->properties['::' . $expr->name->toString()]);
+        }
+        if ($expr instanceof ArrayDimFetch) {
+            return $expr->dim !== null && $this->isInvariant($expr->var) && $this->isInvariant($expr->dim);
+        }
+        if ($expr instanceof FuncCall) {
+            if (!PureFunctions::isPureCall($expr, $this->scope)) {
+                return false;
+            }
+            foreach ($expr->args as $arg) {
+                if (!$arg instanceof Node\Arg || !$this->isInvariant($arg->value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if ($expr instanceof Expr\Array_) {
+            foreach ($expr->items as $item) {
+                if ($item === null || $item->byRef
+                    || ($item->key !== null && !$this->isInvariant($item->key)) || !$this->isInvariant($item->value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if ($expr instanceof Expr\BinaryOp) {
+            return $this->isInvariant($expr->left) && $this->isInvariant($expr->right);
+        }
+        if ($expr instanceof Expr\UnaryMinus || $expr instanceof Expr\UnaryPlus || $expr instanceof Expr\BooleanNot) {
+            return $this->isInvariant($expr->expr);
+        }
+        if ($expr instanceof Expr\Cast && !$expr instanceof Expr\Cast\Object_ && !$expr instanceof Expr\Cast\String_) {
+            return $this->isInvariant($expr->expr);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param array<Node|null> $nodes
+     */
+    private function scan(array $nodes): void
+    {
+        foreach ($nodes as $node) {
+            if ($node !== null) {
+                $this->scanNode($node);
+            }
+        }
+    }
+
+    private function scanNode(Node $node): void
+    {
+        // Declarations are not executed by the loop, closures only share variables captured by reference
+        if ($node instanceof Stmt\ClassLike || $node instanceof Stmt\Function_) {
+            return;
+        }
+        if ($node instanceof Expr\Closure) {
+            foreach ($node->uses as $use) {
+                if ($use->byRef && is_string($use->var->name)) {
+                    $this->variables[$use->var->name] = true;
+                }
+            }
+            return;
+        }
+        if ($node instanceof Expr\ArrowFunction) {
+            return;
+        }
+
+        if ($node instanceof Expr\Assign || $node instanceof Expr\AssignOp) {
+            $this->markWritten($node->var);
+        } elseif ($node instanceof Expr\AssignRef) {
+            $this->markWritten($node->var);
+            $this->markWritten($node->expr);
+        } elseif ($node instanceof Expr\PreInc || $node instanceof Expr\PreDec
+            || $node instanceof Expr\PostInc || $node instanceof Expr\PostDec) {
+            $this->markWritten($node->var);
+        } elseif ($node instanceof Stmt\Unset_) {
+            foreach ($node->vars as $var) {
+                $this->markWritten($var);
+            }
+        } elseif ($node instanceof Stmt\Foreach_) {
+            $this->markForeach($node);
+        } elseif ($node instanceof Stmt\Catch_ && $node->var !== null) {
+            $this->markWritten($node->var);
+        } elseif ($node instanceof Stmt\Global_) {
+            foreach ($node->vars as $var) {
+                $this->markWritten($var);
+            }
+        } elseif ($node instanceof Stmt\Static_) {
+            foreach ($node->vars as $var) {
+                $this->markWritten($var->var);
+            }
+        } elseif ($node instanceof Variable && !is_string($node->name)) {
+            $this->isOpaque = true;
+        } elseif ($node instanceof Expr\Eval_ || $node instanceof Expr\Include_) {
+            $this->isOpaque = true;
+        } elseif ($node instanceof CallLike) {
+            $this->markCall($node);
+        }
+
+        foreach ($node->getSubNodeNames() as $subNodeName) {
+            $subNode = $node->$subNodeName;
+            if ($subNode instanceof Node) {
+                $this->scanNode($subNode);
+            } elseif (is_array($subNode)) {
+                $this->scan(array_filter($subNode, static fn ($item): bool => $item instanceof Node));
+            }
+        }
+    }
+
+    private function markForeach(Stmt\Foreach_ $foreach): void
+    {
+        $this->markWritten($foreach->valueVar);
+        if ($foreach->keyVar !== null) {
+            $this->markWritten($foreach->keyVar);
+        }
+        if ($foreach->byRef) {
+            $this->markWritten($foreach->expr);
+        }
+    }
+
+    private function markCall(CallLike $call): void
+    {
+        if ($call instanceof FuncCall && $call->name instanceof Name) {
+            $functionName = strtolower($call->name->toString());
+            if ($functionName === 'extract') {
+                $this->isOpaque = true;
+            }
+            if (PureFunctions::isPure($functionName)) {
+                return;
+            }
+        }
+        $this->hasImpureCalls = true;
+
+        if ($call->isFirstClassCallable()) {
+            return;
+        }
+        $parameters = $this->resolveParameters($call);
+        foreach ($call->getArgs() as $position => $arg) {
+            $parameter = $parameters === null ? null : ($parameters[$position] ?? ($parameters !== [] && end($parameters)->isVariadic() ? end($parameters) : null));
+            // Unknown callees may take any argument by reference
+            if ($parameters === null || $arg->name !== null || ($parameter !== null && !$parameter->passedByReference()->no())) {
+                $this->markWritten($arg->value);
+            }
+        }
+    }
+
+    /**
+     * @return list<\PHPStan\Reflection\ParameterReflection>|null
+     */
+    private function resolveParameters(CallLike $call): ?array
+    {
+        $acceptor = null;
+        if ($call instanceof FuncCall && $call->name instanceof Name) {
+            if ($this->reflectionProvider->hasFunction($call->name, $this->scope)) {
+                $acceptor = $this->reflectionProvider->getFunction($call->name, $this->scope)->getVariants()[0];
+            }
+        } elseif (($call instanceof MethodCall || $call instanceof NullsafeMethodCall || $call instanceof StaticCall)
+            && $call->name instanceof Identifier) {
+            $type = $call instanceof StaticCall
+                ? ($call->class instanceof Name ? $this->scope->resolveTypeByName($call->class) : null)
+                : $this->scope->getType($call->var);
+            if ($type !== null && $type->hasMethod($call->name->toString())->yes()) {
+                $acceptor = $type->getMethod($call->name->toString(), $this->scope)->getVariants()[0];
+            }
+        }
+
+        return $acceptor instanceof ParametersAcceptor ? array_values($acceptor->getParameters()) : null;
+    }
+
+    private function markWritten(Expr $target): void
+    {
+        if ($target instanceof Expr\List_ || $target instanceof Expr\Array_) {
+            foreach ($target->items as $item) {
+                if ($item !== null) {
+                    $this->markWritten($item->value);
+                }
+            }
+            return;
+        }
+
+        while ($target instanceof ArrayDimFetch) {
+            $target = $target->var;
+        }
+
+        if ($target instanceof Variable) {
+            if (is_string($target->name)) {
+                $this->variables[$target->name] = true;
+            } else {
+                $this->isOpaque = true;
+            }
+        } elseif (($target instanceof PropertyFetch || $target instanceof NullsafePropertyFetch) && $target->name instanceof Identifier) {
+            $this->properties['->' . $target->name->toString()] = true;
+        } elseif ($target instanceof StaticPropertyFetch && $target->name instanceof Node\VarLikeIdentifier) {
+            $this->properties['::' . $target->name->toString()] = true;
+        } elseif ($target instanceof PropertyFetch || $target instanceof NullsafePropertyFetch || $target instanceof StaticPropertyFetch) {
+            // Dynamic property names may write any property
+            $this->hasImpureCalls = true;
+        }
+    }
+}